@@ -0,0 +1,78 @@
+package com.wikipediasearch.benchmark;
+
+import com.wikipediasearch.invertedIndex.Index5;
+import com.wikipediasearch.invertedIndex.Stemmer;
+import com.wikipediasearch.invertedIndex.TokenizedDocument;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The analysis chain: Index5.tokenize on whole pages and Stemmer on single words.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AnalysisBenchmark {
+
+    private static final int WORDS = 1024;
+
+    private static final String[] ENGLISH_WORDS = {
+            "connections", "searching", "computational", "engines", "relational", "generalization",
+            "hopefully", "indexing", "retrieval", "crawled", "pages", "ranking", "similarity",
+            "universities", "happiness", "conditional", "operating", "running", "cats", "argued"};
+
+    @Param({BenchmarkCorpus.SYNTHETIC})
+    public String corpus;
+
+    private final Index5 index = new Index5();
+    private final Stemmer stemmer = new Stemmer();
+    private String[] pageTexts;
+    private String[] words;
+    private int nextPage;
+
+    @Setup(Level.Trial)
+    public void loadCorpus() {
+        pageTexts = BenchmarkCorpus.load(corpus, 200).getPages().values().toArray(new String[0]);
+        words = new String[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            words[i] = ENGLISH_WORDS[i % ENGLISH_WORDS.length];
+        }
+    }
+
+    /** One page through lowercase, split, filters and stemming (throughput = pages/s). */
+    @Benchmark
+    public TokenizedDocument tokenizePage() {
+        String text = pageTexts[nextPage];
+        nextPage = (nextPage + 1) % pageTexts.length;
+        return index.tokenize("https://en.wikipedia.org/wiki/Benchmark", null, text);
+    }
+
+    /** Stemmer alone, the way Index5 drives it (throughput = words/s). */
+    @Benchmark
+    @OperationsPerInvocation(WORDS)
+    public void stem(Blackhole blackhole) {
+        for (String word : words) {
+            stemmer.addString(word);
+            stemmer.stem();
+            blackhole.consume(stemmer.toString());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.wikipediasearch.benchmark;
+
+import com.wikipediasearch.invertedIndex.Index5;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index5.suggest latency for 1-4 character prefixes of real index terms: should stay flat
+ * (and far below 100 us) as the vocabulary grows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AutocompleteBenchmark {
+
+    private static final int PREFIXES = 256;
+
+    @Param({BenchmarkCorpus.SYNTHETIC})
+    public String corpus;
+
+    @Param({"1000", "10000"})
+    public int pages;
+
+    private Index5 index;
+    private String[] prefixes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void buildIndex() {
+        BenchmarkCorpus loaded = BenchmarkCorpus.load(corpus, pages);
+        index = new Index5();
+        index.buildIndex(loaded.getPages());
+        System.out.println("Vocabulary: " + index.getIndexSize() + " terms");
+
+        List<String> terms = loaded.termsAt(0.0, Integer.MAX_VALUE / 2); // Whole vocabulary
+        Random random = new Random(9);
+        prefixes = new String[PREFIXES];
+        for (int i = 0; i < PREFIXES; i++) {
+            String term = terms.get(random.nextInt(terms.size()));
+            prefixes[i] = term.substring(0, Math.min(term.length(), 1 + random.nextInt(4)));
+        }
+    }
+
+    @Benchmark
+    public List<String> suggest() {
+        String prefix = prefixes[next];
+        next = (next + 1) % PREFIXES;
+        return index.suggest(prefix, 10);
+    }
+}
@@ -0,0 +1,102 @@
+package com.wikipediasearch.benchmark;
+
+import com.wikipediasearch.loadtest.SyntheticCorpus;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Corpora for the benchmarks: either synthetic (SyntheticCorpus with a fixed seed, so every
+ * run sees the same text) or saved pages from a directory of .txt files (one page per file).
+ * Also ranks the corpus vocabulary by document frequency so benchmarks can pick common
+ * and rare query terms.
+ */
+final class BenchmarkCorpus {
+
+    /** Value of the "corpus" benchmark parameter selecting the synthetic corpus. */
+    static final String SYNTHETIC = "synthetic";
+
+    private final Map<String, String> pages;
+    private final List<String> termsByDocFrequency; // Most common first
+
+    private BenchmarkCorpus(Map<String, String> pages) {
+        this.pages = pages;
+        this.termsByDocFrequency = rankTerms(pages);
+    }
+
+    /**
+     * @param corpus   {@link #SYNTHETIC} or a directory of saved .txt pages.
+     * @param maxPages Number of pages (synthetic) or max pages read (saved).
+     */
+    static BenchmarkCorpus load(String corpus, int maxPages) {
+        return SYNTHETIC.equals(corpus) ? synthetic(maxPages, 42) : saved(Paths.get(corpus), maxPages);
+    }
+
+    static BenchmarkCorpus synthetic(int pageCount, long seed) {
+        return new BenchmarkCorpus(SyntheticCorpus.withDefaults(seed, pageCount).toMap());
+    }
+
+    static BenchmarkCorpus saved(Path directory, int maxPages) {
+        Map<String, String> pages = new LinkedHashMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".txt")).sorted().limit(maxPages)::iterator) {
+                String name = file.getFileName().toString();
+                pages.put("https://en.wikipedia.org/wiki/" + name.substring(0, name.length() - 4),
+                        new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read saved corpus " + directory, e);
+        }
+        if (pages.isEmpty()) {
+            throw new IllegalArgumentException("No .txt pages found in " + directory);
+        }
+        return new BenchmarkCorpus(pages);
+    }
+
+    Map<String, String> getPages() {
+        return pages;
+    }
+
+    /**
+     * @return Up to {@code count} terms starting at the given fraction of the frequency ranking
+     *         (0.0 = most common, 1.0 = rarest).
+     */
+    List<String> termsAt(double rankFraction, int count) {
+        int size = termsByDocFrequency.size();
+        int start = Math.max(0, Math.min(size - count, (int) (rankFraction * size)));
+        return termsByDocFrequency.subList(start, Math.min(size, start + count));
+    }
+
+    // Document frequency of every word (>= 3 letters, not numeric), most common first;
+    // words seen in a single page are left out so "rare" queries still match something.
+    private static List<String> rankTerms(Map<String, String> pages) {
+        Map<String, Integer> docFrequency = new HashMap<>();
+        for (String text : pages.values()) {
+            for (String term : new HashSet<>(Arrays.asList(text.toLowerCase(Locale.ROOT).split("\\W+")))) {
+                if (term.length() >= 3 && !term.matches("\\d+")) {
+                    docFrequency.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+        List<String> terms = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : docFrequency.entrySet()) {
+            if (entry.getValue() > 1) terms.add(entry.getKey());
+        }
+        terms.sort(Comparator.comparing((String t) -> -docFrequency.get(t)).thenComparing(Comparator.naturalOrder()));
+        return terms;
+    }
+}
@@ -0,0 +1,39 @@
+package com.wikipediasearch.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Entry point of target/benchmarks.jar. Accepts the usual JMH command line
+ * (benchmark regex, -p param=value, -f, -wi, -i, -rf json, ...) and always adds the GC
+ * profiler, so every result carries gc.alloc.rate and gc.alloc.rate.norm (bytes per operation)
+ * next to the timing. Comparing gc.alloc.rate.norm between runs catches allocation regressions.
+ *
+ * Examples:
+ *   java -jar target/benchmarks.jar                                  (everything)
+ *   java -jar target/benchmarks.jar QueryBenchmark -p shape=rare     (one benchmark, one shape)
+ *   java -jar target/benchmarks.jar IndexBuild -p corpus=/data/pages (saved .txt corpus)
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams()
+                || commandLine.shouldListProfilers() || commandLine.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args); // Informational commands: nothing to profile
+            return;
+        }
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
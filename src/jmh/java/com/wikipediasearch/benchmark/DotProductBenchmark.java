@@ -0,0 +1,56 @@
+package com.wikipediasearch.benchmark;
+
+import com.wikipediasearch.similarity.CosineSimilarityCalculator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CosineSimilarityCalculator.calculateDotProduct on sparse term -> weight vectors
+ * that share half of their terms.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DotProductBenchmark {
+
+    @Param({"8", "128", "2048"})
+    public int terms;
+
+    private Map<String, Double> query;
+    private Map<String, Double> document;
+
+    @Setup(Level.Trial)
+    public void buildVectors() {
+        Random random = new Random(7);
+        query = new HashMap<>();
+        document = new HashMap<>();
+        for (int i = 0; i < terms; i++) {
+            query.put("term" + i, random.nextDouble());
+            document.put("term" + (i + terms / 2), random.nextDouble());
+        }
+    }
+
+    @Benchmark
+    public double calculateDotProduct() {
+        return CosineSimilarityCalculator.calculateDotProduct(query, document);
+    }
+}
@@ -0,0 +1,72 @@
+package com.wikipediasearch.benchmark;
+
+import com.wikipediasearch.loadtest.SyntheticCorpus;
+import com.wikipediasearch.suggest.LevenshteinAutomaton;
+import com.wikipediasearch.suggest.PrefixSuggester;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fuzzy dictionary lookup (Levenshtein automaton x trie) for misspelled words: one random
+ * substitution in a vocabulary word, edit budget picked by word length as Index5 does.
+ * The synthetic words are built from 16 syllables, so neighbours are unusually dense.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class FuzzyMatchBenchmark {
+
+    private static final int TARGETS = 256;
+
+    @Param({"100000", "2000000"})
+    public int vocabulary;
+
+    private PrefixSuggester suggester;
+    private String[] targets;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void buildDictionary() {
+        Random random = new Random(21);
+        Map<String, Integer> weights = new HashMap<>(vocabulary * 2);
+        for (int rank = 0; rank < vocabulary; rank++) {
+            weights.put(SyntheticCorpus.word(rank), 1 + random.nextInt(1000));
+        }
+        suggester = PrefixSuggester.build(weights, PrefixSuggester.DEFAULT_TOP_N);
+
+        targets = new String[TARGETS];
+        for (int i = 0; i < TARGETS; i++) {
+            char[] word = SyntheticCorpus.word(random.nextInt(vocabulary)).toCharArray();
+            word[random.nextInt(word.length)] = (char) ('a' + random.nextInt(26));
+            targets[i] = new String(word);
+        }
+    }
+
+    @Benchmark
+    public List<PrefixSuggester.FuzzyMatch> fuzzyMatches() {
+        String target = targets[next];
+        next = (next + 1) % TARGETS;
+        int maxEdits = LevenshteinAutomaton.autoMaxEdits(target.length());
+        return suggester.fuzzyMatches(new LevenshteinAutomaton(target, maxEdits), 5);
+    }
+}
@@ -0,0 +1,129 @@
+package com.wikipediasearch.benchmark;
+
+import com.wikipediasearch.crawler.ExtractedPage;
+import com.wikipediasearch.crawler.HtmlTextExtractor;
+import com.wikipediasearch.crawler.WebCrawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Jsoup DOM extraction against HtmlTextExtractor, one page per operation. "streaming" scans a
+ * page held in a string, "reader" scans it from a Reader as the crawler does with a response
+ * body; both fall back to Jsoup when the scanner gives up. gc.alloc.rate.norm (added by
+ * BenchmarkRunner) is the bytes allocated per page.
+ *
+ * The corpus is synthetic article markup (paragraphs, links, footnote markers, an edit link
+ * and a navbox around SyntheticCorpus text) or a directory of saved .html pages:
+ *   java -jar target/benchmarks.jar HtmlExtraction -p corpus=/data/html
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HtmlExtractionBenchmark {
+
+    private static final int PAGES = 200;
+
+    @Param({BenchmarkCorpus.SYNTHETIC})
+    public String corpus;
+
+    @Param({"jsoup", "streaming", "reader"})
+    public String extractor;
+
+    private final HtmlTextExtractor htmlTextExtractor = new HtmlTextExtractor();
+    private String[] urls;
+    private String[] pages;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void loadPages() {
+        List<String> urlList = new ArrayList<>();
+        List<String> pageList = new ArrayList<>();
+        if (BenchmarkCorpus.SYNTHETIC.equals(corpus)) {
+            for (Map.Entry<String, String> page : BenchmarkCorpus.synthetic(PAGES, 42).getPages().entrySet()) {
+                urlList.add(page.getKey());
+                pageList.add(articleHtml(page.getValue()));
+            }
+        } else {
+            try (Stream<Path> files = Files.list(Paths.get(corpus))) {
+                for (Path file : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".html")).sorted().limit(PAGES)::iterator) {
+                    String name = file.getFileName().toString();
+                    urlList.add("https://en.wikipedia.org/wiki/" + name.substring(0, name.length() - ".html".length()));
+                    pageList.add(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read saved pages " + corpus, e);
+            }
+            if (pageList.isEmpty()) {
+                throw new IllegalArgumentException("No .html pages found in " + corpus);
+            }
+        }
+        urls = urlList.toArray(new String[0]);
+        pages = pageList.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public ExtractedPage extractPage() throws IOException {
+        String url = urls[next];
+        String html = pages[next];
+        next = (next + 1) % pages.length;
+        ExtractedPage page;
+        switch (extractor) {
+            case "jsoup": page = null; break;
+            case "streaming": page = htmlTextExtractor.extract(html, url); break;
+            case "reader": page = htmlTextExtractor.extract(new StringReader(html), url); break;
+            default: throw new IllegalArgumentException("Unknown extractor: " + extractor);
+        }
+        return (page != null) ? page : WebCrawler.extractWithJsoup(url, url, html);
+    }
+
+    // Wraps plain text in the kind of markup a Wikipedia article has
+    private static String articleHtml(String text) {
+        String[] words = text.split(" ");
+        StringBuilder html = new StringBuilder(text.length() * 2);
+        html.append("<!DOCTYPE html><html><head><title>").append(words[0]).append(" - Wikipedia</title>")
+                .append("<script>var config = {\"wgPageName\": \"").append(words[0]).append("\"};</script></head>")
+                .append("<body><h1>").append(words[0]).append("</h1><p>");
+        for (int i = 0; i < words.length; i++) {
+            if (i % 12 == 5) {
+                html.append("<a href=\"/wiki/").append(words[i]).append("\" title=\"").append(words[i]).append("\">")
+                        .append(words[i]).append("</a> ");
+            } else {
+                html.append(words[i]).append(' ');
+            }
+            if (i % 60 == 59) {
+                html.append("<sup class=\"reference\"><a href=\"#cite_note-").append(i).append("\">[").append(i / 60 + 1)
+                        .append("]</a></sup></p>\n<h2>Section ").append(i / 60)
+                        .append("<span class=\"mw-editsection\">[<a href=\"/w/index.php?action=edit\">edit</a>]</span></h2><p>");
+            }
+        }
+        html.append("</p><div class=\"navbox\"><ul><li><a href=\"/wiki/Main_Page\">Main page</a></li></ul></div></body></html>");
+        return html.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package com.wikipediasearch.benchmark;
+
+import com.wikipediasearch.invertedIndex.Index5;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index5.buildIndex over whole corpora of several sizes.
+ * Use -p corpus=/path/to/pages to build from saved .txt pages instead of the synthetic corpus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexBuildBenchmark {
+
+    @Param({BenchmarkCorpus.SYNTHETIC})
+    public String corpus;
+
+    @Param({"100", "1000", "5000"})
+    public int pages;
+
+    private Map<String, String> corpusPages;
+
+    @Setup(Level.Trial)
+    public void loadCorpus() {
+        corpusPages = BenchmarkCorpus.load(corpus, pages).getPages();
+    }
+
+    @Benchmark
+    public Index5 buildIndex() {
+        Index5 index = new Index5();
+        index.buildIndex(corpusPages);
+        return index;
+    }
+}
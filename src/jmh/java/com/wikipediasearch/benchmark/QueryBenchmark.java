@@ -0,0 +1,105 @@
+package com.wikipediasearch.benchmark;
+
+import com.wikipediasearch.invertedIndex.Index5;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ranked (TF-IDF / cosine) and boolean AND queries against a prebuilt index.
+ *
+ * Query shapes, picked from the corpus' document-frequency ranking:
+ * - short:  2 mid-frequency terms
+ * - long:   8 mid-frequency terms
+ * - rare:   2 terms from the rarest part of the vocabulary (short posting lists)
+ * - common: 2 of the most common terms (posting lists covering most documents)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+    private static final int QUERIES_PER_SHAPE = 16;
+
+    @Param({BenchmarkCorpus.SYNTHETIC})
+    public String corpus;
+
+    @Param({"1000", "5000"})
+    public int pages;
+
+    @Param({"short", "long", "rare", "common"})
+    public String shape;
+
+    private Index5 index;
+    private String[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void buildIndex() {
+        BenchmarkCorpus loaded = BenchmarkCorpus.load(corpus, pages);
+        index = new Index5();
+        index.buildIndex(loaded.getPages());
+        queries = buildQueries(loaded, shape);
+    }
+
+    @Benchmark
+    public List<Index5.SearchResult> findQueryRanked() {
+        return index.findQueryRanked(nextQuery());
+    }
+
+    // Top-10 path: only the final hits become SearchResults (compare gc.alloc.rate.norm)
+    @Benchmark
+    public List<Index5.SearchResult> findQueryRankedTop10() {
+        return index.findQueryRanked(nextQuery(), 10);
+    }
+
+    @Benchmark
+    public String findQueryBooleanAnd() {
+        return index.findQueryBooleanAnd(nextQuery());
+    }
+
+    // Cycles through the prepared queries so one cached posting list does not dominate
+    private String nextQuery() {
+        String query = queries[next];
+        next = (next + 1) % queries.length;
+        return query;
+    }
+
+    static String[] buildQueries(BenchmarkCorpus corpus, String shape) {
+        int termsPerQuery;
+        double rankFraction;
+        switch (shape) {
+            case "short": termsPerQuery = 2; rankFraction = 0.2; break;
+            case "long": termsPerQuery = 8; rankFraction = 0.2; break;
+            case "rare": termsPerQuery = 2; rankFraction = 1.0; break;
+            case "common": termsPerQuery = 2; rankFraction = 0.0; break;
+            default: throw new IllegalArgumentException("Unknown query shape: " + shape);
+        }
+        List<String> pool = corpus.termsAt(rankFraction, termsPerQuery * QUERIES_PER_SHAPE);
+        if (pool.size() < termsPerQuery) {
+            throw new IllegalStateException("Corpus vocabulary too small for '" + shape + "' queries.");
+        }
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i + termsPerQuery <= pool.size(); i += termsPerQuery) {
+            queries.add(String.join(" ", pool.subList(i, i + termsPerQuery)));
+        }
+        return queries.toArray(new String[0]);
+    }
+}
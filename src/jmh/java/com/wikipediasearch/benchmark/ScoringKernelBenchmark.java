@@ -0,0 +1,146 @@
+package com.wikipediasearch.benchmark;
+
+import com.wikipediasearch.similarity.CosineSimilarityCalculator;
+import com.wikipediasearch.similarity.ScalarScoringKernels;
+import com.wikipediasearch.similarity.ScoringKernels;
+import com.wikipediasearch.similarity.VectorScoringKernels;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scalar vs vector ScoringKernels:
+ *   accumulate / accumulateSquares: one posting list of `postings` docs spread over a docId
+ *     space 8x as large (a fairly common term), scattered into a dense accumulator;
+ *   selectAbove: collecting the touched docs from that accumulator;
+ *   batchSimilarity: one document against a batch of 64 others as dense 1024-term vectors,
+ *     with the Map-based CosineSimilarityCalculator path as the baseline.
+ *
+ *   java -jar target/benchmarks.jar ScoringKernelBenchmark -p postings=100000
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class ScoringKernelBenchmark {
+
+    private static final int BATCH = 64;
+    private static final int DIMENSIONS = 1024;
+
+    @Param({"scalar", "vector"})
+    public String kernels;
+
+    @Param({"1000", "100000"})
+    public int postings;
+
+    private ScoringKernels impl;
+    private int[] docIds;
+    private double[] tfWeights;
+    private double[] accumulators;
+    private int[] selected;
+    private double[] document;
+    private double[][] batch;
+    private Map<String, Double> documentMap;
+    private Map<String, Double>[] batchMaps;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        impl = kernels.equals("vector") ? new VectorScoringKernels() : ScalarScoringKernels.INSTANCE;
+        Random random = new Random(11);
+        int docIdSpace = postings * 8;
+        docIds = new int[postings];
+        tfWeights = new double[postings];
+        int docId = 0;
+        for (int i = 0; i < postings; i++) {
+            docId += 1 + random.nextInt(15); // Increasing, like a posting list; mean gap 8
+            docIds[i] = Math.min(docId, docIdSpace - postings + i);
+            tfWeights[i] = 1 + Math.log10(1 + random.nextInt(20));
+        }
+        accumulators = new double[docIdSpace];
+        selected = new int[docIdSpace];
+        impl.accumulate(accumulators, docIds, tfWeights, postings, 1.3, 0.4);
+
+        document = randomVector(random);
+        documentMap = toMap(document);
+        batch = new double[BATCH][];
+        batchMaps = new Map[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            batch[i] = randomVector(random);
+            batchMaps[i] = toMap(batch[i]);
+        }
+    }
+
+    // Dense term space with a quarter of the terms present
+    private static double[] randomVector(Random random) {
+        double[] vector = new double[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            if (random.nextInt(4) == 0) vector[i] = random.nextDouble();
+        }
+        return vector;
+    }
+
+    private static Map<String, Double> toMap(double[] vector) {
+        Map<String, Double> map = new HashMap<>();
+        for (int i = 0; i < vector.length; i++) {
+            if (vector[i] != 0.0) map.put("term" + i, vector[i]);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public double[] accumulate() {
+        impl.accumulate(accumulators, docIds, tfWeights, postings, 1.3, 0.4);
+        return accumulators;
+    }
+
+    @Benchmark
+    public double[] accumulateSquares() {
+        impl.accumulateSquares(accumulators, docIds, tfWeights, postings, 1.3);
+        return accumulators;
+    }
+
+    @Benchmark
+    public int selectAbove() {
+        return impl.selectAbove(accumulators, accumulators.length, 0.0, selected);
+    }
+
+    @Benchmark
+    public double batchSimilarity() {
+        double norm = Math.sqrt(impl.sumOfSquares(document, DIMENSIONS));
+        double total = 0.0;
+        for (double[] other : batch) {
+            total += impl.dot(document, other, DIMENSIONS) / (norm * Math.sqrt(impl.sumOfSquares(other, DIMENSIONS)));
+        }
+        return total;
+    }
+
+    // Baseline: the same batch through the sparse Map<String, Double> calculator (kernels unused)
+    @Benchmark
+    public double batchSimilarityMaps() {
+        double norm = CosineSimilarityCalculator.calculateMagnitude(documentMap);
+        double total = 0.0;
+        for (Map<String, Double> other : batchMaps) {
+            total += CosineSimilarityCalculator.calculateDotProduct(documentMap, other)
+                    / (norm * CosineSimilarityCalculator.calculateMagnitude(other));
+        }
+        return total;
+    }
+}
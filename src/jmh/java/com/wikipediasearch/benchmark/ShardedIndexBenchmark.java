@@ -0,0 +1,81 @@
+package com.wikipediasearch.benchmark;
+
+import com.wikipediasearch.invertedIndex.Index5;
+import com.wikipediasearch.invertedIndex.ShardedIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ShardedIndex build time and top-10 query latency as the shard count grows.
+ * Compare shards=1 against higher counts (up to the number of cores) to see the scaling;
+ * QueryBenchmark gives the plain Index5 numbers for the same query shapes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShardedIndexBenchmark {
+
+    @Param({BenchmarkCorpus.SYNTHETIC})
+    public String corpus;
+
+    @Param({"5000"})
+    public int pages;
+
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    @Param({"short", "common"})
+    public String shape;
+
+    private Map<String, String> corpusPages;
+    private ShardedIndex index;
+    private String[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void buildIndex() {
+        BenchmarkCorpus loaded = BenchmarkCorpus.load(corpus, pages);
+        corpusPages = loaded.getPages();
+        index = new ShardedIndex(shards);
+        index.buildIndex(corpusPages);
+        queries = QueryBenchmark.buildQueries(loaded, shape);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        index.close();
+    }
+
+    @Benchmark
+    public List<Index5.SearchResult> findQueryRanked() {
+        String query = queries[next];
+        next = (next + 1) % queries.length;
+        return index.findQueryRanked(query, 10);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ShardedIndex build() {
+        index.buildIndex(corpusPages);
+        return index;
+    }
+}
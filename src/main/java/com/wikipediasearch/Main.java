@@ -1,55 +1,177 @@
 package com.wikipediasearch;
 
 // Import necessary classes from sub-packages
+import com.wikipediasearch.crawler.CrawlArchive;
+import com.wikipediasearch.crawler.ExtractedPage;
+import com.wikipediasearch.crawler.PageStore;
 import com.wikipediasearch.crawler.WebCrawler;
+import com.wikipediasearch.dump.WikipediaDumpReader;
+import com.wikipediasearch.graph.PageRank;
 import com.wikipediasearch.invertedIndex.Index5;
+import com.wikipediasearch.invertedIndex.IndexFootprint;
 import com.wikipediasearch.invertedIndex.Index5.SearchResult;
 import com.wikipediasearch.invertedIndex.SourceRecord; // May not be directly needed, but good practice
 import com.wikipediasearch.invertedIndex.Posting;    // May not be directly needed
 import com.wikipediasearch.invertedIndex.DictEntry;   // May not be directly needed
+import com.wikipediasearch.invertedIndex.TokenizedDocument;
+import com.wikipediasearch.metrics.MetricsMBean;
+import com.wikipediasearch.metrics.MetricsRegistry;
+import com.wikipediasearch.metrics.MetricsReporter;
+import com.wikipediasearch.pipeline.ArchiveExtractor;
+import com.wikipediasearch.pipeline.CrawlIndexPipeline;
+import com.wikipediasearch.pipeline.StoreIndexer;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 // Removed unused stream import: import java.util.stream.Collectors;
 
 public class Main {
 
+    // ***** CORRECTED: Use EXACT seed URLs from assignment spec *****
+    private static final List<String> SEED_URLS = Arrays.asList(
+            "https://en.wikipedia.org/wiki/List_of_pharaohs",
+            "https://en.wikipedia.org/wiki/Pharaoh"
+    );
+    // Artifacts of a staged run (crawl -> index -> serve)
+    private static final String DEFAULT_ARCHIVE = "data/archive";
+    private static final String DEFAULT_STORE = "data/pages";
+    private static final String DEFAULT_INDEX = "data/index.bin";
+
     public static void main(String[] args) {
 
+        // Staged run: each stage reads the previous one's artifact from disk and can be rerun alone
+        //   crawl [--store <dir>] [--archive <dir>] [--state-dir <dir>] [--max-pages <n>]
+        //                                                                  fetch pages into the page store, raw pages into the archive
+        //   extract [--archive <dir>] [--store <dir>] [--threads <n>]      archive -> page store (no network; after extraction changes)
+        //   index [--store <dir>] [--index <file>]                         page store -> index file (no network)
+        //   serve [--index <file>]  (or query)                             load the index file and search
+        // Without a command, crawls, indexes and searches in one process as before.
+        String command = (args.length > 0 && !args[0].startsWith("--")) ? args[0] : null;
+        if (command != null) {
+            if (command.equals("crawl")) {
+                runCrawlStage(args);
+            } else if (command.equals("extract")) {
+                runExtractStage(args);
+            } else if (command.equals("index")) {
+                runIndexStage(args);
+            } else if (command.equals("serve") || command.equals("query")) {
+                runServeStage(args);
+            } else {
+                System.err.println("Unknown command '" + command + "'. Use crawl, extract, index or serve (or no command to crawl, index and search at once).");
+            }
+            return;
+        }
+
         System.out.println("--- Starting Wikipedia Search Engine ---");
 
         // ============================================================
         // STEP 1: Run the Web Crawler
         // ============================================================
         System.out.println("Phase 1: Crawling websites...");
-        WebCrawler crawler = new WebCrawler();
+        // --state-dir <dir> makes the crawl resumable (disk frontier + checkpoints), --max-pages <n> lifts the limit
+        String stateDir = optionValue(args, "--state-dir");
+        String maxPages = optionValue(args, "--max-pages");
+        WebCrawler crawler;
+        try {
+            if (stateDir != null) {
+                crawler = new WebCrawler(maxPages != null ? Integer.parseInt(maxPages) : 10, Paths.get(stateDir));
+            } else {
+                crawler = (maxPages != null) ? new WebCrawler(Integer.parseInt(maxPages)) : new WebCrawler();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error: Could not set up crawler: " + e.getMessage());
+            return;
+        }
 
-        // ***** CORRECTED: Use EXACT seed URLs from assignment spec *****
-        List<String> seedUrls = Arrays.asList(
-                "https://en.wikipedia.org/wiki/List_of_pharaohs",
-                "https://en.wikipedia.org/wiki/Pharaoh"
-        );
+        List<String> seedUrls = SEED_URLS;
 
-        // Crawl starting from the seeds
-        Map<String, String> crawledPages = crawler.crawl(seedUrls); // Max 10 pages constraint is inside crawler
+        Index5 index = new Index5(); // Index5 now uses the external calculator classes internally
 
-        System.out.println("Crawling complete. Successfully processed " + crawledPages.size() + " pages.");
-        if (crawledPages.isEmpty()) {
-            System.err.println("Error: No pages were crawled successfully. Indexing cannot proceed. Exiting.");
-            return; // Exit if crawling failed completely
+        // Metrics: always visible over JMX (jconsole -> com.wikipediasearch:type=Metrics);
+        // --metrics-interval <seconds> also dumps them to stderr (--metrics-json for JSON lines)
+        MetricsRegistry metrics = MetricsRegistry.global();
+        metrics.gauge("index.documents", index::getNumberOfDocuments);
+        metrics.gauge("index.terms", index::getIndexSize);
+        metrics.gauge("crawler.frontier.size", crawler::getFrontierSize);
+        metrics.gauge("crawler.visited", crawler::getVisitedCount);
+        MetricsMBean.register(metrics);
+        String metricsInterval = optionValue(args, "--metrics-interval");
+        if (metricsInterval != null) {
+            MetricsReporter reporter = new MetricsReporter(metrics, System.err, Arrays.asList(args).contains("--metrics-json"));
+            reporter.start(Long.parseLong(metricsInterval), TimeUnit.SECONDS);
+        }
+        String dedupThreshold = optionValue(args, "--dedup-threshold"); // e.g. 0.95: skip near-duplicate pages
+        if (dedupThreshold != null) {
+            index.setNearDuplicateThreshold(Double.parseDouble(dedupThreshold));
         }
 
-        // ============================================================
-        // STEP 2: Build the Inverted Index
-        // ============================================================
-        System.out.println("\nPhase 2: Building index from crawled data...");
-        Index5 index = new Index5(); // Index5 now uses the external calculator classes internally
-        index.buildIndex(crawledPages);
+        String memoryLimit = optionValue(args, "--memory-limit-mb"); // Stop adding pages once the index is estimated this large
+        if (memoryLimit != null) {
+            index.setMemoryLimit(Long.parseLong(memoryLimit) * 1024 * 1024);
+        }
 
-        if (index.getNumberOfDocuments() == 0) {
-            System.err.println("Error: Index built, but contains 0 documents. Cannot search. Exiting.");
-            return;
+        String dumpPath = optionValue(args, "--dump");
+        if (dumpPath != null) {
+            // Offline mode: index articles from a pages-articles XML dump (.xml or .xml.bz2)
+            // through the same pipeline; searchable while the dump is still being read.
+            System.out.println("Dump mode: indexing " + dumpPath + " (index will fill up while you search).");
+            int workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+            CrawlIndexPipeline pipeline = new CrawlIndexPipeline(null, index, 256, workers, 20_000, 30_000);
+            pipeline.start(new WikipediaDumpReader(Paths.get(dumpPath)));
+        } else if (Arrays.asList(args).contains("--pipeline")) {
+            // Pipelined mode: crawl, parse, tokenize and index run concurrently and the
+            // index is searchable (as of the last published snapshot) while crawling continues.
+            System.out.println("Pipelined mode: index will fill up while you search.");
+            CrawlIndexPipeline pipeline = new CrawlIndexPipeline(crawler, index);
+            pipeline.start(seedUrls);
+        } else {
+            // Crawl starting from the seeds (title, headings and links are kept for the field index)
+            List<ExtractedPage> crawledPages = new ArrayList<>();
+            crawler.crawl(seedUrls, crawledPages::add); // Max 10 pages constraint is inside crawler
+
+            System.out.println("Crawling complete. Successfully processed " + crawledPages.size() + " pages.");
+            if (crawledPages.isEmpty()) {
+                System.err.println("Error: No pages were crawled successfully. Indexing cannot proceed. Exiting.");
+                return; // Exit if crawling failed completely
+            }
+
+            // ============================================================
+            // STEP 2: Build the Inverted Index
+            // ============================================================
+            System.out.println("\nPhase 2: Building index from crawled data...");
+            // Anchor text is taken after the crawl, so links from pages crawled later count too
+            List<TokenizedDocument> documents = new ArrayList<>(crawledPages.size());
+            for (ExtractedPage page : crawledPages) {
+                if (page.getText().trim().isEmpty()) {
+                    System.err.println("Warning: Skipping page with empty content: " + page.getUrl());
+                    continue;
+                }
+                documents.add(index.tokenize(page.getUrl(), page.getTitle(), page.getHeadings(),
+                        crawler.getIncomingAnchorText(page.getUrl()), page.getText()));
+            }
+            index.buildIndex(documents);
+
+            // Link analysis: PageRank over the crawled link graph as a query-independent prior
+            PageRank pageRank = PageRank.compute(crawler.getLinkGraph());
+            System.out.println("Link analysis: " + pageRank);
+            index.setStaticPriors(pageRank.priors());
+
+            if (index.getNumberOfDocuments() == 0) {
+                System.err.println("Error: Index built, but contains 0 documents. Cannot search. Exiting.");
+                return;
+            }
+            System.out.println("Index built successfully: " + index.getIndexSize() + " terms, " + index.getNumberOfDocuments() + " documents.");
+            IndexFootprint footprint = index.getFootprint();
+            System.out.print(footprint);
+            long maxHeap = Runtime.getRuntime().maxMemory();
+            System.out.println("Capacity: about " + footprint.estimateDocumentCapacity(maxHeap) + " such documents fit in the "
+                    + maxHeap / (1024 * 1024) + " MB max heap.");
         }
-        System.out.println("Index built successfully: " + index.getIndexSize() + " terms, " + index.getNumberOfDocuments() + " documents.");
 
 
         // --- Optional: Print dictionary sample ---
@@ -90,19 +212,116 @@ public class Main {
 //         if (totalDocs > vectorsToPrint) System.out.println("... (Limit reached)");
 //        System.out.println("--- End of Document Vector Printout ---");
 
-        // ============================================================
-        // STEP 3: Ranked Querying
-        // ============================================================
+        runQueryLoop(index);
+    } // End of main method
+
+    // Stage 1: crawl into the page store. The crawl state lives next to it, so running the stage
+    // again resumes the crawl (pages since the last checkpoint are fetched and stored again).
+    private static void runCrawlStage(String[] args) {
+        Path store = Paths.get(optionValue(args, "--store", DEFAULT_STORE));
+        Path archiveDir = Paths.get(optionValue(args, "--archive", DEFAULT_ARCHIVE));
+        String stateDir = optionValue(args, "--state-dir");
+        Path state = (stateDir != null) ? Paths.get(stateDir) : store.resolve("crawl-state");
+        String maxPages = optionValue(args, "--max-pages");
+        System.out.println("Crawl stage: storing pages in " + store + ", raw pages in " + archiveDir + " (crawl state in " + state + ")");
+        try (PageStore pages = new PageStore(store);
+             CrawlArchive archive = new CrawlArchive(archiveDir);
+             WebCrawler crawler = new WebCrawler(maxPages != null ? Integer.parseInt(maxPages) : 10, state)) {
+            long before = pages.size();
+            crawler.setArchive(archive);
+            crawler.crawl(SEED_URLS, pages);
+            archive.sync();
+            pages.sync();
+            System.out.println("Page store: " + (pages.size() - before) + " pages added, " + pages.size() + " in total ("
+                    + pages.sizeInBytes() / 1024 + " KB).");
+            System.out.println("Archive: " + archive.size() + " records (" + archive.sizeInBytes() / 1024 + " KB compressed).");
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            System.err.println("Error: Crawl stage failed: " + e.getMessage());
+        }
+    }
+
+    // Optional stage: archive -> page store, e.g. after an extraction change. Reads only local files.
+    private static void runExtractStage(String[] args) {
+        Path archiveDir = Paths.get(optionValue(args, "--archive", DEFAULT_ARCHIVE));
+        Path store = Paths.get(optionValue(args, "--store", DEFAULT_STORE));
+        String threads = optionValue(args, "--threads");
+        System.out.println("Extract stage: " + archiveDir + " -> " + store);
+        try {
+            long start = System.nanoTime();
+            ArchiveExtractor extractor = new ArchiveExtractor(threads != null ? Integer.parseInt(threads)
+                    : Runtime.getRuntime().availableProcessors());
+            extractor.extract(archiveDir, store);
+            long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            System.out.printf("Page store rebuilt: %d pages from %d archived records (%d KB) in %d ms (%.1f MB/s).%n",
+                    extractor.getPagesExtracted(), extractor.getRecordsRead(), extractor.getBytesRead() / 1024, millis,
+                    extractor.getBytesRead() / 1e3 / millis);
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            System.err.println("Error: Extract stage failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Stage 2: page store -> index file. Reads only the local store; rerunning rebuilds the file.
+    private static void runIndexStage(String[] args) {
+        Path store = Paths.get(optionValue(args, "--store", DEFAULT_STORE));
+        Path indexFile = Paths.get(optionValue(args, "--index", DEFAULT_INDEX));
+        Index5 index = new Index5();
+        String dedupThreshold = optionValue(args, "--dedup-threshold");
+        if (dedupThreshold != null) {
+            index.setNearDuplicateThreshold(Double.parseDouble(dedupThreshold));
+        }
+        System.out.println("Index stage: " + store + " -> " + indexFile);
+        try {
+            long start = System.nanoTime();
+            new StoreIndexer(index).indexStore(store);
+            index.save(indexFile);
+            System.out.printf("Index saved: %d documents, %d terms, %d KB, in %d ms.%n", index.getNumberOfDocuments(),
+                    index.getIndexSize(), Files.size(indexFile) / 1024, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            System.out.print(index.getFootprint());
+        } catch (IOException e) {
+            System.err.println("Error: Index stage failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Stage 3: load the index file and search (never touches the network)
+    private static void runServeStage(String[] args) {
+        Path indexFile = Paths.get(optionValue(args, "--index", DEFAULT_INDEX));
+        long start = System.nanoTime();
+        Index5 index;
+        try {
+            index = Index5.load(indexFile);
+        } catch (IOException e) {
+            System.err.println("Error: Could not load index " + indexFile + ": " + e.getMessage());
+            return;
+        }
+        System.out.printf("Loaded %s: %d documents, %d terms in %d ms.%n", indexFile, index.getNumberOfDocuments(),
+                index.getIndexSize(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        MetricsRegistry metrics = MetricsRegistry.global();
+        metrics.gauge("index.documents", index::getNumberOfDocuments);
+        metrics.gauge("index.terms", index::getIndexSize);
+        MetricsMBean.register(metrics);
+        runQueryLoop(index);
+    }
+
+
+    // ============================================================
+    // STEP 3: Ranked Querying (shared by the all-in-one run and the serve stage)
+    // ============================================================
+    private static void runQueryLoop(Index5 index) {
         System.out.println("\nPhase 3: Ranked Search (TF-IDF & Cosine Similarity). Type 'exit' to quit.");
         Scanner scanner = new Scanner(System.in);
 
         while (true) {
             int choice = -1;
-            System.out.print("\nSearch query(0), Boolean And Query(1): ");
+            System.out.print("\nSearch query(0), Boolean And Query(1), Explain query(2), Autocomplete(3): ");
+            if (!scanner.hasNextLine()) break; // End of input (e.g. queries piped in)
             try {
                 choice = Integer.parseInt(scanner.nextLine());
             } catch (NumberFormatException e) {
-                System.out.println("Invalid input. Please enter 0 or 1.");
+                System.out.println("Invalid input. Please enter 0, 1, 2 or 3.");
                 continue; // Skip to next iteration
             }
             String queryInput = scanner.nextLine();
@@ -124,6 +343,10 @@ public class Main {
                 List<SearchResult> rankedResults = index.findQueryRanked(trimmedQuery);
 
                 System.out.println("\nRanked Search Results for '" + trimmedQuery + "' (" + rankedResults.size() + " relevant docs found):");
+                String correction = index.didYouMean(trimmedQuery);
+                if (correction != null) {
+                    System.out.println("  Did you mean: " + correction + "?");
+                }
 
                 if (rankedResults.isEmpty()) {
                     System.out.println("  <No relevant documents found for this query>");
@@ -141,13 +364,35 @@ public class Main {
                 }
                 System.out.println("----------------------------------------");
             }
+            else if (choice == 2) {
+                // Term statistics, postings scanned, phase timings and score breakdown of the top 5
+                System.out.println(index.explainQueryRanked(queryInput.trim(), 5));
+            }
+            else if (choice == 3) {
+                // Index terms starting with the typed prefix, most documents first
+                List<String> completions = index.suggest(queryInput, 10);
+                System.out.println(completions.isEmpty() ? "  <No completions>" : "  " + String.join(", ", completions));
+            }
             else{
 
             }
-            scanner.close();
-            System.out.println("\n--- Exiting Search Engine ---");
-            }
+        }
+        scanner.close();
+        System.out.println("\n--- Exiting Search Engine ---");
+    }
 
+    // Returns the value following a "--name value" pair in args, or null if absent.
+    private static String optionValue(String[] args, String name) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return null;
+    }
 
-    } // End of main method
+    private static String optionValue(String[] args, String name, String defaultValue) {
+        String value = optionValue(args, name);
+        return (value != null) ? value : defaultValue;
+    }
 } // End of Main class
\ No newline at end of file
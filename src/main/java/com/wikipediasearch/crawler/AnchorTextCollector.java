@@ -0,0 +1,67 @@
+package com.wikipediasearch.crawler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gathers, for each link target, the anchor text of the links pointing to it from the pages
+ * crawled so far. The words other pages use to link to an article ("pharaohs", "Egyptian
+ * king") are a strong description of it, so the index keeps them as a field of the target page.
+ *
+ * Memory is bounded: at most {@code maxTargets} targets are tracked (links to further new
+ * targets are ignored), and each keeps at most {@code maxCharsPerTarget} characters of text.
+ * Not thread-safe; WebCrawler calls it from its crawl thread.
+ */
+public class AnchorTextCollector {
+
+    private final int maxTargets;
+    private final int maxCharsPerTarget;
+    private final Map<String, StringBuilder> anchorTexts = new HashMap<>();
+
+    /**
+     * @param maxTargets        Max number of link targets tracked.
+     * @param maxCharsPerTarget Max anchor text kept per target.
+     */
+    public AnchorTextCollector(int maxTargets, int maxCharsPerTarget) {
+        if (maxTargets <= 0 || maxCharsPerTarget <= 0) {
+            throw new IllegalArgumentException("Anchor text limits must be positive.");
+        }
+        this.maxTargets = maxTargets;
+        this.maxCharsPerTarget = maxCharsPerTarget;
+    }
+
+    /**
+     * Records one link. Links without text, and text that would push the target past its
+     * character budget, are dropped.
+     *
+     * @param targetUrl  The URL linked to (without fragment).
+     * @param anchorText The link's text.
+     */
+    public void add(String targetUrl, String anchorText) {
+        if (targetUrl == null || anchorText == null || anchorText.isEmpty()) return;
+        StringBuilder text = anchorTexts.get(targetUrl);
+        if (text == null) {
+            if (anchorTexts.size() >= maxTargets) return;
+            text = new StringBuilder();
+            anchorTexts.put(targetUrl, text);
+        }
+        if (text.length() + 1 + anchorText.length() > maxCharsPerTarget) return;
+        if (text.length() > 0) text.append(' ');
+        text.append(anchorText);
+    }
+
+    /**
+     * @return The anchor text of links to the URL seen so far, space-separated ("" if none).
+     */
+    public String get(String targetUrl) {
+        StringBuilder text = anchorTexts.get(targetUrl);
+        return (text != null) ? text.toString() : "";
+    }
+
+    /**
+     * @return Number of link targets tracked.
+     */
+    public int size() {
+        return anchorTexts.size();
+    }
+}
@@ -0,0 +1,741 @@
+package com.wikipediasearch.crawler;
+
+import com.wikipediasearch.util.Hashing;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Append-only archive of raw fetches (URL, fetch time, status, headers, body), so pages can be
+ * extracted and indexed again after an extraction or analyzer change without crawling again.
+ * The archive directory holds two files:
+ *
+ *   crawl.warc.gz  one gzip member per record, each a WARC/1.0 "response" record whose block is
+ *                  the HTTP status line, headers and body; zcat and WARC tools read it as is
+ *   crawl.idx      sidecar index: MAGIC, VERSION, then per record: long offset and int length of
+ *                  its gzip member, long fetch time (epoch ms), url (int byte count plus UTF-8)
+ *
+ * Unlike a crawler's WARC, bodies are stored decoded (Content-Encoding and Content-Length are
+ * rewritten to match) and there are no request or metadata records; a redirected page keeps the
+ * URL it was requested as in WARC-Target-URI and its final URL in X-Final-URI.
+ *
+ * A record reaches the archive in one write before its index entry does, so a crash leaves at
+ * most a torn last record or records missing from the index: reopening cuts off the first and
+ * indexes the second (a lost index is rebuilt the same way).
+ *
+ * Readers cut the indexed records into {@link Split}s of about equal compressed size; each is
+ * one sequential read of its byte range, so splits can be extracted in parallel at disk speed.
+ * A page fetched again (after a resumed crawl) is read only from its latest copy, which makes the
+ * splits independent of each other and of the order they are processed in.
+ *
+ * An open archive also remembers where the latest copy of each URL is, so a crawl can read it
+ * back ({@link #latest}) and fetch the page again conditional on the ETag / Last-Modified it
+ * was served with, keeping the archived copy when the server answers 304.
+ */
+public class CrawlArchive implements Closeable {
+
+    private static final String ARCHIVE_FILE = "crawl.warc.gz";
+    private static final String INDEX_FILE = "crawl.idx";
+    private static final int INDEX_MAGIC = 0x57434958; // "WCIX"
+    private static final int INDEX_VERSION = 1;
+    private static final int INDEX_HEADER_BYTES = 8;
+    private static final String FINAL_URI_FIELD = "X-Final-URI";
+    // Headers describing the body on the wire; the archived body is decoded
+    private static final Set<String> WIRE_HEADERS = Set.of("content-encoding", "content-length", "transfer-encoding");
+
+    private final Path directory;
+    private final FileChannel archive;
+    private final FileChannel index;
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(64 * 1024);
+    private final ByteArrayOutputStream entryBuffer = new ByteArrayOutputStream(256);
+    private long recordCount;
+    // Location of every record, and the latest record of each URL by its fingerprint
+    private long[] recordOffsets = new long[1024];
+    private int[] recordLengths = new int[1024];
+    private final Map<Long, Integer> latestRecords = new HashMap<>();
+
+    /**
+     * Opens the archive in a directory for appending, creating it if needed, and repairs what
+     * a crash may have left: a torn last record is truncated away and records missing from the
+     * index are added to it.
+     *
+     * @throws IOException if the files cannot be opened or the index is not an archive index.
+     */
+    public CrawlArchive(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.archive = FileChannel.open(directory.resolve(ARCHIVE_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.index = FileChannel.open(directory.resolve(INDEX_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            archive.close();
+            throw e;
+        }
+        try {
+            recover();
+        } catch (IOException | RuntimeException e) {
+            // Not close(): a subclass could override it and see a half-built archive
+            try {
+                archive.close();
+            } finally {
+                index.close();
+            }
+            throw e;
+        }
+    }
+
+    private void recover() throws IOException {
+        // Keep the index entries describing consecutive records that are all in the archive
+        long end = 0;
+        if (index.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_BYTES).putInt(INDEX_MAGIC).putInt(INDEX_VERSION);
+            header.flip();
+            writeFully(index, header);
+        } else {
+            long indexEnd = INDEX_HEADER_BYTES;
+            try (IndexReader reader = new IndexReader(directory.resolve(INDEX_FILE))) {
+                while (reader.next() && reader.offset == end && reader.offset + reader.length <= archive.size()) {
+                    addRecord(reader.offset, reader.length, reader.url);
+                    end += reader.length;
+                    indexEnd = reader.position;
+                }
+            }
+            if (indexEnd < index.size()) index.truncate(indexEnd);
+        }
+        index.position(index.size());
+
+        // Index the complete records after the last indexed one, then cut off whatever follows them
+        if (end < archive.size()) {
+            archive.position(end);
+            MemberScanner scanner = new MemberScanner(Channels.newInputStream(archive));
+            ByteArrayOutputStream content = new ByteArrayOutputStream(64 * 1024);
+            int recovered = 0;
+            long length;
+            while ((length = scanner.next(content)) > 0) {
+                Record record;
+                try {
+                    record = parse(content.toByteArray());
+                } catch (IOException e) {
+                    break;
+                }
+                writeIndexEntry(end, (int) length, record.getFetchTime(), record.getUrl());
+                addRecord(end, (int) length, record.getUrl());
+                end += length;
+                recovered++;
+            }
+            if (recovered > 0) {
+                System.err.println("Warning: Indexed " + recovered + " records missing from " + directory.resolve(INDEX_FILE));
+            }
+            if (end < archive.size()) {
+                System.err.println("Warning: Truncating " + (archive.size() - end) + " bytes of a torn record from "
+                        + directory.resolve(ARCHIVE_FILE));
+                archive.truncate(end);
+            }
+        }
+        archive.position(archive.size());
+    }
+
+    /**
+     * Appends one fetch. Thread-safe.
+     *
+     * @param url        The URL the page was requested as (its identity in the index).
+     * @param finalUrl   The URL after redirects (the base for its relative links).
+     * @param statusCode The HTTP status.
+     * @param headers    The response headers.
+     * @param body       The decoded body.
+     * @param fetchTime  When the response arrived.
+     * @throws UncheckedIOException if the write fails (e.g. the disk is full), which stops the crawl.
+     */
+    public synchronized void append(String url, String finalUrl, int statusCode, Map<String, List<String>> headers,
+                                    byte[] body, Instant fetchTime) {
+        if (url == null || finalUrl == null || headers == null || body == null || fetchTime == null) {
+            throw new IllegalArgumentException("Archive record fields cannot be null.");
+        }
+        try {
+            StringBuilder http = new StringBuilder("HTTP/1.1 ").append(statusCode).append("\r\n");
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                String name = header.getKey();
+                if (name.startsWith(":") || WIRE_HEADERS.contains(name.toLowerCase(Locale.ROOT))) continue;
+                for (String value : header.getValue()) {
+                    http.append(name).append(": ").append(value).append("\r\n");
+                }
+            }
+            http.append("Content-Length: ").append(body.length).append("\r\n\r\n");
+            byte[] httpHeader = http.toString().getBytes(StandardCharsets.UTF_8);
+
+            Instant time = fetchTime.truncatedTo(ChronoUnit.MILLIS);
+            StringBuilder warc = new StringBuilder("WARC/1.0\r\n")
+                    .append("WARC-Type: response\r\n")
+                    .append("WARC-Record-ID: <urn:uuid:").append(UUID.randomUUID()).append(">\r\n")
+                    .append("WARC-Date: ").append(time).append("\r\n")
+                    .append("WARC-Target-URI: ").append(url).append("\r\n");
+            if (!finalUrl.equals(url)) warc.append(FINAL_URI_FIELD).append(": ").append(finalUrl).append("\r\n");
+            warc.append("Content-Type: application/http; msgtype=response\r\n")
+                    .append("Content-Length: ").append((long) httpHeader.length + body.length).append("\r\n\r\n");
+
+            recordBuffer.reset();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(recordBuffer, 1 << 16)) {
+                gzip.write(warc.toString().getBytes(StandardCharsets.UTF_8));
+                gzip.write(httpHeader);
+                gzip.write(body);
+                gzip.write(new byte[]{'\r', '\n', '\r', '\n'});
+            }
+            long offset = archive.size();
+            writeFully(archive, ByteBuffer.wrap(recordBuffer.toByteArray()));
+            writeIndexEntry(offset, recordBuffer.size(), time, url);
+            addRecord(offset, recordBuffer.size(), url);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append " + url + " to " + directory.resolve(ARCHIVE_FILE), e);
+        }
+    }
+
+    private void writeIndexEntry(long offset, int length, Instant fetchTime, String url) throws IOException {
+        entryBuffer.reset();
+        DataOutputStream out = new DataOutputStream(entryBuffer);
+        out.writeLong(offset);
+        out.writeInt(length);
+        out.writeLong(fetchTime.toEpochMilli());
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(urlBytes.length);
+        out.write(urlBytes);
+        out.flush();
+        writeFully(index, ByteBuffer.wrap(entryBuffer.toByteArray()));
+    }
+
+    private void addRecord(long offset, int length, String url) {
+        if (recordCount == recordOffsets.length) {
+            recordOffsets = Arrays.copyOf(recordOffsets, (int) recordCount * 2);
+            recordLengths = Arrays.copyOf(recordLengths, (int) recordCount * 2);
+        }
+        recordOffsets[(int) recordCount] = offset;
+        recordLengths[(int) recordCount] = length;
+        latestRecords.put(Hashing.hash64(url), (int) recordCount);
+        recordCount++;
+    }
+
+    /**
+     * Reads the latest copy of a page back, e.g. to fetch the page again conditional on its
+     * {@link Record#getValidators()} and keep this copy if the server answers 304. Thread-safe.
+     *
+     * @return The latest record of the URL, or null if it is not in the archive.
+     * @throws IOException if the record cannot be read or is corrupt.
+     */
+    public synchronized Record latest(String url) throws IOException {
+        Integer record = latestRecords.get(Hashing.hash64(url));
+        if (record == null) return null;
+        long offset = recordOffsets[record];
+        ByteBuffer member = ByteBuffer.allocate(recordLengths[record]);
+        while (member.hasRemaining()) {
+            if (archive.read(member, offset + member.position()) < 0) {
+                throw new EOFException("Record at byte " + offset + " runs past the end of " + directory.resolve(ARCHIVE_FILE));
+            }
+        }
+        Record parsed;
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(member.array()), 1 << 16)) {
+            parsed = parse(gzip.readAllBytes());
+        } catch (IOException e) {
+            throw new IOException("Corrupt record at byte " + offset + " of " + directory.resolve(ARCHIVE_FILE), e);
+        }
+        return parsed.getUrl().equals(url) ? parsed : null; // null for a fingerprint collision
+    }
+
+    /**
+     * Forces appended records and their index entries to the storage device.
+     */
+    public synchronized void sync() throws IOException {
+        archive.force(false);
+        index.force(false);
+    }
+
+    /**
+     * @return Records in the archive, including earlier copies of re-crawled pages.
+     */
+    public synchronized long size() {
+        return recordCount;
+    }
+
+    /**
+     * @return Compressed bytes in the archive file.
+     */
+    public synchronized long sizeInBytes() throws IOException {
+        return archive.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            archive.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * @return true if the directory holds an archive.
+     */
+    public static boolean exists(Path directory) {
+        return Files.isRegularFile(directory.resolve(ARCHIVE_FILE)) && Files.isRegularFile(directory.resolve(INDEX_FILE));
+    }
+
+    /**
+     * Cuts the indexed records of an archive into at most {@code parts} splits of about equal
+     * compressed size, at record boundaries. Records appended after this call are not included.
+     *
+     * @throws IOException if the archive is missing or its index is not an archive index.
+     */
+    public static List<Split> split(Path directory, int parts) throws IOException {
+        if (parts <= 0) {
+            throw new IllegalArgumentException("Number of splits must be positive. Received: " + parts);
+        }
+        if (!exists(directory)) {
+            throw new IOException("No crawl archive in " + directory);
+        }
+        Path archiveFile = directory.resolve(ARCHIVE_FILE);
+        long archiveSize = Files.size(archiveFile);
+        long[] offsets = new long[1024];
+        int[] lengths = new int[1024];
+        long[] fingerprints = new long[1024];
+        int count = 0;
+        long end = 0;
+        try (IndexReader reader = new IndexReader(directory.resolve(INDEX_FILE))) {
+            while (reader.next() && reader.offset == end && reader.offset + reader.length <= archiveSize) {
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                    lengths = Arrays.copyOf(lengths, count * 2);
+                    fingerprints = Arrays.copyOf(fingerprints, count * 2);
+                }
+                offsets[count] = reader.offset;
+                lengths[count] = reader.length;
+                fingerprints[count] = Hashing.hash64(reader.url);
+                count++;
+                end += reader.length;
+            }
+        }
+
+        // Only the latest copy of a URL is read: walk backwards, every URL seen before is superseded
+        BitSet superseded = new BitSet(count);
+        LongHashSet latest = new LongHashSet(Math.max(count, 16));
+        for (int i = count - 1; i >= 0; i--) {
+            long fingerprint = fingerprints[i] == 0 ? 1 : fingerprints[i]; // 0 marks empty slots
+            if (!latest.add(fingerprint)) superseded.set(i);
+        }
+
+        List<Split> splits = new ArrayList<>(parts);
+        int first = 0;
+        for (int part = 1; part <= parts && first < count; part++) {
+            long boundary = end / parts * part;
+            int last = first + 1;
+            while (last < count && (part == parts || offsets[last] < boundary)) last++;
+            splits.add(new Split(archiveFile, offsets, lengths, superseded, first, last));
+            first = last;
+        }
+        return splits;
+    }
+
+    /**
+     * Reads the latest copy of every indexed record in one sequential pass.
+     *
+     * @return The number of records read.
+     * @throws IOException if the archive is missing, corrupt or cannot be read.
+     */
+    public static long read(Path directory, Consumer<Record> sink) throws IOException, InterruptedException {
+        long records = 0;
+        for (Split split : split(directory, 1)) records += read(split, sink);
+        return records;
+    }
+
+    /**
+     * Reads the records of a split sequentially, skipping copies superseded by a later fetch of
+     * the same URL. Splits of one archive can be read concurrently.
+     *
+     * @param split A split from {@link #split}.
+     * @param sink  Receives each record.
+     * @return The number of records read.
+     * @throws IOException if the archive is corrupt or cannot be read.
+     */
+    public static long read(Split split, Consumer<Record> sink) throws IOException, InterruptedException {
+        long records = 0;
+        try (FileChannel channel = FileChannel.open(split.archiveFile, StandardOpenOption.READ)) {
+            channel.position(split.getStartOffset());
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+            for (int i = split.first; i < split.end; i++) {
+                if (Thread.interrupted()) throw new InterruptedException();
+                if (split.superseded.get(i)) {
+                    in.skipNBytes(split.lengths[i]);
+                    continue;
+                }
+                byte[] member = new byte[split.lengths[i]];
+                in.readFully(member);
+                Record record;
+                try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(member), 1 << 16)) {
+                    record = parse(gzip.readAllBytes());
+                } catch (IOException e) {
+                    throw new IOException("Corrupt record at byte " + split.offsets[i] + " of " + split.archiveFile, e);
+                }
+                sink.accept(record);
+                records++;
+            }
+        }
+        return records;
+    }
+
+    // Parses a decompressed WARC response record
+    private static Record parse(byte[] content) throws IOException {
+        int eol = lineEnd(content, 0, content.length);
+        if (eol < 0 || !"WARC/1.0".equals(new String(content, 0, eol, StandardCharsets.UTF_8))) {
+            throw new IOException("Not a WARC/1.0 record");
+        }
+        Map<String, List<String>> warcFields = new HashMap<>();
+        int position = readFields(content, eol + 2, content.length, warcFields, true);
+        try {
+            String type = first(warcFields, "warc-type");
+            String url = first(warcFields, "warc-target-uri");
+            String finalUrl = first(warcFields, FINAL_URI_FIELD.toLowerCase(Locale.ROOT));
+            Instant fetchTime = Instant.parse(first(warcFields, "warc-date"));
+            long blockEnd = position + Long.parseLong(first(warcFields, "content-length"));
+            if (!"response".equals(type) || url == null || blockEnd > content.length) {
+                throw new IOException("Not a complete WARC response record");
+            }
+
+            eol = lineEnd(content, position, (int) blockEnd);
+            String[] statusLine = (eol < 0) ? new String[0] : new String(content, position, eol - position, StandardCharsets.UTF_8).split(" ");
+            if (statusLine.length < 2 || !statusLine[0].startsWith("HTTP/")) {
+                throw new IOException("Missing HTTP status line");
+            }
+            int statusCode = Integer.parseInt(statusLine[1]);
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            position = readFields(content, eol + 2, (int) blockEnd, headers, false);
+            byte[] body = Arrays.copyOfRange(content, position, (int) blockEnd);
+            return new Record(url, finalUrl != null ? finalUrl : url, fetchTime, statusCode, headers, body);
+        } catch (NumberFormatException | DateTimeParseException | NullPointerException e) {
+            throw new IOException("Malformed WARC record: " + e.getMessage(), e);
+        }
+    }
+
+    // Reads "Name: value" lines up to a blank line; returns the position after it
+    private static int readFields(byte[] content, int position, int limit, Map<String, List<String>> fields,
+                                  boolean lowerCaseNames) throws IOException {
+        while (true) {
+            int eol = lineEnd(content, position, limit);
+            if (eol < 0) throw new IOException("Unterminated header block");
+            if (eol == position) return position + 2;
+            String line = new String(content, position, eol - position, StandardCharsets.UTF_8);
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                String name = line.substring(0, colon).trim();
+                if (lowerCaseNames) name = name.toLowerCase(Locale.ROOT);
+                fields.computeIfAbsent(name, k -> new ArrayList<>(1)).add(line.substring(colon + 1).trim());
+            }
+            position = eol + 2;
+        }
+    }
+
+    private static String first(Map<String, List<String>> fields, String name) {
+        List<String> values = fields.get(name);
+        return (values == null) ? null : values.get(0);
+    }
+
+    // Index of the CR of the next CRLF at or after position, or -1 if there is none before limit
+    private static int lineEnd(byte[] content, int position, int limit) {
+        for (int i = position; i + 1 < limit; i++) {
+            if (content[i] == '\r' && content[i + 1] == '\n') return i;
+        }
+        return -1;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    /**
+     * One fetch read back from the archive.
+     */
+    public static final class Record {
+        private final String url;
+        private final String finalUrl;
+        private final Instant fetchTime;
+        private final int statusCode;
+        private final Map<String, List<String>> headers;
+        private final byte[] body;
+
+        private Record(String url, String finalUrl, Instant fetchTime, int statusCode,
+                       Map<String, List<String>> headers, byte[] body) {
+            this.url = url;
+            this.finalUrl = finalUrl;
+            this.fetchTime = fetchTime;
+            this.statusCode = statusCode;
+            this.headers = Collections.unmodifiableMap(headers);
+            this.body = body;
+        }
+
+        /**
+         * @return The URL the page was requested as.
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return The URL after redirects (use it as the parser's base URI).
+         */
+        public String getFinalUrl() {
+            return finalUrl;
+        }
+
+        /**
+         * @return When the response arrived (millisecond precision).
+         */
+        public Instant getFetchTime() {
+            return fetchTime;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * @return The response headers in archived order (Content-Length is that of the decoded body).
+         */
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * @return The first value of a header (name case-insensitive), or "" if absent.
+         */
+        public String getHeader(String name) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (header.getKey().equalsIgnoreCase(name)) return header.getValue().get(0);
+            }
+            return "";
+        }
+
+        /**
+         * @return The ETag / Last-Modified the page was served with, to make a later fetch of it
+         *         conditional on them, or null if it had neither.
+         */
+        public PageFetcher.Validators getValidators() {
+            String etag = getHeader("ETag");
+            String lastModified = getHeader("Last-Modified");
+            if (etag.isEmpty() && lastModified.isEmpty()) return null;
+            return new PageFetcher.Validators(etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified);
+        }
+
+        public boolean isHtml() {
+            return getHeader("Content-Type").toLowerCase(Locale.ROOT).contains("text/html");
+        }
+
+        /**
+         * @return The decoded body.
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return The body as text, in the charset of its Content-Type (UTF-8 if absent or unknown).
+         */
+        public String getText() {
+            return new String(body, PageFetcher.charsetOf(getHeader("Content-Type")));
+        }
+    }
+
+    /**
+     * A run of consecutive records of an archive, read by {@link #read(Split, Consumer)}.
+     */
+    public static final class Split {
+        private final Path archiveFile;
+        private final long[] offsets;   // Shared by all splits of one archive
+        private final int[] lengths;
+        private final BitSet superseded;
+        private final int first;
+        private final int end;
+
+        private Split(Path archiveFile, long[] offsets, int[] lengths, BitSet superseded, int first, int end) {
+            this.archiveFile = archiveFile;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.superseded = superseded;
+            this.first = first;
+            this.end = end;
+        }
+
+        public long getStartOffset() {
+            return offsets[first];
+        }
+
+        /**
+         * @return Compressed bytes in the split.
+         */
+        public long sizeInBytes() {
+            return offsets[end - 1] + lengths[end - 1] - offsets[first];
+        }
+
+        /**
+         * @return Records the split will deliver (superseded copies excluded).
+         */
+        public int getRecordCount() {
+            return end - first - superseded.get(first, end).cardinality();
+        }
+
+        @Override
+        public String toString() {
+            return "Split{records " + first + ".." + (end - 1) + ", bytes " + getStartOffset() + "+" + sizeInBytes() + "}";
+        }
+    }
+
+    // Sequential reader of index entries; stops at the end of the file or at a torn entry
+    private static final class IndexReader implements Closeable {
+
+        private final DataInputStream in;
+        private final long fileSize;
+        long position = INDEX_HEADER_BYTES;   // End of the last complete entry
+        long offset;
+        int length;
+        String url;
+
+        IndexReader(Path source) throws IOException {
+            fileSize = Files.size(source);
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source), 1 << 16));
+            try {
+                if (fileSize < INDEX_HEADER_BYTES || in.readInt() != INDEX_MAGIC) {
+                    throw new IOException("Not a crawl archive index: " + source);
+                }
+                int version = in.readInt();
+                if (version != INDEX_VERSION) {
+                    throw new IOException("Unsupported crawl archive index version " + version + " in " + source);
+                }
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        // Advances to the next complete entry; false at the end of the complete entries
+        boolean next() throws IOException {
+            if (fileSize - position < 24) return false;
+            offset = in.readLong();
+            length = in.readInt();
+            in.readLong(); // Fetch time, for tools; readers get it from the record
+            int urlLength = in.readInt();
+            if (length <= 0 || urlLength < 0 || urlLength > fileSize - position - 24) return false;
+            byte[] urlBytes = new byte[urlLength];
+            in.readFully(urlBytes);
+            url = new String(urlBytes, StandardCharsets.UTF_8);
+            position += 24 + urlLength;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // Finds gzip members in a raw stream without an index (recovery only). Members must have a
+    // plain 10-byte header, as GZIPOutputStream writes them.
+    private static final class MemberScanner {
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 16];
+        private final byte[] chunk = new byte[1 << 16];
+        private final Inflater inflater = new Inflater(true);
+        private final CRC32 crc = new CRC32();
+        private int position;
+        private int limit;
+
+        MemberScanner(InputStream in) {
+            this.in = in;
+        }
+
+        // Decompresses the next member into content; returns its compressed length, or -1 if
+        // the stream ends or the member is torn or corrupt
+        long next(ByteArrayOutputStream content) throws IOException {
+            content.reset();
+            byte[] header = new byte[10];
+            if (!readFully(header)) return -1;
+            if (header[0] != (byte) 0x1f || header[1] != (byte) 0x8b || header[2] != 8 || header[3] != 0) return -1;
+            inflater.reset();
+            crc.reset();
+            if (position < limit) inflater.setInput(buffer, position, limit - position);
+            try {
+                while (!inflater.finished()) {
+                    if (inflater.needsInput()) {
+                        position = limit;
+                        if (!fill()) return -1;
+                        inflater.setInput(buffer, position, limit - position);
+                    }
+                    int n = inflater.inflate(chunk);
+                    if (n == 0 && inflater.needsDictionary()) return -1;
+                    crc.update(chunk, 0, n);
+                    content.write(chunk, 0, n);
+                }
+            } catch (DataFormatException e) {
+                return -1;
+            }
+            position = limit - inflater.getRemaining();
+            byte[] trailer = new byte[8];
+            if (!readFully(trailer)) return -1;
+            ByteBuffer littleEndian = ByteBuffer.wrap(trailer).order(ByteOrder.LITTLE_ENDIAN);
+            if (littleEndian.getInt() != (int) crc.getValue() || littleEndian.getInt() != content.size()) return -1;
+            return 10 + inflater.getBytesRead() + 8;
+        }
+
+        private boolean readFully(byte[] target) throws IOException {
+            for (int filled = 0; filled < target.length; ) {
+                if (position == limit && !fill()) return false;
+                int n = Math.min(target.length - filled, limit - position);
+                System.arraycopy(buffer, position, target, filled, n);
+                position += n;
+                filled += n;
+            }
+            return true;
+        }
+
+        private boolean fill() throws IOException {
+            int n = in.read(buffer);
+            if (n <= 0) return false;
+            position = 0;
+            limit = n;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.wikipediasearch.crawler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Snapshot of a resumable crawl: the visited URLs plus the disk frontier's file generation and
+ * head/tail offsets. Written to a temporary file and atomically renamed, so a crash during a
+ * checkpoint leaves the previous checkpoint intact (and the frontier keeps the file it names).
+ */
+public class CrawlCheckpoint {
+
+    private static final String FILE_NAME = "checkpoint.bin";
+    private static final int MAGIC = 0x57435043; // "WCPC"
+    private static final int VERSION = 3; // v3: frontier generation; v2: visited set stored as UrlSeenSet
+
+    private final UrlSeenSet visitedUrls;
+    private final long frontierGeneration;
+    private final long frontierHead;
+    private final long frontierTail;
+    private final long frontierSize;
+
+    private CrawlCheckpoint(UrlSeenSet visitedUrls, long frontierGeneration, long frontierHead, long frontierTail,
+                            long frontierSize) {
+        this.visitedUrls = visitedUrls;
+        this.frontierGeneration = frontierGeneration;
+        this.frontierHead = frontierHead;
+        this.frontierTail = frontierTail;
+        this.frontierSize = frontierSize;
+    }
+
+    /**
+     * Writes a checkpoint. The frontier must have been synced so that its tail is on disk.
+     *
+     * @param directory   Crawl state directory.
+     * @param visitedUrls URLs already crawled or attempted.
+     * @param frontier    The frontier whose position is recorded.
+     */
+    public static void write(Path directory, UrlSeenSet visitedUrls, DiskUrlFrontier frontier) throws IOException {
+        Files.createDirectories(directory);
+        Path target = directory.resolve(FILE_NAME);
+        Path temp = directory.resolve(FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(frontier.getGeneration());
+            out.writeLong(frontier.getHeadOffset());
+            out.writeLong(frontier.getTailOffset());
+            out.writeLong(frontier.size());
+            visitedUrls.writeTo(out);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        frontier.checkpointWritten();
+    }
+
+    /**
+     * Loads the last checkpoint from a crawl state directory.
+     *
+     * @param directory Crawl state directory.
+     * @return The checkpoint, or null if none has been written yet.
+     * @throws IOException if the checkpoint exists but cannot be read.
+     */
+    public static CrawlCheckpoint load(Path directory) throws IOException {
+        Path source = directory.resolve(FILE_NAME);
+        if (!Files.exists(source)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a crawl checkpoint: " + source);
+            }
+            int version = in.readInt();
+            if (version != VERSION && version != 2) {
+                throw new IOException("Unsupported crawl checkpoint version " + version + " in " + source);
+            }
+            long generation = (version == 2) ? 0 : in.readLong();
+            long head = in.readLong();
+            long tail = in.readLong();
+            long size = in.readLong();
+            UrlSeenSet visited = UrlSeenSet.readFrom(in);
+            return new CrawlCheckpoint(visited, generation, head, tail, size);
+        }
+    }
+
+    public UrlSeenSet getVisitedUrls() {
+        return visitedUrls;
+    }
+
+    public long getFrontierGeneration() {
+        return frontierGeneration;
+    }
+
+    public long getFrontierHead() {
+        return frontierHead;
+    }
+
+    public long getFrontierTail() {
+        return frontierTail;
+    }
+
+    public long getFrontierSize() {
+        return frontierSize;
+    }
+}
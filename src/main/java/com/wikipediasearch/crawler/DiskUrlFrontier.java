@@ -0,0 +1,272 @@
+package com.wikipediasearch.crawler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Frontier stored in an append-only file so it survives restarts and can hold
+ * many millions of URLs without keeping them on the heap.
+ *
+ * File layout: a sequence of records, each [int length][UTF-8 bytes].
+ * New URLs are buffered and appended at the tail; the head is read through a
+ * memory-mapped window that slides forward as URLs are polled. Only the head/tail
+ * offsets and the record count live in memory; CrawlCheckpoint persists them.
+ *
+ * Compaction writes the live records to the file of the next generation (frontier.1.dat,
+ * frontier.2.dat, ...; generation 0 is frontier.dat) and keeps the old file until a checkpoint
+ * naming the new generation is committed, so every checkpoint finds the file its offsets
+ * refer to. Files of other generations are deleted when the frontier is opened.
+ */
+public class DiskUrlFrontier implements UrlFrontier, Closeable {
+
+    private static final String FILE_PREFIX = "frontier";
+    private static final String FILE_SUFFIX = ".dat";
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final long MAP_WINDOW_SIZE = 8L * 1024 * 1024;
+    private static final long COMPACT_THRESHOLD = 64L * 1024 * 1024; // bytes of consumed head before compaction
+
+    private final Path directory;
+    private long generation;    // Selects the file; changed by compaction
+    private Path file;
+    private Path retiredFile;   // Pre-compaction file, still named by the last committed checkpoint
+    private FileChannel channel;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+    private long headOffset;    // File offset of the next record to poll
+    private long flushedTail;   // File offset up to which records are on disk
+    private long size;          // Records between head and tail (including buffered ones)
+
+    private MappedByteBuffer headWindow; // Read-only mapping starting at windowStart
+    private long windowStart;
+
+    /**
+     * Opens (or creates) a frontier in the given directory, starting empty.
+     */
+    public DiskUrlFrontier(Path directory) throws IOException {
+        this(directory, 0L, 0L, 0L, 0L);
+    }
+
+    /**
+     * Opens a generation-0 frontier at a checkpointed state (see the generation variant).
+     */
+    public DiskUrlFrontier(Path directory, long headOffset, long tailOffset, long size) throws IOException {
+        this(directory, 0L, headOffset, tailOffset, size);
+    }
+
+    /**
+     * Opens a frontier and positions it at a previously checkpointed state.
+     * Anything written after the checkpointed tail (possibly a torn record from a crash)
+     * is discarded; the pages that discovered those URLs were not checkpointed as visited
+     * either, so they will be crawled again and rediscover them.
+     *
+     * @param directory  Directory holding the frontier file.
+     * @param generation Checkpointed file generation.
+     * @param headOffset Checkpointed head offset.
+     * @param tailOffset Checkpointed tail offset.
+     * @param size       Checkpointed number of queued URLs.
+     */
+    public DiskUrlFrontier(Path directory, long generation, long headOffset, long tailOffset, long size) throws IOException {
+        if (generation < 0 || headOffset < 0 || tailOffset < headOffset || size < 0) {
+            throw new IllegalArgumentException("Invalid frontier state: generation=" + generation + ", head=" + headOffset
+                    + ", tail=" + tailOffset + ", size=" + size);
+        }
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.generation = generation;
+        this.file = fileFor(directory, generation);
+        deleteOtherGenerations();
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < tailOffset) {
+            throw new IOException("Frontier file " + file + " is shorter (" + channel.size() + ") than the checkpointed tail (" + tailOffset + ")");
+        }
+        channel.truncate(tailOffset);
+        this.headOffset = headOffset;
+        this.flushedTail = tailOffset;
+        this.size = size;
+    }
+
+    @Override
+    public boolean add(String url) {
+        if (url == null) return false;
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        try {
+            if (writeBuffer.remaining() < Integer.BYTES + bytes.length) {
+                flushWrites();
+            }
+            if (Integer.BYTES + bytes.length > writeBuffer.capacity()) {
+                // Oversized URL: write it straight through
+                ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+                record.putInt(bytes.length).put(bytes).flip();
+                writeFully(record);
+            } else {
+                writeBuffer.putInt(bytes.length).put(bytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to frontier " + file, e);
+        }
+        size++;
+        return true;
+    }
+
+    @Override
+    public String poll() {
+        if (size == 0) return null;
+        try {
+            if (headOffset + Integer.BYTES > flushedTail) {
+                flushWrites(); // The next record is still in the write buffer
+            }
+            ByteBuffer window = windowFor(Integer.BYTES);
+            int length = window.getInt((int) (headOffset - windowStart));
+            window = windowFor(Integer.BYTES + length);
+            byte[] bytes = new byte[length];
+            window.get((int) (headOffset - windowStart) + Integer.BYTES, bytes);
+            headOffset += Integer.BYTES + length;
+            size--;
+            return new String(bytes, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read frontier " + file, e);
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Writes buffered URLs and forces the file to disk. Call before checkpointing.
+     */
+    public void sync() throws IOException {
+        flushWrites();
+        channel.force(false);
+    }
+
+    /**
+     * Rewrites the file without the already-consumed head once it grows large,
+     * so a long crawl does not keep every URL it ever queued on disk.
+     * Offsets and the generation change, so call this right before taking a checkpoint.
+     */
+    public void compactIfNeeded() throws IOException {
+        if (headOffset < COMPACT_THRESHOLD || headOffset < (flushedTail - headOffset)) {
+            return;
+        }
+        compact();
+    }
+
+    // Moves the live records to the next generation's file; the current one is kept until checkpointWritten()
+    void compact() throws IOException {
+        flushWrites();
+        Path compacted = fileFor(directory, generation + 1);
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = headOffset;
+            while (position < flushedTail) {
+                position += channel.transferTo(position, flushedTail - position, out);
+            }
+            out.force(false);
+        }
+        headWindow = null;
+        channel.close();
+        if (retiredFile == null) {
+            retiredFile = file;
+        } else {
+            Files.deleteIfExists(file); // Compacted twice without a checkpoint: no checkpoint names it
+        }
+        file = compacted;
+        generation++;
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        flushedTail -= headOffset;
+        headOffset = 0;
+    }
+
+    /**
+     * Called by CrawlCheckpoint once a checkpoint naming the current generation is committed:
+     * the file from before the last compaction is no longer needed.
+     */
+    void checkpointWritten() throws IOException {
+        if (retiredFile != null) {
+            Files.deleteIfExists(retiredFile);
+            retiredFile = null;
+        }
+    }
+
+    /**
+     * @return The generation of the file in use (goes into checkpoints with the offsets).
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getHeadOffset() {
+        return headOffset;
+    }
+
+    /**
+     * @return The tail offset including buffered (not yet written) records. Call {@link #sync()} first
+     *         when the value is going into a checkpoint.
+     */
+    public long getTailOffset() {
+        return flushedTail + writeBuffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        headWindow = null;
+        channel.close();
+    }
+
+    // --- Internal helpers ---
+
+    private static Path fileFor(Path directory, long generation) {
+        return directory.resolve(generation == 0 ? FILE_PREFIX + FILE_SUFFIX : FILE_PREFIX + "." + generation + FILE_SUFFIX);
+    }
+
+    // Older generations were superseded by a committed checkpoint, newer ones were never committed
+    private void deleteOtherGenerations() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path other : files) {
+                String name = other.getFileName().toString();
+                String middle = name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length());
+                if (!other.equals(file) && (middle.isEmpty() || middle.matches("\\.\\d+"))) {
+                    Files.delete(other);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the mapped window, remapping at the head when the next {@code needed}
+     * bytes are not covered by the current one.
+     */
+    private MappedByteBuffer windowFor(int needed) throws IOException {
+        long windowEnd = (headWindow == null) ? -1 : windowStart + headWindow.capacity();
+        if (headWindow == null || headOffset < windowStart || headOffset + needed > windowEnd) {
+            long length = Math.max(needed, Math.min(MAP_WINDOW_SIZE, flushedTail - headOffset));
+            headWindow = channel.map(FileChannel.MapMode.READ_ONLY, headOffset, length);
+            windowStart = headOffset;
+        }
+        return headWindow;
+    }
+
+    private void flushWrites() throws IOException {
+        if (writeBuffer.position() == 0) return;
+        writeBuffer.flip();
+        writeFully(writeBuffer);
+        writeBuffer.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            flushedTail += channel.write(buffer, flushedTail);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.wikipediasearch.crawler;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parts of a crawled page the rest of the engine uses: its title, section headings,
+ * visible body text, outgoing links (absolute URLs) with their anchor text, and the anchor
+ * text of links on other pages pointing to it. Produced by HtmlTextExtractor, or from a Jsoup
+ * Document when the streaming extractor cannot handle a page; WebCrawler fills in the
+ * incoming anchor text.
+ */
+public class ExtractedPage {
+
+    private final String url;
+    private final String title;
+    private final String headings;
+    private final String text;
+    private final List<String> links;
+    private final List<String> linkTexts;
+    private final String anchorText;
+
+    /**
+     * @param url   The URL the page was fetched from. Cannot be null or empty.
+     * @param title The page title (empty if none).
+     * @param text  Visible body text, whitespace-normalized.
+     * @param links Absolute outgoing link URLs, in document order.
+     */
+    public ExtractedPage(String url, String title, String text, List<String> links) {
+        this(url, title, "", text, links, null, "");
+    }
+
+    /**
+     * @param url        The URL the page was fetched from. Cannot be null or empty.
+     * @param title      The page title (empty if none).
+     * @param headings   Text of the section headings, space-separated (empty if none).
+     * @param text       Visible body text, whitespace-normalized.
+     * @param links      Absolute outgoing link URLs, in document order.
+     * @param linkTexts  The anchor text of each link, parallel to links (null if not extracted).
+     * @param anchorText Anchor text of links to this page seen on other pages (empty if none).
+     */
+    public ExtractedPage(String url, String title, String headings, String text, List<String> links,
+                         List<String> linkTexts, String anchorText) {
+        if (url == null || url.trim().isEmpty()) {
+            throw new IllegalArgumentException("Page URL cannot be null or empty.");
+        }
+        this.url = url;
+        this.title = (title != null) ? title : "";
+        this.headings = (headings != null) ? headings : "";
+        this.text = (text != null) ? text : "";
+        this.links = (links != null) ? links : Collections.emptyList();
+        this.linkTexts = (linkTexts != null) ? linkTexts : Collections.emptyList();
+        this.anchorText = (anchorText != null) ? anchorText : "";
+    }
+
+    /**
+     * @return A copy of this page fetched from another URL, with the given incoming anchor text.
+     */
+    public ExtractedPage withUrlAndAnchorText(String url, String anchorText) {
+        return new ExtractedPage(url, title, headings, text, links, linkTexts, anchorText);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getHeadings() {
+        return headings;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public List<String> getLinks() {
+        return links;
+    }
+
+    /**
+     * @return The anchor text of link i of {@link #getLinks()} ("" if it had none or was not extracted).
+     */
+    public String getLinkText(int i) {
+        return (i < linkTexts.size()) ? linkTexts.get(i) : "";
+    }
+
+    public String getAnchorText() {
+        return anchorText;
+    }
+
+    @Override
+    public String toString() {
+        return "ExtractedPage{" +
+                "url='" + url + '\'' +
+                ", title='" + title + '\'' +
+                ", textLength=" + text.length() +
+                ", links=" + links.size() +
+                ", anchorTextLength=" + anchorText.length() +
+                '}';
+    }
+}
@@ -0,0 +1,36 @@
+package com.wikipediasearch.crawler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one PageFetcher request, from sending it to closing its body.
+ */
+@Name("com.wikipediasearch.Fetch")
+@Label("Page Fetch")
+@Category({"Wikipedia Search", "Crawler"})
+@Description("An HTTP fetch by the crawler, including reading the body")
+@StackTrace(false)
+final class FetchEvent extends jdk.jfr.Event {
+
+    @Label("URL")
+    String url;
+
+    @Label("Status")
+    int status;
+
+    @Label("Not Modified")
+    boolean notModified;
+
+    @Label("Bytes Downloaded")
+    @DataAmount
+    long bytesDownloaded;
+
+    @Label("Bytes Decoded")
+    @DataAmount
+    long bytesDecoded;
+}
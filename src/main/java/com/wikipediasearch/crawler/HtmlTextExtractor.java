@@ -0,0 +1,533 @@
+package com.wikipediasearch.crawler;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Single-pass HTML scanner that pulls out a page's visible body text, its section headings
+ * and its links with their anchor text, without building a DOM. It is tuned for Wikipedia
+ * article HTML:
+ * - script, style, noscript, template, svg and math content is dropped,
+ * - reference markup (footnote markers, reference lists, "[edit]" links, navboxes)
+ *   is skipped by class name,
+ * - block-level tags become word boundaries and whitespace is collapsed, like Jsoup's text().
+ *
+ * Pages can be scanned from a Reader as their bytes arrive ({@link #extract(Reader, String)}):
+ * only the markup from the current position to the end of the construct being read is held,
+ * not the whole page.
+ *
+ * It does not repair malformed markup; callers should fall back to Jsoup when
+ * {@link #extract(String, String)} returns null.
+ * Stateless and thread-safe.
+ */
+public class HtmlTextExtractor {
+
+    // Elements whose content is raw text (no tags inside) that must not be indexed
+    private static final Set<String> RAW_TEXT_SKIP = Set.of("script", "style", "noscript", "template", "textarea");
+    // Elements skipped together with all their children
+    private static final Set<String> ELEMENT_SKIP = Set.of("svg", "math");
+    // class="..." tokens marking reference / navigation markup in Wikipedia pages
+    private static final Set<String> SKIP_CLASSES = Set.of(
+            "reference", "references", "reflist", "mw-references-wrap", "mw-editsection",
+            "navbox", "mw-cite-backlink", "noprint", "mw-jump-link");
+    /**
+     * CSS selector for the elements skipped with their children (and so their links), for
+     * the Jsoup fallback to drop the same markup.
+     */
+    static final String SKIPPED_ELEMENTS = Stream.concat(ELEMENT_SKIP.stream(), SKIP_CLASSES.stream().map(c -> "." + c))
+            .sorted().collect(Collectors.joining(", "));
+    // Tags that separate words when flattened to text
+    private static final Set<String> BLOCK_TAGS = Set.of(
+            "p", "div", "br", "li", "ul", "ol", "dl", "dt", "dd", "h1", "h2", "h3", "h4", "h5", "h6",
+            "table", "tr", "td", "th", "caption", "blockquote", "pre", "section", "article", "header",
+            "footer", "nav", "aside", "figure", "figcaption", "hr", "body", "main", "form", "option");
+    // Consumed input is dropped from a streamed page's buffer once this much has accumulated
+    private static final int COMPACT_THRESHOLD = 64 * 1024;
+
+    /**
+     * Extracts title, headings, body text and links (with anchor text) from a page.
+     *
+     * @param html    The page source.
+     * @param baseUrl URL the page was fetched from (used to resolve relative links).
+     * @return The extracted page, or null if the markup could not be scanned (use Jsoup instead).
+     */
+    public ExtractedPage extract(String html, String baseUrl) {
+        if (html == null || baseUrl == null) return null;
+        return extract(new HtmlInput(html), baseUrl, Math.min(html.length() / 4, 1 << 20));
+    }
+
+    /**
+     * Same as {@link #extract(String, String)}, reading the page from a stream (e.g. a response
+     * body while it downloads) instead of a string holding all of it.
+     *
+     * @param html    The page source; read to the end (or to where scanning gives up), not closed.
+     * @param baseUrl URL the page was fetched from (used to resolve relative links).
+     * @return The extracted page, or null if the markup could not be scanned (use Jsoup instead).
+     * @throws IOException if reading the page fails.
+     */
+    public ExtractedPage extract(Reader html, String baseUrl) throws IOException {
+        if (html == null || baseUrl == null) return null;
+        try {
+            return extract(new HtmlInput(html), baseUrl, 16 * 1024);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private ExtractedPage extract(HtmlInput html, String baseUrl, int textCapacity) {
+        URI base;
+        try {
+            base = URI.create(baseUrl);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        StringBuilder text = new StringBuilder(textCapacity);
+        List<String> links = new ArrayList<>();
+        List<String> linkTexts = new ArrayList<>(); // Parallel to links
+        StringBuilder headings = new StringBuilder();
+        String title = "";
+        int openLink = -1;      // Index in links of the <a> being read, -1 if none
+        int linkTextStart = 0;  // Where its text starts in text
+        int headingStart = -1;  // Where the text of the open h1-h6 starts, -1 if none
+
+        String skipTag = null; // Element being skipped (with its children)
+        int skipDepth = 0;
+        int i = 0;
+
+        while (html.has(i)) {
+            i = html.discardBefore(i);
+            char c = html.charAt(i);
+            if (c != '<') {
+                int next = html.indexOf('<', i);
+                if (next < 0) next = html.length(); // Read to the end
+                if (skipTag == null) appendText(html, i, next, text);
+                i = next;
+                continue;
+            }
+
+            // Comments, doctype, processing instructions
+            if (html.startsWith("<!--", i)) {
+                int end = html.indexOf("-->", i + 4);
+                i = (end < 0) ? html.length() : end + 3;
+                continue;
+            }
+            if (html.has(i + 1) && (html.charAt(i + 1) == '!' || html.charAt(i + 1) == '?')) {
+                int end = html.indexOf('>', i);
+                i = (end < 0) ? html.length() : end + 1;
+                continue;
+            }
+
+            Tag tag = parseTag(html, i);
+            if (tag == null) {
+                // A stray '<' in text
+                if (skipTag == null) text.append('<');
+                i++;
+                continue;
+            }
+            i = tag.end;
+
+            if (skipTag != null) {
+                if (tag.name.equals(skipTag)) {
+                    if (tag.closing) skipDepth--;
+                    else if (!tag.selfClosing) skipDepth++;
+                    if (skipDepth == 0) skipTag = null;
+                }
+                continue;
+            }
+            if (tag.closing) {
+                if (tag.name.equals("a") && openLink >= 0) {
+                    linkTexts.set(openLink, text.substring(linkTextStart).trim());
+                    openLink = -1;
+                } else if (headingStart >= 0 && isHeading(tag.name)) {
+                    appendHeading(headings, text, headingStart);
+                    headingStart = -1;
+                }
+                if (BLOCK_TAGS.contains(tag.name)) separate(text);
+                continue;
+            }
+
+            if (tag.name.equals("title")) {
+                int end = indexOfClosingTag(html, i, "title");
+                if (end < 0) return null;
+                StringBuilder titleText = new StringBuilder();
+                appendText(html, i, end, titleText);
+                title = titleText.toString().trim();
+                i = skipPast(html, end);
+                continue;
+            }
+            if (RAW_TEXT_SKIP.contains(tag.name)) {
+                if (tag.selfClosing) continue;
+                int end = indexOfClosingTag(html, i, tag.name);
+                if (end < 0) return null; // Unterminated script/style: let Jsoup deal with it
+                i = skipPast(html, end);
+                continue;
+            }
+            if (!tag.selfClosing && !isVoid(tag.name)
+                    && (ELEMENT_SKIP.contains(tag.name) || hasSkipClass(tag.classAttr))) {
+                skipTag = tag.name;
+                skipDepth = 1;
+                continue;
+            }
+
+            if (tag.name.equals("a") && tag.href != null) {
+                if (openLink >= 0) linkTexts.set(openLink, text.substring(linkTextStart).trim()); // Unclosed <a>
+                openLink = -1;
+                String resolved = resolve(base, tag.href);
+                if (resolved != null) {
+                    links.add(resolved);
+                    linkTexts.add("");
+                    openLink = links.size() - 1;
+                    linkTextStart = text.length();
+                }
+            }
+            if (BLOCK_TAGS.contains(tag.name)) separate(text);
+            if (isHeading(tag.name)) headingStart = text.length();
+        }
+        if (openLink >= 0) linkTexts.set(openLink, text.substring(linkTextStart).trim());
+        if (headingStart >= 0) appendHeading(headings, text, headingStart);
+
+        int length = text.length();
+        while (length > 0 && text.charAt(length - 1) == ' ') length--;
+        int start = 0;
+        while (start < length && text.charAt(start) == ' ') start++;
+        return new ExtractedPage(baseUrl, title, headings.toString(), text.substring(start, length), links, linkTexts, "");
+    }
+
+    // --- Tag scanning ---
+
+    private static final class Tag {
+        String name;
+        boolean closing;
+        boolean selfClosing;
+        String href;
+        String classAttr;
+        int end; // Index just past '>'
+    }
+
+    /**
+     * Parses the tag starting at html[start] == '<'. Only href and class attributes are kept.
+     * @return The tag, or null if this '<' does not start a tag.
+     */
+    private static Tag parseTag(HtmlInput html, int start) {
+        int i = start + 1;
+        Tag tag = new Tag();
+        if (html.has(i) && html.charAt(i) == '/') {
+            tag.closing = true;
+            i++;
+        }
+        int nameStart = i;
+        while (html.has(i) && (Character.isLetterOrDigit(html.charAt(i)) || html.charAt(i) == '-' || html.charAt(i) == ':')) i++;
+        if (i == nameStart || !Character.isLetter(html.charAt(nameStart))) return null;
+        tag.name = html.substring(nameStart, i).toLowerCase(Locale.ROOT);
+
+        // Attributes
+        while (html.has(i)) {
+            char c = html.charAt(i);
+            if (c == '>') {
+                tag.end = i + 1;
+                return tag;
+            }
+            if (c == '/' && html.has(i + 1) && html.charAt(i + 1) == '>') {
+                tag.selfClosing = true;
+                tag.end = i + 2;
+                return tag;
+            }
+            if (Character.isWhitespace(c) || c == '/') {
+                i++;
+                continue;
+            }
+            int attrStart = i;
+            while (html.has(i) && !Character.isWhitespace(html.charAt(i)) && html.charAt(i) != '='
+                    && html.charAt(i) != '>' && html.charAt(i) != '/') i++;
+            String attrName = html.substring(attrStart, i);
+            while (html.has(i) && Character.isWhitespace(html.charAt(i))) i++;
+            String value = null;
+            if (html.has(i) && html.charAt(i) == '=') {
+                i++;
+                while (html.has(i) && Character.isWhitespace(html.charAt(i))) i++;
+                if (html.has(i) && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+                    char quote = html.charAt(i);
+                    int valueEnd = html.indexOf(quote, i + 1);
+                    if (valueEnd < 0) return null;
+                    value = html.substring(i + 1, valueEnd);
+                    i = valueEnd + 1;
+                } else {
+                    int valueStart = i;
+                    while (html.has(i) && !Character.isWhitespace(html.charAt(i)) && html.charAt(i) != '>') i++;
+                    value = html.substring(valueStart, i);
+                }
+            }
+            if (value != null) {
+                if (attrName.equalsIgnoreCase("href")) tag.href = decodeEntities(value);
+                else if (attrName.equalsIgnoreCase("class")) tag.classAttr = value;
+            }
+        }
+        return null; // Unterminated tag
+    }
+
+    private static int indexOfClosingTag(HtmlInput html, int from, String name) {
+        int i = from;
+        while (true) {
+            int lt = html.indexOf("</", i);
+            if (lt < 0) return -1;
+            if (html.regionMatchesIgnoreCase(lt + 2, name)) return lt;
+            i = lt + 2;
+        }
+    }
+
+    private static int skipPast(HtmlInput html, int closingTagStart) {
+        int gt = html.indexOf('>', closingTagStart);
+        return (gt < 0) ? html.length() : gt + 1;
+    }
+
+    private static boolean hasSkipClass(String classAttr) {
+        if (classAttr == null || classAttr.isEmpty()) return false;
+        for (String token : classAttr.split("\\s+")) {
+            if (SKIP_CLASSES.contains(token)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isHeading(String name) {
+        return name.length() == 2 && name.charAt(0) == 'h' && name.charAt(1) >= '1' && name.charAt(1) <= '6';
+    }
+
+    // Appends the text of a heading (text[from, end)) to the space-separated headings
+    private static void appendHeading(StringBuilder headings, StringBuilder text, int from) {
+        String heading = text.substring(from).trim();
+        if (heading.isEmpty()) return;
+        if (headings.length() > 0) headings.append(' ');
+        headings.append(heading);
+    }
+
+    private static boolean isVoid(String name) {
+        switch (name) {
+            case "area": case "base": case "br": case "col": case "embed": case "hr": case "img":
+            case "input": case "link": case "meta": case "source": case "track": case "wbr":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static String resolve(URI base, String href) {
+        String trimmed = href.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("javascript:") || trimmed.startsWith("mailto:")) return null;
+        try {
+            return base.resolve(trimmed).toString();
+        } catch (IllegalArgumentException e) {
+            return null; // Unparseable href; Jsoup's absUrl would return "" here too
+        }
+    }
+
+    // --- Text handling ---
+
+    /**
+     * Appends html[from, to) decoding entities and collapsing whitespace runs to one space.
+     */
+    private static void appendText(HtmlInput html, int from, int to, StringBuilder out) {
+        for (int i = from; i < to; i++) {
+            char c = html.charAt(i);
+            if (c == '&') {
+                int semi = -1;
+                for (int j = i + 1; j < to && j - i <= 10; j++) {
+                    if (html.charAt(j) == ';') {
+                        semi = j;
+                        break;
+                    }
+                }
+                if (semi > i) {
+                    int decoded = decodeEntity(html.substring(i + 1, semi));
+                    if (decoded >= 0) {
+                        appendChar(out, decoded);
+                        i = semi;
+                        continue;
+                    }
+                }
+                out.append('&');
+            } else if (Character.isWhitespace(c) || c == '\u00A0') {
+                separate(out);
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    private static void appendChar(StringBuilder out, int codePoint) {
+        if (Character.isWhitespace(codePoint) || codePoint == 0xA0) separate(out);
+        else out.appendCodePoint(codePoint);
+    }
+
+    private static void separate(StringBuilder out) {
+        int length = out.length();
+        if (length > 0 && out.charAt(length - 1) != ' ') out.append(' ');
+    }
+
+    private static String decodeEntities(String value) {
+        if (value.indexOf('&') < 0) return value;
+        StringBuilder out = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            int semi = (c == '&') ? value.indexOf(';', i) : -1;
+            int decoded = (semi > i) ? decodeEntity(value.substring(i + 1, semi)) : -1;
+            if (decoded >= 0) {
+                out.appendCodePoint(decoded);
+                i = semi;
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Decodes an entity name (the text between '&' and ';').
+     * @return The code point, or -1 if the entity is not recognised.
+     */
+    private static int decodeEntity(String name) {
+        if (name.isEmpty()) return -1;
+        if (name.charAt(0) == '#') {
+            try {
+                boolean hex = name.length() > 1 && (name.charAt(1) == 'x' || name.charAt(1) == 'X');
+                int codePoint = hex ? Integer.parseInt(name.substring(2), 16) : Integer.parseInt(name.substring(1));
+                return Character.isValidCodePoint(codePoint) ? codePoint : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        switch (name) {
+            case "amp": return '&';
+            case "lt": return '<';
+            case "gt": return '>';
+            case "quot": return '"';
+            case "apos": return '\'';
+            case "nbsp": return 0xA0;
+            case "ndash": return 0x2013;
+            case "mdash": return 0x2014;
+            case "minus": return 0x2212;
+            case "times": return 0xD7;
+            default: return -1;
+        }
+    }
+
+    // --- Input ---
+
+    /**
+     * The page being scanned, addressed by position like a string. A streamed page is read
+     * only as far as the scanner looks ahead, and the part before the scan position is
+     * dropped from time to time (positions then restart at 0, see discardBefore).
+     */
+    private static final class HtmlInput {
+        private Reader reader; // null once the whole page is in buf
+        private char[] buf;
+        private int count;
+
+        HtmlInput(String html) {
+            this.buf = html.toCharArray();
+            this.count = buf.length;
+        }
+
+        HtmlInput(Reader reader) {
+            this.reader = reader;
+            this.buf = new char[8 * 1024];
+        }
+
+        /** @return true if the page has a character at position i (reading up to it if needed). */
+        boolean has(int i) {
+            while (i >= count) {
+                if (!fill()) return false;
+            }
+            return true;
+        }
+
+        /** Only for positions that {@link #has} confirmed. */
+        char charAt(int i) {
+            return buf[i];
+        }
+
+        /** @return The page length; the final length only once a search has failed or has() returned false. */
+        int length() {
+            return count;
+        }
+
+        int indexOf(char c, int from) {
+            int i = from;
+            while (true) {
+                for (; i < count; i++) {
+                    if (buf[i] == c) return i;
+                }
+                if (!fill()) return -1;
+            }
+        }
+
+        int indexOf(String s, int from) {
+            int i = from;
+            while (true) {
+                for (; i + s.length() <= count; i++) {
+                    if (matchesAt(i, s, false)) return i;
+                }
+                if (!fill()) return -1;
+            }
+        }
+
+        boolean startsWith(String s, int at) {
+            return has(at + s.length() - 1) && matchesAt(at, s, false);
+        }
+
+        boolean regionMatchesIgnoreCase(int at, String s) {
+            return has(at + s.length() - 1) && matchesAt(at, s, true);
+        }
+
+        String substring(int from, int to) {
+            return new String(buf, from, to - from);
+        }
+
+        /**
+         * Drops a streamed page's characters before position from, once enough have been consumed.
+         * @return The new position of what was at from.
+         */
+        int discardBefore(int from) {
+            if (reader == null || from < COMPACT_THRESHOLD || from < count / 2) return from;
+            System.arraycopy(buf, from, buf, 0, count - from);
+            count -= from;
+            return 0;
+        }
+
+        private boolean matchesAt(int at, String s, boolean ignoreCase) {
+            for (int k = 0; k < s.length(); k++) {
+                char c = buf[at + k];
+                char expected = s.charAt(k);
+                if (c != expected && !(ignoreCase && Character.toLowerCase(c) == Character.toLowerCase(expected))) return false;
+            }
+            return true;
+        }
+
+        // Reads more of a streamed page; false at its end
+        private boolean fill() {
+            if (reader == null) return false;
+            if (count == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            int read;
+            try {
+                read = reader.read(buf, count, buf.length - count);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (read < 0) {
+                reader = null;
+                return false;
+            }
+            count += read;
+            return true;
+        }
+    }
+}
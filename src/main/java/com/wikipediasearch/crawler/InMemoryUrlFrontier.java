@@ -0,0 +1,28 @@
+package com.wikipediasearch.crawler;
+
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * Frontier kept entirely on the heap (the crawler's original behaviour).
+ * Fast, but lost on restart and bounded by heap size.
+ */
+public class InMemoryUrlFrontier implements UrlFrontier {
+
+    private final Queue<String> urls = new LinkedList<>();
+
+    @Override
+    public boolean add(String url) {
+        return urls.add(url);
+    }
+
+    @Override
+    public String poll() {
+        return urls.poll();
+    }
+
+    @Override
+    public long size() {
+        return urls.size();
+    }
+}
@@ -0,0 +1,130 @@
+package com.wikipediasearch.crawler;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Open-addressing hash set of primitive longs (linear probing, no boxing).
+ * Uses 0 as the empty-slot marker, so the value 0 cannot be stored; callers remap it.
+ * Not thread-safe.
+ */
+public class LongHashSet {
+
+    private static final double MAX_LOAD_FACTOR = 0.7;
+
+    private long[] slots;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * @param expectedSize Number of values expected; the table is sized so they fit without resizing.
+     */
+    public LongHashSet(int expectedSize) {
+        int capacity = tableSizeFor((int) Math.ceil(Math.max(expectedSize, 4) / MAX_LOAD_FACTOR));
+        allocate(capacity);
+    }
+
+    /**
+     * Adds a value.
+     * @param value Any non-zero long.
+     * @return true if the value was not already present.
+     */
+    public boolean add(long value) {
+        checkValue(value);
+        int slot = slotOf(value);
+        while (slots[slot] != 0) {
+            if (slots[slot] == value) return false;
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = value;
+        if (++size > resizeThreshold) {
+            rehash(slots.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * @param value Any non-zero long.
+     * @return true if the value is in the set.
+     */
+    public boolean contains(long value) {
+        checkValue(value);
+        int slot = slotOf(value);
+        while (slots[slot] != 0) {
+            if (slots[slot] == value) return true;
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Bytes used by the slot table.
+     */
+    public long memoryBytes() {
+        return (long) slots.length * Long.BYTES;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (long value : slots) {
+            if (value != 0) out.writeLong(value);
+        }
+    }
+
+    public static LongHashSet readFrom(DataInput in) throws IOException {
+        int count = in.readInt();
+        LongHashSet set = new LongHashSet(count);
+        for (int i = 0; i < count; i++) {
+            set.add(in.readLong());
+        }
+        return set;
+    }
+
+    // --- Internal helpers ---
+
+    private int slotOf(long value) {
+        // Values are usually hashes already, but mix anyway so sequential values spread out
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] old = slots;
+        allocate(newCapacity);
+        size = 0;
+        for (long value : old) {
+            if (value != 0) {
+                int slot = slotOf(value);
+                while (slots[slot] != 0) slot = (slot + 1) & mask;
+                slots[slot] = value;
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        slots = new long[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * MAX_LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int n) {
+        int capacity = Integer.highestOneBit(Math.max(n - 1, 1)) << 1;
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Set too large: " + n);
+        }
+        return capacity;
+    }
+
+    private static void checkValue(long value) {
+        if (value == 0) {
+            throw new IllegalArgumentException("LongHashSet cannot store 0");
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.wikipediasearch.crawler;
+
+import com.wikipediasearch.metrics.Counter;
+import com.wikipediasearch.metrics.Histogram;
+import com.wikipediasearch.metrics.MetricsRegistry;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Fetches pages over one shared java.net.http.HttpClient instead of a standalone
+ * connection per request:
+ * - HTTP/2 (multiplexed streams, connections pooled and reused by the client),
+ * - gzip/deflate transfer compression, decoded here,
+ * - conditional GETs: given the ETag / Last-Modified of a copy the caller kept (see
+ *   {@link FetchResult#getValidators()}), a 304 means that copy is still current. The fetcher
+ *   remembers nothing between fetches; keeping copies and their validators is up to the caller,
+ * - a streamed body capped at maxBodyBytes, so the parser reads while bytes arrive and
+ *   huge pages are truncated rather than buffered whole.
+ * Thread-safe; one instance should be shared by all crawler threads, and closed after them.
+ */
+public class PageFetcher implements Closeable {
+
+    // Process-wide metrics (the fields below are per-fetcher statistics)
+    private static final Counter REQUESTS = MetricsRegistry.global().counter("crawler.requests");
+    private static final Counter NOT_MODIFIED = MetricsRegistry.global().counter("crawler.requests.notModified");
+    private static final Counter BYTES_DOWNLOADED = MetricsRegistry.global().counter("crawler.bytes.downloaded");
+    private static final Counter BYTES_DECODED = MetricsRegistry.global().counter("crawler.bytes.decoded");
+    private static final Histogram FETCH_LATENCY = MetricsRegistry.global().histogram("crawler.fetch.latencyNanos");
+
+    private final HttpClient client;
+    private final String userAgent;
+    private final Duration timeout;
+    private final long maxBodyBytes;
+
+    // Statistics
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong wireBytes = new AtomicLong();
+    private final AtomicLong decodedBytes = new AtomicLong();
+    private final AtomicLong totalFetchNanos = new AtomicLong();
+
+    /**
+     * @param userAgent    User-Agent header sent with every request.
+     * @param timeout      Connect and request timeout.
+     * @param maxBodyBytes Bodies are truncated after this many decoded bytes.
+     */
+    public PageFetcher(String userAgent, Duration timeout, long maxBodyBytes) {
+        if (maxBodyBytes <= 0) {
+            throw new IllegalArgumentException("Max body size must be positive. Received: " + maxBodyBytes);
+        }
+        this.userAgent = userAgent;
+        this.timeout = timeout;
+        this.maxBodyBytes = maxBodyBytes;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2) // Falls back to HTTP/1.1 when the server does not offer h2
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    /**
+     * Sends a compressed GET and returns once the headers have arrived.
+     * The caller reads the body from the result and must close it.
+     *
+     * @param url The URL to fetch.
+     * @return The response; check the status code.
+     * @throws IOException on network errors or an invalid URL.
+     */
+    public FetchResult fetch(String url) throws IOException, InterruptedException {
+        return fetch(url, null);
+    }
+
+    /**
+     * Sends a GET that is conditional on the validators of a copy of the page the caller kept.
+     *
+     * @param url   The URL to fetch.
+     * @param known Validators of the kept copy (null for an unconditional GET).
+     * @return The response; {@link FetchResult#isNotModified()} if the kept copy is current.
+     * @throws IOException on network errors or an invalid URL.
+     */
+    public FetchResult fetch(String url, Validators known) throws IOException, InterruptedException {
+        FetchEvent event = new FetchEvent();
+        event.begin();
+        long start = System.nanoTime();
+        HttpRequest.Builder request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(url));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid URL: " + url, e);
+        }
+        request.timeout(timeout)
+                .header("User-Agent", userAgent)
+                .header("Accept", "text/html,application/xhtml+xml;q=0.9,*/*;q=0.1")
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET();
+
+        if (known != null) {
+            if (known.etag != null) request.header("If-None-Match", known.etag);
+            if (known.lastModified != null) request.header("If-Modified-Since", known.lastModified);
+        }
+
+        HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        requests.incrementAndGet();
+        REQUESTS.increment();
+
+        if (response.statusCode() == 304) {
+            notModified.incrementAndGet();
+            NOT_MODIFIED.increment();
+            response.body().close();
+            totalFetchNanos.addAndGet(System.nanoTime() - start);
+            FETCH_LATENCY.recordSince(start);
+            return new FetchResult(this, response, InputStream.nullInputStream(), null, start, event);
+        }
+
+        CountingInputStream wire = new CountingInputStream(response.body());
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("identity").trim().toLowerCase(Locale.ROOT);
+        InputStream decoded;
+        switch (encoding) {
+            case "gzip":
+            case "x-gzip":
+                decoded = new GZIPInputStream(wire, 16 * 1024);
+                break;
+            case "deflate":
+                decoded = new InflaterInputStream(wire);
+                break;
+            default:
+                decoded = wire;
+                break;
+        }
+        return new FetchResult(this, response, new CappedInputStream(decoded, maxBodyBytes), wire, start, event);
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    /**
+     * @return Body bytes received on the wire (compressed size).
+     */
+    public long getWireBytes() {
+        return wireBytes.get();
+    }
+
+    /**
+     * @return Body bytes after decompression, as seen by the parser.
+     */
+    public long getDecodedBytes() {
+        return decodedBytes.get();
+    }
+
+    /**
+     * @return Mean time from sending a request to finishing (closing) its body, in milliseconds.
+     */
+    public double getAverageFetchMillis() {
+        long count = requests.get();
+        return count == 0 ? 0.0 : totalFetchNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * Shuts the client down: waits for requests in progress, then closes its pooled
+     * connections and stops its selector thread.
+     */
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PageFetcher{requests=%d, notModified=%d, wireBytes=%d, decodedBytes=%d, avgFetch=%.1f ms}",
+                requests.get(), notModified.get(), wireBytes.get(), decodedBytes.get(), getAverageFetchMillis());
+    }
+
+    /**
+     * @return The charset named by a Content-Type value, or UTF-8 if absent or unknown.
+     */
+    static Charset charsetOf(String contentType) {
+        for (String part : contentType.split(";")) {
+            String trimmed = part.trim();
+            if (trimmed.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                try {
+                    return Charset.forName(trimmed.substring(8).replace("\"", "").trim());
+                } catch (IllegalArgumentException e) {
+                    break;
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    // --- Result ---
+
+    /**
+     * A fetched response whose body is streamed. Closing it releases the connection back
+     * to the pool and records the transfer statistics.
+     */
+    public static final class FetchResult implements Closeable {
+        private final PageFetcher fetcher;
+        private final HttpResponse<InputStream> response;
+        private final CappedInputStream body;
+        private final CountingInputStream wire;
+        private final long startNanos;
+        private final FetchEvent event;
+        private boolean closed;
+
+        private FetchResult(PageFetcher fetcher, HttpResponse<InputStream> response, InputStream body,
+                            CountingInputStream wire, long startNanos, FetchEvent event) {
+            this.fetcher = fetcher;
+            this.response = response;
+            this.body = (body instanceof CappedInputStream capped) ? capped : new CappedInputStream(body, Long.MAX_VALUE);
+            this.wire = wire;
+            this.startNanos = startNanos;
+            this.event = event;
+        }
+
+        public int getStatusCode() {
+            return response.statusCode();
+        }
+
+        /**
+         * @return true if the server answered 304: the page is unchanged since the last fetch.
+         */
+        public boolean isNotModified() {
+            return response.statusCode() == 304;
+        }
+
+        /**
+         * @return The URL after following redirects (use it as the parser's base URI).
+         */
+        public String getFinalUrl() {
+            return response.uri().toString();
+        }
+
+        public String getContentType() {
+            return response.headers().firstValue("Content-Type").orElse("");
+        }
+
+        public boolean isHtml() {
+            return getContentType().toLowerCase(Locale.ROOT).contains("text/html");
+        }
+
+        /**
+         * @return The charset from the Content-Type header, or UTF-8 if absent or unknown.
+         */
+        public Charset getCharset() {
+            return charsetOf(getContentType());
+        }
+
+        /**
+         * @return All response headers (names as the server sent them, HTTP/2 pseudo-headers excluded).
+         */
+        public Map<String, List<String>> getHeaders() {
+            return response.headers().map();
+        }
+
+        /**
+         * @return The ETag / Last-Modified of this response, to make a later fetch of the page
+         *         conditional on them, or null if the server sent neither.
+         */
+        public Validators getValidators() {
+            String etag = response.headers().firstValue("ETag").orElse(null);
+            String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+            return (etag != null || lastModified != null) ? new Validators(etag, lastModified) : null;
+        }
+
+        /**
+         * @return The decoded, size-capped body stream.
+         */
+        public InputStream getBody() {
+            return body;
+        }
+
+        /**
+         * @return true if the body was cut off at the fetcher's size cap.
+         */
+        public boolean isTruncated() {
+            return body.truncated;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                body.close();
+            } finally {
+                if (wire != null) {
+                    fetcher.wireBytes.addAndGet(wire.count);
+                    fetcher.decodedBytes.addAndGet(body.count);
+                    fetcher.totalFetchNanos.addAndGet(System.nanoTime() - startNanos);
+                    BYTES_DOWNLOADED.add(wire.count);
+                    BYTES_DECODED.add(body.count);
+                    FETCH_LATENCY.recordSince(startNanos);
+                }
+                event.end();
+                if (event.shouldCommit()) {
+                    event.url = response.uri().toString();
+                    event.status = response.statusCode();
+                    event.notModified = isNotModified();
+                    event.bytesDownloaded = (wire != null) ? wire.count : 0;
+                    event.bytesDecoded = body.count;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    /** A page version's ETag and Last-Modified header values (either may be null). */
+    public static final class Validators {
+        private final String etag;
+        private final String lastModified;
+
+        public Validators(String etag, String lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
+
+    // --- Stream helpers ---
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    // Reports EOF once the cap is reached (like Jsoup's maxBodySize) instead of failing.
+    private static final class CappedInputStream extends FilterInputStream {
+        private final long limit;
+        long count;
+        boolean truncated;
+
+        CappedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (count >= limit) {
+                truncated = true;
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (count >= limit) {
+                truncated = true;
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, limit - count));
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.wikipediasearch.crawler;
+
+/**
+ * Receives each page as soon as WebCrawler has fetched it and extracted its text.
+ * Implementations may block (e.g. on a full queue) to slow the crawler down.
+ */
+@FunctionalInterface
+public interface PageSink {
+
+    /**
+     * Handles one crawled page.
+     *
+     * @param page The page's URL, title, body text and links.
+     * @throws InterruptedException if the sink was interrupted while waiting for space.
+     */
+    void accept(ExtractedPage page) throws InterruptedException;
+}
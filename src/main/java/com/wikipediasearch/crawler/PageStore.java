@@ -0,0 +1,277 @@
+package com.wikipediasearch.crawler;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of extracted pages, written by the crawl stage and read back by the index
+ * stage, so indexing never needs the network and can be rerun (e.g. after an analyzer change)
+ * without crawling again. The file (pages.dat in the store directory) is
+ *
+ *   MAGIC, VERSION, then per page: int payload length, int CRC-32 of the payload, payload
+ *
+ * where the payload is url, title, headings, text, link count and (link, link text) pairs, each
+ * string an int byte count plus UTF-8. Each record reaches the file in one write, so a crash
+ * leaves at most a torn last record; reopening the store cuts it off. Pages fetched again after
+ * a resumed crawl (those since its last checkpoint) are appended again: readers get both
+ * copies in file order and should keep the later one.
+ * Incoming anchor text is not stored; the index stage gathers it from the stored links.
+ */
+public class PageStore implements PageSink, Closeable {
+
+    private static final String FILE_NAME = "pages.dat";
+    private static final int MAGIC = 0x57505354; // "WPST"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(64 * 1024);
+    private final CRC32 crc = new CRC32();
+    private long pageCount;
+
+    /**
+     * Opens the store in a directory for appending, creating it if needed. A torn record left
+     * at the end by a crash is truncated away.
+     *
+     * @throws IOException if the file cannot be opened or is not a page store.
+     */
+    public PageStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve(FILE_NAME);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                writeFully(header);
+            } else {
+                long end = HEADER_BYTES;
+                try (Reader reader = new Reader(file)) {
+                    while (reader.nextPayload() != null) pageCount++;
+                    end = reader.offset;
+                }
+                if (end < channel.size()) {
+                    System.err.println("Warning: Truncating " + (channel.size() - end) + " bytes of a torn record from " + file);
+                    channel.truncate(end);
+                }
+            }
+            channel.position(channel.size());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a page. Thread-safe; usable directly as the crawler's sink.
+     *
+     * @throws UncheckedIOException if the write fails (e.g. the disk is full), which stops the crawl.
+     */
+    @Override
+    public synchronized void accept(ExtractedPage page) {
+        try {
+            recordBuffer.reset();
+            DataOutputStream out = new DataOutputStream(recordBuffer);
+            writeString(out, page.getUrl());
+            writeString(out, page.getTitle());
+            writeString(out, page.getHeadings());
+            writeString(out, page.getText());
+            List<String> links = page.getLinks();
+            out.writeInt(links.size());
+            for (int i = 0; i < links.size(); i++) {
+                writeString(out, links.get(i));
+                writeString(out, page.getLinkText(i));
+            }
+            out.flush();
+
+            byte[] payload = recordBuffer.toByteArray();
+            crc.reset();
+            crc.update(payload);
+            ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+            record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+            writeFully(record);
+            pageCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append " + page.getUrl() + " to " + file, e);
+        }
+    }
+
+    /**
+     * Forces appended pages to the storage device (they survive a process crash without this,
+     * but not a power loss).
+     */
+    public synchronized void sync() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * @return Pages in the store, including earlier copies of re-crawled pages.
+     */
+    public synchronized long size() {
+        return pageCount;
+    }
+
+    /**
+     * @return Bytes in the store file.
+     */
+    public synchronized long sizeInBytes() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return true if the directory holds a page store.
+     */
+    public static boolean exists(Path directory) {
+        return Files.isRegularFile(directory.resolve(FILE_NAME));
+    }
+
+    /**
+     * Deletes the store in a directory, if there is one; other files in the directory stay.
+     *
+     * @return true if a store was deleted.
+     */
+    public static boolean delete(Path directory) throws IOException {
+        return Files.deleteIfExists(directory.resolve(FILE_NAME));
+    }
+
+    /**
+     * Moves the store of one directory into another in one atomic step, replacing the store
+     * there (if any); other files in both directories stay.
+     */
+    public static void move(Path source, Path target) throws IOException {
+        Files.createDirectories(target);
+        Files.move(source.resolve(FILE_NAME), target.resolve(FILE_NAME),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads every page of a store in the order they were appended. A torn last record (the
+     * writer crashed or is still running) ends the read with a warning.
+     *
+     * @param directory The store directory.
+     * @param sink      Receives each page (its incoming anchor text is empty).
+     * @return The number of pages read.
+     * @throws IOException if the store is missing, not a page store, or cannot be read.
+     */
+    public static long read(Path directory, PageSink sink) throws IOException, InterruptedException {
+        Path source = directory.resolve(FILE_NAME);
+        long pages = 0;
+        try (Reader reader = new Reader(source)) {
+            byte[] payload;
+            while ((payload = reader.nextPayload()) != null) {
+                sink.accept(decode(payload));
+                pages++;
+            }
+            if (reader.torn()) {
+                System.err.println("Warning: Ignoring a torn record at byte " + reader.offset + " of " + source);
+            }
+        }
+        return pages;
+    }
+
+    private static ExtractedPage decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        String url = readString(in);
+        String title = readString(in);
+        String headings = readString(in);
+        String text = readString(in);
+        int linkCount = in.readInt();
+        List<String> links = new ArrayList<>(linkCount);
+        List<String> linkTexts = new ArrayList<>(linkCount);
+        for (int i = 0; i < linkCount; i++) {
+            links.add(readString(in));
+            linkTexts.add(readString(in));
+        }
+        return new ExtractedPage(url, title, headings, text, links, linkTexts, "");
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    // Strings can exceed writeUTF's 64 KB limit (page text), so all are int length + UTF-8
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Sequential record reader; stops at the end of the file or at the first torn / corrupt record
+    private static final class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private final long fileSize;
+        private final CRC32 crc = new CRC32();
+        long offset = HEADER_BYTES;   // End of the last complete record
+
+        Reader(Path source) throws IOException {
+            fileSize = Files.size(source);
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source), 1 << 16));
+            try {
+                if (fileSize < HEADER_BYTES || in.readInt() != MAGIC) {
+                    throw new IOException("Not a page store: " + source);
+                }
+                int version = in.readInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported page store version " + version + " in " + source);
+                }
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        // The next record's payload, or null at the end of the complete records
+        byte[] nextPayload() throws IOException {
+            if (fileSize - offset < 8) return null;
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length < 0 || length > fileSize - offset - 8) return null; // Torn or corrupt length
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) return null;
+            offset += 8 + length;
+            return payload;
+        }
+
+        // Bytes were left after the last complete record
+        boolean torn() {
+            return offset < fileSize;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.wikipediasearch.crawler;
+
+/**
+ * FIFO queue of URLs waiting to be crawled.
+ * WebCrawler uses an in-memory frontier by default and a disk-backed one for resumable crawls.
+ */
+public interface UrlFrontier {
+
+    /**
+     * Appends a URL to the tail of the frontier.
+     * @param url The URL to enqueue.
+     * @return true if the URL was added.
+     */
+    boolean add(String url);
+
+    /**
+     * Removes and returns the URL at the head of the frontier.
+     * @return The next URL, or null if the frontier is empty.
+     */
+    String poll();
+
+    /**
+     * @return The number of URLs waiting in the frontier.
+     */
+    long size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+}
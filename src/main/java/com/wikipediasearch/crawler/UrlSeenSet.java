@@ -0,0 +1,236 @@
+package com.wikipediasearch.crawler;
+
+import com.wikipediasearch.util.Hashing;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Memory-efficient "have we seen this URL?" set for large crawls.
+ *
+ * Instead of full URL strings (hundreds of bytes each in a HashSet), it keeps:
+ * - a Bloom filter sized for the expected URL count and a false-positive budget, used as a
+ *   cheap pre-check (most discovered links are new, and the filter answers "no" without
+ *   touching the larger table), and
+ * - optionally, a 64-bit fingerprint per URL in a primitive LongHashSet, which makes the
+ *   answer exact up to a ~n/2^64 fingerprint collision chance.
+ *
+ * Without fingerprints the set costs only the Bloom bits (~9.6 bits/URL at 1%), and
+ * contains() may report an unseen URL as seen with roughly the configured probability.
+ * Not thread-safe.
+ */
+public class UrlSeenSet {
+
+    private final long[] bloomBits;
+    private final long bloomBitCount;
+    private final int hashCount;
+    private final double falsePositiveRate;
+    private final LongHashSet fingerprints; // null when running Bloom-only
+
+    private long size;
+
+    // Statistics
+    private long lookups;
+    private long bloomRejections;
+
+    /**
+     * @param expectedUrls      Number of URLs the set is sized for (it keeps working past it, with more false positives).
+     * @param falsePositiveRate Target Bloom filter false-positive rate, e.g. 0.01.
+     * @param storeFingerprints true to back the filter with exact 64-bit fingerprints.
+     */
+    public UrlSeenSet(long expectedUrls, double falsePositiveRate, boolean storeFingerprints) {
+        if (expectedUrls <= 0) {
+            throw new IllegalArgumentException("Expected URL count must be positive. Received: " + expectedUrls);
+        }
+        if (falsePositiveRate <= 0.0 || falsePositiveRate >= 1.0) {
+            throw new IllegalArgumentException("False-positive rate must be in (0, 1). Received: " + falsePositiveRate);
+        }
+        this.falsePositiveRate = falsePositiveRate;
+        // Optimal Bloom parameters: m = -n ln p / (ln 2)^2, k = (m / n) ln 2
+        long bits = (long) Math.ceil(-expectedUrls * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        bits = Math.max(64, (bits + 63) & ~63L);
+        this.bloomBitCount = bits;
+        this.bloomBits = new long[(int) Math.min(Integer.MAX_VALUE - 8, bits / 64)];
+        this.hashCount = Math.max(1, (int) Math.round((double) bits / expectedUrls * Math.log(2)));
+        this.fingerprints = storeFingerprints ? new LongHashSet((int) Math.min(expectedUrls, 1 << 28)) : null;
+    }
+
+    /**
+     * Marks a URL as seen.
+     * @return true if the URL was not seen before.
+     */
+    public boolean add(String url) {
+        long fingerprint = fingerprint(url);
+        boolean maybeSeen = bloomMightContain(fingerprint);
+        boolean added;
+        if (fingerprints != null) {
+            added = fingerprints.add(fingerprint);
+        } else {
+            added = !maybeSeen;
+        }
+        if (!maybeSeen) {
+            bloomAdd(fingerprint);
+        }
+        if (added) size++;
+        return added;
+    }
+
+    /**
+     * @return true if the URL has (probably, in Bloom-only mode) been seen.
+     */
+    public boolean contains(String url) {
+        lookups++;
+        long fingerprint = fingerprint(url);
+        if (!bloomMightContain(fingerprint)) {
+            bloomRejections++;
+            return false;
+        }
+        return fingerprints == null || fingerprints.contains(fingerprint);
+    }
+
+    /**
+     * @return Number of distinct URLs added.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return Heap bytes held by the Bloom filter and the fingerprint table.
+     */
+    public long memoryBytes() {
+        long bytes = (long) bloomBits.length * Long.BYTES;
+        if (fingerprints != null) bytes += fingerprints.memoryBytes();
+        return bytes;
+    }
+
+    /**
+     * @return Average bytes per stored URL (0 when empty).
+     */
+    public double bytesPerUrl() {
+        return size == 0 ? 0.0 : (double) memoryBytes() / size;
+    }
+
+    public long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * @return Lookups answered by the Bloom filter alone (URL definitely new).
+     */
+    public long getBloomRejections() {
+        return bloomRejections;
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UrlSeenSet{urls=%d, memory=%d bytes (%.1f bytes/url), bloomBits=%d, hashes=%d, fingerprints=%s, lookups=%d, bloomRejections=%d}",
+                size, memoryBytes(), bytesPerUrl(), bloomBitCount, hashCount, fingerprints != null, lookups, bloomRejections);
+    }
+
+    // --- Persistence (used by CrawlCheckpoint) ---
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(bloomBitCount);
+        out.writeInt(hashCount);
+        out.writeDouble(falsePositiveRate);
+        out.writeLong(size);
+        out.writeInt(bloomBits.length);
+        for (long word : bloomBits) {
+            out.writeLong(word);
+        }
+        out.writeBoolean(fingerprints != null);
+        if (fingerprints != null) {
+            fingerprints.writeTo(out);
+        }
+    }
+
+    public static UrlSeenSet readFrom(DataInput in) throws IOException {
+        long bitCount = in.readLong();
+        int hashes = in.readInt();
+        double rate = in.readDouble();
+        long size = in.readLong();
+        int words = in.readInt();
+        long[] bits = new long[words];
+        for (int i = 0; i < words; i++) {
+            bits[i] = in.readLong();
+        }
+        LongHashSet fingerprints = in.readBoolean() ? LongHashSet.readFrom(in) : null;
+        return new UrlSeenSet(bits, bitCount, hashes, rate, fingerprints, size);
+    }
+
+    private UrlSeenSet(long[] bloomBits, long bloomBitCount, int hashCount, double falsePositiveRate,
+                       LongHashSet fingerprints, long size) {
+        this.bloomBits = bloomBits;
+        this.bloomBitCount = bloomBitCount;
+        this.hashCount = hashCount;
+        this.falsePositiveRate = falsePositiveRate;
+        this.fingerprints = fingerprints;
+        this.size = size;
+    }
+
+    // --- Hashing ---
+
+    /**
+     * 64-bit fingerprint of a URL (Hashing.hash64).
+     * Never returns 0 (LongHashSet's empty marker).
+     */
+    static long fingerprint(String url) {
+        long h = Hashing.hash64(url);
+        return h == 0 ? 1 : h;
+    }
+
+    // Kirsch-Mitzenmacher: bit_i = h1 + i * h2, both derived from the fingerprint
+    private boolean bloomMightContain(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = (fingerprint >>> 32) | 1;
+        long usableBits = (long) bloomBits.length * 64;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, usableBits);
+            if ((bloomBits[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    private void bloomAdd(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = (fingerprint >>> 32) | 1;
+        long usableBits = (long) bloomBits.length * 64;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, usableBits);
+            bloomBits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Quick memory/throughput check: java com.wikipediasearch.crawler.UrlSeenSet [urlCount] [fpRate]
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        double rate = args.length > 1 ? Double.parseDouble(args[1]) : 0.01;
+        for (boolean exact : new boolean[]{true, false}) {
+            UrlSeenSet seen = new UrlSeenSet(count, rate, exact);
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                seen.add("https://en.wikipedia.org/wiki/Article_" + i);
+            }
+            long addNanos = System.nanoTime() - start;
+
+            int falsePositives = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                if (seen.contains("https://en.wikipedia.org/wiki/Unseen_" + i)) falsePositives++;
+            }
+            long lookupNanos = System.nanoTime() - start;
+
+            System.out.println(seen);
+            System.out.printf("  add: %.1f M/s, lookup: %.1f M/s, observed false positives: %.4f%%%n",
+                    count / (addNanos / 1e3), count / (lookupNanos / 1e3), 100.0 * falsePositives / count);
+        }
+    }
+}
@@ -1,35 +1,143 @@
 package com.wikipediasearch.crawler;
 
+import com.wikipediasearch.graph.LinkGraph;
+import com.wikipediasearch.graph.LinkGraphBuilder;
+import com.wikipediasearch.metrics.Counter;
+import com.wikipediasearch.metrics.MetricsRegistry;
+
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
-import org.jsoup.Connection;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
-public class WebCrawler {
+public class WebCrawler implements Closeable {
 
     // Configuration
-    private static final int MAX_PAGES_TO_CRAWL = 10;
+    private static final int MAX_PAGES_TO_CRAWL = 10;  // default page limit
     private static final int DELAY_MS = 1000;  //politeness
     private static final String WIKIPEDIA_PREFIX = "https://en.wikipedia.org/wiki/";
+    private static final Duration FETCH_TIMEOUT = Duration.ofMillis(5000);
+    private static final long MAX_BODY_BYTES = 4L * 1024 * 1024; // pages larger than this are truncated
+    private static final int CHECKPOINT_INTERVAL = 100; // pages between checkpoints of a resumable crawl
+    private static final int EXTRACT_THREADS = 2;       // parse response bodies while the crawl thread fetches
+    private static final int MAX_IN_FLIGHT = 4;         // fetched pages not yet handed to the sink
+    // Non-article namespaces (Talk, User, File, etc.) as they appear at the start of a page title
+    private static final Pattern NON_ARTICLE_NAMESPACE =
+            Pattern.compile("(Talk|User|Special|File|Wikipedia|Help|Template|Portal|Category):");
+    private static final double VISITED_FALSE_POSITIVE_RATE = 0.01; // Bloom pre-check budget (fingerprints keep answers exact)
+    private static final int MAX_ANCHOR_TARGETS = 200_000;      // link targets whose incoming anchor text is kept
+    private static final int MAX_ANCHOR_CHARS_PER_PAGE = 1000;  // incoming anchor text kept per target
+
+    // Metrics (fetch-level counters live in PageFetcher)
+    private static final Counter PAGES_FETCHED = MetricsRegistry.global().counter("crawler.pages.fetched");
+    private static final Counter PAGES_FAILED = MetricsRegistry.global().counter("crawler.pages.failed");
+    private static final Counter JSOUP_FALLBACKS = MetricsRegistry.global().counter("crawler.extract.jsoupFallbacks");
+    // Stateless, so one instance serves every thread extracting archived pages
+    private static final HtmlTextExtractor ARCHIVE_EXTRACTOR = new HtmlTextExtractor();
 
     // data structures
-    private Queue<String> urlsToVisit; // URLs waiting to be crawled
-    private Set<String> visitedUrls;   // URLs already crawled or attempted
+    private UrlFrontier urlsToVisit;   // URLs waiting to be crawled
+    private UrlSeenSet visitedUrls;    // URLs already crawled or attempted (fingerprints, not strings)
     private Map<String, String> crawledPages; // Stores results: URL -> Page Text
+    private final int maxPagesToCrawl;
+    private final Path stateDirectory; // Where frontier + checkpoints live (null = in-memory crawl)
+    private final PageFetcher fetcher = new PageFetcher("assignmentCrawler/1.0", FETCH_TIMEOUT, MAX_BODY_BYTES);
+    private final HtmlTextExtractor extractor = new HtmlTextExtractor();
+    // Incoming anchor text per article (in memory only: a resumed crawl collects it afresh)
+    private final AnchorTextCollector anchorTexts = newAnchorTextCollector();
+    // Article links between crawled pages and their targets, for PageRank (in memory only, like anchor text)
+    private final LinkGraphBuilder linkGraph = new LinkGraphBuilder();
+    private boolean useStreamingExtractor = true; // false = always build a Jsoup DOM
+    private CrawlArchive archive; // Receives raw responses (null = not archived)
+    private final AtomicLong jsoupFallbacks = new AtomicLong();
 
     // Constructor
     public WebCrawler() {
-        urlsToVisit = new LinkedList<>();
-        visitedUrls = new HashSet<>();
+        this(MAX_PAGES_TO_CRAWL);
+    }
+
+    public WebCrawler(int maxPagesToCrawl) {
+        if (maxPagesToCrawl <= 0) {
+            throw new IllegalArgumentException("Max pages to crawl must be positive. Received: " + maxPagesToCrawl);
+        }
+        this.maxPagesToCrawl = maxPagesToCrawl;
+        this.stateDirectory = null;
+        urlsToVisit = new InMemoryUrlFrontier();
+        visitedUrls = new UrlSeenSet(maxPagesToCrawl, VISITED_FALSE_POSITIVE_RATE, true);
+        crawledPages = new HashMap<>();
+    }
+
+    /**
+     * Creates a resumable crawler whose frontier lives on disk under {@code stateDirectory}.
+     * If a checkpoint exists there, the visited set and frontier position are restored
+     * from it and the next crawl() continues where the previous run stopped.
+     *
+     * @param maxPagesToCrawl Page limit (counts pages already visited before the restart).
+     * @param stateDirectory  Directory for the frontier file and checkpoints.
+     * @throws IOException if the state cannot be opened or the checkpoint is corrupt.
+     */
+    public WebCrawler(int maxPagesToCrawl, Path stateDirectory) throws IOException {
+        if (maxPagesToCrawl <= 0) {
+            throw new IllegalArgumentException("Max pages to crawl must be positive. Received: " + maxPagesToCrawl);
+        }
+        if (stateDirectory == null) {
+            throw new IllegalArgumentException("State directory cannot be null for a resumable crawl.");
+        }
+        this.maxPagesToCrawl = maxPagesToCrawl;
+        this.stateDirectory = stateDirectory;
         crawledPages = new HashMap<>();
+
+        CrawlCheckpoint checkpoint = CrawlCheckpoint.load(stateDirectory);
+        if (checkpoint != null) {
+            visitedUrls = checkpoint.getVisitedUrls();
+            urlsToVisit = new DiskUrlFrontier(stateDirectory, checkpoint.getFrontierGeneration(), checkpoint.getFrontierHead(),
+                    checkpoint.getFrontierTail(), checkpoint.getFrontierSize());
+            System.out.println("Resuming crawl from checkpoint: " + visitedUrls.size() + " visited, "
+                    + urlsToVisit.size() + " URLs queued.");
+        } else {
+            visitedUrls = new UrlSeenSet(maxPagesToCrawl, VISITED_FALSE_POSITIVE_RATE, true);
+            urlsToVisit = new DiskUrlFrontier(stateDirectory);
+        }
     }
 
 
     public Map<String, String> crawl(List<String> seedUrls) {
+        crawl(seedUrls, page -> crawledPages.put(page.getUrl(), page.getText()));
+        System.out.println("Stored content for " + crawledPages.size() + " pages.");
+        return crawledPages;
+    }
+
+    /**
+     * Crawls from the seeds and hands every extracted page to the sink instead of keeping
+     * its text in memory. A sink that blocks throttles the crawl (backpressure).
+     *
+     * @param seedUrls Starting URLs.
+     * @param sink     Receives each successfully fetched HTML page, with the anchor text of the
+     *                 links to it found on pages crawled before it.
+     * @return The number of pages handed to the sink.
+     */
+    public int crawl(List<String> seedUrls, PageSink sink) {
+        int pagesDelivered = 0;
         // Add initial seeds to the queue
         for (String seed : seedUrls) {
             if (isValidUrl(seed)) {
@@ -37,57 +145,324 @@ public class WebCrawler {
             }
         }
 
-        // Loop while queue has URLs and page limit not reached
-        while (!urlsToVisit.isEmpty() && visitedUrls.size() < MAX_PAGES_TO_CRAWL) {
-            String currentUrl = urlsToVisit.poll(); // Get next URL from queue
-
-            // Skip if already visited or outside scope
-            if (visitedUrls.contains(currentUrl)) continue;
-            if (!currentUrl.startsWith(WIKIPEDIA_PREFIX)) continue;
+        // The crawl thread only fetches; bodies are parsed on the extract threads as they
+        // download, and the pages are handed over in crawl order
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService extractPool = Executors.newFixedThreadPool(EXTRACT_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "crawl-extract-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<InFlightPage> inFlight = new ArrayDeque<>();
+        int nextCheckpoint = CHECKPOINT_INTERVAL;
+        String currentUrl = null;
+        try {
+            while (true) {
+                while (!inFlight.isEmpty() && inFlight.peekFirst().extraction.isDone()) {
+                    pagesDelivered += deliver(inFlight.pollFirst(), sink);
+                }
 
-            try {
-                // Mark as visited *before* fetching
-                visitedUrls.add(currentUrl);
-                System.out.println("Crawling (" + visitedUrls.size() + "/" + MAX_PAGES_TO_CRAWL + "): " + currentUrl);
-
-                // Fetch the page content using Jsoup
-                Connection.Response response = Jsoup.connect(currentUrl)
-                        .userAgent("assignmentCrawler/1.0")
-                        .timeout(5000)
-                        .execute();
-
-                // Skip if content is not HTML
-                if (!response.contentType().toLowerCase().contains("text/html")) continue;
-
-                // Parse HTML
-                Document doc = response.parse();
-                // Extract text from the body
-                String pageText = doc.body().text();
-                // Store URL and extracted text
-                crawledPages.put(currentUrl, pageText);
-
-                // Find all links on the page
-                Elements linksOnPage = doc.select("a[href]");
-                // Process each link
-                for (Element link : linksOnPage) {
-                    String absUrl = link.absUrl("href"); // Get absolute URL
-                    // If link is valid and not seen, add to queue
-                    if (isValidLink(absUrl)) {
-                        urlsToVisit.add(absUrl);
+                // Only fully processed pages (their links queued) may be checkpointed as visited
+                if (stateDirectory != null && pagesDelivered >= nextCheckpoint) {
+                    while (!inFlight.isEmpty()) pagesDelivered += deliver(inFlight.pollFirst(), sink);
+                    try {
+                        checkpoint();
+                    } catch (IOException e) {
+                        System.err.println("Error writing crawl checkpoint: " + e.getMessage());
                     }
+                    nextCheckpoint = pagesDelivered + CHECKPOINT_INTERVAL;
+                }
+
+                // Nothing to fetch (yet): wait for the oldest page, whose links may refill the queue
+                if (urlsToVisit.isEmpty() || visitedUrls.size() >= maxPagesToCrawl || inFlight.size() >= MAX_IN_FLIGHT) {
+                    if (inFlight.isEmpty()) break;
+                    pagesDelivered += deliver(inFlight.pollFirst(), sink);
+                    continue;
                 }
 
-                // Wait before next request (politeness)
-                Thread.sleep(DELAY_MS);
+                currentUrl = urlsToVisit.poll(); // Get next URL from queue
+
+                // Skip if already visited or outside scope
+                if (visitedUrls.contains(currentUrl)) continue;
+                if (!currentUrl.startsWith(WIKIPEDIA_PREFIX)) continue;
+
+                try {
+                    // Mark as visited *before* fetching
+                    visitedUrls.add(currentUrl);
+                    System.out.println("Crawling (" + visitedUrls.size() + "/" + maxPagesToCrawl + "): " + currentUrl);
+
+                    // Fetch over the shared HTTP/2 client; the body is left to the extract task. A page
+                    // already in the archive is fetched only if it changed since it was archived
+                    CrawlArchive.Record archived = (archive != null) ? archive.latest(currentUrl) : null;
+                    PageFetcher.FetchResult response = fetcher.fetch(currentUrl, (archived != null) ? archived.getValidators() : null);
+                    boolean handedOff = false;
+                    try {
+                        if (response.isNotModified() && archived != null) {
+                            // Unchanged: extract the archived copy (still a request, so the delay below applies)
+                            InFlightPage page = new InFlightPage(archived);
+                            page.extraction = extractPool.submit(() -> extractArchived(archived));
+                            inFlight.addLast(page);
+                        } else {
+                            if (response.getStatusCode() != 200) {
+                                System.err.println("Error or skip for URL " + currentUrl + ": HTTP status " + response.getStatusCode());
+                                PAGES_FAILED.increment();
+                                continue;
+                            }
+                            // Skip if content is not HTML
+                            if (!response.isHtml()) continue;
+
+                            InFlightPage page = new InFlightPage(currentUrl, response, archive != null);
+                            page.extraction = extractPool.submit(() -> extract(page));
+                            inFlight.addLast(page);
+                            handedOff = true;
+                        }
+                    } finally {
+                        if (!handedOff) response.close();
+                    }
+
+                    // Wait before next request (politeness)
+                    Thread.sleep(DELAY_MS);
 
-            } catch (IOException | InterruptedException | IllegalArgumentException e) {
-                System.err.println("Error or skip for URL " + currentUrl + ": " + e.getMessage());
+                } catch (IOException | IllegalArgumentException e) {
+                    System.err.println("Error or skip for URL " + currentUrl + ": " + e.getMessage());
+                    PAGES_FAILED.increment();
+                }
+            }
+        } catch (InterruptedException e) {
+            System.err.println("Crawl interrupted at URL " + currentUrl);
+            Thread.currentThread().interrupt();
+            for (InFlightPage page : inFlight) page.abandon();
+        } finally {
+            extractPool.shutdownNow();
+        }
+
+        if (stateDirectory != null) {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                System.err.println("Error writing final crawl checkpoint: " + e.getMessage());
             }
         }
 
         System.out.println("\nCrawling complete. Visited " + visitedUrls.size() + " unique pages.");
-        System.out.println("Stored content for " + crawledPages.size() + " pages.");
-        return crawledPages;
+        System.out.println("Visited set: " + visitedUrls);
+        System.out.println("Fetcher: " + fetcher);
+        if (jsoupFallbacks.get() > 0) System.out.println("Jsoup fallbacks: " + jsoupFallbacks.get());
+        return pagesDelivered;
+    }
+
+    /**
+     * Waits for a page's extraction, then archives it, hands it to the sink and queues its links.
+     * Runs on the crawl thread, which alone touches the frontier, anchor text and archive order.
+     *
+     * @return 1 if the page was handed over, 0 if it failed.
+     */
+    private int deliver(InFlightPage inFlight, PageSink sink) throws InterruptedException {
+        String currentUrl = inFlight.url;
+        ExtractedPage page;
+        try {
+            page = inFlight.extraction.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException || cause instanceof IllegalArgumentException || cause instanceof InterruptedException) {
+                System.err.println("Error or skip for URL " + currentUrl + ": " + cause.getMessage());
+                PAGES_FAILED.increment();
+                return 0;
+            }
+            if (cause instanceof RuntimeException runtime) throw runtime;
+            if (cause instanceof Error error) throw error;
+            throw new IllegalStateException("Extraction failed for " + currentUrl, cause);
+        }
+        if (archive != null && !inFlight.archived) {
+            archive.append(currentUrl, inFlight.finalUrl, inFlight.statusCode, inFlight.headers,
+                    inFlight.body.toByteArray(), inFlight.fetchTime);
+        }
+
+        // Hand the page over (may block if the consumer is behind)
+        sink.accept(page.withUrlAndAnchorText(currentUrl, anchorTexts.get(currentUrl)));
+        linkGraph.addPage(currentUrl);
+        PAGES_FETCHED.increment();
+
+        // Process each link on the page
+        List<String> links = page.getLinks();
+        for (int i = 0; i < links.size(); i++) {
+            String absUrl = links.get(i);
+            String target = articleTarget(currentUrl, absUrl);
+            if (target != null) {
+                linkGraph.addLink(currentUrl, target);
+                anchorTexts.add(target, page.getLinkText(i));
+            }
+            // If link is valid and not seen, add to queue
+            if (isValidLink(absUrl)) {
+                urlsToVisit.add(absUrl);
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Persists the visited set and frontier position so a restarted crawl can resume.
+     * No-op for an in-memory crawler.
+     */
+    public void checkpoint() throws IOException {
+        if (stateDirectory == null) return;
+        DiskUrlFrontier frontier = (DiskUrlFrontier) urlsToVisit;
+        frontier.compactIfNeeded();
+        frontier.sync();
+        CrawlCheckpoint.write(stateDirectory, visitedUrls, frontier);
+    }
+
+    /**
+     * Closes the disk frontier (if any) and shuts down the HTTP client.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (urlsToVisit instanceof DiskUrlFrontier diskFrontier) {
+                diskFrontier.close();
+            }
+        } finally {
+            fetcher.close();
+        }
+    }
+
+    /**
+     * Extract task: parses a response body while it downloads, with the streaming extractor
+     * or Jsoup. The body is copied aside only for the archive, and a page the streaming
+     * extractor gives up on is parsed again with Jsoup from that copy, or else fetched again.
+     * Closes the response.
+     */
+    private ExtractedPage extract(InFlightPage inFlight) throws IOException, InterruptedException {
+        if (!inFlight.started.compareAndSet(false, true)) return null; // Abandoned before it ran
+        PageFetcher.FetchResult response = inFlight.response;
+        Charset charset = response.getCharset();
+        try (response) {
+            InputStream body = (inFlight.body != null) ? new TeeInputStream(response.getBody(), inFlight.body) : response.getBody();
+            if (!useStreamingExtractor) return extractWithJsoup(inFlight.url, inFlight.finalUrl, body, charset);
+            ExtractedPage page = extractor.extract(new InputStreamReader(body, charset), inFlight.finalUrl);
+            if (page != null) return page;
+            body.transferTo(OutputStream.nullOutputStream()); // The archive keeps the whole body
+        }
+
+        jsoupFallbacks.incrementAndGet();
+        JSOUP_FALLBACKS.increment();
+        if (inFlight.body != null) {
+            return extractWithJsoup(inFlight.url, inFlight.finalUrl, new String(inFlight.body.toByteArray(), charset));
+        }
+        try (PageFetcher.FetchResult again = fetcher.fetch(inFlight.url)) {
+            if (again.getStatusCode() != 200) throw new IOException("HTTP status " + again.getStatusCode() + " on fetching again");
+            return extractWithJsoup(inFlight.url, again.getFinalUrl(), again.getBody(), again.getCharset());
+        }
+    }
+
+    /**
+     * The original DOM-based extraction: body text and headings, plus every a[href] as an
+     * absolute URL with its text. Reference and navigation markup is removed first, as the
+     * streaming extractor skips it, so both keep the same links.
+     */
+    public static ExtractedPage extractWithJsoup(String url, String baseUrl, String html) {
+        return extractWithJsoup(url, Jsoup.parse(html, baseUrl));
+    }
+
+    /**
+     * Same as {@link #extractWithJsoup(String, String, String)}, parsing the page as it is read.
+     */
+    static ExtractedPage extractWithJsoup(String url, String baseUrl, InputStream html, Charset charset) throws IOException {
+        return extractWithJsoup(url, Jsoup.parse(html, charset.name(), baseUrl));
+    }
+
+    private static ExtractedPage extractWithJsoup(String url, Document doc) {
+        doc.select(HtmlTextExtractor.SKIPPED_ELEMENTS).remove();
+        List<String> links = new ArrayList<>();
+        List<String> linkTexts = new ArrayList<>();
+        for (Element link : doc.select("a[href]")) {
+            links.add(link.absUrl("href"));
+            linkTexts.add(link.text());
+        }
+        String headings = String.join(" ", doc.select("h1, h2, h3, h4, h5, h6").eachText());
+        String text = (doc.body() != null) ? doc.body().text() : "";
+        return new ExtractedPage(url, doc.title(), headings, text, links, linkTexts, "");
+    }
+
+    /**
+     * Extracts an archived page the way crawl() extracts a fetched one (streaming extractor,
+     * Jsoup as the fallback). Thread-safe. Its incoming anchor text is left empty: the index
+     * stage gathers it from the stored links.
+     */
+    public static ExtractedPage extractArchived(CrawlArchive.Record record) {
+        String html = record.getText();
+        ExtractedPage page = ARCHIVE_EXTRACTOR.extract(html, record.getFinalUrl());
+        if (page == null) {
+            JSOUP_FALLBACKS.increment();
+            page = extractWithJsoup(record.getUrl(), record.getFinalUrl(), html);
+        }
+        return page.withUrlAndAnchorText(record.getUrl(), "");
+    }
+
+    /**
+     * @return The article a link points to (fragment dropped), or null for self-links and links
+     *         outside the article namespace: the links that feed anchor text and the link graph.
+     */
+    public static String articleTarget(String sourceUrl, String targetUrl) {
+        if (targetUrl == null || !targetUrl.startsWith(WIKIPEDIA_PREFIX)) return null;
+        int fragment = targetUrl.indexOf('#');
+        String target = (fragment >= 0) ? targetUrl.substring(0, fragment) : targetUrl;
+        if (target.equals(sourceUrl) || !isArticleTitle(target.substring(WIKIPEDIA_PREFIX.length()))) return null;
+        return target;
+    }
+
+    /**
+     * @return An empty collector with the crawler's memory bounds, for gathering anchor text
+     *         from stored pages the way a crawl does.
+     */
+    public static AnchorTextCollector newAnchorTextCollector() {
+        return new AnchorTextCollector(MAX_ANCHOR_TARGETS, MAX_ANCHOR_CHARS_PER_PAGE);
+    }
+
+    /**
+     * @return The anchor text of the links to a page found on all pages crawled so far
+     *         ("" if none). After a crawl this covers links from pages crawled after the
+     *         page itself, which the copy handed to the sink could not include.
+     */
+    public String getIncomingAnchorText(String url) {
+        return anchorTexts.get(url);
+    }
+
+    /**
+     * @return The article link graph of the pages crawled so far: crawled pages plus the
+     *         articles they link to (see {@link com.wikipediasearch.graph.PageRank}).
+     */
+    public LinkGraph getLinkGraph() {
+        return linkGraph.build();
+    }
+
+    /**
+     * @param useStreamingExtractor false to always parse pages into a Jsoup DOM.
+     */
+    public void setUseStreamingExtractor(boolean useStreamingExtractor) {
+        this.useStreamingExtractor = useStreamingExtractor;
+    }
+
+    /**
+     * @param archive Receives the raw response of every HTML page crawled (null for none), so
+     *                the pages can be extracted and indexed again without crawling again.
+     */
+    public void setArchive(CrawlArchive archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * @return URLs waiting in the frontier.
+     */
+    public long getFrontierSize() {
+        return urlsToVisit.size();
+    }
+
+    /**
+     * @return URLs crawled or attempted so far.
+     */
+    public long getVisitedCount() {
+        return visitedUrls.size();
     }
 
     /** Checks basic URL validity (starts with http). */
@@ -102,12 +477,105 @@ public class WebCrawler {
         if (!url.startsWith(WIKIPEDIA_PREFIX)) return false;
         if (url.contains("#")) return false;
         // Ignore non-article namespaces (Talk, User, File, etc.)
-        if (url.matches(".*/wiki/(Talk|User|Special|File|Wikipedia|Help|Template|Portal|Category):.*")) return false;
+        if (!isArticleTitle(url.substring(WIKIPEDIA_PREFIX.length()))) return false;
         if (visitedUrls.contains(url)) return false;           // Ignore if already visited
 
         return true;
     }
 
+    /**
+     * Checks whether a page title (or the path after /wiki/) is in the article namespace,
+     * i.e. not Talk:, User:, File:, etc. Shared with the offline dump reader so both
+     * sources index the same kind of pages.
+     */
+    public static boolean isArticleTitle(String title) {
+        return title != null && !NON_ARTICLE_NAMESPACE.matcher(title).lookingAt();
+    }
+
+    /**
+     * Builds the canonical article URL for a page title (spaces become underscores),
+     * matching the URLs the crawler records.
+     */
+    public static String articleUrl(String title) {
+        return WIKIPEDIA_PREFIX + title.trim().replace(' ', '_');
+    }
+
+    // --- In-flight pages ---
+
+    /** A fetched page whose body an extract task is reading, or an archived copy found unchanged. */
+    private static final class InFlightPage {
+        final String url;
+        final String finalUrl;
+        final int statusCode;
+        final Map<String, List<String>> headers;
+        final Instant fetchTime = Instant.now();
+        final PageFetcher.FetchResult response; // null for an archived copy
+        final ByteArrayOutputStream body; // Copy of the body for the archive (null if not archived)
+        final boolean archived;           // The archive already holds this copy
+        final AtomicBoolean started = new AtomicBoolean();
+        Future<ExtractedPage> extraction;
+
+        InFlightPage(String url, PageFetcher.FetchResult response, boolean keepBody) {
+            this.url = url;
+            this.finalUrl = response.getFinalUrl();
+            this.statusCode = response.getStatusCode();
+            this.headers = response.getHeaders();
+            this.response = response;
+            this.body = keepBody ? new ByteArrayOutputStream() : null;
+            this.archived = false;
+        }
+
+        // The server answered 304: the archived copy is current
+        InFlightPage(CrawlArchive.Record record) {
+            this.url = record.getUrl();
+            this.finalUrl = record.getFinalUrl();
+            this.statusCode = record.getStatusCode();
+            this.headers = record.getHeaders();
+            this.response = null;
+            this.body = null;
+            this.archived = true;
+        }
+
+        /** Stops the extract task, or releases the response if the task never ran. */
+        void abandon() {
+            if (response == null) {
+                extraction.cancel(true);
+            } else if (started.compareAndSet(false, true)) {
+                try {
+                    response.close();
+                } catch (IOException e) {
+                    // Nothing more to release
+                }
+            } else {
+                extraction.cancel(true);
+            }
+        }
+    }
+
+    // Copies what is read from a stream to an output (the archive's copy of a streamed body)
+    private static final class TeeInputStream extends FilterInputStream {
+        private final OutputStream copy;
+
+        TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) copy.write(b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) copy.write(b, off, n);
+            return n;
+        }
+    }
+
     public static void main(String[] args) {
         WebCrawler crawler = new WebCrawler();
         List<String> seeds = Arrays.asList(
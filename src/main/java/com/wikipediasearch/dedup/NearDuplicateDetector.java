@@ -0,0 +1,177 @@
+package com.wikipediasearch.dedup;
+
+import com.wikipediasearch.util.MemoryEstimates;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds near-duplicate documents by SimHash signature using a banded LSH table.
+ *
+ * With a similarity threshold t, two signatures are duplicates when they differ in at most
+ * k = floor(64 * (1 - t)) bits. The 64 bits are split into k + 1 bands; by the pigeonhole
+ * principle any such pair agrees exactly on at least one band, so looking up each band of a
+ * new signature finds every duplicate candidate without scanning all stored signatures.
+ * Not thread-safe (Index5 calls it under its write lock).
+ */
+public class NearDuplicateDetector {
+
+    /** Lowest supported threshold; below it bands get so narrow that buckets hold most documents. */
+    public static final double MIN_THRESHOLD = 0.8;
+
+    private final double similarityThreshold;
+    private final int maxHammingDistance;
+    private final int[] bandShift; // Bit offset of each band
+    private final long[] bandMask; // Mask of each band (after shifting)
+
+    // (band index, band value) -> docIds whose signature has that value in that band
+    private final Map<Long, List<Integer>> buckets = new HashMap<>();
+    private long[] signatures = new long[1024]; // docId -> signature
+    private int maxDocId = -1;
+
+    // Statistics
+    private long candidatesChecked;
+    private long duplicatesFound;
+
+    /**
+     * @param similarityThreshold Minimum SimHash similarity (fraction of equal bits) for two
+     *                            documents to count as duplicates, in [0.8, 1.0].
+     */
+    public NearDuplicateDetector(double similarityThreshold) {
+        if (similarityThreshold < MIN_THRESHOLD || similarityThreshold > 1.0) {
+            throw new IllegalArgumentException("Similarity threshold must be in [" + MIN_THRESHOLD + ", 1.0]. Received: " + similarityThreshold);
+        }
+        this.similarityThreshold = similarityThreshold;
+        this.maxHammingDistance = (int) Math.floor(64 * (1.0 - similarityThreshold) + 1e-9);
+
+        int bands = maxHammingDistance + 1;
+        bandShift = new int[bands];
+        bandMask = new long[bands];
+        int offset = 0;
+        for (int b = 0; b < bands; b++) {
+            int width = 64 / bands + (b < 64 % bands ? 1 : 0);
+            bandShift[b] = offset;
+            bandMask[b] = (width == 64) ? -1L : (1L << width) - 1;
+            offset += width;
+        }
+    }
+
+    /**
+     * Looks for an already-registered document within the similarity threshold.
+     *
+     * @param signature SimHash of the new document.
+     * @return The docId of a near-duplicate, or -1 if there is none.
+     */
+    public int findDuplicate(long signature) {
+        for (int b = 0; b < bandShift.length; b++) {
+            List<Integer> bucket = buckets.get(bucketKey(b, signature));
+            if (bucket == null) continue;
+            for (int docId : bucket) {
+                candidatesChecked++;
+                if (SimHash.hammingDistance(signature, signatures[docId]) <= maxHammingDistance) {
+                    duplicatesFound++;
+                    return docId;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Registers a document that was indexed.
+     *
+     * @param docId     The document's id in the index.
+     * @param signature Its SimHash.
+     */
+    public void add(int docId, long signature) {
+        if (docId < 0) {
+            throw new IllegalArgumentException("Document ID cannot be negative. Received: " + docId);
+        }
+        if (docId >= signatures.length) {
+            signatures = Arrays.copyOf(signatures, Math.max(signatures.length * 2, docId + 1));
+        }
+        signatures[docId] = signature;
+        maxDocId = Math.max(maxDocId, docId);
+        for (int b = 0; b < bandShift.length; b++) {
+            buckets.computeIfAbsent(bucketKey(b, signature), k -> new ArrayList<>(2)).add(docId);
+        }
+    }
+
+    /**
+     * Unregisters a document (deleted from the index), so later pages are not collapsed into it.
+     *
+     * @param docId The document's id, as passed to {@link #add(int, long)}.
+     */
+    public void remove(int docId) {
+        if (docId < 0 || docId > maxDocId) return;
+        long signature = signatures[docId];
+        for (int b = 0; b < bandShift.length; b++) {
+            Long key = bucketKey(b, signature);
+            List<Integer> bucket = buckets.get(key);
+            if (bucket == null) continue;
+            bucket.remove(Integer.valueOf(docId));
+            if (bucket.isEmpty()) buckets.remove(key);
+        }
+    }
+
+    /**
+     * Forgets every registered document (used when the index is rebuilt).
+     */
+    public void clear() {
+        buckets.clear();
+        signatures = new long[1024];
+        maxDocId = -1;
+    }
+
+    public double getSimilarityThreshold() {
+        return similarityThreshold;
+    }
+
+    public int getMaxHammingDistance() {
+        return maxHammingDistance;
+    }
+
+    public int getBandCount() {
+        return bandShift.length;
+    }
+
+    public long getCandidatesChecked() {
+        return candidatesChecked;
+    }
+
+    public long getDuplicatesFound() {
+        return duplicatesFound;
+    }
+
+    /**
+     * @return Estimated heap bytes of the signatures and band buckets.
+     */
+    public long memoryBytes() {
+        long bytes = MemoryEstimates.longArray(signatures.length) + MemoryEstimates.hashMap(buckets.size());
+        for (List<Integer> bucket : buckets.values()) {
+            bytes += MemoryEstimates.BOXED + MemoryEstimates.arrayList(bucket.size()); // Long key, list
+            for (int docId : bucket) bytes += MemoryEstimates.boxedInteger(docId);
+        }
+        return bytes;
+    }
+
+    private long bucketKey(int band, long signature) {
+        long value = (signature >>> bandShift[band]) & bandMask[band];
+        // Bands are at most 32 bits wide (>= 2 bands), so the band index fits above them
+        return ((long) band << 40) ^ value;
+    }
+
+    @Override
+    public String toString() {
+        return "NearDuplicateDetector{threshold=" + similarityThreshold +
+                ", maxHamming=" + maxHammingDistance +
+                ", bands=" + bandShift.length +
+                ", documents=" + (maxDocId + 1) +
+                ", candidatesChecked=" + candidatesChecked +
+                ", duplicatesFound=" + duplicatesFound +
+                '}';
+    }
+}
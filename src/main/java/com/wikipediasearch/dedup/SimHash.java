@@ -0,0 +1,59 @@
+package com.wikipediasearch.dedup;
+
+import com.wikipediasearch.similarity.TFIDFCalculator;
+import com.wikipediasearch.util.Hashing;
+
+import java.util.Map;
+
+/**
+ * 64-bit SimHash (Charikar) of a document's term-frequency vector.
+ * Similar documents get signatures that differ in few bits, so near-duplicates
+ * can be found by Hamming distance instead of comparing full term vectors.
+ */
+public final class SimHash {
+
+    private SimHash() {
+    }
+
+    /**
+     * Computes the signature from the terms Index5 already produced for the document.
+     * Each term votes on every bit with weight 1 + log10(tf), the same TF weight used for ranking.
+     *
+     * @param termFrequencies Processed term -> frequency in the document.
+     * @return The 64-bit signature (0 for an empty document).
+     */
+    public static long compute(Map<String, Integer> termFrequencies) {
+        if (termFrequencies == null || termFrequencies.isEmpty()) {
+            return 0L;
+        }
+        double[] votes = new double[64];
+        for (Map.Entry<String, Integer> entry : termFrequencies.entrySet()) {
+            long hash = Hashing.hash64(entry.getKey());
+            double weight = TFIDFCalculator.calculateTfWeight(entry.getValue());
+            for (int bit = 0; bit < 64; bit++) {
+                votes[bit] += ((hash >>> bit) & 1L) != 0 ? weight : -weight;
+            }
+        }
+        long signature = 0L;
+        for (int bit = 0; bit < 64; bit++) {
+            if (votes[bit] > 0) {
+                signature |= 1L << bit;
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * @return Number of differing bits between two signatures.
+     */
+    public static int hammingDistance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * @return Estimated similarity in [0, 1]: the fraction of matching signature bits.
+     */
+    public static double similarity(long a, long b) {
+        return 1.0 - hammingDistance(a, b) / 64.0;
+    }
+}
@@ -0,0 +1,369 @@
+package com.wikipediasearch.distributed;
+
+import com.wikipediasearch.invertedIndex.Index5;
+import com.wikipediasearch.invertedIndex.QueryExpansion;
+import com.wikipediasearch.metrics.Counter;
+import com.wikipediasearch.metrics.Histogram;
+import com.wikipediasearch.metrics.MetricsRegistry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scatter-gather search over ShardServer processes.
+ *
+ * Each query takes two round trips to every shard:
+ * 1. term statistics: each shard analyzes the query and reports its N and the df of the
+ *    processed terms; the coordinator sums them into collection-wide N and df,
+ * 2. search: each shard scores its documents with those statistics and returns its top k,
+ *    which the coordinator merges with a heap.
+ * A query with terms no shard contains takes one more round trip in between: every shard
+ * reports its fuzzy candidates for those terms with their df, the coordinator picks the
+ * spelling variants by collection df (see {@link QueryExpansion}) and sends the same variants
+ * to every shard with the search, so the results match a single index's fuzzy expansion.
+ * {@link #syncStatistics()} additionally pushes the full collection df table to every shard
+ * so document norms use global IDF too; after that, scores match a single Index5 over all pages.
+ *
+ * A shard that does not answer a phase within the per-shard timeout (or fails) is left out of
+ * the rest of the query and the response is marked partial.
+ * Global docIds are {@code localDocId * shardCount + shard}, as in ShardedIndex.
+ */
+public class SearchCoordinator implements Closeable {
+
+    private static final Counter SHARD_FAILURES = MetricsRegistry.global().counter("distributed.shard.failures");
+    private static final Counter PARTIAL_RESPONSES = MetricsRegistry.global().counter("distributed.query.partial");
+    private static final Histogram QUERY_LATENCY = MetricsRegistry.global().histogram("distributed.query.latencyNanos");
+    // Pulling df tables and recomputing norms is far slower than a query
+    private static final int SYNC_TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+    private final List<ShardClient> shards = new ArrayList<>();
+    private final int timeoutMillis;
+    private final ExecutorService fanOutPool;
+    private volatile boolean fuzzyExpansion = true;
+
+    /**
+     * @param shardAddresses ShardServer addresses; list position is the shard number.
+     * @param timeoutMillis  Time each shard gets to answer each phase of a query.
+     */
+    public SearchCoordinator(List<InetSocketAddress> shardAddresses, int timeoutMillis) {
+        if (shardAddresses == null || shardAddresses.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard address is required.");
+        }
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive: " + timeoutMillis);
+        }
+        for (InetSocketAddress address : shardAddresses) {
+            shards.add(new ShardClient(address));
+        }
+        this.timeoutMillis = timeoutMillis;
+        AtomicInteger counter = new AtomicInteger();
+        this.fanOutPool = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "coordinator-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // --- Statistics ---
+
+    /**
+     * Pulls every shard's df table, sums them and installs the totals on all shards, which then
+     * recompute their document norms. Call after the shards have loaded (and again after they
+     * change). Needs every shard: throws if any of them fails.
+     *
+     * @return The collection statistics installed.
+     */
+    public TermStatistics syncStatistics() throws IOException {
+        List<TermStatistics> tables = new ArrayList<>();
+        for (ShardResult<TermStatistics> result : fanOut(shards(), SYNC_TIMEOUT_MILLIS,
+                shard -> () -> shards.get(shard).docFrequencyTable(SYNC_TIMEOUT_MILLIS))) {
+            tables.add(requireAnswer(result));
+        }
+        TermStatistics collection = TermStatistics.sum(tables);
+        ShardCall<Void> install = shard -> () -> {
+            shards.get(shard).installStatistics(collection, SYNC_TIMEOUT_MILLIS);
+            return null;
+        };
+        for (ShardResult<Void> result : fanOut(shards(), SYNC_TIMEOUT_MILLIS, install)) {
+            requireAnswer(result);
+        }
+        System.out.println("Installed collection statistics on " + shards.size() + " shards: " + collection);
+        return collection;
+    }
+
+    private <T> T requireAnswer(ShardResult<T> result) throws IOException {
+        if (result.failure != null) {
+            throw new IOException("Shard " + result.shard + " (" + shards.get(result.shard).getAddress()
+                    + ") failed during statistics sync: " + result.failure, result.failure);
+        }
+        return result.value;
+    }
+
+    // --- Searching ---
+
+    /**
+     * Ranked search across all shards.
+     *
+     * @param query The query text.
+     * @param k     Maximum number of results.
+     * @return The merged top k, plus which shards (if any) were left out.
+     */
+    public SearchResponse search(String query, int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        long start = System.nanoTime();
+        List<Integer> failed = new ArrayList<>();
+
+        // Phase 1: per-shard N and df of the query terms
+        List<Integer> live = new ArrayList<>();
+        List<TermStatistics> parts = new ArrayList<>();
+        for (ShardResult<TermStatistics> result : fanOut(shards(), timeoutMillis,
+                shard -> () -> shards.get(shard).termStatistics(query, timeoutMillis))) {
+            if (result.failure != null) {
+                failed.add(result.shard);
+            } else {
+                live.add(result.shard);
+                parts.add(result.value);
+            }
+        }
+        TermStatistics termStatistics = TermStatistics.sum(parts);
+
+        // Misspelled queries only: variants of the terms no shard contains, chosen by collection df
+        QueryExpansion expansion = QueryExpansion.none();
+        List<String> missing = new ArrayList<>();
+        if (fuzzyExpansion) {
+            for (String term : termStatistics.getDocFrequencies().keySet()) {
+                if (!termStatistics.containsTerm(term)) missing.add(term);
+            }
+        }
+        if (!missing.isEmpty() && !live.isEmpty()) {
+            Map<String, Map<String, Integer>> candidates = new LinkedHashMap<>();
+            for (String term : missing) {
+                candidates.put(term, new LinkedHashMap<>());
+            }
+            List<TermStatistics> variantParts = new ArrayList<>();
+            List<Integer> expanded = new ArrayList<>();
+            for (ShardResult<ShardClient.FuzzyCandidates> result : fanOut(live, timeoutMillis,
+                    shard -> () -> shards.get(shard).fuzzyCandidates(missing, timeoutMillis))) {
+                if (result.failure != null) {
+                    failed.add(result.shard);
+                } else {
+                    expanded.add(result.shard);
+                    QueryExpansion.mergeCandidates(candidates, result.value.candidates);
+                    variantParts.add(result.value.statistics);
+                }
+            }
+            live = expanded;
+            TermStatistics variantStatistics = TermStatistics.sum(variantParts);
+            expansion = QueryExpansion.select(candidates, variantStatistics::docFrequency);
+            termStatistics = termStatistics.withTerms(variantStatistics);
+        }
+        TermStatistics statistics = termStatistics;
+        QueryExpansion queryExpansion = expansion;
+
+        // Phase 2: per-shard top k under the collection statistics, merged
+        List<List<Index5.SearchResult>> perShard = new ArrayList<>();
+        List<Integer> answered = new ArrayList<>();
+        if (!live.isEmpty() && statistics.documentCount() > 0) {
+            for (ShardResult<List<Index5.SearchResult>> result : fanOut(live, timeoutMillis,
+                    shard -> () -> shards.get(shard).search(query, k, statistics, queryExpansion, timeoutMillis))) {
+                if (result.failure != null) {
+                    failed.add(result.shard);
+                } else {
+                    answered.add(result.shard);
+                    perShard.add(result.value);
+                }
+            }
+        }
+
+        List<Index5.SearchResult> merged = mergeTopK(perShard, answered, k);
+        Collections.sort(failed);
+        if (!failed.isEmpty()) PARTIAL_RESPONSES.increment();
+        QUERY_LATENCY.recordSince(start);
+        return new SearchResponse(merged, failed, shards.size());
+    }
+
+    /**
+     * Enables or disables fuzzy expansion of misspelled query terms (on by default), as
+     * {@link Index5#setFuzzyExpansion} does for a single index.
+     */
+    public void setFuzzyExpansion(boolean enabled) {
+        this.fuzzyExpansion = enabled;
+    }
+
+    // K-way merge of the score-ordered shard lists with a heap of per-shard cursors
+    private List<Index5.SearchResult> mergeTopK(List<List<Index5.SearchResult>> perShard, List<Integer> shardIds, int k) {
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) ->
+                perShard.get(a[0]).get(a[1]).compareTo(perShard.get(b[0]).get(b[1])));
+        for (int i = 0; i < perShard.size(); i++) {
+            if (!perShard.get(i).isEmpty()) heads.add(new int[]{i, 0});
+        }
+        List<Index5.SearchResult> merged = new ArrayList<>(k);
+        while (merged.size() < k && !heads.isEmpty()) {
+            int[] head = heads.poll();
+            Index5.SearchResult local = perShard.get(head[0]).get(head[1]);
+            int globalDocId = local.getDocId() * shards.size() + shardIds.get(head[0]);
+            merged.add(new Index5.SearchResult(globalDocId, local.getScore(), local.getIdentifier()));
+            if (++head[1] < perShard.get(head[0]).size()) heads.add(head);
+        }
+        return merged;
+    }
+
+    /** Merged results of one query and the shards that did not contribute. */
+    public static class SearchResponse {
+        private final List<Index5.SearchResult> results;
+        private final List<Integer> failedShards;
+        private final int shardCount;
+
+        SearchResponse(List<Index5.SearchResult> results, List<Integer> failedShards, int shardCount) {
+            this.results = results;
+            this.failedShards = failedShards;
+            this.shardCount = shardCount;
+        }
+
+        public List<Index5.SearchResult> getResults() { return results; }
+        /** Shard numbers that timed out or failed, in ascending order. */
+        public List<Integer> getFailedShards() { return failedShards; }
+        public int getShardCount() { return shardCount; }
+        /** True if some shard's documents (or statistics) are missing from the results. */
+        public boolean isPartial() { return !failedShards.isEmpty(); }
+    }
+
+    // --- Fan-out ---
+
+    private static final class ShardResult<T> {
+        final int shard;
+        final T value;
+        final Exception failure;
+
+        ShardResult(int shard, T value, Exception failure) {
+            this.shard = shard;
+            this.value = value;
+            this.failure = failure;
+        }
+    }
+
+    private interface ShardCall<T> {
+        Callable<T> forShard(int shard);
+    }
+
+    private List<Integer> shards() {
+        List<Integer> all = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) all.add(i);
+        return all;
+    }
+
+    // Runs the call on the given shards in parallel and waits at most timeoutMillis for all of
+    // them (one shared deadline); late or failed shards come back with their failure set.
+    private <T> List<ShardResult<T>> fanOut(List<Integer> shardIds, int timeoutMillis, ShardCall<T> call) {
+        List<Future<T>> futures = new ArrayList<>(shardIds.size());
+        for (int shard : shardIds) {
+            futures.add(fanOutPool.submit(call.forShard(shard)));
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<ShardResult<T>> results = new ArrayList<>(shardIds.size());
+        for (int i = 0; i < futures.size(); i++) {
+            int shard = shardIds.get(i);
+            Future<T> future = futures.get(i);
+            try {
+                results.add(new ShardResult<>(shard, future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS), null));
+            } catch (TimeoutException e) {
+                future.cancel(true); // The socket timeout releases the worker thread
+                results.add(failure(shard, new TimeoutException("No answer within " + timeoutMillis + " ms")));
+            } catch (ExecutionException e) {
+                results.add(failure(shard, (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                results.add(failure(shard, e));
+            }
+        }
+        return results;
+    }
+
+    private <T> ShardResult<T> failure(int shard, Exception e) {
+        SHARD_FAILURES.increment();
+        System.err.println("Warning: Shard " + shard + " (" + shards.get(shard).getAddress() + ") left out: " + e.getMessage());
+        return new ShardResult<>(shard, null, e);
+    }
+
+    @Override
+    public void close() {
+        fanOutPool.shutdownNow();
+        for (ShardClient shard : shards) {
+            shard.close();
+        }
+    }
+
+    // --- Interactive coordinator ---
+
+    /**
+     * java com.wikipediasearch.distributed.SearchCoordinator --shards host:port,host:port,...
+     *     [--timeout-ms 500] [--k 10]
+     * Syncs collection statistics, then answers queries read from stdin (one per line).
+     */
+    public static void main(String[] args) throws IOException {
+        String shardList = option(args, "--shards", null);
+        if (shardList == null) {
+            System.err.println("Usage: SearchCoordinator --shards host:port,host:port,... [--timeout-ms 500] [--k 10]");
+            return;
+        }
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String shard : shardList.split(",")) {
+            int colon = shard.lastIndexOf(':');
+            if (colon < 0) {
+                System.err.println("Error: Shard address must be host:port: " + shard);
+                return;
+            }
+            addresses.add(new InetSocketAddress(shard.substring(0, colon).trim(), Integer.parseInt(shard.substring(colon + 1).trim())));
+        }
+        int timeout = Integer.parseInt(option(args, "--timeout-ms", "500"));
+        int k = Integer.parseInt(option(args, "--k", "10"));
+
+        try (SearchCoordinator coordinator = new SearchCoordinator(addresses, timeout)) {
+            coordinator.syncStatistics();
+            Scanner scanner = new Scanner(System.in);
+            System.out.print("Query: ");
+            while (scanner.hasNextLine()) {
+                String query = scanner.nextLine().trim();
+                if (query.equalsIgnoreCase("exit")) break;
+                if (!query.isEmpty()) {
+                    long start = System.nanoTime();
+                    SearchResponse response = coordinator.search(query, k);
+                    System.out.printf("%d results in %.2f ms%s%n", response.getResults().size(), (System.nanoTime() - start) / 1e6,
+                            response.isPartial() ? " (PARTIAL: shards " + response.getFailedShards() + " missing)" : "");
+                    for (int i = 0; i < response.getResults().size(); i++) {
+                        System.out.printf("  Rank %2d: %s%n", i + 1, response.getResults().get(i));
+                    }
+                }
+                System.out.print("Query: ");
+            }
+        }
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+}
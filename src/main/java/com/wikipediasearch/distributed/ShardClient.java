@@ -0,0 +1,158 @@
+package com.wikipediasearch.distributed;
+
+import com.wikipediasearch.invertedIndex.Index5;
+import com.wikipediasearch.invertedIndex.QueryExpansion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Coordinator-side connection pool to one ShardServer. Each call borrows an idle connection
+ * (or opens one), so concurrent queries do not queue behind each other. A connection that
+ * times out or fails mid-response is closed rather than reused, since the stream may still
+ * hold the late answer. Thread-safe.
+ */
+class ShardClient implements Closeable {
+
+    private final InetSocketAddress address;
+    private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    ShardClient(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /** Shard N and local df of the processed terms of a query. */
+    TermStatistics termStatistics(String query, int timeoutMillis) throws IOException {
+        return call(ShardProtocol.OP_TERM_STATS, timeoutMillis,
+                out -> out.writeUTF(query), ShardProtocol::readStatistics);
+    }
+
+    /** The shard's fuzzy candidates for analyzed query terms, with the shard df of the candidates. */
+    FuzzyCandidates fuzzyCandidates(List<String> terms, int timeoutMillis) throws IOException {
+        return call(ShardProtocol.OP_FUZZY_CANDIDATES, timeoutMillis, out -> ShardProtocol.writeTerms(out, terms),
+                in -> new FuzzyCandidates(ShardProtocol.readCandidates(in), ShardProtocol.readStatistics(in)));
+    }
+
+    /** The shard's top-k for a query, scored with the given collection statistics and spelling variants. */
+    List<Index5.SearchResult> search(String query, int k, TermStatistics statistics, QueryExpansion expansion,
+                                     int timeoutMillis) throws IOException {
+        return call(ShardProtocol.OP_SEARCH, timeoutMillis, out -> {
+            out.writeUTF(query);
+            out.writeInt(k);
+            ShardProtocol.writeStatistics(out, statistics);
+            ShardProtocol.writeExpansion(out, expansion);
+        }, ShardProtocol::readResults);
+    }
+
+    /** Query term -> candidate term -> edit distance, and the shard's N and df of the candidates. */
+    static final class FuzzyCandidates {
+        final Map<String, Map<String, Integer>> candidates;
+        final TermStatistics statistics;
+
+        FuzzyCandidates(Map<String, Map<String, Integer>> candidates, TermStatistics statistics) {
+            this.candidates = candidates;
+            this.statistics = statistics;
+        }
+    }
+
+    /** Shard N and the df of every term it holds. */
+    TermStatistics docFrequencyTable(int timeoutMillis) throws IOException {
+        return call(ShardProtocol.OP_DF_TABLE, timeoutMillis, out -> { }, ShardProtocol::readStatistics);
+    }
+
+    /** Makes the shard compute its document norms with collection-wide statistics. */
+    void installStatistics(TermStatistics statistics, int timeoutMillis) throws IOException {
+        call(ShardProtocol.OP_INSTALL_STATISTICS, timeoutMillis,
+                out -> ShardProtocol.writeStatistics(out, statistics), in -> null);
+    }
+
+    private interface RequestWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private interface ResponseReader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private <T> T call(byte op, int timeoutMillis, RequestWriter request, ResponseReader<T> response) throws IOException {
+        if (closed) {
+            throw new IOException("Client for shard " + address + " is closed.");
+        }
+        Connection connection = idle.poll();
+        if (connection == null) {
+            connection = new Connection(address, timeoutMillis);
+        }
+        boolean reusable = false;
+        try {
+            connection.socket.setSoTimeout(timeoutMillis);
+            connection.out.writeByte(op);
+            request.write(connection.out);
+            connection.out.flush();
+            byte status = connection.in.readByte();
+            if (status != ShardProtocol.STATUS_OK) {
+                String message = connection.in.readUTF();
+                reusable = true;
+                throw new IOException("Shard " + address + " failed: " + message);
+            }
+            T result = response.read(connection.in);
+            reusable = true;
+            return result;
+        } finally {
+            if (reusable && !closed) {
+                idle.offer(connection);
+            } else {
+                connection.close();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    private static final class Connection {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Connection(InetSocketAddress address, int connectTimeoutMillis) throws IOException {
+            socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.connect(address, connectTimeoutMillis);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+}
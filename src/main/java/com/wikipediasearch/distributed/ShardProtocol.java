@@ -0,0 +1,208 @@
+package com.wikipediasearch.distributed;
+
+import com.wikipediasearch.invertedIndex.Field;
+import com.wikipediasearch.invertedIndex.Index5;
+import com.wikipediasearch.invertedIndex.QueryExpansion;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary request/response protocol between a SearchCoordinator and its ShardServers,
+ * over a persistent TCP connection (one request in flight per connection).
+ *
+ * Request:  byte op, then the op's arguments.
+ * Response: byte status; STATUS_OK is followed by the op's result, STATUS_ERROR by a UTF message.
+ *
+ * OP_TERM_STATS         UTF query                           -> statistics of the processed query terms
+ * OP_FUZZY_CANDIDATES   int count, count x UTF term         -> candidates, statistics of the candidate terms
+ * OP_SEARCH             UTF query, int k, statistics,       -> int count, count x (int docId, double score, UTF identifier)
+ *                       expansion
+ * OP_DF_TABLE           (none)                              -> statistics of every term in the shard
+ * OP_INSTALL_STATISTICS statistics                          -> (nothing); shard recomputes its document norms
+ *
+ * statistics = int N, dfs, int fieldCount, fieldCount x (byte field ordinal, dfs)
+ * dfs        = int termCount, termCount x (UTF term, int df)
+ * candidates = int termCount, termCount x (UTF term, int count, count x (UTF candidate, byte distance))
+ * expansion  = int termCount, termCount x (UTF term, int count, count x (UTF variant, byte distance, int df))
+ * Strings use DataOutput's modified UTF-8 (max 65535 bytes).
+ */
+final class ShardProtocol {
+
+    static final byte OP_TERM_STATS = 1;
+    static final byte OP_SEARCH = 2;
+    static final byte OP_DF_TABLE = 3;
+    static final byte OP_INSTALL_STATISTICS = 4;
+    static final byte OP_FUZZY_CANDIDATES = 5;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+
+    private ShardProtocol() {
+    }
+
+    static void writeStatistics(DataOutputStream out, TermStatistics statistics) throws IOException {
+        out.writeInt(statistics.documentCount());
+        writeDocFrequencies(out, statistics.getDocFrequencies());
+        out.writeInt(statistics.getFieldDocFrequencies().size());
+        for (Map.Entry<Field, Map<String, Integer>> field : statistics.getFieldDocFrequencies().entrySet()) {
+            out.writeByte(field.getKey().ordinal());
+            writeDocFrequencies(out, field.getValue());
+        }
+    }
+
+    static TermStatistics readStatistics(DataInputStream in) throws IOException {
+        int documentCount = in.readInt();
+        if (documentCount < 0) {
+            throw new IOException("Corrupt statistics: N=" + documentCount);
+        }
+        Map<String, Integer> docFrequencies = readDocFrequencies(in);
+        int fieldCount = in.readInt();
+        if (fieldCount < 0 || fieldCount > Field.values().length) {
+            throw new IOException("Corrupt statistics: fields=" + fieldCount);
+        }
+        Map<Field, Map<String, Integer>> fieldDocFrequencies = new EnumMap<>(Field.class);
+        for (int i = 0; i < fieldCount; i++) {
+            int ordinal = in.readUnsignedByte();
+            if (ordinal >= Field.values().length) {
+                throw new IOException("Corrupt statistics: field " + ordinal);
+            }
+            fieldDocFrequencies.put(Field.values()[ordinal], readDocFrequencies(in));
+        }
+        return new TermStatistics(documentCount, docFrequencies, fieldDocFrequencies);
+    }
+
+    private static void writeDocFrequencies(DataOutputStream out, Map<String, Integer> docFrequencies) throws IOException {
+        out.writeInt(docFrequencies.size());
+        for (Map.Entry<String, Integer> entry : docFrequencies.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    private static Map<String, Integer> readDocFrequencies(DataInputStream in) throws IOException {
+        int termCount = in.readInt();
+        if (termCount < 0) {
+            throw new IOException("Corrupt statistics: terms=" + termCount);
+        }
+        Map<String, Integer> docFrequencies = new HashMap<>(Math.min(termCount, 1 << 20) * 4 / 3 + 1);
+        for (int i = 0; i < termCount; i++) {
+            docFrequencies.put(in.readUTF(), in.readInt());
+        }
+        return docFrequencies;
+    }
+
+    static void writeTerms(DataOutputStream out, List<String> terms) throws IOException {
+        out.writeInt(terms.size());
+        for (String term : terms) {
+            out.writeUTF(term);
+        }
+    }
+
+    static List<String> readTerms(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupt term count: " + count);
+        }
+        List<String> terms = new ArrayList<>(Math.min(count, 10_000));
+        for (int i = 0; i < count; i++) {
+            terms.add(in.readUTF());
+        }
+        return terms;
+    }
+
+    static void writeCandidates(DataOutputStream out, Map<String, Map<String, Integer>> candidates) throws IOException {
+        out.writeInt(candidates.size());
+        for (Map.Entry<String, Map<String, Integer>> term : candidates.entrySet()) {
+            out.writeUTF(term.getKey());
+            out.writeInt(term.getValue().size());
+            for (Map.Entry<String, Integer> candidate : term.getValue().entrySet()) {
+                out.writeUTF(candidate.getKey());
+                out.writeByte(candidate.getValue());
+            }
+        }
+    }
+
+    static Map<String, Map<String, Integer>> readCandidates(DataInputStream in) throws IOException {
+        int termCount = in.readInt();
+        if (termCount < 0) {
+            throw new IOException("Corrupt candidates: terms=" + termCount);
+        }
+        Map<String, Map<String, Integer>> candidates = new LinkedHashMap<>();
+        for (int i = 0; i < termCount; i++) {
+            String term = in.readUTF();
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Corrupt candidates: " + count + " for " + term);
+            }
+            Map<String, Integer> matches = new LinkedHashMap<>();
+            for (int j = 0; j < count; j++) {
+                matches.put(in.readUTF(), in.readUnsignedByte());
+            }
+            candidates.put(term, matches);
+        }
+        return candidates;
+    }
+
+    static void writeExpansion(DataOutputStream out, QueryExpansion expansion) throws IOException {
+        out.writeInt(expansion.getVariants().size());
+        for (Map.Entry<String, List<QueryExpansion.Variant>> term : expansion.getVariants().entrySet()) {
+            out.writeUTF(term.getKey());
+            out.writeInt(term.getValue().size());
+            for (QueryExpansion.Variant variant : term.getValue()) {
+                out.writeUTF(variant.getTerm());
+                out.writeByte(variant.getDistance());
+                out.writeInt(variant.getDocFrequency());
+            }
+        }
+    }
+
+    static QueryExpansion readExpansion(DataInputStream in) throws IOException {
+        int termCount = in.readInt();
+        if (termCount < 0) {
+            throw new IOException("Corrupt expansion: terms=" + termCount);
+        }
+        Map<String, List<QueryExpansion.Variant>> variants = new LinkedHashMap<>();
+        for (int i = 0; i < termCount; i++) {
+            String term = in.readUTF();
+            int count = in.readInt();
+            if (count < 0 || count > QueryExpansion.MAX_VARIANTS) {
+                throw new IOException("Corrupt expansion: " + count + " variants of " + term);
+            }
+            List<QueryExpansion.Variant> termVariants = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                termVariants.add(new QueryExpansion.Variant(in.readUTF(), in.readUnsignedByte(), in.readInt()));
+            }
+            variants.put(term, termVariants);
+        }
+        return QueryExpansion.of(variants);
+    }
+
+    static void writeResults(DataOutputStream out, List<Index5.SearchResult> results) throws IOException {
+        out.writeInt(results.size());
+        for (Index5.SearchResult result : results) {
+            out.writeInt(result.getDocId());
+            out.writeDouble(result.getScore());
+            out.writeUTF(result.getIdentifier());
+        }
+    }
+
+    static List<Index5.SearchResult> readResults(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupt result count: " + count);
+        }
+        List<Index5.SearchResult> results = new ArrayList<>(Math.min(count, 10_000));
+        for (int i = 0; i < count; i++) {
+            results.add(new Index5.SearchResult(in.readInt(), in.readDouble(), in.readUTF()));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,250 @@
+package com.wikipediasearch.distributed;
+
+import com.wikipediasearch.invertedIndex.Field;
+import com.wikipediasearch.invertedIndex.Index5;
+import com.wikipediasearch.invertedIndex.QueryExpansion;
+import com.wikipediasearch.invertedIndex.ShardedIndex;
+import com.wikipediasearch.loadtest.SyntheticCorpus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Serves one slice of the index to a SearchCoordinator over {@link ShardProtocol}.
+ * One thread per coordinator connection; queries run concurrently against the Index5.
+ *
+ * Run one process per shard, e.g. a 3-shard cluster on one box:
+ *
+ *   for i in 0 1 2; do
+ *     java com.wikipediasearch.distributed.ShardServer --port 910$i --shard $i --shards 3 --docs 100000 &
+ *   done
+ *   java com.wikipediasearch.distributed.SearchCoordinator --shards localhost:9100,localhost:9101,localhost:9102
+ *
+ * Options: --port (0 = any free port), --shard i --shards K (keep pages whose URL hashes to
+ * shard i of K), and either --docs N [--seed S] (synthetic corpus) or --pages dir (saved .txt pages).
+ */
+public class ShardServer implements Closeable {
+
+    private final Index5 index;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connectionPool;
+    private volatile boolean closed;
+
+    /**
+     * Binds to the given port on the loopback address; call {@link #start()} to accept connections.
+     *
+     * @param index The shard's slice of the collection.
+     * @param port  Port to listen on, or 0 for any free port (see {@link #getPort()}).
+     */
+    public ShardServer(Index5 index, int port) throws IOException {
+        this(index, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public ShardServer(Index5 index, InetSocketAddress bindAddress) throws IOException {
+        if (index == null) {
+            throw new IllegalArgumentException("Index cannot be null.");
+        }
+        this.index = index;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(bindAddress);
+        AtomicInteger counter = new AtomicInteger();
+        this.connectionPool = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "shard-server-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Starts accepting connections on a background thread and returns. */
+    public void start() {
+        connectionPool.submit(this::acceptLoop);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connectionPool.submit(() -> serve(socket));
+            } catch (IOException e) {
+                if (!closed) System.err.println("Shard server accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // Handles requests on one connection until the coordinator closes it
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            while (!closed) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return; // Coordinator closed the connection
+                }
+                try {
+                    handle(op, in, out);
+                } catch (RuntimeException e) {
+                    // Every op reads its whole request before touching the index, so the
+                    // connection is still in sync: report the failure and carry on
+                    out.writeByte(ShardProtocol.STATUS_ERROR);
+                    out.writeUTF(String.valueOf(e));
+                }
+                out.flush();
+            }
+        } catch (SocketException e) {
+            // Connection reset or server closing
+        } catch (IOException e) {
+            if (!closed) System.err.println("Shard server connection failed: " + e.getMessage());
+        }
+    }
+
+    private void handle(byte op, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (op) {
+            case ShardProtocol.OP_TERM_STATS: {
+                String query = in.readUTF();
+                Map<String, Integer> docFrequencies = index.getQueryTermDocFrequencies(query);
+                Map<Field, Map<String, Integer>> fieldDocFrequencies = index.getQueryTermFieldDocFrequencies(query);
+                out.writeByte(ShardProtocol.STATUS_OK);
+                ShardProtocol.writeStatistics(out, new TermStatistics(index.getNumberOfDocuments(), docFrequencies,
+                        fieldDocFrequencies));
+                break;
+            }
+            case ShardProtocol.OP_SEARCH: {
+                String query = in.readUTF();
+                int k = in.readInt();
+                TermStatistics statistics = ShardProtocol.readStatistics(in);
+                QueryExpansion expansion = ShardProtocol.readExpansion(in);
+                List<Index5.SearchResult> results = index.findQueryRanked(query, k, statistics, expansion);
+                out.writeByte(ShardProtocol.STATUS_OK);
+                ShardProtocol.writeResults(out, results);
+                break;
+            }
+            case ShardProtocol.OP_FUZZY_CANDIDATES: {
+                List<String> terms = ShardProtocol.readTerms(in);
+                Map<String, Map<String, Integer>> candidates = index.getFuzzyCandidates(terms);
+                Set<String> candidateTerms = new LinkedHashSet<>();
+                for (Map<String, Integer> matches : candidates.values()) {
+                    candidateTerms.addAll(matches.keySet());
+                }
+                out.writeByte(ShardProtocol.STATUS_OK);
+                ShardProtocol.writeCandidates(out, candidates);
+                ShardProtocol.writeStatistics(out, new TermStatistics(index.getNumberOfDocuments(),
+                        index.getTermDocFrequencies(candidateTerms), index.getTermFieldDocFrequencies(candidateTerms)));
+                break;
+            }
+            case ShardProtocol.OP_DF_TABLE: {
+                Map<String, Integer> docFrequencies = new HashMap<>();
+                Map<Field, Map<String, Integer>> fieldDocFrequencies = new EnumMap<>(Field.class);
+                index.collectDocFrequencies(docFrequencies);
+                index.collectFieldDocFrequencies(fieldDocFrequencies);
+                out.writeByte(ShardProtocol.STATUS_OK);
+                ShardProtocol.writeStatistics(out, new TermStatistics(index.getNumberOfDocuments(), docFrequencies,
+                        fieldDocFrequencies));
+                break;
+            }
+            case ShardProtocol.OP_INSTALL_STATISTICS: {
+                TermStatistics statistics = ShardProtocol.readStatistics(in);
+                index.setCollectionStatistics(statistics);
+                index.recalculateMagnitudes();
+                out.writeByte(ShardProtocol.STATUS_OK);
+                break;
+            }
+            default:
+                // The request body cannot be skipped without knowing its layout: answer and drop the connection
+                out.writeByte(ShardProtocol.STATUS_ERROR);
+                out.writeUTF("Unknown op " + op);
+                out.flush();
+                throw new IOException("Unknown op " + op + " from coordinator");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        connectionPool.shutdownNow();
+    }
+
+    // --- Standalone shard process ---
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.parseInt(option(args, "--port", "0"));
+        int shard = Integer.parseInt(option(args, "--shard", "0"));
+        int shardCount = Integer.parseInt(option(args, "--shards", "1"));
+        if (shard < 0 || shard >= shardCount) {
+            System.err.println("Error: --shard must be in [0, --shards).");
+            return;
+        }
+
+        Map<String, String> slice = new LinkedHashMap<>();
+        String pagesDir = option(args, "--pages", null);
+        if (pagesDir != null) {
+            try (Stream<Path> files = Files.list(Paths.get(pagesDir))) {
+                for (Path file : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".txt")).sorted()::iterator) {
+                    String name = file.getFileName().toString();
+                    String url = "https://en.wikipedia.org/wiki/" + name.substring(0, name.length() - ".txt".length());
+                    if (ShardedIndex.shardFor(url, shardCount) == shard) {
+                        slice.put(url, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        } else {
+            SyntheticCorpus corpus = SyntheticCorpus.withDefaults(
+                    Long.parseLong(option(args, "--seed", "42")), Integer.parseInt(option(args, "--docs", "10000")));
+            for (int docId = 0; docId < corpus.getDocumentCount(); docId++) {
+                String url = corpus.documentUrl(docId);
+                if (ShardedIndex.shardFor(url, shardCount) == shard) {
+                    slice.put(url, corpus.documentText(docId));
+                }
+            }
+        }
+
+        Index5 index = new Index5();
+        index.buildIndex(slice);
+        ShardServer server = new ShardServer(index, port);
+        System.out.println("Shard " + shard + "/" + shardCount + " listening on port " + server.getPort()
+                + " with " + index.getNumberOfDocuments() + " documents.");
+        server.acceptLoop(); // Connection threads are daemons: keep the process alive here
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,114 @@
+package com.wikipediasearch.distributed;
+
+import com.wikipediasearch.invertedIndex.CollectionStatistics;
+import com.wikipediasearch.invertedIndex.Field;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * N and per-term df (body, plus each secondary field), as reported by one shard or summed over several. Used both for the
+ * per-query statistics a coordinator gathers (query terms only) and for the full df table
+ * pushed to shards so their document norms use collection-wide IDF. Immutable.
+ */
+public final class TermStatistics implements CollectionStatistics {
+
+    private final int documentCount;
+    private final Map<String, Integer> docFrequencies;
+    private final Map<Field, Map<String, Integer>> fieldDocFrequencies;
+
+    public TermStatistics(int documentCount, Map<String, Integer> docFrequencies) {
+        this(documentCount, docFrequencies, Collections.emptyMap());
+    }
+
+    /**
+     * @param fieldDocFrequencies Per secondary field, term -> df (terms with df 0 may be left out).
+     */
+    public TermStatistics(int documentCount, Map<String, Integer> docFrequencies,
+                          Map<Field, Map<String, Integer>> fieldDocFrequencies) {
+        if (documentCount < 0) {
+            throw new IllegalArgumentException("Document count cannot be negative: " + documentCount);
+        }
+        this.documentCount = documentCount;
+        this.docFrequencies = Collections.unmodifiableMap(docFrequencies);
+        Map<Field, Map<String, Integer>> fields = new EnumMap<>(Field.class);
+        for (Map.Entry<Field, Map<String, Integer>> entry : fieldDocFrequencies.entrySet()) {
+            fields.put(entry.getKey(), Collections.unmodifiableMap(entry.getValue()));
+        }
+        this.fieldDocFrequencies = Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * Sums document counts and dfs (documents are partitioned, so sums are exact).
+     */
+    public static TermStatistics sum(List<TermStatistics> parts) {
+        int documentCount = 0;
+        Map<String, Integer> docFrequencies = new HashMap<>();
+        Map<Field, Map<String, Integer>> fieldDocFrequencies = new EnumMap<>(Field.class);
+        for (TermStatistics part : parts) {
+            documentCount += part.documentCount;
+            for (Map.Entry<String, Integer> entry : part.docFrequencies.entrySet()) {
+                docFrequencies.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+            for (Map.Entry<Field, Map<String, Integer>> field : part.fieldDocFrequencies.entrySet()) {
+                Map<String, Integer> sums = fieldDocFrequencies.computeIfAbsent(field.getKey(), f -> new HashMap<>());
+                for (Map.Entry<String, Integer> entry : field.getValue().entrySet()) {
+                    sums.merge(entry.getKey(), entry.getValue(), Integer::sum);
+                }
+            }
+        }
+        return new TermStatistics(documentCount, docFrequencies, fieldDocFrequencies);
+    }
+
+    /**
+     * @return These statistics (same N) together with the dfs of more terms, e.g. the statistics
+     *         of a query's fuzzy variants gathered after those of its own terms.
+     */
+    public TermStatistics withTerms(TermStatistics terms) {
+        Map<String, Integer> mergedDocFrequencies = new HashMap<>(docFrequencies);
+        mergedDocFrequencies.putAll(terms.docFrequencies);
+        Map<Field, Map<String, Integer>> mergedFieldDocFrequencies = new EnumMap<>(Field.class);
+        for (Map.Entry<Field, Map<String, Integer>> field : fieldDocFrequencies.entrySet()) {
+            mergedFieldDocFrequencies.put(field.getKey(), new HashMap<>(field.getValue()));
+        }
+        for (Map.Entry<Field, Map<String, Integer>> field : terms.fieldDocFrequencies.entrySet()) {
+            mergedFieldDocFrequencies.computeIfAbsent(field.getKey(), f -> new HashMap<>()).putAll(field.getValue());
+        }
+        return new TermStatistics(documentCount, mergedDocFrequencies, mergedFieldDocFrequencies);
+    }
+
+    @Override
+    public int documentCount() {
+        return documentCount;
+    }
+
+    @Override
+    public int docFrequency(String term) {
+        return docFrequencies.getOrDefault(term, 0);
+    }
+
+    @Override
+    public int fieldDocFrequency(Field field, String term) {
+        Map<String, Integer> docFrequencies = fieldDocFrequencies.get(field);
+        return (docFrequencies != null) ? docFrequencies.getOrDefault(term, 0) : 0;
+    }
+
+    public Map<String, Integer> getDocFrequencies() {
+        return docFrequencies;
+    }
+
+    /**
+     * @return Per secondary field, term -> df.
+     */
+    public Map<Field, Map<String, Integer>> getFieldDocFrequencies() {
+        return fieldDocFrequencies;
+    }
+
+    @Override
+    public String toString() {
+        return "TermStatistics{N=" + documentCount + ", terms=" + docFrequencies.size() + '}';
+    }
+}
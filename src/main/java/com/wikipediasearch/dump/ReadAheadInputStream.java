@@ -0,0 +1,90 @@
+package com.wikipediasearch.dump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads an underlying stream on a background thread into a small bounded queue of chunks,
+ * so expensive decoding (bz2 decompression) overlaps with whoever consumes this stream
+ * (XML parsing). Memory is bounded by chunkSize * queuedChunks.
+ */
+class ReadAheadInputStream extends InputStream {
+
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks;
+    private final Thread reader;
+    private volatile IOException failure;
+
+    private byte[] current = new byte[0];
+    private int position = 0;
+    private boolean finished = false;
+
+    ReadAheadInputStream(InputStream source, int chunkSize, int queuedChunks) {
+        this.chunks = new ArrayBlockingQueue<>(queuedChunks);
+        this.reader = new Thread(() -> {
+            try (InputStream in = source) {
+                while (true) {
+                    byte[] buffer = new byte[chunkSize];
+                    int filled = in.readNBytes(buffer, 0, chunkSize);
+                    if (filled <= 0) break;
+                    chunks.put(filled == chunkSize ? buffer : Arrays.copyOf(buffer, filled));
+                    if (filled < chunkSize) break;
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                chunks.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "dump-read-ahead");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) return -1;
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!ensureData()) return -1;
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public void close() {
+        reader.interrupt();
+    }
+
+    private boolean ensureData() throws IOException {
+        while (!finished && position >= current.length) {
+            try {
+                current = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for dump data", e);
+            }
+            position = 0;
+            if (current == END) {
+                finished = true;
+                if (failure != null) throw failure;
+            }
+        }
+        return !finished;
+    }
+}
@@ -0,0 +1,167 @@
+package com.wikipediasearch.dump;
+
+import com.wikipediasearch.crawler.WebCrawler;
+import com.wikipediasearch.pipeline.TextPageSink;
+import com.wikipediasearch.pipeline.TextPageSource;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Streams articles out of an official Wikipedia "pages-articles" XML dump
+ * (plain .xml or .xml.bz2) as (URL, title, plain text) records.
+ *
+ * Only one page is held in memory at a time. Redirects and non-article namespaces are
+ * skipped, using the same namespace rule as WebCrawler.isValidLink. The bz2 stream is
+ * decompressed on a read-ahead thread, so decompression, XML parsing and (downstream,
+ * through CrawlIndexPipeline) tokenizing and indexing all run concurrently.
+ */
+public class WikipediaDumpReader implements TextPageSource {
+
+    private static final int READ_AHEAD_CHUNK = 1 << 20; // 1 MB
+    private static final int READ_AHEAD_CHUNKS = 8;
+    private static final int PROGRESS_INTERVAL = 10_000;
+
+    private final Path dumpFile;
+    private final long maxPages;
+
+    // Statistics
+    private long pagesSeen;
+    private long redirectsSkipped;
+    private long namespaceSkipped;
+
+    public WikipediaDumpReader(Path dumpFile) {
+        this(dumpFile, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param dumpFile Path to the dump (.xml or .xml.bz2).
+     * @param maxPages Stop after emitting this many articles.
+     */
+    public WikipediaDumpReader(Path dumpFile, long maxPages) {
+        if (dumpFile == null) {
+            throw new IllegalArgumentException("Dump file cannot be null.");
+        }
+        if (maxPages <= 0) {
+            throw new IllegalArgumentException("Max pages must be positive. Received: " + maxPages);
+        }
+        this.dumpFile = dumpFile;
+        this.maxPages = maxPages;
+    }
+
+    @Override
+    public int produce(TextPageSink sink) throws IOException, InterruptedException {
+        System.out.println("Reading Wikipedia dump: " + dumpFile);
+        int emitted = 0;
+        try (InputStream in = openDump()) {
+            XMLStreamReader xml = newXmlFactory().createXMLStreamReader(in, "UTF-8");
+            try {
+                String title = null;
+                String text = null;
+                int namespace = -1;
+                boolean redirect = false;
+
+                while (xml.hasNext() && emitted < maxPages) {
+                    int event = xml.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        switch (xml.getLocalName()) {
+                            case "page":
+                                title = null;
+                                text = null;
+                                namespace = -1;
+                                redirect = false;
+                                break;
+                            case "title":
+                                title = xml.getElementText();
+                                break;
+                            case "ns":
+                                namespace = parseNamespace(xml.getElementText());
+                                break;
+                            case "redirect":
+                                redirect = true;
+                                break;
+                            case "text":
+                                text = xml.getElementText();
+                                break;
+                            default:
+                                break;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && xml.getLocalName().equals("page")) {
+                        pagesSeen++;
+                        if (redirect || (text != null && text.regionMatches(true, 0, "#REDIRECT", 0, 9))) {
+                            redirectsSkipped++;
+                        } else if (namespace != 0 || !WebCrawler.isArticleTitle(title)) {
+                            namespaceSkipped++;
+                        } else if (title != null && !title.isBlank()) {
+                            String plainText = WikitextStripper.strip(text);
+                            if (!plainText.isEmpty()) {
+                                sink.accept(WebCrawler.articleUrl(title), title, plainText);
+                                emitted++;
+                                if (emitted % PROGRESS_INTERVAL == 0) {
+                                    System.out.println("Dump: " + emitted + " articles emitted (" + pagesSeen + " pages read)");
+                                }
+                            }
+                        }
+                        title = null; // Release the page text before reading the next one
+                        text = null;
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed dump XML in " + dumpFile + ": " + e.getMessage(), e);
+        }
+        System.out.println("Dump reading complete. Articles: " + emitted + ", pages read: " + pagesSeen
+                + ", redirects skipped: " + redirectsSkipped + ", non-article pages skipped: " + namespaceSkipped);
+        return emitted;
+    }
+
+    public long getPagesSeen() {
+        return pagesSeen;
+    }
+
+    public long getRedirectsSkipped() {
+        return redirectsSkipped;
+    }
+
+    public long getNamespaceSkipped() {
+        return namespaceSkipped;
+    }
+
+    // --- Internal helpers ---
+
+    private InputStream openDump() throws IOException {
+        InputStream raw = new BufferedInputStream(Files.newInputStream(dumpFile), 1 << 16);
+        if (dumpFile.getFileName().toString().endsWith(".bz2")) {
+            // Dumps are multistream bz2: keep decompressing past the first stream
+            raw = new BZip2CompressorInputStream(raw, true);
+        }
+        return new ReadAheadInputStream(raw, READ_AHEAD_CHUNK, READ_AHEAD_CHUNKS);
+    }
+
+    private static XMLInputFactory newXmlFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    private static int parseNamespace(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
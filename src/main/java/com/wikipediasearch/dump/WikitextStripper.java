@@ -0,0 +1,135 @@
+package com.wikipediasearch.dump;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * Light wikitext-to-plain-text conversion for indexing dump pages.
+ * Not a full MediaWiki parser: it drops templates, tables, references, comments,
+ * file/category links and markup, and keeps the visible text of links and headings.
+ * That is close enough to what doc.body().text() yields for the words that matter.
+ */
+public final class WikitextStripper {
+
+    private static final Pattern COMMENT = Pattern.compile("<!--.*?-->", Pattern.DOTALL);
+    // <ref> or <ref attributes> not ending in "/>"; a '/' inside a value (name="a/b") is fine
+    private static final Pattern REF_BLOCK = Pattern.compile("<ref(?:\\s[^>]*)?(?<!/)>.*?</ref\\s*>", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+    private static final Pattern REF_SELF_CLOSING = Pattern.compile("<ref[^>]*/>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern EXTERNAL_LINK = Pattern.compile("\\[(?:https?|ftp)://[^\\s\\]]+\\s*([^\\]]*)]");
+    private static final Pattern HEADING = Pattern.compile("(?m)^=+\\s*(.*?)\\s*=+\\s*$");
+    private static final Pattern EMPHASIS = Pattern.compile("'{2,}");
+    private static final Pattern HTML_TAG = Pattern.compile("<[^>]+>");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final int[] NO_MATCHES = new int[0];
+
+    private WikitextStripper() {
+    }
+
+    /**
+     * @param wikitext Raw page source from the dump.
+     * @return Plain text suitable for Index5.tokenize (never null).
+     */
+    public static String strip(String wikitext) {
+        if (wikitext == null || wikitext.isEmpty()) {
+            return "";
+        }
+        String text = COMMENT.matcher(wikitext).replaceAll("");
+        text = REF_BLOCK.matcher(text).replaceAll("");
+        text = REF_SELF_CLOSING.matcher(text).replaceAll("");
+        text = stripNestedMarkup(text);
+        text = EXTERNAL_LINK.matcher(text).replaceAll("$1");
+        text = HEADING.matcher(text).replaceAll("$1");
+        text = EMPHASIS.matcher(text).replaceAll("");
+        text = HTML_TAG.matcher(text).replaceAll(" ");
+        text = text.replace("&nbsp;", " ").replace("&ndash;", "-").replace("&mdash;", "-")
+                .replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&amp;", "&");
+        return WHITESPACE.matcher(text).replaceAll(" ").trim();
+    }
+
+    /**
+     * One pass over the text handling the constructs that nest and therefore cannot be
+     * removed with a regex: {{templates}}, {| tables |} and [[links]].
+     */
+    private static String stripNestedMarkup(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        int[] templateEnds = matchClosers(text, "{{", "}}");
+        int[] tableEnds = matchClosers(text, "{|", "|}");
+        int[] linkEnds = matchClosers(text, "[[", "]]");
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            if (text.startsWith("{{", i)) {
+                int end = closerEnd(templateEnds, i);
+                if (end >= 0) {
+                    i = end;
+                    continue;
+                }
+            } else if (text.startsWith("{|", i)) {
+                int end = closerEnd(tableEnds, i);
+                if (end >= 0) {
+                    i = end;
+                    continue;
+                }
+            } else if (text.startsWith("[[", i)) {
+                int end = closerEnd(linkEnds, i);
+                if (end >= 0) {
+                    String inner = text.substring(i + 2, end - 2);
+                    if (!isMediaOrCategoryLink(inner)) {
+                        // [[target|label]] -> label, [[target]] -> target
+                        String visible = inner.contains("[[") ? stripNestedMarkup(inner) : inner;
+                        int pipe = visible.lastIndexOf('|');
+                        out.append(pipe >= 0 ? visible.substring(pipe + 1) : visible);
+                    }
+                    i = end;
+                    continue;
+                }
+            }
+            out.append(text.charAt(i));
+            i++;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Pairs every opener with its closer in one pass over the text, with a stack of open
+     * positions; a closer with nothing open is ignored. Scanning to the end of the text from
+     * each opener instead is quadratic when openers are unbalanced (a stray "{{" in every
+     * paragraph), since each of them is scanned in vain.
+     *
+     * @return Opener index -> index just past its closer; -1 if unbalanced or not an opener.
+     */
+    private static int[] matchClosers(String text, String open, String close) {
+        int i = text.indexOf(open);
+        if (i < 0) return NO_MATCHES;
+        int n = text.length();
+        int[] ends = new int[n];
+        Arrays.fill(ends, -1);
+        int[] openers = new int[16];
+        int depth = 0;
+        while (i < n - 1) {
+            if (text.startsWith(open, i)) {
+                if (depth == openers.length) openers = Arrays.copyOf(openers, depth * 2);
+                openers[depth++] = i;
+                i += open.length();
+            } else if (text.startsWith(close, i)) {
+                i += close.length();
+                if (depth > 0) ends[openers[--depth]] = i;
+            } else {
+                i++;
+            }
+        }
+        return ends;
+    }
+
+    private static int closerEnd(int[] ends, int opener) {
+        return (opener < ends.length) ? ends[opener] : -1;
+    }
+
+    private static boolean isMediaOrCategoryLink(String inner) {
+        int colon = inner.indexOf(':');
+        if (colon <= 0) return false;
+        String prefix = inner.substring(0, colon).trim().toLowerCase();
+        return prefix.equals("file") || prefix.equals("image") || prefix.equals("category")
+                || prefix.equals("media");
+    }
+}
@@ -0,0 +1,217 @@
+package com.wikipediasearch.graph;
+
+import java.util.Arrays;
+
+/**
+ * Successor lists as gap-encoded varints in byte segments, WebGraph-style. The row of node u is
+ *
+ *   degree, zigzag(s0 - u), s1 - s0 - 1, s2 - s1 - 1, ...
+ *
+ * for strictly ascending successors s0 < s1 < ..., each number a little-endian base-128 varint.
+ * Links between nearby pages (close node ids) take one byte. Rows never straddle two segments,
+ * so a row is decoded in one tight loop over one byte[]. With 1 GiB segments the store goes
+ * past the 2 GiB array limit, to billions of edges.
+ * Rows may be written in any node order; rewriting a row leaves the old bytes unused until
+ * {@link #compact()}. Not thread-safe while written; safe to read from several threads after.
+ */
+final class AdjacencyStore {
+
+    static final int DEFAULT_SEGMENT_BITS = 30;            // 1 GiB segments
+    private static final int INITIAL_SEGMENT_BYTES = 4096;
+    private static final int MAX_VARINT_BYTES = 5;
+    private static final long NO_ROW = -1;
+
+    private final int segmentBits;
+    private final int segmentSize;
+    private byte[][] segments = new byte[4][];
+    private int segmentCount;
+    private int writePosition;                 // Next free byte in the last segment
+    private long[] rowOffsets;                 // node -> (segment << segmentBits) | position, or NO_ROW
+    private int nodeCount;                     // Nodes with an offset slot (higher ids have no row)
+    private long edgeCount;
+    private int maxDegree;
+
+    AdjacencyStore(int expectedNodes, int segmentBits) {
+        if (segmentBits < 8 || segmentBits > 30) {
+            throw new IllegalArgumentException("Segment bits must be in [8, 30]: " + segmentBits);
+        }
+        this.segmentBits = segmentBits;
+        this.segmentSize = 1 << segmentBits;
+        segments[0] = new byte[Math.min(INITIAL_SEGMENT_BYTES, segmentSize)];
+        segmentCount = 1;
+        rowOffsets = new long[Math.max(expectedNodes, 16)];
+        Arrays.fill(rowOffsets, NO_ROW);
+    }
+
+    /**
+     * Writes (or replaces) a node's row.
+     *
+     * @param successors Strictly ascending node ids, in successors[from .. from + count).
+     */
+    void putRow(int node, int[] successors, int from, int count) {
+        if (node >= rowOffsets.length) {
+            int oldLength = rowOffsets.length;
+            rowOffsets = Arrays.copyOf(rowOffsets, Math.max(node + 1, oldLength + (oldLength >> 1)));
+            Arrays.fill(rowOffsets, oldLength, rowOffsets.length, NO_ROW);
+        }
+        nodeCount = Math.max(nodeCount, node + 1);
+        edgeCount -= degree(node);
+        if (count == 0) {
+            rowOffsets[node] = NO_ROW;
+            return;
+        }
+
+        long maxBytes = (long) (count + 1) * MAX_VARINT_BYTES;
+        if (maxBytes > segmentSize) {
+            throw new IllegalStateException("Node " + node + " has too many successors for one segment: " + count);
+        }
+        reserve((int) maxBytes);
+        byte[] data = segments[segmentCount - 1];
+        rowOffsets[node] = ((long) (segmentCount - 1) << segmentBits) | writePosition;
+        int p = writeVarInt(data, writePosition, count);
+        int previous = successors[from];
+        int gap = previous - node;
+        p = writeVarInt(data, p, (gap << 1) ^ (gap >> 31)); // zigzag: the first successor may precede u
+        for (int i = from + 1; i < from + count; i++) {
+            p = writeVarInt(data, p, successors[i] - previous - 1);
+            previous = successors[i];
+        }
+        writePosition = p;
+        edgeCount += count;
+        maxDegree = Math.max(maxDegree, count);
+    }
+
+    /**
+     * @return The node's number of successors (0 for nodes without a row).
+     */
+    int degree(int node) {
+        long offset = rowOffset(node);
+        if (offset == NO_ROW) return 0;
+        byte[] data = segments[(int) (offset >>> segmentBits)];
+        int p = (int) (offset & (segmentSize - 1));
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data[p++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    /**
+     * Decodes a node's successors into buffer[0 .. degree), ascending.
+     *
+     * @param buffer At least {@link #maxDegree()} long.
+     * @return The number of successors.
+     */
+    int read(int node, int[] buffer) {
+        long offset = rowOffset(node);
+        if (offset == NO_ROW) return 0;
+        byte[] data = segments[(int) (offset >>> segmentBits)];
+        int p = (int) (offset & (segmentSize - 1));
+        int degree = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data[p++];
+            degree |= (b & 0x7F) << shift;
+            if (b >= 0) break;
+        }
+        if (buffer.length < degree) {
+            throw new IllegalArgumentException("Buffer of " + buffer.length + " cannot hold " + degree + " successors.");
+        }
+        int previous = node - 1; // The first gap is zigzag-coded relative to the node, the rest are minus 1
+        for (int i = 0; i < degree; i++) {
+            int value = data[p++];
+            if (value < 0) { // Multi-byte varint (most gaps between nearby pages fit in the first byte)
+                value &= 0x7F;
+                for (int shift = 7; ; shift += 7) {
+                    byte b = data[p++];
+                    value |= (b & 0x7F) << shift;
+                    if (b >= 0) break;
+                }
+            }
+            if (i == 0) value = (value >>> 1) ^ -(value & 1);
+            previous += value + 1;
+            buffer[i] = previous;
+        }
+        return degree;
+    }
+
+    boolean hasRow(int node) {
+        return rowOffset(node) != NO_ROW;
+    }
+
+    long edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @return The largest degree written (an upper bound after rows were replaced).
+     */
+    int maxDegree() {
+        return maxDegree;
+    }
+
+    int segmentBits() {
+        return segmentBits;
+    }
+
+    /**
+     * @return A copy holding only the live rows, in node order, with the last segment trimmed.
+     */
+    AdjacencyStore compact() {
+        AdjacencyStore compacted = new AdjacencyStore(nodeCount, segmentBits);
+        int[] row = new int[Math.max(1, maxDegree)];
+        for (int node = 0; node < nodeCount; node++) {
+            int count = read(node, row);
+            if (count > 0) compacted.putRow(node, row, 0, count);
+        }
+        compacted.trim();
+        return compacted;
+    }
+
+    /**
+     * Releases the unused tail of the last segment and of the offset table (no more rows expected).
+     */
+    void trim() {
+        segments[segmentCount - 1] = Arrays.copyOf(segments[segmentCount - 1], writePosition);
+        segments = Arrays.copyOf(segments, segmentCount);
+        rowOffsets = Arrays.copyOf(rowOffsets, nodeCount);
+    }
+
+    /**
+     * @return Heap bytes of the segments and the offset table.
+     */
+    long memoryBytes() {
+        long bytes = (long) rowOffsets.length * Long.BYTES;
+        for (int s = 0; s < segmentCount; s++) bytes += segments[s].length;
+        return bytes;
+    }
+
+    private long rowOffset(int node) {
+        return (node < nodeCount) ? rowOffsets[node] : NO_ROW;
+    }
+
+    // Makes room for `bytes` more in the last segment, opening a new segment if they do not fit
+    private void reserve(int bytes) {
+        if (writePosition + (long) bytes > segmentSize) {
+            segments[segmentCount - 1] = Arrays.copyOf(segments[segmentCount - 1], writePosition);
+            if (segmentCount == segments.length) segments = Arrays.copyOf(segments, segmentCount * 2);
+            segments[segmentCount++] = new byte[Math.min(segmentSize, Math.max(INITIAL_SEGMENT_BYTES, Integer.highestOneBit(bytes) << 1))];
+            writePosition = 0;
+        }
+        byte[] data = segments[segmentCount - 1];
+        if (writePosition + bytes > data.length) {
+            long grown = Math.max((long) data.length * 2, (long) writePosition + bytes);
+            segments[segmentCount - 1] = Arrays.copyOf(data, (int) Math.min(segmentSize, grown));
+        }
+    }
+
+    // Unsigned varint: 7 bits per byte, low bits first, high bit set on all but the last byte
+    private static int writeVarInt(byte[] data, int p, int value) {
+        while ((value & ~0x7F) != 0) {
+            data[p++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[p++] = (byte) value;
+        return p;
+    }
+}
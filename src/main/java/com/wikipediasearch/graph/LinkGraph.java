@@ -0,0 +1,158 @@
+package com.wikipediasearch.graph;
+
+/**
+ * Immutable directed link graph. Nodes are dense int ids: the crawled pages plus every article
+ * they link to. Successor lists are sorted, without duplicates or self-loops, and stored
+ * gap-encoded and varint-compressed (see {@link AdjacencyStore}): links between nearby ids take
+ * a byte or two instead of a 4-byte int or a URL string. Only crawled pages keep their URL;
+ * the rest are known by fingerprint and id only.
+ * Built by {@link LinkGraphBuilder}; {@link #transpose()} gives the in-link graph. Safe to share
+ * between threads.
+ */
+public class LinkGraph {
+
+    // Edges gathered per transposition pass (4 bytes each): bounds the extra memory of transpose()
+    private static final int TRANSPOSE_BATCH_EDGES = 1 << 26;
+
+    private final AdjacencyStore adjacency;
+    private final String[] urls;   // node -> URL, null for pages that were not crawled
+    private final NodeIdMap nodeIds;
+    private final int nodeCount;
+
+    LinkGraph(AdjacencyStore adjacency, String[] urls, NodeIdMap nodeIds, int nodeCount) {
+        this.adjacency = adjacency;
+        this.urls = urls;
+        this.nodeIds = nodeIds;
+        this.nodeCount = nodeCount;
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public long edgeCount() {
+        return adjacency.edgeCount();
+    }
+
+    public int outDegree(int node) {
+        checkNode(node);
+        return adjacency.degree(node);
+    }
+
+    /**
+     * @return The largest out-degree: a buffer this long fits any node's successors.
+     */
+    public int maxOutDegree() {
+        return adjacency.maxDegree();
+    }
+
+    /**
+     * @return The nodes this node links to, ascending (a new array).
+     */
+    public int[] successors(int node) {
+        int[] successors = new int[outDegree(node)];
+        adjacency.read(node, successors);
+        return successors;
+    }
+
+    /**
+     * Decodes the node's successors into a reusable buffer, for iterating without allocation.
+     *
+     * @param buffer At least {@link #maxOutDegree()} long.
+     * @return The number of successors, in buffer[0 .. count), ascending.
+     */
+    public int successors(int node, int[] buffer) {
+        checkNode(node);
+        return adjacency.read(node, buffer);
+    }
+
+    /**
+     * @return The node's URL, or null if the page was only linked to, not crawled.
+     */
+    public String url(int node) {
+        return urls[node];
+    }
+
+    /**
+     * @return The URL's node id, or -1 if the graph has never seen it.
+     */
+    public int node(String url) {
+        return nodeIds.get(url);
+    }
+
+    /**
+     * @return The graph with every link reversed (successors become in-links), same node ids.
+     */
+    public LinkGraph transpose() {
+        return transpose(TRANSPOSE_BATCH_EDGES);
+    }
+
+    // Counts in-degrees, then makes one pass over all rows per batch of target nodes, gathering
+    // the in-links of that batch only. Sources come out ascending, so no sorting is needed.
+    LinkGraph transpose(int batchEdges) {
+        int[] row = new int[Math.max(1, adjacency.maxDegree())];
+        int[] inDegrees = new int[nodeCount];
+        for (int u = 0; u < nodeCount; u++) {
+            int count = adjacency.read(u, row);
+            for (int i = 0; i < count; i++) inDegrees[row[i]]++;
+        }
+
+        AdjacencyStore transposed = new AdjacencyStore(nodeCount, adjacency.segmentBits());
+        int[] sources = new int[0];
+        int low = 0;
+        while (low < nodeCount) {
+            int high = low;
+            long edges = 0;
+            while (high < nodeCount && (high == low || edges + inDegrees[high] <= batchEdges)) {
+                edges += inDegrees[high++];
+            }
+            int[] next = new int[high - low];  // Write position of each target's in-links
+            for (int v = low + 1; v < high; v++) next[v - low] = next[v - low - 1] + inDegrees[v - 1];
+            if (sources.length < edges) sources = new int[(int) edges];
+
+            for (int u = 0; u < nodeCount; u++) {
+                int count = adjacency.read(u, row);
+                for (int i = 0; i < count; i++) {
+                    int v = row[i];
+                    if (v >= high) break;
+                    if (v >= low) sources[next[v - low]++] = u;
+                }
+            }
+            for (int v = low; v < high; v++) {
+                int end = next[v - low];
+                transposed.putRow(v, sources, end - inDegrees[v], inDegrees[v]);
+            }
+            low = high;
+        }
+        transposed.trim();
+        return new LinkGraph(transposed, urls, nodeIds, nodeCount);
+    }
+
+    /**
+     * @return Approximate heap bytes of the compressed adjacency and the node table (URL strings excluded).
+     */
+    public long memoryBytes() {
+        return adjacency.memoryBytes() + (long) urls.length * 8 + nodeIds.memoryBytes();
+    }
+
+    // Row offsets and segments only
+    long adjacencyBytes() {
+        return adjacency.memoryBytes();
+    }
+
+    private void checkNode(int node) {
+        if (node < 0 || node >= nodeCount) {
+            throw new IllegalArgumentException("Node id out of range: " + node + " (graph has " + nodeCount + " nodes)");
+        }
+    }
+
+    @Override
+    public String toString() {
+        int crawled = 0;
+        for (String url : urls) {
+            if (url != null) crawled++;
+        }
+        return "LinkGraph{nodes=" + nodeCount + ", crawled=" + crawled + ", edges=" + edgeCount()
+                + ", bytes=" + memoryBytes() + '}';
+    }
+}
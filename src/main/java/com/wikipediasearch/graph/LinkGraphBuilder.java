@@ -0,0 +1,125 @@
+package com.wikipediasearch.graph;
+
+import java.util.Arrays;
+
+/**
+ * Records the link graph as pages are crawled: one {@link #addPage} per crawled page and one
+ * {@link #addLink} per link found on it. The links of the page being added are buffered, then
+ * sorted, deduplicated and compressed into an {@link AdjacencyStore} once the next page starts,
+ * so the crawl holds about one or two bytes per link. Nodes are fingerprints, so the builder
+ * keeps no URL strings except the crawled pages'. {@link #build()} returns a {@link LinkGraph}.
+ * Thread-safe (synchronized): the crawl thread adds while another thread may take a snapshot.
+ */
+public class LinkGraphBuilder {
+
+    private final NodeIdMap nodeIds;
+    private final AdjacencyStore adjacency;
+    private String[] urls = new String[16];       // node -> URL of crawled pages
+    private int pendingSource = -1;               // Page whose links are buffered (-1 = none)
+    private int[] pendingTargets = new int[64];
+    private int pendingCount;
+    private long linksAdded;
+
+    public LinkGraphBuilder() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedNodes Pages plus link targets expected; the node table starts at this size.
+     */
+    public LinkGraphBuilder(int expectedNodes) {
+        this(expectedNodes, AdjacencyStore.DEFAULT_SEGMENT_BITS);
+    }
+
+    // Small segments let tests cross segment boundaries
+    LinkGraphBuilder(int expectedNodes, int segmentBits) {
+        nodeIds = new NodeIdMap(expectedNodes);
+        adjacency = new AdjacencyStore(expectedNodes, segmentBits);
+    }
+
+    /**
+     * Adds a crawled page (a node that keeps its URL), if not already present.
+     * @return Its node id.
+     */
+    public synchronized int addPage(String url) {
+        int node = node(url);
+        urls[node] = url;
+        return node;
+    }
+
+    /**
+     * Adds a link. Both ends become nodes; duplicates and self-links are dropped.
+     * Adding a page's links one after the other is cheapest; links of a page that come
+     * back later are merged into its row.
+     */
+    public synchronized void addLink(String fromUrl, String toUrl) {
+        int from = node(fromUrl);
+        int to = node(toUrl);
+        if (from != pendingSource) {
+            flushPending();
+            pendingSource = from;
+        }
+        if (pendingCount == pendingTargets.length) {
+            pendingTargets = Arrays.copyOf(pendingTargets, pendingCount * 2);
+        }
+        pendingTargets[pendingCount++] = to;
+        linksAdded++;
+    }
+
+    public synchronized int nodeCount() {
+        return nodeIds.size();
+    }
+
+    /**
+     * @return Links added so far, duplicates included.
+     */
+    public synchronized long edgeCount() {
+        return linksAdded;
+    }
+
+    /**
+     * @return A snapshot of the graph so far, compacted in node order (the builder stays usable).
+     */
+    public synchronized LinkGraph build() {
+        flushPending();
+        int nodeCount = nodeIds.size();
+        return new LinkGraph(adjacency.compact(), Arrays.copyOf(urls, nodeCount), nodeIds.copy(), nodeCount);
+    }
+
+    // Writes the buffered links of pendingSource as its row, merged with any earlier row
+    private void flushPending() {
+        if (pendingSource < 0) return;
+        int source = pendingSource;
+        if (adjacency.hasRow(source)) {
+            int degree = adjacency.degree(source);
+            if (pendingCount + degree > pendingTargets.length) {
+                pendingTargets = Arrays.copyOf(pendingTargets, pendingCount + degree);
+            }
+            int[] row = new int[degree];
+            adjacency.read(source, row);
+            System.arraycopy(row, 0, pendingTargets, pendingCount, degree);
+            pendingCount += degree;
+        }
+        Arrays.sort(pendingTargets, 0, pendingCount);
+        int count = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            int target = pendingTargets[i];
+            if (target == source || (count > 0 && pendingTargets[count - 1] == target)) continue;
+            pendingTargets[count++] = target;
+        }
+        adjacency.putRow(source, pendingTargets, 0, count);
+        pendingSource = -1;
+        pendingCount = 0;
+    }
+
+    private int node(String url) {
+        if (url == null || url.isEmpty()) {
+            throw new IllegalArgumentException("Page URL cannot be null or empty.");
+        }
+        int node = nodeIds.getOrAdd(url);
+        if (node == urls.length) {
+            urls = Arrays.copyOf(urls, urls.length * 2);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,106 @@
+package com.wikipediasearch.graph;
+
+import com.wikipediasearch.util.Hashing;
+
+/**
+ * URL -> node id, keyed by the URL's 64-bit fingerprint in an open-addressing table of
+ * primitive arrays (linear probing), so link targets that are never crawled cost 12-24 bytes
+ * each instead of a String. Two URLs colliding on 64 bits share a node (probability ~n^2/2^65).
+ * Not thread-safe.
+ */
+final class NodeIdMap {
+
+    private static final double MAX_LOAD_FACTOR = 0.7;
+
+    private long[] keys;   // Fingerprints, 0 = empty slot
+    private int[] values;  // Node ids
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    NodeIdMap(int expectedSize) {
+        int capacity = Integer.highestOneBit((int) Math.ceil(Math.max(expectedSize, 4) / MAX_LOAD_FACTOR) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @return The URL's node id, assigning the next free one (= size before the call) if it is new.
+     */
+    int getOrAdd(String url) {
+        long key = fingerprint(url);
+        int slot = slotOf(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = size;
+        int id = size++;
+        if (size > resizeThreshold) rehash(keys.length * 2);
+        return id;
+    }
+
+    /**
+     * @return The URL's node id, or -1 if it has none.
+     */
+    int get(String url) {
+        long key = fingerprint(url);
+        int slot = slotOf(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    NodeIdMap copy() {
+        NodeIdMap copy = new NodeIdMap(4);
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.mask = mask;
+        copy.size = size;
+        copy.resizeThreshold = resizeThreshold;
+        return copy;
+    }
+
+    long memoryBytes() {
+        return (long) keys.length * (Long.BYTES + Integer.BYTES);
+    }
+
+    private static long fingerprint(String url) {
+        long h = Hashing.hash64(url);
+        return h == 0 ? 1 : h;
+    }
+
+    private int slotOf(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0) continue;
+            int slot = slotOf(oldKeys[i]);
+            while (keys[slot] != 0) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Node table too large.");
+        }
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * MAX_LOAD_FACTOR);
+    }
+}
@@ -0,0 +1,266 @@
+package com.wikipediasearch.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PageRank of a {@link LinkGraph} by power iteration, on primitive arrays and several threads:
+ *
+ *   rank'(v) = (1 - d) / N + d * (dangling / N + sum over u -> v of rank(u) / outDegree(u))
+ *
+ * where dangling is the rank held by pages without out-links (spread evenly, so ranks keep
+ * summing to 1). Each iteration is two parallel passes over node ranges:
+ * - every node's share rank(u) / outDegree(u), plus the dangling total;
+ * - every node pulls the shares of its in-links from the transposed graph (decoded per node).
+ * Pulling means each thread writes only its own nodes, without atomics or locks. The ranges
+ * are cut to hold about the same number of in-links. Iteration stops when the L1 change
+ * drops below the tolerance.
+ * Memory is about five longs/doubles per node plus the compressed transpose.
+ */
+public class PageRank {
+
+    public static final double DEFAULT_DAMPING = 0.85;
+    public static final double DEFAULT_TOLERANCE = 1e-9;
+    public static final int DEFAULT_MAX_ITERATIONS = 200; // The error shrinks by at least the damping factor per iteration
+
+    private final LinkGraph graph;
+    private final double[] ranks;
+    private final int iterations;
+    private final double residual;
+    private final long elapsedNanos;
+
+    private PageRank(LinkGraph graph, double[] ranks, int iterations, double residual, long elapsedNanos) {
+        this.graph = graph;
+        this.ranks = ranks;
+        this.iterations = iterations;
+        this.residual = residual;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * PageRank with the default damping (0.85), tolerance and iteration cap, on one thread per core.
+     */
+    public static PageRank compute(LinkGraph graph) {
+        return compute(graph, DEFAULT_DAMPING, DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param graph         The link graph.
+     * @param damping       Probability of following a link, in [0, 1).
+     * @param tolerance     Stop once the L1 distance between two iterations is below this.
+     * @param maxIterations Stop after this many iterations regardless.
+     * @param threads       Worker threads.
+     */
+    public static PageRank compute(LinkGraph graph, double damping, double tolerance, int maxIterations, int threads) {
+        if (graph == null) {
+            throw new IllegalArgumentException("Graph cannot be null.");
+        }
+        if (!(damping >= 0 && damping < 1) || !(tolerance > 0) || maxIterations <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Invalid PageRank parameters: damping=" + damping + ", tolerance="
+                    + tolerance + ", maxIterations=" + maxIterations + ", threads=" + threads);
+        }
+        long start = System.nanoTime();
+        int n = graph.nodeCount();
+        if (n == 0) {
+            return new PageRank(graph, new double[0], 0, 0.0, System.nanoTime() - start);
+        }
+
+        LinkGraph inLinks = graph.transpose();
+        double[] inverseOutDegree = new double[n];
+        long[] inLinkPrefix = new long[n + 1];  // In-links of nodes before v, to balance the pull ranges
+        for (int u = 0; u < n; u++) {
+            int degree = graph.outDegree(u);
+            inverseOutDegree[u] = (degree > 0) ? 1.0 / degree : 0.0;
+            inLinkPrefix[u + 1] = inLinkPrefix[u] + inLinks.outDegree(u);
+        }
+
+        double[] rank = new double[n];
+        double[] next = new double[n];
+        double[] share = new double[n];
+        Arrays.fill(rank, 1.0 / n);
+        int[] nodeRanges = nodeRanges(n, threads * 4);
+        int[] pullRanges = edgeBalancedRanges(inLinkPrefix, threads * 4);
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "pagerank-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            int iteration = 0;
+            double delta = Double.MAX_VALUE;
+            while (iteration < maxIterations && delta >= tolerance) {
+                final double[] current = rank;
+                final double[] updated = next;
+
+                // Pass 1: shares and dangling rank
+                List<Callable<Double>> shareTasks = new ArrayList<>();
+                for (int r = 0; r + 1 < nodeRanges.length; r++) {
+                    int from = nodeRanges[r];
+                    int to = nodeRanges[r + 1];
+                    shareTasks.add(() -> {
+                        double dangling = 0.0;
+                        for (int u = from; u < to; u++) {
+                            share[u] = current[u] * inverseOutDegree[u];
+                            if (inverseOutDegree[u] == 0.0) dangling += current[u];
+                        }
+                        return dangling;
+                    });
+                }
+                double dangling = sum(pool, shareTasks);
+
+                // Pass 2: pull along in-links
+                double base = (1 - damping) / n + damping * dangling / n;
+                List<Callable<Double>> pullTasks = new ArrayList<>();
+                for (int r = 0; r + 1 < pullRanges.length; r++) {
+                    int from = pullRanges[r];
+                    int to = pullRanges[r + 1];
+                    pullTasks.add(() -> {
+                        int[] sources = new int[Math.max(1, inLinks.maxOutDegree())];
+                        double change = 0.0;
+                        for (int v = from; v < to; v++) {
+                            int count = inLinks.successors(v, sources);
+                            double incoming = 0.0;
+                            for (int i = 0; i < count; i++) {
+                                incoming += share[sources[i]];
+                            }
+                            double value = base + damping * incoming;
+                            change += Math.abs(value - current[v]);
+                            updated[v] = value;
+                        }
+                        return change;
+                    });
+                }
+                delta = sum(pool, pullTasks);
+                rank = updated;
+                next = current;
+                iteration++;
+            }
+            return new PageRank(graph, rank, iteration, delta, System.nanoTime() - start);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Runs the tasks on the pool and adds up their results (in task order, so the sum is deterministic)
+    private static double sum(ExecutorService pool, List<Callable<Double>> tasks) {
+        try {
+            double total = 0.0;
+            for (Future<Double> future : pool.invokeAll(tasks)) {
+                total += future.get();
+            }
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("PageRank interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("PageRank worker failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    // Boundaries of up to `parts` equal node ranges: [r[i], r[i + 1])
+    private static int[] nodeRanges(int n, int parts) {
+        parts = Math.max(1, Math.min(parts, n));
+        int[] ranges = new int[parts + 1];
+        for (int i = 0; i <= parts; i++) {
+            ranges[i] = (int) ((long) n * i / parts);
+        }
+        return ranges;
+    }
+
+    // Node ranges holding about the same number of in-links plus nodes each (hubs skew plain ranges)
+    private static int[] edgeBalancedRanges(long[] inLinkPrefix, int parts) {
+        int n = inLinkPrefix.length - 1;
+        parts = Math.max(1, Math.min(parts, n));
+        long work = inLinkPrefix[n] + n;
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        int v = 0;
+        for (int i = 1; i < parts; i++) {
+            long goal = work * i / parts;
+            while (v < n && inLinkPrefix[v] + v < goal) v++;
+            if (v > bounds.get(bounds.size() - 1)) bounds.add(v);
+        }
+        if (bounds.get(bounds.size() - 1) < n) bounds.add(n);
+        int[] ranges = new int[bounds.size()];
+        for (int i = 0; i < ranges.length; i++) ranges[i] = bounds.get(i);
+        return ranges;
+    }
+
+    // --- Results ---
+
+    public LinkGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return The node's rank (ranks of all nodes sum to 1).
+     */
+    public double rank(int node) {
+        return ranks[node];
+    }
+
+    /**
+     * @return The page's rank, or 0 if the graph does not contain it.
+     */
+    public double rank(String url) {
+        int node = graph.node(url);
+        return (node >= 0) ? ranks[node] : 0.0;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return L1 change of the last iteration (below the tolerance if it converged).
+     */
+    public double getResidual() {
+        return residual;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Ranks of the crawled pages as static priors in (0, 1], for Index5.setStaticPriors:
+     * log(1 + N * rank) / log(1 + N * maxRank). The log tames PageRank's power-law spread,
+     * so hub pages get a lead over an average page rather than dwarfing it.
+     *
+     * @return Crawled page URL -> prior.
+     */
+    public Map<String, Double> priors() {
+        int n = ranks.length;
+        double maxRank = 0.0;
+        for (int node = 0; node < n; node++) {
+            if (graph.url(node) != null) maxRank = Math.max(maxRank, ranks[node]);
+        }
+        Map<String, Double> priors = new HashMap<>();
+        if (maxRank == 0.0) return priors;
+        double scale = Math.log1p(n * maxRank);
+        for (int node = 0; node < n; node++) {
+            String url = graph.url(node);
+            if (url != null) priors.put(url, Math.log1p(n * ranks[node]) / scale);
+        }
+        return priors;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "PageRank{nodes=%d, edges=%d, iterations=%d, residual=%.2e, %.1f ms}",
+                graph.nodeCount(), graph.edgeCount(), iterations, residual, elapsedNanos / 1e6);
+    }
+}
@@ -0,0 +1,28 @@
+package com.wikipediasearch.invertedIndex;
+
+/**
+ * Corpus-wide N and df (of the body and of each secondary field) used for IDF weighting. An Index5 normally uses its own counts;
+ * a shard of a ShardedIndex is given the statistics of the whole collection instead, so its
+ * document norms and query weights (and hence cosine scores) match an unsharded index.
+ * Shard servers get the same from a SearchCoordinator over the network.
+ */
+public interface CollectionStatistics {
+
+    /** Number of documents in the collection (N). */
+    int documentCount();
+
+    /** Number of documents in the collection containing the (stemmed) term. */
+    int docFrequency(String term);
+
+    /** Number of documents in the collection with the (stemmed) term in a secondary field (title, headings, anchor text). */
+    int fieldDocFrequency(Field field, String term);
+
+    /** True if some document of the collection has the term in its body or in a secondary field. */
+    default boolean containsTerm(String term) {
+        if (docFrequency(term) > 0) return true;
+        for (Field field : Field.values()) {
+            if (field != Field.BODY && fieldDocFrequency(field, term) > 0) return true;
+        }
+        return false;
+    }
+}
@@ -1,5 +1,8 @@
 package com.wikipediasearch.invertedIndex;
 
+import com.wikipediasearch.similarity.TFIDFCalculator;
+
+import java.util.BitSet;
 import java.util.LinkedList; // Using LinkedList as implied by original Index5 usage
 import java.util.List;      // Import List interface
 import java.util.Objects;   // For hashCode
@@ -16,19 +19,40 @@ public class DictEntry {
     private int term_freq = 0;   // Total number of times the term appears across the entire collection.
     // Changed: Replaced custom linked list (pList, last) with java.util.List
     private List<Posting> pList; // List of postings (docId, dtf) for this term.
+    private double normIdf = Double.NaN; // idf the stored document norms were computed with (NaN = none yet)
+    private volatile PostingBlock block;  // Packed copy of pList for the scoring kernels (null = not built / stale)
+    private final String term;            // The dictionary key, shared by forward-index entries (null if not given)
+    private String surfaceForm;           // Unstemmed form shown to users (null = none voted yet)
+    private int surfaceVotes;             // Majority-vote counter for surfaceForm (see voteSurfaceForm)
 
     /**
      * Default constructor. Initializes frequencies to 0 and creates an empty posting list.
      */
     public DictEntry() {
+        this(null);
+    }
+
+    /**
+     * @param term The term this entry is stored under, kept so other structures can share the
+     *             dictionary's copy of the string instead of their own.
+     */
+    DictEntry(String term) {
         this.doc_freq = 0;
         this.term_freq = 0;
         // Initialize with a concrete List implementation, LinkedList is a common choice for indices
         this.pList = new LinkedList<>();
+        this.term = term;
     }
 
     // --- Getters for encapsulated fields ---
 
+    /**
+     * @return The term as stored in the dictionary, or null if the entry was created without it.
+     */
+    String getTerm() {
+        return term;
+    }
+
     /**
      * Gets the document frequency (df) of the term.
      * This is the number of unique documents the term appears in.
@@ -90,9 +114,116 @@ public class DictEntry {
     public void addPosting(Posting posting) {
         if (posting != null) {
             this.pList.add(posting); // Add to the end of the list
+            this.block = null;
+        }
+    }
+
+
+    /**
+     * Undoes incrementDocFreq / addToTermFreq for a deleted document. Its posting stays in the
+     * list (the index skips it as a tombstone) until {@link #removePostings(BitSet)} purges it.
+     * @param frequencyInDoc The term frequency (dtf) the deleted document had.
+     */
+    public void removeDocument(int frequencyInDoc) {
+        if (doc_freq > 0) {
+            this.doc_freq--;
+        }
+        if (frequencyInDoc > 0) {
+            this.term_freq = Math.max(0, this.term_freq - frequencyInDoc);
+        }
+    }
+
+    /**
+     * Drops the postings of the given (deleted) document IDs from the list.
+     * @param docIds Set bits are the docIds to remove.
+     * @return The number of postings removed.
+     */
+    public int removePostings(BitSet docIds) {
+        int before = pList.size();
+        pList.removeIf(p -> docIds.get(p.getDocId()));
+        this.block = null;
+        return before - pList.size();
+    }
+
+    /**
+     * The posting list packed into parallel docId / tf-weight arrays for the scoring kernels.
+     * Built on first use and cached until the list changes through addPosting / removePostings
+     * (callers must not modify {@link #getPlist()} directly once queries may have run).
+     * Safe to call from concurrent readers: at worst two of them build the same block.
+     */
+    PostingBlock postingBlock() {
+        PostingBlock current = block;
+        if (current == null) {
+            current = new PostingBlock(pList.size());
+            fillPostings(current.docIds, current.tfWeights);
+            block = current;
+        }
+        return current;
+    }
+
+    /**
+     * @return The block if {@link #postingBlock()} has already built it, else null.
+     */
+    PostingBlock cachedPostingBlock() {
+        return block;
+    }
+
+    /**
+     * Copies the postings into caller-provided arrays (each at least getPlist().size() long).
+     * @return The number of postings copied.
+     */
+    int fillPostings(int[] docIds, double[] tfWeights) {
+        int i = 0;
+        for (Posting p : pList) {
+            docIds[i] = p.getDocId();
+            tfWeights[i] = TFIDFCalculator.calculateTfWeight(p.getDtf());
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return The unstemmed form most documents containing the term use (e.g. "palace" for
+     *         "palac"), or null if none was recorded.
+     */
+    String getSurfaceForm() {
+        return surfaceForm;
+    }
+
+    /**
+     * Counts a document's most frequent unstemmed form of the term towards {@link #getSurfaceForm()}.
+     * A streaming majority vote (Boyer-Moore): two fields instead of a count per form, and the
+     * winner is exact whenever one form is used by more than half of the documents. Deleted
+     * documents keep their vote.
+     */
+    void voteSurfaceForm(String form) {
+        if (surfaceVotes == 0) {
+            surfaceForm = form;
+            surfaceVotes = 1;
+        } else if (form.equals(surfaceForm)) {
+            surfaceVotes++;
+        } else {
+            surfaceVotes--;
         }
     }
 
+    int getSurfaceVotes() {
+        return surfaceVotes;
+    }
+
+    // Restores a vote saved with the index
+    void setSurfaceForm(String form, int votes) {
+        this.surfaceForm = form;
+        this.surfaceVotes = votes;
+    }
+
+    double getNormIdf() {
+        return normIdf;
+    }
+
+    void setNormIdf(double normIdf) {
+        this.normIdf = normIdf;
+    }
 
     // --- Utility Methods (adapted from original) ---
 
@@ -110,6 +241,14 @@ public class DictEntry {
         return false;
     }
 
+    /**
+     * @return The document ID of the last posting, or -1 if the list is empty. The indexer
+     *         assigns increasing IDs, so this is the only posting a new document could clash with.
+     */
+    public int lastDocId() {
+        return pList.isEmpty() ? -1 : pList.get(pList.size() - 1).getDocId();
+    }
+
     /**
      * Retrieves the term frequency (dtf) for a specific document ID from the posting list.
      * @param docId The integer document identifier to search for.
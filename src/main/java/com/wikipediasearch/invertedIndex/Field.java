@@ -0,0 +1,31 @@
+package com.wikipediasearch.invertedIndex;
+
+/**
+ * The parts of a page that Index5 indexes separately. Each field has its own postings and
+ * document norms. A ranked query scores every field against the query and adds up the
+ * per-field cosines, each weighted by its field's boost (see {@link Index5#setFieldBoost}).
+ */
+public enum Field {
+
+    /** The page title: short, and the strongest single relevance signal. */
+    TITLE(2.0),
+    /** Section headings (h1-h6). Their words are also part of the body. */
+    HEADINGS(0.75),
+    /** Visible body text. Lives in the main dictionary (boolean queries, autocomplete, fuzzy expansion). */
+    BODY(1.0),
+    /** Text of the links on other pages that point to this page. */
+    ANCHOR(1.5);
+
+    private final double defaultBoost;
+
+    Field(double defaultBoost) {
+        this.defaultBoost = defaultBoost;
+    }
+
+    /**
+     * @return The boost a new Index5 gives this field's cosine score.
+     */
+    public double getDefaultBoost() {
+        return defaultBoost;
+    }
+}
@@ -0,0 +1,165 @@
+package com.wikipediasearch.invertedIndex;
+
+import com.wikipediasearch.similarity.TFIDFCalculator;
+import com.wikipediasearch.util.MemoryEstimates;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Postings and norms of one secondary field of Index5 (title, headings or anchor text).
+ * Document vectors are log-tf weighted and cosine-normalized without idf (SMART "lnc").
+ * The query side carries the field's idf ("ltc"), so a document's norm depends only on the
+ * document. It is computed once when the document is added and never goes stale as the
+ * collection changes.
+ * The postings are tiny compared to the body's. Deleted documents are tombstoned and purged
+ * together with the body postings.
+ * Not thread-safe; guarded by Index5's lock.
+ */
+final class FieldIndex {
+
+    private static final String[] NO_TERMS = new String[0];
+    private static final int[] NO_FREQUENCIES = new int[0];
+
+    private final Field field;
+    private final Map<String, DictEntry> dictionary = new HashMap<>();          // Term -> df, postings
+    private final ForwardIndex docTerms = new ForwardIndex();                    // docId -> term frequencies
+    private double[] norms = new double[0];                                      // docId -> lnc norm (0 = no terms / deleted)
+
+    FieldIndex(Field field) {
+        this.field = field;
+    }
+
+    Field getField() {
+        return field;
+    }
+
+    /**
+     * Adds a document's terms for this field (docIds must be added in increasing order).
+     * @return The number of postings written.
+     */
+    int addDocument(int docId, Map<String, Integer> termFrequencies) {
+        if (termFrequencies.isEmpty()) return 0;
+        double sumOfSquares = 0.0;
+        for (Map.Entry<String, Integer> tfEntry : termFrequencies.entrySet()) {
+            int tf = tfEntry.getValue();
+            DictEntry dictEntry = dictionary.computeIfAbsent(tfEntry.getKey(), DictEntry::new);
+            dictEntry.incrementDocFreq();
+            dictEntry.addToTermFreq(tf);
+            dictEntry.addPosting(new Posting(docId, tf));
+            double tfWeight = TFIDFCalculator.calculateTfWeight(tf);
+            sumOfSquares += tfWeight * tfWeight;
+        }
+        docTerms.put(docId, termFrequencies, dictionary);
+        setNorm(docId, Math.sqrt(sumOfSquares));
+        return termFrequencies.size();
+    }
+
+    /**
+     * Takes a deleted document out of df and norms. Its postings stay as tombstones until
+     * {@link #purge(BitSet)}.
+     */
+    void deleteDocument(int docId) {
+        String[] terms = docTerms.terms(docId);
+        if (terms == null) return;
+        int[] frequencies = docTerms.frequencies(docId);
+        for (int i = 0; i < terms.length; i++) {
+            DictEntry dictEntry = dictionary.get(terms[i]);
+            if (dictEntry != null) dictEntry.removeDocument(frequencies[i]);
+        }
+        setNorm(docId, 0.0);
+    }
+
+    /**
+     * Drops the postings of the given deleted documents.
+     * @return The number of postings removed.
+     */
+    long purge(BitSet deletedDocs) {
+        Set<String> terms = new HashSet<>();
+        for (int docId = deletedDocs.nextSetBit(0); docId >= 0; docId = deletedDocs.nextSetBit(docId + 1)) {
+            String[] removed = docTerms.remove(docId);
+            if (removed != null) Collections.addAll(terms, removed);
+        }
+        long purged = 0;
+        for (String term : terms) {
+            DictEntry dictEntry = dictionary.get(term);
+            if (dictEntry == null) continue;
+            purged += dictEntry.removePostings(deletedDocs);
+            if (dictEntry.getPlist().isEmpty()) dictionary.remove(term);
+        }
+        return purged;
+    }
+
+    void clear() {
+        dictionary.clear();
+        docTerms.clear();
+        norms = new double[0];
+    }
+
+    /** Adds this field's document frequencies into the given term -> df map. */
+    void collectDocFrequencies(Map<String, Integer> docFrequencies) {
+        for (Map.Entry<String, DictEntry> entry : dictionary.entrySet()) {
+            if (entry.getValue().getDoc_freq() == 0) continue; // Only deleted documents had it
+            docFrequencies.merge(entry.getKey(), entry.getValue().getDoc_freq(), Integer::sum);
+        }
+    }
+
+    /**
+     * @return The term's entry, or null if no document has it in this field.
+     */
+    DictEntry get(String term) {
+        return dictionary.get(term);
+    }
+
+    /**
+     * @return The document's terms in this field (empty if it has none).
+     */
+    String[] terms(int docId) {
+        String[] terms = docTerms.terms(docId);
+        return (terms != null) ? terms : NO_TERMS;
+    }
+
+    /**
+     * @return The document's term frequencies in this field, parallel to {@link #terms(int)}.
+     */
+    int[] frequencies(int docId) {
+        int[] frequencies = docTerms.frequencies(docId);
+        return (frequencies != null) ? frequencies : NO_FREQUENCIES;
+    }
+
+    /**
+     * @return The document's norm for this field, 0 if it has no terms in it.
+     */
+    double norm(int docId) {
+        return (docId < norms.length) ? norms[docId] : 0.0;
+    }
+
+    /**
+     * @return Distinct terms in this field.
+     */
+    int size() {
+        return dictionary.size();
+    }
+
+    /**
+     * @return Estimated heap bytes of the field's dictionary, postings, forward index and norms.
+     */
+    long memoryBytes() {
+        return IndexFootprint.dictionaryBytes(dictionary) + IndexFootprint.postingsBytes(dictionary)
+                + IndexFootprint.postingBlockBytes(dictionary) + docTerms.memoryBytes()
+                + MemoryEstimates.doubleArray(norms.length);
+    }
+
+    private void setNorm(int docId, double norm) {
+        if (docId >= norms.length) {
+            if (norm == 0.0) return;
+            norms = Arrays.copyOf(norms, Math.max(docId + 1, norms.length + (norms.length >> 1)));
+        }
+        norms[docId] = norm;
+    }
+}
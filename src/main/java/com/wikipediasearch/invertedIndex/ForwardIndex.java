@@ -0,0 +1,119 @@
+package com.wikipediasearch.invertedIndex;
+
+import com.wikipediasearch.util.MemoryEstimates;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Forward index: docId -> the document's terms and their frequencies, used to recompute its
+ * norm and to find its postings when it is deleted.
+ *
+ * An entry is two parallel arrays, so a term costs a reference and an int instead of a HashMap
+ * node, a boxed Integer and the document's own copy of the term: the term strings are the
+ * dictionary's keys (see {@link DictEntry#getTerm()}), shared by every document containing them.
+ * Not thread-safe; guarded by Index5's lock.
+ */
+final class ForwardIndex {
+
+    private String[][] terms = new String[0][];   // docId -> terms (null = no entry)
+    private int[][] frequencies = new int[0][];   // docId -> tf of each term, parallel to terms
+    private int entries;
+
+    /**
+     * Stores a document's entry (the arrays are kept, not copied).
+     */
+    void put(int docId, String[] docTerms, int[] docFrequencies) {
+        if (docTerms.length != docFrequencies.length) {
+            throw new IllegalArgumentException("Terms and frequencies differ in length: "
+                    + docTerms.length + " vs " + docFrequencies.length);
+        }
+        if (docId >= terms.length) {
+            int capacity = Math.max(docId + 1, terms.length + (terms.length >> 1));
+            terms = Arrays.copyOf(terms, capacity);
+            frequencies = Arrays.copyOf(frequencies, capacity);
+        }
+        if (terms[docId] == null) entries++;
+        terms[docId] = docTerms;
+        frequencies[docId] = docFrequencies;
+    }
+
+    /**
+     * Stores a document's entry from its term map, each term replaced by the dictionary's key.
+     */
+    void put(int docId, Map<String, Integer> termFrequencies, Map<String, DictEntry> dictionary) {
+        String[] docTerms = new String[termFrequencies.size()];
+        int[] docFrequencies = new int[docTerms.length];
+        int i = 0;
+        for (Map.Entry<String, Integer> term : termFrequencies.entrySet()) {
+            docTerms[i] = canonicalTerm(term.getKey(), dictionary.get(term.getKey()));
+            docFrequencies[i++] = term.getValue();
+        }
+        put(docId, docTerms, docFrequencies);
+    }
+
+    /**
+     * @return The document's terms, or null if it has no entry.
+     */
+    String[] terms(int docId) {
+        return (docId < terms.length) ? terms[docId] : null;
+    }
+
+    /**
+     * @return The document's term frequencies (parallel to {@link #terms}), or null if it has no entry.
+     */
+    int[] frequencies(int docId) {
+        return (docId < frequencies.length) ? frequencies[docId] : null;
+    }
+
+    /**
+     * Drops a document's entry.
+     * @return Its terms, or null if it had no entry.
+     */
+    String[] remove(int docId) {
+        String[] removed = terms(docId);
+        if (removed == null) return null;
+        terms[docId] = null;
+        frequencies[docId] = null;
+        entries--;
+        return removed;
+    }
+
+    void clear() {
+        terms = new String[0][];
+        frequencies = new int[0][];
+        entries = 0;
+    }
+
+    /**
+     * @return Documents with an entry.
+     */
+    int size() {
+        return entries;
+    }
+
+    /**
+     * @return Estimated heap bytes (the term strings belong to the dictionary).
+     */
+    long memoryBytes() {
+        long bytes = 2 * MemoryEstimates.referenceArray(terms.length);
+        for (String[] docTerms : terms) {
+            if (docTerms != null) bytes += entryBytes(docTerms.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return Estimated heap bytes of one document's entry with the given number of terms.
+     */
+    static long entryBytes(int termCount) {
+        return MemoryEstimates.referenceArray(termCount) + MemoryEstimates.intArray(termCount);
+    }
+
+    /**
+     * @return The dictionary's copy of a term, or the term itself if the entry does not keep it.
+     */
+    static String canonicalTerm(String term, DictEntry dictEntry) {
+        return (dictEntry != null && dictEntry.getTerm() != null) ? dictEntry.getTerm() : term;
+    }
+}
@@ -3,8 +3,32 @@ package com.wikipediasearch.invertedIndex;
 // Import necessary classes including the new similarity calculators
 import com.wikipediasearch.similarity.TFIDFCalculator;
 import com.wikipediasearch.similarity.CosineSimilarityCalculator;
-
+import com.wikipediasearch.similarity.ScoringKernels;
+import com.wikipediasearch.dedup.NearDuplicateDetector;
+import com.wikipediasearch.dedup.SimHash;
+import com.wikipediasearch.metrics.Counter;
+import com.wikipediasearch.metrics.Histogram;
+import com.wikipediasearch.metrics.MetricsRegistry;
+import com.wikipediasearch.suggest.LevenshteinAutomaton;
+import com.wikipediasearch.suggest.PrefixSuggester;
+import com.wikipediasearch.util.MemoryEstimates;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class Index5 {
@@ -12,37 +36,129 @@ public class Index5 {
     // --- Fields ---
     private Map<String, DictEntry> index;          // Term -> DictEntry (df, postings list)
     private Map<Integer, SourceRecord> sources;    // docId (int) -> SourceRecord (URL, title, etc.)
-     private Stemmer stemmer; // Stemmer is present but not used per assignment spec
      private Set<String> stopWords; // Stop words not implemented here
-    private Map<Integer, Double> docMagnitudes;    // Store pre-calculated document norms (magnitudes)
+    private double[] docMagnitudes = new double[0]; // docId -> pre-calculated document norm (0 = none / deleted)
+    private int docIdCounter;                      // Next docId to assign (documents can be added incrementally)
+    private NearDuplicateDetector duplicateDetector; // Optional: skips near-duplicate pages (null = index everything)
+    private final Map<Integer, List<TokenizedDocument>> collapsedDuplicates = new HashMap<>(); // canonical docId -> near-duplicates skipped
+    private final Map<String, Integer> collapsedUrls = new HashMap<>(); // URL of a skipped near-duplicate -> canonical docId
+    private CollectionStatistics statistics;       // Global N / df when this index is a shard (null = own counts)
+
+    // --- Deletes / updates ---
+    private final Map<String, Integer> docIdsByUrl = new HashMap<>();              // URL -> live docId
+    private final ForwardIndex docTerms = new ForwardIndex();                      // docId -> term frequencies
+    private int unforwardedDocs;                      // Loaded docIds below this have no forward entry yet (see load)
+    private int[] loadedTermCounts;                   // Their number of terms, to size the entries
+    private final BitSet deletedDocs = new BitSet();  // Tombstones: postings of these docIds are skipped until purged
+    private int tombstones;                           // Set bits in deletedDocs
+
+    // --- Incremental norm maintenance (see refreshStaleNorms) ---
+    private final Set<Integer> staleNormDocs = new HashSet<>(); // Docs whose norm uses an idf that drifted > epsilon
+    private final Set<Integer> unnormedDocs = new HashSet<>();  // Added with updateMagnitudes = false, no norm yet
+    private double normIdfEpsilon = DEFAULT_NORM_IDF_EPSILON;
+    private long normMaxStalenessMillis = 0;          // 0 = refresh stale norms before each write returns
+    private int normSweepDocumentCount;               // N when every term's idf was last checked
+    private boolean normRefreshScheduled;
+
+    // --- Autocomplete and spelling variants (see suggest, fuzzyMatches) ---
+    private volatile PrefixSuggester suggester;       // Surface forms by df (see currentSuggesterUnlocked)
+    private volatile PrefixSuggester termTrie;        // Index terms by df, for fuzzy matching
+    private long dictionaryVersion;                   // Bumped by every write (guarded by lock)
+    private volatile long suggesterVersion = -1;      // dictionaryVersion suggester was built from (-1 = none)
+    private volatile long termTrieVersion = -1;       // dictionaryVersion termTrie was built from (-1 = none)
+    private final Object suggesterBuildLock = new Object();
+    private boolean fuzzyExpansion = true;            // Expand query terms missing from the index to spelling variants
+
+    // --- Secondary fields (see Field; the body lives in `index`) ---
+    private final Map<Field, FieldIndex> fieldIndexes = new EnumMap<>(Field.class); // Title, headings, anchor text
+    private final double[] fieldBoosts = new double[Field.values().length];         // Field.ordinal() -> boost
+
+    // --- Static priors (see setStaticPriors) ---
+    private Map<String, Double> priorsByUrl = Collections.emptyMap(); // URL -> prior, applied to added documents too
+    private double[] staticPriors = new double[0];    // docId -> query-independent prior in [0, 1] (0 = none)
+    private double priorWeight = DEFAULT_PRIOR_WEIGHT;
+
+    // --- Memory accounting (see getFootprint / setMemoryLimit) ---
+    private long memoryLimitBytes;                    // 0 = no limit
+    private Consumer<TokenizedDocument> overflow;     // Receives refused documents (null = drop them)
+    private long estimatedBytes;                      // Running footprint estimate, kept while a limit is set
+    private int documentsRefused;
+
+    // Readers (queries) share the lock; writers (buildIndex / addDocuments) hold it exclusively,
+    // so a pipelined build can publish snapshots while queries keep running.
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Token separator of documents and queries (String.split would recompile it on every call)
+    private static final Pattern NON_WORD = Pattern.compile("\\W+");
+
+    // Stemmer keeps per-word state in a buffer, so each thread gets its own instance
+    private static final ThreadLocal<Stemmer> STEMMER = ThreadLocal.withInitial(Stemmer::new);
+
+    // Metrics (shared by every Index5 in the process, see MetricsRegistry)
+    private static final Counter TOKENS_ANALYZED = MetricsRegistry.global().counter("index.tokens");
+    private static final Counter DOCUMENTS_ADDED = MetricsRegistry.global().counter("index.documents.added");
+    private static final Counter POSTINGS_WRITTEN = MetricsRegistry.global().counter("index.postings.written");
+    private static final Histogram BATCH_LATENCY = MetricsRegistry.global().histogram("index.batch.latencyNanos");
+    private static final Histogram MAGNITUDES_LATENCY = MetricsRegistry.global().histogram("index.magnitudes.latencyNanos");
+    private static final Histogram RANKED_LATENCY = MetricsRegistry.global().histogram("query.ranked.latencyNanos");
+    private static final Histogram RANKED_RESULTS = MetricsRegistry.global().histogram("query.ranked.results");
+    private static final Histogram BOOLEAN_LATENCY = MetricsRegistry.global().histogram("query.boolean.latencyNanos");
+    private static final Histogram BOOLEAN_RESULTS = MetricsRegistry.global().histogram("query.boolean.results");
+    private static final Counter POSTINGS_SCANNED = MetricsRegistry.global().counter("query.postings.scanned");
+    private static final Counter DOCUMENTS_DELETED = MetricsRegistry.global().counter("index.documents.deleted");
+    private static final Counter DOCUMENTS_REFUSED = MetricsRegistry.global().counter("index.documents.refused");
+    private static final Counter NORMS_REFRESHED = MetricsRegistry.global().counter("index.norms.refreshed");
+
+    /** Default idf drift (absolute, log10 units) tolerated before a document's norm is refreshed. */
+    public static final double DEFAULT_NORM_IDF_EPSILON = 0.01;
+    // Weight of the static prior in ranked scores (a page's score is cosines + weight * prior)
+    public static final double DEFAULT_PRIOR_WEIGHT = 0.5;
+    // Scoring inner loops over packed posting lists (SIMD when jdk.incubator.vector is present)
+    private static final ScoringKernels KERNELS = ScoringKernels.preferred();
+    // Accumulators, query-term arrays and top-k heap of ranked queries, reused per thread
+    private static final ThreadLocal<QueryScratch> QUERY_SCRATCH = ThreadLocal.withInitial(QueryScratch::new);
+    // Tombstoned postings are purged once deleted documents exceed this fraction of live ones
+    private static final double PURGE_TOMBSTONE_RATIO = 0.2;
+    // Index file written by save(Path)
+    private static final int FILE_MAGIC = 0x57495846; // "WIXF"
+    private static final String[] NO_TERMS = new String[0];
+    private static final int FILE_VERSION = 3;        // 2: terms carry their surface form; 3: collapsed pages
+
+    // Background refresh of stale norms when a staleness bound is configured
+    private static final ScheduledExecutorService NORM_REFRESHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "index-norm-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     // --- Constructor ---
     public Index5() {
         index = new HashMap<>();
         sources = new HashMap<>();
-        docMagnitudes = new HashMap<>();
-         stemmer = new Stemmer(); // Initialize if used
          stopWords = new HashSet<>(); // Initialize if used
 //         loadStopWords("stopwords.txt"); // Example if needed
+        for (Field field : Field.values()) {
+            if (field != Field.BODY) fieldIndexes.put(field, new FieldIndex(field));
+            fieldBoosts[field.ordinal()] = field.getDefaultBoost();
+        }
     }
     /*
         doc1 -> term1, term2, term3
      */
 
-    // --- buildIndex Method (Updated - No functional change, still doesn't use stemmer) ---
+    // --- buildIndex Method (tokenizes each page, then adds them all as one batch) ---
     public void buildIndex(Map<String, String> pages) {
         System.out.println("Building index...");
-        int docIdCounter = 0;
-
-        index.clear();
-        sources.clear();
-        docMagnitudes.clear();
 
         if (pages == null || pages.isEmpty()) {
+            clear();
             System.out.println("No pages provided to build index.");
             return;
         }
 
+        IndexPhaseEvent tokenizePhase = new IndexPhaseEvent();
+        tokenizePhase.begin();
+        List<TokenizedDocument> documents = new ArrayList<>(pages.size());
         for (Map.Entry<String, String> pageEntry : pages.entrySet()) {
             String url = pageEntry.getKey();
             String content = pageEntry.getValue();
@@ -50,127 +166,894 @@ public class Index5 {
                 System.err.println("Warning: Skipping page with empty content: " + url);
                 continue;
             }
+            documents.add(tokenize(url, null, content));
+        }
+        tokenizePhase.end();
+        if (tokenizePhase.shouldCommit()) {
+            tokenizePhase.phase = "tokenize";
+            tokenizePhase.documents = documents.size();
+            tokenizePhase.commit();
+        }
 
-            int currentDocId = docIdCounter++;
-            SourceRecord currentSource = new SourceRecord(currentDocId, url, "Title Placeholder - " + url);
-            sources.put(currentDocId, currentSource);
+        buildIndex(documents);
+    }
 
-            // --- Text Processing ---
-            // 1. Tokenize (split by non-word chars) and Lowercase
-            String[] terms = content.toLowerCase().split("\\W+");
-            int tokenCount = 0;
-            Map<String, Integer> termFrequenciesInDoc = new HashMap<>();
+    /**
+     * Replaces the index contents with already tokenized documents, e.g. crawled pages with
+     * their title, headings and incoming anchor text (see {@link #tokenize(String, String, String, String, String)}).
+     *
+     * @param documents The documents (docIds are assigned in iteration order).
+     */
+    public void buildIndex(Collection<TokenizedDocument> documents) {
+        clear();
+        addDocuments(documents);
+
+        // The dictionary stays frozen until the next write: precompute the tries now
+        lock.readLock().lock();
+        try {
+            currentSuggesterUnlocked();
+            currentTermTrieUnlocked();
+            if (duplicateDetector != null) {
+                System.out.println("Near-duplicate check: " + duplicateDetector);
+            }
+            System.out.println("Initial index build complete. Total terms: " + index.size() + ", Total documents: " + sources.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
-            for (String term : terms) {
-                if (term.isEmpty()) continue;
+    // Empties the index (keeps settings such as near-duplicate detection)
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            index.clear();
+            sources.clear();
+            docMagnitudes = new double[0];
+            docIdCounter = 0;
+            collapsedDuplicates.clear();
+            collapsedUrls.clear();
+            if (duplicateDetector != null) duplicateDetector.clear();
+            docIdsByUrl.clear();
+            docTerms.clear();
+            unforwardedDocs = 0;
+            loadedTermCounts = null;
+            deletedDocs.clear();
+            tombstones = 0;
+            staleNormDocs.clear();
+            unnormedDocs.clear();
+            normSweepDocumentCount = 0;
+            dictionaryVersion++;
+            for (FieldIndex fieldIndex : fieldIndexes.values()) fieldIndex.clear();
+            staticPriors = new double[0];
+            if (memoryLimitBytes > 0) estimatedBytes = footprintUnlocked().getTotalBytes();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
-                // 2. Filter out purely numeric tokens (optional, but kept from original)
-                if (term.matches("\\d+")) {
-                    continue;
+    /**
+     * Runs a page through the analysis chain (lowercase, split on non-word chars,
+     * numeric / short token filter, stop words, stemming) without touching the index.
+     * A non-null title is also indexed as the page's title field.
+     * Safe to call from several threads at once.
+     *
+     * @param url     The page URL.
+     * @param title   The page title, or null to use a placeholder.
+     * @param content The page text.
+     * @return The tokenized document, ready for {@link #addDocuments(Collection)}.
+     */
+    public TokenizedDocument tokenize(String url, String title, String content) {
+        return tokenize(url, title, null, null, content);
+    }
+
+    /**
+     * Like {@link #tokenize(String, String, String)}, with section headings and incoming anchor
+     * text indexed as fields of their own. Each field goes through the same analysis chain.
+     *
+     * @param url        The page URL.
+     * @param title      The page title, or null to use a placeholder (and index no title).
+     * @param headings   Text of the page's section headings, or null.
+     * @param anchorText Text of links on other pages pointing to this one, or null.
+     * @param content    The page text.
+     * @return The tokenized document, ready for {@link #addDocuments(Collection)}.
+     */
+    public TokenizedDocument tokenize(String url, String title, String headings, String anchorText, String content) {
+        Map<String, Integer> termFrequenciesInDoc = new HashMap<>();
+        Map<String, String> surfaceForms = new HashMap<>();
+        Stemmer stemmer = STEMMER.get();
+        int tokenCount = analyze(content, termFrequenciesInDoc, surfaceForms, stemmer);
+
+        Map<Field, Map<String, Integer>> fields = new EnumMap<>(Field.class);
+        analyzeField(Field.TITLE, title, fields, stemmer);
+        analyzeField(Field.HEADINGS, headings, fields, stemmer);
+        analyzeField(Field.ANCHOR, anchorText, fields, stemmer);
+        return new TokenizedDocument(url, title, termFrequenciesInDoc, tokenCount, fields, surfaceForms);
+    }
+
+    private void analyzeField(Field field, String text, Map<Field, Map<String, Integer>> fields, Stemmer stemmer) {
+        if (text == null || text.isEmpty()) return;
+        Map<String, Integer> termFrequencies = new HashMap<>();
+        analyze(text, termFrequencies, null, stemmer);
+        if (!termFrequencies.isEmpty()) fields.put(field, termFrequencies);
+    }
+
+    // Adds the processed terms of a text to termFrequenciesInDoc, and to surfaceForms (if not null)
+    // the most frequent unstemmed form of each term where it differs; returns the number of tokens counted
+    private int analyze(String content, Map<String, Integer> termFrequenciesInDoc, Map<String, String> surfaceForms,
+                        Stemmer stemmer) {
+        int tokenCount = 0;
+        if (content == null) {
+            return tokenCount;
+        }
+        Map<String, Integer> formCounts = (surfaceForms != null) ? new HashMap<>() : null;
+
+        // --- Text Processing ---
+        // 1. Tokenize (split by non-word chars) and Lowercase
+        String[] terms = NON_WORD.split(content.toLowerCase());
+
+        for (String term : terms) {
+            if (term.isEmpty()) continue;
+
+            // 2. Filter out purely numeric tokens (optional, but kept from original)
+            if (isNumeric(term)) {
+                continue;
+            }
+            // Consider stricter filter? e.g., minimum length, remove single chars?
+            if (term.length() < 2) { // Optional: Remove very short tokens
+                continue;
+            }
+
+            tokenCount++;
+
+            // 3. Stop Word Removal
+             if (stopWord(term)) continue;
+
+            // 4. Stemming
+            stemmer.addString(term); // Add the term to the stemmer
+            stemmer.stem();          // Perform stemming
+            String stemmedTerm = stemmer.toString(); // Get the stemmed result
+
+            if (stemmedTerm.isEmpty()) continue; // Skip if stemming produces nothing
+
+            termFrequenciesInDoc.put(stemmedTerm, termFrequenciesInDoc.getOrDefault(stemmedTerm, 0) + 1);
+
+            // 5. Surface form: the most used form of each stem so far (ties: alphabetical)
+            if (formCounts != null) {
+                int count = formCounts.merge(term, 1, Integer::sum);
+                String best = surfaceForms.get(stemmedTerm);
+                if (best == null || (!best.equals(term) && (count > formCounts.get(best)
+                        || (count == formCounts.get(best) && term.compareTo(best) < 0)))) {
+                    surfaceForms.put(stemmedTerm, term);
                 }
-                // Consider stricter filter? e.g., minimum length, remove single chars?
-                if (term.length() < 2) { // Optional: Remove very short tokens
+            }
+        }
+        if (surfaceForms != null) surfaceForms.entrySet().removeIf(e -> e.getKey().equals(e.getValue()));
+        TOKENS_ANALYZED.add(tokenCount);
+        return tokenCount;
+    }
+
+    /**
+     * Adds a batch of tokenized documents to the index and updates document magnitudes,
+     * all under the write lock. Queries running concurrently see either the index before
+     * the batch or after it, never a half-applied batch.
+     *
+     * @param documents The documents to add (docIds are assigned in iteration order).
+     * @return The number of documents actually added.
+     */
+    public int addDocuments(Collection<TokenizedDocument> documents) {
+        return addDocuments(documents, true, false);
+    }
+
+    /**
+     * Like {@link #addDocuments(Collection)}, but a document whose URL is already indexed
+     * replaces it (e.g. a re-crawled page): the old version is deleted first.
+     *
+     * @param documents The new versions.
+     * @return The number of documents actually added.
+     */
+    public int updateDocuments(Collection<TokenizedDocument> documents) {
+        return addDocuments(documents, true, true);
+    }
+
+    // updateMagnitudes = false leaves document norms stale; ShardedIndex recalculates them
+    // once the global statistics for the new batch are known.
+    int addDocuments(Collection<TokenizedDocument> documents, boolean updateMagnitudes) {
+        return addDocuments(documents, updateMagnitudes, false);
+    }
+
+    private int addDocuments(Collection<TokenizedDocument> documents, boolean updateMagnitudes, boolean replace) {
+        if (documents == null || documents.isEmpty()) {
+            return 0;
+        }
+        int added = 0;
+        long start = System.nanoTime();
+        List<TokenizedDocument> refused = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            dictionaryVersion++;
+            IndexPhaseEvent postingsPhase = new IndexPhaseEvent();
+            postingsPhase.begin();
+            long postingsWritten = 0;
+            Set<String> changedTerms = new HashSet<>();
+            Set<Integer> addedDocIds = new HashSet<>();
+            // Near-duplicates of a replaced page join the batch (see deleteDocumentUnlocked)
+            Deque<TokenizedDocument> pending = new ArrayDeque<>(documents.size());
+            for (TokenizedDocument document : documents) {
+                if (document != null) pending.add(document);
+            }
+            while (!pending.isEmpty()) {
+                TokenizedDocument document = pending.poll();
+                if (memoryLimitBytes > 0 && estimatedBytes >= memoryLimitBytes) {
+                    refused.add(document); // Over the memory limit: handed to the overflow below
                     continue;
                 }
+                long documentBytes = (memoryLimitBytes > 0) ? estimateDocumentBytesUnlocked(document) : 0;
+                if (replace) {
+                    String[] oldTerms = deleteDocumentUnlocked(document.getUrl(), pending);
+                    if (oldTerms != null) Collections.addAll(changedTerms, oldTerms);
+                }
+                if (duplicateDetector != null) {
+                    long signature = SimHash.compute(document.getTermFrequencies());
+                    int canonicalDocId = duplicateDetector.findDuplicate(signature);
+                    if (canonicalDocId >= 0) {
+                        // Collapse into the already-indexed page instead of adding more postings; the
+                        // page is kept so that it can be indexed if the canonical one goes away
+                        collapsedDuplicates.computeIfAbsent(canonicalDocId, id -> new ArrayList<>()).add(document);
+                        collapsedUrls.put(document.getUrl(), canonicalDocId);
+                        continue;
+                    }
+                    int docId = addDocumentUnlocked(document);
+                    duplicateDetector.add(docId, signature);
+                    addedDocIds.add(docId);
+                } else {
+                    addedDocIds.add(addDocumentUnlocked(document));
+                }
+                changedTerms.addAll(document.getTermFrequencies().keySet());
+                estimatedBytes += documentBytes;
+                added++;
+                postingsWritten += document.getTermFrequencies().size(); // One posting per distinct term
+            }
+            postingsPhase.end();
+            if (postingsPhase.shouldCommit()) {
+                postingsPhase.phase = "postings";
+                postingsPhase.documents = added;
+                postingsPhase.postings = postingsWritten;
+                postingsPhase.terms = index.size();
+                postingsPhase.commit();
+            }
+            // --- Post-processing: Update Document Magnitudes ---
+            // New documents get their norm now; existing ones only if the batch moved the idf
+            // of one of their terms by more than epsilon (see markDriftedNorms)
+            if (!updateMagnitudes) {
+                unnormedDocs.addAll(addedDocIds); // Deferred to updateMagnitudes(changedTerms)
+            } else if (!sources.isEmpty()) {
+                IndexPhaseEvent magnitudesPhase = new IndexPhaseEvent();
+                magnitudesPhase.begin();
+                markDriftedNorms(changedTerms, addedDocIds);
+                for (int docId : addedDocIds) {
+                    updateNormUnlocked(docId);
+                }
+                int staleNorms = staleNormDocs.size();
+                refreshOrScheduleStaleNorms();
+                magnitudesPhase.end();
+                if (magnitudesPhase.shouldCommit()) {
+                    magnitudesPhase.phase = "magnitudes";
+                    magnitudesPhase.documents = addedDocIds.size() + staleNorms; // Norms computed or marked stale
+                    magnitudesPhase.terms = changedTerms.size();
+                    magnitudesPhase.commit();
+                }
+            } else {
+                System.out.println("Skipping magnitude calculation as no documents were indexed.");
+            }
+            purgeTombstonesIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!refused.isEmpty()) handleRefused(refused);
+        DOCUMENTS_ADDED.add(added);
+        BATCH_LATENCY.recordSince(start);
+        return added;
+    }
 
-                tokenCount++;
+    // Caller must hold the write lock. Returns the assigned docId.
+    private int addDocumentUnlocked(TokenizedDocument document) {
+        String url = document.getUrl();
+        int currentDocId = docIdCounter++;
+        String title = (document.getTitle() != null) ? document.getTitle() : "Title Placeholder - " + url;
+        SourceRecord currentSource = new SourceRecord(currentDocId, url, title);
+        sources.put(currentDocId, currentSource);
+        currentSource.setLength(document.getLength());
+        docIdsByUrl.put(url, currentDocId);
+        String[] forwardTerms = new String[document.getTermFrequencies().size()];
+        int[] forwardFrequencies = new int[forwardTerms.length];
+        int forwardCount = 0;
+
+        // --- Update Inverted Index ---
+        for (Map.Entry<String, Integer> tfEntry : document.getTermFrequencies().entrySet()) {
+            String processedTerm = tfEntry.getKey();
+            // No need to stem again, already done in tokenize()
+            int termFreqInThisDoc = tfEntry.getValue();
+
+            DictEntry dictEntry = index.computeIfAbsent(processedTerm, DictEntry::new);
+            forwardTerms[forwardCount] = ForwardIndex.canonicalTerm(processedTerm, dictEntry);
+            forwardFrequencies[forwardCount++] = termFreqInThisDoc;
+
+            // Check if this document ID is already in the posting list for this term
+            // (Should not happen if we process each doc only once, but good practice).
+            // DocIds only grow, so only the last posting can match.
+            boolean docAlreadyInPosting = dictEntry.lastDocId() == currentDocId;
+
+            if (!docAlreadyInPosting) {
+                dictEntry.incrementDocFreq(); // Increment df only if this doc is new for this term
+                dictEntry.addToTermFreq(termFreqInThisDoc); // Add this doc's TF to corpus TF
+                String surfaceForm = document.getSurfaceForm(processedTerm);
+                dictEntry.voteSurfaceForm(surfaceForm.equals(processedTerm) ? forwardTerms[forwardCount - 1] : surfaceForm);
+
+                // Create and add the Posting
+                Posting newPosting = new Posting(currentDocId, termFreqInThisDoc);
+                dictEntry.addPosting(newPosting);
+                POSTINGS_WRITTEN.increment();
+            } else {
+                // This case implies the document was processed twice or logic error
+                System.err.println("Error: Document ID " + currentDocId + " processed multiple times for term '" + processedTerm + "'.");
+            }
+        }
 
-                // 3. Stop Word Removal (NOT IMPLEMENTED)
-                 if (stopWord(term)) continue;
+        docTerms.put(currentDocId, forwardTerms, forwardFrequencies);
 
-                // 4. Stemming (NOT APPLIED per assignment spec)
-                stemmer.addString(term); // Add the term to the stemmer
-                stemmer.stem();          // Perform stemming
-                String stemmedTerm = stemmer.toString(); // Get the stemmed result
+        // --- Secondary field postings (title, headings, anchor text) ---
+        for (FieldIndex fieldIndex : fieldIndexes.values()) {
+            POSTINGS_WRITTEN.add(fieldIndex.addDocument(currentDocId, document.getFieldTermFrequencies(fieldIndex.getField())));
+        }
+        Double prior = priorsByUrl.get(url);
+        if (prior != null) setStaticPrior(currentDocId, prior);
+        return currentDocId;
+    }
 
-                if (stemmedTerm.isEmpty()) continue; // Skip if stemming produces nothing
+    // --- Deletes ---
+
+    /**
+     * Deletes the document indexed under a URL. Its postings become tombstones (skipped by
+     * queries) and are purged in bulk once enough documents are deleted; df, N and the norms of
+     * documents sharing its terms are updated like for an added document.
+     * Near-duplicates collapsed into the page (see {@link #setNearDuplicateThreshold}) are
+     * indexed right after, as a batch of their own: the first becomes the canonical page of the
+     * others that are still similar to it.
+     *
+     * @param url The page URL (also that of a collapsed near-duplicate, which is then forgotten).
+     * @return true if a document was deleted, false if the URL is not indexed.
+     */
+    public boolean deleteDocument(String url) {
+        List<TokenizedDocument> orphans = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            String[] terms = deleteDocumentUnlocked(url, orphans);
+            if (terms == null) return false;
+            if (!sources.isEmpty()) {
+                markDriftedNorms(Arrays.asList(terms), Collections.emptySet());
+                refreshOrScheduleStaleNorms();
+            }
+            purgeTombstonesIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!orphans.isEmpty()) addDocuments(orphans, true, false);
+        return true;
+    }
+
+    // Caller holds the write lock. Returns the deleted document's terms (none for a collapsed
+    // near-duplicate), or null; the near-duplicates collapsed into it are added to orphans.
+    private String[] deleteDocumentUnlocked(String url, Collection<TokenizedDocument> orphans) {
+        Integer docId = docIdsByUrl.remove(url);
+        if (docId == null) {
+            Integer canonicalDocId = collapsedUrls.remove(url);
+            if (canonicalDocId == null) return null;
+            List<TokenizedDocument> collapsed = collapsedDuplicates.get(canonicalDocId);
+            collapsed.removeIf(document -> document.getUrl().equals(url));
+            if (collapsed.isEmpty()) collapsedDuplicates.remove(canonicalDocId);
+            return NO_TERMS;
+        }
+        dictionaryVersion++; // Document frequencies change
+        String[] terms = forwardTermsUnlocked(docId); // Kept until purge, to find its postings
+        int[] frequencies = docTerms.frequencies(docId);
+        for (int i = 0; i < terms.length; i++) {
+            DictEntry dictEntry = index.get(terms[i]);
+            if (dictEntry != null) dictEntry.removeDocument(frequencies[i]);
+        }
+        for (FieldIndex fieldIndex : fieldIndexes.values()) fieldIndex.deleteDocument(docId);
+        deletedDocs.set(docId);
+        tombstones++;
+        sources.remove(docId);
+        setDocumentMagnitude(docId, 0.0);
+        setStaticPrior(docId, 0.0);
+        staleNormDocs.remove(docId);
+        unnormedDocs.remove(docId);
+        List<TokenizedDocument> collapsed = collapsedDuplicates.remove(docId);
+        if (collapsed != null) {
+            for (TokenizedDocument document : collapsed) collapsedUrls.remove(document.getUrl());
+            orphans.addAll(collapsed);
+        }
+        if (duplicateDetector != null) duplicateDetector.remove(docId);
+        DOCUMENTS_DELETED.increment();
+        return terms;
+    }
+
+    // Physically removes tombstoned postings once they are a sizeable fraction of the index.
+    // Only the posting lists of the deleted documents' terms are touched.
+    private void purgeTombstonesIfNeeded() {
+        if (tombstones == 0 || tombstones < PURGE_TOMBSTONE_RATIO * Math.max(1, sources.size())) return;
+        Set<String> terms = new HashSet<>();
+        for (int docId = deletedDocs.nextSetBit(0); docId >= 0; docId = deletedDocs.nextSetBit(docId + 1)) {
+            Collections.addAll(terms, docTerms.remove(docId));
+        }
+        long purged = 0;
+        for (String term : terms) {
+            DictEntry dictEntry = index.get(term);
+            if (dictEntry == null) continue;
+            purged += dictEntry.removePostings(deletedDocs);
+            if (dictEntry.getPlist().isEmpty()) index.remove(term);
+        }
+        for (FieldIndex fieldIndex : fieldIndexes.values()) purged += fieldIndex.purge(deletedDocs);
+        System.out.println("Purged " + purged + " postings of " + tombstones + " deleted documents.");
+        deletedDocs.clear();
+        tombstones = 0;
+        if (memoryLimitBytes > 0) estimatedBytes = footprintUnlocked().getTotalBytes();
+    }
 
-                termFrequenciesInDoc.put(stemmedTerm, termFrequenciesInDoc.getOrDefault(stemmedTerm, 0) + 1);
+    /**
+     * @return Deleted documents whose postings have not been purged yet.
+     */
+    public int getTombstoneCount() {
+        lock.readLock().lock();
+        try {
+            return tombstones;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- Incremental norm maintenance ---
+    //
+    // A document's norm depends on N and the df of each of its terms, so any change to the
+    // corpus shifts every norm a little. Instead of recomputing all of them per batch, each
+    // term remembers the idf the stored norms were computed with (DictEntry.normIdf). After a
+    // change, only terms whose df changed are checked, plus all terms once N alone has moved
+    // idf by more than epsilon since the last such sweep; documents containing a term whose
+    // idf drifted by more than epsilon get their norm recomputed from the forward index.
+    // Other norms stay within about epsilon per term of their exact value.
+
+    /**
+     * Sets how stale document norms may get.
+     *
+     * @param idfEpsilon         idf drift (absolute, log10 units) tolerated before the norms of
+     *                           documents containing the term are refreshed. 0 keeps them exact.
+     * @param maxStalenessMillis How long drifted norms may stay unrefreshed: 0 refreshes them
+     *                           before each add / update / delete returns, more defers the work
+     *                           to a background thread (queries in between use the old norms).
+     */
+    public void setNormRefreshPolicy(double idfEpsilon, long maxStalenessMillis) {
+        if (idfEpsilon < 0 || maxStalenessMillis < 0) {
+            throw new IllegalArgumentException("Norm epsilon and staleness cannot be negative.");
+        }
+        lock.writeLock().lock();
+        try {
+            this.normIdfEpsilon = idfEpsilon;
+            this.normMaxStalenessMillis = maxStalenessMillis;
+            refreshOrScheduleStaleNorms();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Recomputes the norms of all documents marked stale now, without waiting for the
+     * staleness bound.
+     *
+     * @return The number of norms recomputed.
+     */
+    public int refreshStaleNorms() {
+        lock.writeLock().lock();
+        try {
+            return refreshStaleNormsUnlocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Documents whose norm is waiting for a refresh.
+     */
+    public int getStaleNormCount() {
+        lock.readLock().lock();
+        try {
+            return staleNormDocs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock. Marks the documents (except skipDocIds) of every candidate
+    // term whose idf moved more than epsilon away from the one their norms used.
+    private void markDriftedNorms(Collection<String> changedTerms, Set<Integer> skipDocIds) {
+        int N = collectionSize(null);
+        Collection<String> candidates = changedTerms;
+        if (normSweepDocumentCount == 0
+                || Math.abs(Math.log10((double) N / normSweepDocumentCount)) > normIdfEpsilon) {
+            // N alone may have moved every idf by more than epsilon: check the whole dictionary
+            // (terms only; postings are read just for terms that really drifted)
+            candidates = index.keySet();
+            normSweepDocumentCount = N;
+        }
+        for (String term : candidates) {
+            DictEntry dictEntry = index.get(term);
+            if (dictEntry == null) continue;
+            double idf = TFIDFCalculator.calculateIdf(N, collectionDocFrequency(null, term, dictEntry));
+            double normIdf = dictEntry.getNormIdf();
+            if (Double.isNaN(normIdf)) {
+                // New term: only documents of this batch contain it, and their norms are computed next
+                dictEntry.setNormIdf(idf);
+                continue;
+            }
+            if (Math.abs(idf - normIdf) <= normIdfEpsilon) continue;
+            for (Posting post : dictEntry.getPlist()) {
+                int docId = post.getDocId();
+                if (!deletedDocs.get(docId) && !skipDocIds.contains(docId)) staleNormDocs.add(docId);
             }
-            currentSource.setLength(tokenCount);
+            dictEntry.setNormIdf(idf);
+        }
+    }
 
-            // --- Update Inverted Index ---
-            for (Map.Entry<String, Integer> tfEntry : termFrequenciesInDoc.entrySet()) {
-                String processedTerm = tfEntry.getKey();
-                // No need to stem again, already done above
-                int termFreqInThisDoc = tfEntry.getValue();
+    // Caller holds the write lock
+    private void refreshOrScheduleStaleNorms() {
+        if (staleNormDocs.isEmpty()) return;
+        if (normMaxStalenessMillis == 0) {
+            refreshStaleNormsUnlocked();
+        } else if (!normRefreshScheduled) {
+            normRefreshScheduled = true;
+            NORM_REFRESHER.schedule(() -> {
+                lock.writeLock().lock();
+                try {
+                    normRefreshScheduled = false;
+                    refreshStaleNormsUnlocked();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }, normMaxStalenessMillis, TimeUnit.MILLISECONDS);
+        }
+    }
 
-                DictEntry dictEntry = index.computeIfAbsent(processedTerm, k -> new DictEntry());
+    // Caller holds the write lock
+    private int refreshStaleNormsUnlocked() {
+        if (staleNormDocs.isEmpty()) return 0;
+        long start = System.nanoTime();
+        int refreshed = staleNormDocs.size();
+        for (int docId : staleNormDocs) {
+            updateNormUnlocked(docId);
+        }
+        staleNormDocs.clear();
+        NORMS_REFRESHED.add(refreshed);
+        MAGNITUDES_LATENCY.recordSince(start);
+        return refreshed;
+    }
 
-                // Check if this document ID is already in the posting list for this term
-                // (Should not happen if we process each doc only once, but good practice)
-                boolean docAlreadyInPosting = dictEntry.postingListContains(currentDocId);
+    // Caller holds the write lock. Recomputes one document's norm from the forward index.
+    private void updateNormUnlocked(int docId) {
+        String[] terms = forwardTermsUnlocked(docId);
+        if (terms == null || deletedDocs.get(docId)) return;
+        int[] frequencies = docTerms.frequencies(docId);
+        int N = collectionSize(null);
+        double sumOfSquares = 0.0;
+        for (int i = 0; i < terms.length; i++) {
+            int df = collectionDocFrequency(null, terms[i], index.get(terms[i]));
+            double tfIdf = TFIDFCalculator.calculateTfIdf(frequencies[i], N, df);
+            sumOfSquares += tfIdf * tfIdf;
+        }
+        setDocumentMagnitude(docId, (sumOfSquares > 0) ? Math.sqrt(sumOfSquares) : 0.0);
+    }
 
-                if (!docAlreadyInPosting) {
-                    dictEntry.incrementDocFreq(); // Increment df only if this doc is new for this term
-                    dictEntry.addToTermFreq(termFreqInThisDoc); // Add this doc's TF to corpus TF
+    // Caller holds the write lock
+    private void setDocumentMagnitude(int docId, double magnitude) {
+        if (docId >= docMagnitudes.length) {
+            if (magnitude == 0.0) return;
+            docMagnitudes = Arrays.copyOf(docMagnitudes, Math.max(docId + 1, docMagnitudes.length + (docMagnitudes.length >> 1)));
+        }
+        docMagnitudes[docId] = magnitude;
+    }
 
-                    // Create and add the Posting
-                    Posting newPosting = new Posting(currentDocId, termFreqInThisDoc);
-                    dictEntry.addPosting(newPosting);
-                } else {
-                    // This case implies the document was processed twice or logic error
-                    System.err.println("Error: Document ID " + currentDocId + " processed multiple times for term '" + processedTerm + "'.");
+    // Caller holds the write lock
+    private void setStaticPrior(int docId, double prior) {
+        if (docId >= staticPriors.length) {
+            if (prior == 0.0) return;
+            staticPriors = Arrays.copyOf(staticPriors, Math.max(docId + 1, staticPriors.length + (staticPriors.length >> 1)));
+        }
+        staticPriors[docId] = prior;
+    }
+
+    // Caller holds the lock; 0 for documents without a prior
+    private double staticPrior(int docId) {
+        return (docId < staticPriors.length) ? staticPriors[docId] : 0.0;
+    }
+
+    // Caller holds the lock; 0 for documents without a norm
+    private double documentMagnitude(int docId) {
+        return (docId < docMagnitudes.length) ? docMagnitudes[docId] : 0.0;
+    }
+
+    /**
+     * Enables near-duplicate detection: a document whose SimHash is within the threshold of one
+     * indexed earlier is skipped and counted against it. The skipped page is kept (tokenized, not
+     * indexed) and indexed when that one is deleted or replaced, so it does not drop out of the
+     * index for good. Call before buildIndex / addDocuments; documents indexed before detection
+     * was enabled are not compared against.
+     *
+     * @param similarityThreshold SimHash similarity in [0.8, 1.0], or a negative value to disable.
+     */
+    public void setNearDuplicateThreshold(double similarityThreshold) {
+        lock.writeLock().lock();
+        try {
+            duplicateDetector = (similarityThreshold < 0) ? null : new NearDuplicateDetector(similarityThreshold);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of near-duplicate pages collapsed into this document (0 if none).
+     */
+    public int getCollapsedDuplicateCount(int docId) {
+        lock.readLock().lock();
+        try {
+            List<TokenizedDocument> collapsed = collapsedDuplicates.get(docId);
+            return (collapsed != null) ? collapsed.size() : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Total number of near-duplicate pages skipped since the last buildIndex.
+     */
+    public int getDuplicatesSkipped() {
+        lock.readLock().lock();
+        try {
+            int total = 0;
+            for (List<TokenizedDocument> collapsed : collapsedDuplicates.values()) total += collapsed.size();
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    // --- Collection statistics (own counts, or the whole collection's for a shard) ---
+
+    /**
+     * Makes IDF weighting use the given collection-wide statistics instead of this index's own
+     * counts (null to go back to own counts). Document norms are not refreshed; call
+     * {@link #recalculateMagnitudes()} afterwards.
+     */
+    public void setCollectionStatistics(CollectionStatistics statistics) {
+        lock.writeLock().lock();
+        try {
+            this.statistics = statistics;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Recomputes all document norms with the current collection statistics. */
+    public void recalculateMagnitudes() {
+        lock.writeLock().lock();
+        try {
+            if (sources.isEmpty()) {
+                Arrays.fill(docMagnitudes, 0.0);
+            } else {
+                calculateAllDocumentMagnitudes();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finishes batches added with updateMagnitudes = false once the collection statistics they
+     * changed are installed: computes the norms of their documents and, as addDocuments does for
+     * its own batch, refreshes only the norms whose idf drifted by more than epsilon (see
+     * {@link #setNormRefreshPolicy}), checking only the terms whose collection df changed.
+     *
+     * @param changedTerms Terms whose collection df changed, whichever shard they changed in.
+     */
+    void updateMagnitudes(Collection<String> changedTerms) {
+        lock.writeLock().lock();
+        try {
+            if (sources.isEmpty()) return;
+            markDriftedNorms(changedTerms, unnormedDocs);
+            for (int docId : unnormedDocs) {
+                updateNormUnlocked(docId);
+            }
+            unnormedDocs.clear();
+            refreshOrScheduleStaleNorms();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Adds this index's document frequencies into the given term -> df map. */
+    public void collectDocFrequencies(Map<String, Integer> docFrequencies) {
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, DictEntry> entry : index.entrySet()) {
+                if (entry.getValue().getDoc_freq() == 0) continue; // Only deleted documents had it
+                docFrequencies.merge(entry.getKey(), entry.getValue().getDoc_freq(), Integer::sum);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Adds this index's per-field document frequencies of the secondary fields into the given maps. */
+    public void collectFieldDocFrequencies(Map<Field, Map<String, Integer>> fieldDocFrequencies) {
+        lock.readLock().lock();
+        try {
+            for (FieldIndex fieldIndex : fieldIndexes.values()) {
+                fieldIndex.collectDocFrequencies(fieldDocFrequencies.computeIfAbsent(fieldIndex.getField(), f -> new HashMap<>()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Analyzes a query and returns, per secondary field, the processed query terms this index
+     * has in that field with their df (terms it does not have there are left out).
+     */
+    public Map<Field, Map<String, Integer>> getQueryTermFieldDocFrequencies(String query) {
+        return getTermFieldDocFrequencies(processQuery(query));
+    }
+
+    /**
+     * Same as {@link #getQueryTermFieldDocFrequencies} for already analyzed terms (e.g. fuzzy variants).
+     */
+    public Map<Field, Map<String, Integer>> getTermFieldDocFrequencies(Collection<String> terms) {
+        Map<Field, Map<String, Integer>> fieldDocFrequencies = new EnumMap<>(Field.class);
+        lock.readLock().lock();
+        try {
+            for (FieldIndex fieldIndex : fieldIndexes.values()) {
+                Map<String, Integer> docFrequencies = new HashMap<>();
+                for (String term : terms) {
+                    DictEntry dictEntry = fieldIndex.get(term);
+                    if (dictEntry != null && dictEntry.getDoc_freq() > 0) docFrequencies.put(term, dictEntry.getDoc_freq());
                 }
+                fieldDocFrequencies.put(fieldIndex.getField(), docFrequencies);
             }
-            // Progress indicator (optional)
-            // if (currentDocId % 1 == 0 ) { // Print every document
-            //     System.out.println("  Indexed document " + (currentDocId + 1) + "/" + pages.size() + " : " + url);
-            // }
+        } finally {
+            lock.readLock().unlock();
         }
+        return fieldDocFrequencies;
+    }
 
-        System.out.println("Initial index build complete. Total terms: " + index.size() + ", Total documents: " + sources.size());
+    /**
+     * Analyzes a query and returns its distinct processed terms with this index's own df
+     * (0 for terms it does not contain). Shard servers report these so a coordinator can
+     * sum them into collection-wide df.
+     */
+    public Map<String, Integer> getQueryTermDocFrequencies(String query) {
+        return getTermDocFrequencies(processQuery(query));
+    }
 
-        // --- Post-processing: Calculate Document Magnitudes ---
-        if (!sources.isEmpty()) {
-            System.out.println("Calculating document magnitudes (norms)...");
-            calculateAllDocumentMagnitudes();
-            System.out.println("Document magnitudes calculated.");
-        } else {
-            System.out.println("Skipping magnitude calculation as no documents were indexed.");
+    /**
+     * Same as {@link #getQueryTermDocFrequencies} for already analyzed terms (e.g. fuzzy variants).
+     */
+    public Map<String, Integer> getTermDocFrequencies(Collection<String> terms) {
+        Map<String, Integer> docFrequencies = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            for (String term : terms) {
+                DictEntry dictEntry = index.get(term);
+                docFrequencies.put(term, (dictEntry != null) ? dictEntry.getDoc_freq() : 0);
+            }
+        } finally {
+            lock.readLock().unlock();
         }
+        return docFrequencies;
+    }
+
+    // N under the given statistics (null = the installed ones, or this index's own counts)
+    private int collectionSize(CollectionStatistics stats) {
+        if (stats == null) stats = statistics;
+        return (stats != null) ? stats.documentCount() : sources.size();
+    }
+
+    // df of a term; localEntry is this index's entry for it (may be null)
+    private int collectionDocFrequency(CollectionStatistics stats, String term, DictEntry localEntry) {
+        if (stats == null) stats = statistics;
+        if (stats != null) return stats.docFrequency(term);
+        return (localEntry != null) ? localEntry.getDoc_freq() : 0;
     }
 
+    // Field df of a term; localEntry is the field's own entry for it (may be null)
+    private int collectionFieldDocFrequency(CollectionStatistics stats, Field field, String term, DictEntry localEntry) {
+        if (stats == null) stats = statistics;
+        if (stats != null) return stats.fieldDocFrequency(field, term);
+        return (localEntry != null) ? localEntry.getDoc_freq() : 0;
+    }
 
     // --- Method to calculate magnitudes for all documents (MODIFIED to use TFIDFCalculator) ---
     private void calculateAllDocumentMagnitudes() {
-        int N = sources.size();
-        if (N == 0) return;
-
-        Map<Integer, Double> docScoresSumOfSquares = new HashMap<>();
+        if (sources.isEmpty()) return;
+        int N = collectionSize(null);
+        long start = System.nanoTime();
+        IndexPhaseEvent event = new IndexPhaseEvent();
+        event.begin();
+        long postingsVisited = 0;
+
+        // Dense docId-indexed sums of squares, filled term by term by the kernels (becomes docMagnitudes)
+        double[] sumsOfSquares = new double[docIdCounter];
+        int[] docIdScratch = new int[0];
+        double[] tfWeightScratch = new double[0];
 
         for (Map.Entry<String, DictEntry> indexEntry : index.entrySet()) {
             DictEntry dictEntry = indexEntry.getValue();
-            int df = dictEntry.getDoc_freq();
-            if (df == 0) continue;
-
+            int df = collectionDocFrequency(null, indexEntry.getKey(), dictEntry);
             // Calculate IDF using the external calculator
             double idf = TFIDFCalculator.calculateIdf(N, df);
+            dictEntry.setNormIdf(idf);
+            if (df == 0) continue;
             if (idf == 0.0) continue; // Skip terms in all docs
 
-            for (Posting post : dictEntry.getPlist()) {
-                int docId = post.getDocId();
-                int tf = post.getDtf();
-
-                // Calculate TF-IDF using the external calculator
-                double tfIdf = TFIDFCalculator.calculateTfIdf(tf, N, df);
-
-                // Accumulate the *square* of the TF-IDF weight
-                docScoresSumOfSquares.put(docId,
-                        docScoresSumOfSquares.getOrDefault(docId, 0.0) + (tfIdf * tfIdf));
+            int postings = dictEntry.getPlist().size();
+            postingsVisited += postings;
+            // Reuse a block queries already built; otherwise pack into scratch arrays rather than
+            // caching a block for every term of the dictionary
+            PostingBlock block = dictEntry.cachedPostingBlock();
+            if (block != null) {
+                KERNELS.accumulateSquares(sumsOfSquares, block.docIds, block.tfWeights, block.length(), idf);
+            } else {
+                if (docIdScratch.length < postings) {
+                    docIdScratch = new int[Math.max(postings, docIdScratch.length * 2)];
+                    tfWeightScratch = new double[docIdScratch.length];
+                }
+                dictEntry.fillPostings(docIdScratch, tfWeightScratch);
+                KERNELS.accumulateSquares(sumsOfSquares, docIdScratch, tfWeightScratch, postings, idf);
             }
         }
 
         // Calculate the final magnitude (sqrt of sum of squares)
-        docMagnitudes.clear();
-        for (Map.Entry<Integer, Double> entry : docScoresSumOfSquares.entrySet()) {
-            int docId = entry.getKey();
-            double sumOfSquares = entry.getValue();
-            if (sumOfSquares > 0) { // Avoid storing magnitude for empty/zero-vector docs
-                docMagnitudes.put(docId, Math.sqrt(sumOfSquares));
+        staleNormDocs.clear();
+        normSweepDocumentCount = N;
+        int[] nonZero = new int[sumsOfSquares.length];
+        int nonZeroCount = KERNELS.selectAbove(sumsOfSquares, sumsOfSquares.length, 0.0, nonZero);
+        int magnitudeCount = 0;
+        for (int i = 0; i < nonZeroCount; i++) { // Empty/zero-vector docs keep magnitude 0
+            int docId = nonZero[i];
+            if (deletedDocs.get(docId)) { // Tombstone
+                sumsOfSquares[docId] = 0.0;
+                continue;
             }
+            sumsOfSquares[docId] = Math.sqrt(sumsOfSquares[docId]);
+            magnitudeCount++;
+        }
+        docMagnitudes = sumsOfSquares; // Now docId -> magnitude
+        MAGNITUDES_LATENCY.recordSince(start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = "magnitudes";
+            event.documents = N;
+            event.postings = postingsVisited;
+            event.terms = index.size();
+            event.commit();
+        }
+        System.out.println("Calculated non-zero magnitudes for " + magnitudeCount + " documents.");
+    }
+
+    // Same as term.matches("\\d+") without compiling the pattern on every token
+    private static boolean isNumeric(String term) {
+        if (term.isEmpty()) return false;
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c < '0' || c > '9') return false;
         }
-        System.out.println("Calculated non-zero magnitudes for " + docMagnitudes.size() + " documents.");
+        return true;
     }
 
     // --- REMOVED: calculateTfWeight and calculateIdf methods ---
@@ -183,130 +1066,706 @@ public class Index5 {
         if (query == null || query.trim().isEmpty()) {
             return processedTerms;
         }
-        String[] terms = query.toLowerCase().split("\\W+");
+        String[] terms = NON_WORD.split(query.toLowerCase());
+        Stemmer stemmer = STEMMER.get();
         for (String term : terms) {
-            if (term.isEmpty() || term.matches("\\d+") || term.length() < 2) { // Apply same filters as indexing
-                continue;
-            }
-            if(stopWord(term)) continue; // Apply stop word filter
-            // Apply stemming if used
-            stemmer.addString(term); // Add the term to the stemmer
-            stemmer.stem();          // Perform stemming
-            String stemmedTerm = stemmer.toString(); // Get the stemmed result
-
-            if (stemmedTerm.isEmpty()) continue; // Skip if stemming produces nothing
-            processedTerms.add(stemmedTerm); // Add to processed terms
+            String stemmedTerm = analyzeQueryToken(term, stemmer);
+            if (stemmedTerm != null) processedTerms.add(stemmedTerm); // Add to processed terms
         }
         return processedTerms;
     }
 
+    // One lowercased query token as the index stores it, or null if indexing would drop it
+    private String analyzeQueryToken(String term, Stemmer stemmer) {
+        if (term.isEmpty() || isNumeric(term) || term.length() < 2) { // Apply same filters as indexing
+            return null;
+        }
+        if(stopWord(term)) return null; // Apply stop word filter
+        // Apply stemming if used
+        stemmer.addString(term); // Add the term to the stemmer
+        stemmer.stem();          // Perform stemming
+        String stemmedTerm = stemmer.toString(); // Get the stemmed result
+
+        return stemmedTerm.isEmpty() ? null : stemmedTerm; // Skip if stemming produces nothing
+    }
+
 
     // --- Ranked Search Method (MODIFIED to use calculators) ---
     public List<SearchResult> findQueryRanked(String query) {
-        int N = sources.size();
-        if (N == 0) {
+        return findQueryRanked(query, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Ranked search returning only the best {@code k} results, in score order. Scores into
+     * reused per-thread buffers and resolves the SourceRecord of the final hits only, so in
+     * steady state a query allocates little beyond its analyzed terms and the k results.
+     *
+     * @param k Maximum number of results (Integer.MAX_VALUE for every match).
+     */
+    public List<SearchResult> findQueryRanked(String query, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k cannot be negative: " + k);
+        }
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        long start = System.nanoTime();
+        List<SearchResult> results;
+        lock.readLock().lock();
+        try {
+            results = findQueryRankedUnlocked(query, k, event, null, null, null);
+            event.indexDocuments = sources.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+        RANKED_LATENCY.recordSince(start);
+        RANKED_RESULTS.record(results.size());
+        event.end();
+        if (event.shouldCommit()) {
+            event.type = "ranked";
+            event.query = query;
+            event.resultCount = results.size();
+            event.commit();
+        }
+        return results;
+    }
+
+    /**
+     * Ranked search of one shard of a larger collection: the best {@code k} results in score
+     * order, without the per-query metrics and JFR event (the caller records those once per query).
+     *
+     * @param statistics Collection-wide N and df for weighting the query terms (e.g. gathered by
+     *                   a coordinator for this query), or null to use the installed statistics.
+     */
+    public List<SearchResult> findQueryRanked(String query, int k, CollectionStatistics statistics) {
+        return findQueryRanked(query, k, statistics, null);
+    }
+
+    /**
+     * Shard search of a query whose spelling variants were chosen for the whole collection (see
+     * {@link QueryExpansion}); the statistics must include the df of the variants.
+     *
+     * @param expansion Variants to add to the query, or null to expand only an index that is not
+     *                  a shard (one without collection statistics).
+     */
+    public List<SearchResult> findQueryRanked(String query, int k, CollectionStatistics statistics, QueryExpansion expansion) {
+        lock.readLock().lock();
+        try {
+            return findQueryRankedUnlocked(query, k, new QueryEvent(), null, statistics, expansion);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Completes a prefix typed in the search box to words of the indexed pages, those in the most
+     * documents first. Answers from a trie with the best completions precomputed per node, so a
+     * lookup costs O(prefix length) whatever the vocabulary size. Each index term is completed to
+     * the unstemmed form most of its documents use ("palace", not the stem "palac"), lowercased.
+     * Writes only mark the trie stale, so small updates stay cheap: buildIndex builds it, and
+     * otherwise the first call after a write rebuilds it over the whole dictionary.
+     *
+     * @param prefix The text typed so far; lowercased before lookup.
+     * @param limit  Maximum number of completions, at most {@link PrefixSuggester#DEFAULT_TOP_N}.
+     */
+    public List<String> suggest(String prefix, int limit) {
+        if (prefix == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        String normalized = prefix.trim().toLowerCase();
+        lock.readLock().lock();
+        try {
+            return currentSuggesterUnlocked().complete(normalized, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the read or write lock, so dictionaryVersion cannot change meanwhile
+    private PrefixSuggester currentSuggesterUnlocked() {
+        if (suggesterVersion != dictionaryVersion) {
+            synchronized (suggesterBuildLock) {
+                if (suggesterVersion != dictionaryVersion) {
+                    Map<String, Integer> surfaceFrequencies = new HashMap<>(hashCapacity(index.size()));
+                    for (Map.Entry<String, DictEntry> entry : index.entrySet()) {
+                        int df = entry.getValue().getDoc_freq();
+                        if (df == 0) continue; // Deleted documents only
+                        String surfaceForm = entry.getValue().getSurfaceForm();
+                        surfaceFrequencies.merge((surfaceForm != null) ? surfaceForm : entry.getKey(), df, Math::max);
+                    }
+                    suggester = PrefixSuggester.build(surfaceFrequencies, PrefixSuggester.DEFAULT_TOP_N);
+                    suggesterVersion = dictionaryVersion; // Written after suggester: readers checking it see the new trie
+                }
+            }
+        }
+        return suggester;
+    }
+
+    // Caller holds the read or write lock, so dictionaryVersion cannot change meanwhile
+    private PrefixSuggester currentTermTrieUnlocked() {
+        if (termTrieVersion != dictionaryVersion) {
+            synchronized (suggesterBuildLock) {
+                if (termTrieVersion != dictionaryVersion) {
+                    Map<String, Integer> docFrequencies = new HashMap<>(hashCapacity(index.size()));
+                    for (Map.Entry<String, DictEntry> entry : index.entrySet()) {
+                        docFrequencies.put(entry.getKey(), entry.getValue().getDoc_freq()); // df 0 is left out
+                    }
+                    termTrie = PrefixSuggester.build(docFrequencies, PrefixSuggester.DEFAULT_TOP_N);
+                    termTrieVersion = dictionaryVersion;
+                }
+            }
+        }
+        return termTrie;
+    }
+
+    /**
+     * Enables or disables fuzzy expansion of ranked queries (on by default). A query term the
+     * index does not contain is replaced by up to 5 dictionary terms within 1 edit (terms of
+     * 3-5 characters) or 2 edits (longer terms), found by intersecting a Levenshtein automaton
+     * with the dictionary trie. Each variant is weighted by its idf and by 1 / (1 + edit distance).
+     * Indexes serving as shards (with collection statistics) do not expand on their own: they
+     * apply the {@link QueryExpansion} chosen for the whole collection.
+     */
+    public void setFuzzyExpansion(boolean enabled) {
+        lock.writeLock().lock();
+        try {
+            this.fuzzyExpansion = enabled;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets how much a field's cosine score counts towards ranked scores. A ranked score is the
+     * sum over fields of boost * cosine(query, field), each field with its own norms, so a
+     * title or anchor match lifts a page above pages that only mention the words in passing.
+     * Defaults are {@link Field#getDefaultBoost()}; 0 leaves a field out of scoring, and with
+     * only BODY boosted at 1 the ranking is plain body cosine.
+     *
+     * @throws IllegalArgumentException if field is null or boost is negative or NaN.
+     */
+    public void setFieldBoost(Field field, double boost) {
+        if (field == null || !(boost >= 0)) {
+            throw new IllegalArgumentException("Field boost must be a non-negative number: " + field + " = " + boost);
+        }
+        lock.writeLock().lock();
+        try {
+            fieldBoosts[field.ordinal()] = boost;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public double getFieldBoost(Field field) {
+        lock.readLock().lock();
+        try {
+            return fieldBoosts[field.ordinal()];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Installs query-independent priors, e.g. {@link com.wikipediasearch.graph.PageRank#priors()}.
+     * Every ranked hit gets weight * prior added to its score (see {@link #setStaticPriorWeight}),
+     * so among pages matching about equally well the more linked-to one wins. Replaces earlier
+     * priors; documents indexed later under one of the URLs pick theirs up as they are added.
+     *
+     * @param priors URL -> prior in [0, 1]. Pages without an entry have prior 0.
+     * @throws IllegalArgumentException if priors is null or a value is outside [0, 1].
+     */
+    public void setStaticPriors(Map<String, Double> priors) {
+        if (priors == null) {
+            throw new IllegalArgumentException("Priors cannot be null.");
+        }
+        for (Map.Entry<String, Double> prior : priors.entrySet()) {
+            Double value = prior.getValue();
+            if (value == null || !(value >= 0.0 && value <= 1.0)) {
+                throw new IllegalArgumentException("Static prior must be in [0, 1]: " + prior.getKey() + " = " + value);
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            priorsByUrl = new HashMap<>(priors);
+            staticPriors = new double[0];
+            for (Map.Entry<String, Integer> doc : docIdsByUrl.entrySet()) {
+                Double prior = priorsByUrl.get(doc.getKey());
+                if (prior != null) setStaticPrior(doc.getValue(), prior);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets how much the static prior counts: score = field cosines + weight * prior.
+     * 0 ranks by text alone.
+     *
+     * @throws IllegalArgumentException if weight is negative or NaN.
+     */
+    public void setStaticPriorWeight(double weight) {
+        if (!(weight >= 0)) {
+            throw new IllegalArgumentException("Static prior weight must be a non-negative number: " + weight);
+        }
+        lock.writeLock().lock();
+        try {
+            priorWeight = weight;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The document's static prior in [0, 1] (0 if none was installed). As it does not depend
+     * on the query, weight * prior also bounds what the prior can add to any score, which lets an
+     * early-terminating scorer visit documents in prior order and stop once the bound cannot win.
+     */
+    public double getStaticPrior(int docId) {
+        lock.readLock().lock();
+        try {
+            return staticPrior(docId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Fuzzy candidates for analyzed query terms: every term of this index's dictionary within
+     * each term's edit budget. A ShardedIndex or SearchCoordinator gathers these from all
+     * shards and picks the variants by collection df ({@link QueryExpansion#select}).
+     *
+     * @param terms Analyzed (lowercased, stemmed) query terms, e.g. the keys of {@link #getQueryTermDocFrequencies}.
+     * @return Query term -> candidate term -> edit distance, for the terms with any candidate.
+     */
+    public Map<String, Map<String, Integer>> getFuzzyCandidates(Collection<String> terms) {
+        lock.readLock().lock();
+        try {
+            return getFuzzyCandidatesUnlocked(terms);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the read or write lock
+    private Map<String, Map<String, Integer>> getFuzzyCandidatesUnlocked(Collection<String> terms) {
+        Map<String, Map<String, Integer>> candidates = new LinkedHashMap<>();
+        for (String term : terms) {
+            Map<String, Integer> matches = new LinkedHashMap<>();
+            for (PrefixSuggester.FuzzyMatch match : fuzzyMatches(term, Integer.MAX_VALUE)) {
+                matches.put(match.getTerm(), match.getDistance());
+            }
+            if (!matches.isEmpty()) candidates.put(term, matches);
+        }
+        return candidates;
+    }
+
+    // Variants of the query terms this index does not contain, chosen from its own dictionary
+    private QueryExpansion expandMissingTerms(QueryScratch scratch) {
+        List<String> missing = new ArrayList<>();
+        for (int t = 0; t < scratch.termCount; t++) {
+            if (!isIndexedTerm(scratch.terms[t])) missing.add(scratch.terms[t]);
+        }
+        if (missing.isEmpty()) return QueryExpansion.none();
+        Map<String, Map<String, Integer>> candidates = new LinkedHashMap<>();
+        for (String term : missing) {
+            candidates.put(term, Collections.emptyMap()); // Counted as unmatched if it has no candidate
+        }
+        candidates.putAll(getFuzzyCandidatesUnlocked(missing));
+        return QueryExpansion.select(candidates, term -> {
+            DictEntry dictEntry = index.get(term);
+            return (dictEntry != null) ? dictEntry.getDoc_freq() : 0;
+        });
+    }
+
+    // Adds the variants of the query's own terms, each with its query term's frequency
+    private void applyExpansion(QueryScratch scratch, QueryExpansion expansion) {
+        int queryTermCount = scratch.termCount;
+        for (int t = 0; t < queryTermCount; t++) {
+            for (QueryExpansion.Variant variant : expansion.getVariants(scratch.terms[t])) {
+                scratch.addExpansion(variant.getTerm(), scratch.termFrequencies[t], variant.getBoost());
+            }
+        }
+    }
+
+    // True if a live document has the term in its body or in a secondary field
+    private boolean isIndexedTerm(String term) {
+        DictEntry dictEntry = index.get(term);
+        if (dictEntry != null && dictEntry.getDoc_freq() > 0) return true;
+        for (FieldIndex fieldIndex : fieldIndexes.values()) {
+            DictEntry fieldEntry = fieldIndex.get(term);
+            if (fieldEntry != null && fieldEntry.getDoc_freq() > 0) return true;
+        }
+        return false;
+    }
+
+    // Dictionary terms near an analyzed term (edit budget by its length); caller holds the lock
+    private List<PrefixSuggester.FuzzyMatch> fuzzyMatches(String term, int limit) {
+        int maxEdits = LevenshteinAutomaton.autoMaxEdits(term.length());
+        if (maxEdits == 0) return Collections.emptyList();
+        return currentTermTrieUnlocked().fuzzyMatches(new LevenshteinAutomaton(term, maxEdits), limit);
+    }
+
+    /**
+     * Spelling correction for a query: each word whose analyzed form is not in the index is
+     * replaced by the closest dictionary term (fewest edits, then most documents). Corrections
+     * are index terms, i.e. stemmed ("palac" for "palace"); other words are kept as typed.
+     *
+     * @return The corrected query (lowercased), or null if every word is known or nothing close was found.
+     */
+    public String didYouMean(String query) {
+        if (query == null || query.trim().isEmpty()) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            if (sources.isEmpty()) return null;
+            Stemmer stemmer = STEMMER.get();
+            StringBuilder corrected = new StringBuilder();
+            boolean changed = false;
+            for (String word : NON_WORD.split(query.toLowerCase())) {
+                if (word.isEmpty()) continue;
+                String replacement = word;
+                String term = analyzeQueryToken(word, stemmer);
+                if (term != null && !isIndexedTerm(term)) {
+                    List<PrefixSuggester.FuzzyMatch> best = fuzzyMatches(term, 1);
+                    if (!best.isEmpty()) {
+                        replacement = best.get(0).getTerm();
+                        changed = true;
+                    }
+                }
+                if (corrected.length() > 0) corrected.append(' ');
+                corrected.append(replacement);
+            }
+            return changed ? corrected.toString() : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a ranked query like {@link #findQueryRanked(String)} and reports how it was evaluated:
+     * term statistics, postings scanned, accumulator size, phase timings and a per-term score
+     * breakdown of the top hits. Meant for diagnosing slow or oddly ranked queries; the extra
+     * bookkeeping makes it slower than a plain search.
+     *
+     * @param query   The query text.
+     * @param topHits How many of the best hits to break down (0 for none).
+     * @return The explanation; its result count matches what findQueryRanked would return.
+     */
+    public QueryExplanation explainQueryRanked(String query, int topHits) {
+        if (topHits < 0) {
+            throw new IllegalArgumentException("topHits cannot be negative: " + topHits);
+        }
+        lock.readLock().lock();
+        try {
+            QueryExplanation explanation = new QueryExplanation(query, collectionSize(null));
+            List<SearchResult> results = findQueryRankedUnlocked(query, Integer.MAX_VALUE, new QueryEvent(), explanation, null, null);
+            explanation.setResultCount(results.size());
+            for (SearchResult result : results.subList(0, Math.min(topHits, results.size()))) {
+                explanation.addHit(explainHit(result, explanation));
+            }
+            return explanation;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Per-term cosine contributions for one hit. Looks each term's posting up again, which is
+    // fine for the handful of hits an explanation covers.
+    private QueryExplanation.HitExplanation explainHit(SearchResult result, QueryExplanation explanation) {
+        int N = collectionSize(null);
+        double docMagnitude = documentMagnitude(result.getDocId());
+        double bodyBoost = fieldBoosts[Field.BODY.ordinal()];
+        List<QueryExplanation.TermContribution> contributions = new ArrayList<>();
+        for (QueryExplanation.TermStats term : explanation.getTerms()) {
+            if (term.getWeight() == 0.0 || bodyBoost == 0.0) continue;
+            DictEntry dictEntry = index.get(term.getTerm());
+            for (Posting post : dictEntry.getPlist()) {
+                if (post.getDocId() != result.getDocId()) continue;
+                double docWeight = TFIDFCalculator.calculateTfIdf(post.getDtf(), N, term.getDocFrequency());
+                double contribution = bodyBoost * term.getWeight() * docWeight / (explanation.getQueryMagnitude() * docMagnitude);
+                contributions.add(new QueryExplanation.TermContribution(term.getTerm(), post.getDtf(), docWeight, contribution));
+                break;
+            }
+        }
+        // Secondary fields, as "field:term" (document weights there are lnc: log tf / field norm)
+        for (FieldIndex fieldIndex : fieldIndexes.values()) {
+            Field field = fieldIndex.getField();
+            double fieldNorm = fieldIndex.norm(result.getDocId());
+            if (fieldNorm == 0.0) continue;
+            for (Map.Entry<String, Double> term : explanation.getFieldTermWeights(field).entrySet()) {
+                int tf = fieldIndex.get(term.getKey()).getTermFrequencyInDoc(result.getDocId());
+                if (tf <= 0) continue;
+                double docWeight = TFIDFCalculator.calculateTfWeight(tf) / fieldNorm;
+                double contribution = fieldBoosts[field.ordinal()] * term.getValue() * docWeight
+                        / explanation.getFieldQueryMagnitude(field);
+                contributions.add(new QueryExplanation.TermContribution(
+                        field.name().toLowerCase(Locale.ROOT) + ":" + term.getKey(), tf, docWeight, contribution));
+            }
+        }
+        double prior = staticPrior(result.getDocId());
+        if (prior > 0.0 && priorWeight > 0.0) {
+            contributions.add(new QueryExplanation.TermContribution("prior", 0, prior, priorWeight * prior));
+        }
+        return new QueryExplanation.HitExplanation(result, docMagnitude, contributions);
+    }
+
+    // Best k results (Integer.MAX_VALUE = all) in score order. explanation is null for normal
+    // searches; queryStatistics null = installed statistics; expansion null = expand here unless a shard.
+    private List<SearchResult> findQueryRankedUnlocked(String query, int k, QueryEvent event, QueryExplanation explanation,
+                                                       CollectionStatistics queryStatistics, QueryExpansion expansion) {
+        int N = collectionSize(queryStatistics);
+        if (sources.isEmpty()) {
             System.err.println("Error: Index is empty. Cannot perform search.");
             return Collections.emptyList();
         }
 
+        long analysisStart = System.nanoTime();
         List<String> queryTerms = processQuery(query);
+        long analysisNanos = System.nanoTime() - analysisStart;
+        event.terms = queryTerms.size();
+        if (explanation != null) explanation.setTimings(analysisNanos, 0, 0);
         if (queryTerms.isEmpty()) {
             System.out.println("Query processed to empty term list. No results.");
             return Collections.emptyList();
         }
 
-        // 1. Calculate Query Vector (TF-IDF weights and magnitude)
-        Map<String, Integer> queryTermFrequency = new HashMap<>();
+        // 1. Calculate Query Vector (TF-IDF weights and magnitude), in per-thread scratch arrays
+        QueryScratch scratch = QUERY_SCRATCH.get();
+        scratch.clearTerms();
         for (String term : queryTerms) {
-            queryTermFrequency.put(term, queryTermFrequency.getOrDefault(term, 0) + 1);
+            scratch.addTerm(term);
         }
-
-        Map<String, Double> queryTfIdfVector = new HashMap<>();
+        // A shard does not expand on its own (it would weight the query differently from the other
+        // shards): it is given the variants chosen for the whole collection
+        if (expansion == null && fuzzyExpansion && queryStatistics == null && statistics == null) {
+            expansion = expandMissingTerms(scratch);
+        }
+        if (expansion != null) applyExpansion(scratch, expansion);
         double queryMagnitudeSquared = 0.0;
 
-        for (Map.Entry<String, Integer> entry : queryTermFrequency.entrySet()) {
-            String term = entry.getKey();
-            int qTf = entry.getValue();
+        for (int t = 0; t < scratch.termCount; t++) {
+            String term = scratch.terms[t];
+            int qTf = scratch.termFrequencies[t];
             DictEntry dictEntry = index.get(term);
+            // Collection df: a shard must weight terms it does not contain itself, or |q| would differ
+            int df = collectionDocFrequency(queryStatistics, term, dictEntry);
 
             double termIdf = 0.0;
-            if (dictEntry != null && dictEntry.getDoc_freq() > 0) {
+            if (df > 0) {
                 // Use TFIDFCalculator for IDF
-                termIdf = TFIDFCalculator.calculateIdf(N, dictEntry.getDoc_freq());
+                termIdf = TFIDFCalculator.calculateIdf(N, df);
             }
 
             // Use TFIDFCalculator for TF weight
             double qTfWeight = TFIDFCalculator.calculateTfWeight(qTf);
-            double tfIdfValue = qTfWeight * termIdf; // Query term TF-IDF
+            double tfIdfValue = qTfWeight * termIdf * scratch.boosts[t]; // Query term TF-IDF
 
+            scratch.idfs[t] = termIdf;
+            scratch.weights[t] = Math.max(tfIdfValue, 0.0);
             if (tfIdfValue > 0) {
-                queryTfIdfVector.put(term, tfIdfValue);
                 queryMagnitudeSquared += (tfIdfValue * tfIdfValue);
+                // Only locally present terms are scored; absent ones still count towards |q|
+                if (dictEntry != null) scratch.blocks[t] = dictEntry.postingBlock();
+            }
+            if (explanation != null) {
+                explanation.addTerm(new QueryExplanation.TermStats(term, qTf,
+                        df, termIdf, Math.max(tfIdfValue, 0.0),
+                        (dictEntry != null) ? dictEntry.getPlist().size() : 0));
             }
         }
 
         double queryMagnitude = Math.sqrt(queryMagnitudeSquared);
-        if (queryMagnitude == 0.0) {
+        if (explanation != null) explanation.setQueryMagnitude(queryMagnitude);
+        if (fieldBoosts[Field.BODY.ordinal()] == 0.0) {
+            Arrays.fill(scratch.blocks, 0, scratch.termCount, null); // Body left out of scoring
+        }
+
+        // 2. Secondary fields first: their posting lists are short, and each adds its boosted
+        // cosine into fieldScores (null if no query term occurs in any of them)
+        long scoringStart = System.nanoTime();
+        double[] fieldScores = null;
+        for (FieldIndex fieldIndex : fieldIndexes.values()) {
+            fieldScores = scoreField(fieldIndex, scratch, N, queryStatistics, fieldScores, event, explanation);
+        }
+        if (queryMagnitude == 0.0 && fieldScores == null) {
             System.out.println("Query terms not found in index or have zero relevance (IDF=0). Cannot rank.");
             return Collections.emptyList();
         }
 
-        // 2. Calculate Dot Products using Score Accumulators
-        Map<Integer, Double> docScores = new HashMap<>(); // docId -> dot product score
-
-        for (Map.Entry<String, Double> queryVectorEntry : queryTfIdfVector.entrySet()) {
-            String term = queryVectorEntry.getKey();
-            double queryTermTfIdf = queryVectorEntry.getValue();
-
-            DictEntry dictEntry = index.get(term); // We know this exists if it's in queryTfIdfVector
-            if (dictEntry == null) continue; // Should not happen, but defensive check
-
-            // IDF is needed again for document TF-IDF calculation
-            double termIdf = TFIDFCalculator.calculateIdf(N, dictEntry.getDoc_freq());
-            if (termIdf == 0.0) continue; // Skip if term has zero IDF
-
-            for (Posting post : dictEntry.getPlist()) {
-                int docId = post.getDocId();
-                int docTf = post.getDtf();
-
-                // Use TFIDFCalculator for document TF-IDF
-                double docTermTfIdf = TFIDFCalculator.calculateTfIdf(docTf, N, dictEntry.getDoc_freq());
-                // Or: double docTfWeight = TFIDFCalculator.calculateTfWeight(docTf);
-                // double docTermTfIdf = docTfWeight * termIdf; // This is equivalent
+        // Body dot products into the dense docId-indexed accumulator
+        double[] docScores = scratch.scores.acquire(docIdCounter);
+        for (int t = 0; t < scratch.termCount; t++) {
+            PostingBlock block = scratch.blocks[t];
+            if (block == null) continue;
+            POSTINGS_SCANNED.add(block.length());
+            event.postingsVisited += block.length();
+            if (explanation != null) explanation.addPostingsScanned(scratch.terms[t], block.length());
+            KERNELS.accumulate(docScores, block.docIds, block.tfWeights, block.length(), scratch.idfs[t], scratch.weights[t]);
+        }
 
-                // Accumulate dot product component
-                docScores.put(docId,
-                        docScores.getOrDefault(docId, 0.0) + (queryTermTfIdf * docTermTfIdf));
+        // 3. Scores into the top-k heap. The scored posting blocks are the touched-docs list:
+        // each touched entry is read once and zeroed, leaving the accumulators clean. Once the
+        // heap is full, scores are held back in a dense block and filtered in one kernel pass
+        // against the heap's threshold instead of being offered one by one.
+        TopDocsHeap heap = scratch.heap;
+        heap.reset(k);
+        double[] candidates = scratch.candidates.acquire(docIdCounter);
+        scratch.candidateEnd = 0;
+        int touchedDocs = 0;
+        for (int t = 0; t < scratch.termCount; t++) {
+            PostingBlock block = scratch.blocks[t];
+            if (block != null) touchedDocs += collectScores(block, docScores, fieldScores, candidates, queryMagnitude, scratch);
+        }
+        for (int b = 0; b < scratch.fieldBlockCount; b++) {
+            touchedDocs += collectScores(scratch.fieldBlocks[b], docScores, fieldScores, candidates, queryMagnitude, scratch);
+        }
+        scratch.scores.clean();
+        if (fieldScores != null) scratch.fieldScores.clean();
+        if (scratch.candidateEnd > 0) {
+            // nextDown: a tie with the worst kept document still enters the heap if its docId is lower
+            int[] selected = scratch.selected();
+            int count = KERNELS.selectAbove(candidates, scratch.candidateEnd, Math.nextDown(heap.minScore()), selected);
+            for (int i = 0; i < count; i++) {
+                heap.offer(selected[i], candidates[selected[i]]);
             }
+            Arrays.fill(candidates, 0, scratch.candidateEnd, 0.0);
         }
+        scratch.candidates.clean();
+
+        // 4. Resolve only the final hits, best first
+        long sortingStart = System.nanoTime();
+        scratch.ensureTopCapacity(heap.size());
+        int hits = heap.drainBestFirst(scratch.topDocIds, scratch.topScores);
+        List<SearchResult> results = new ArrayList<>(hits);
+        for (int i = 0; i < hits; i++) {
+            int docId = scratch.topDocIds[i];
+            SourceRecord docInfo = sources.get(docId);
+            String docIdentifier = (docInfo != null) ? docInfo.getL() : "Unknown Doc ID: " + docId;
+            results.add(new SearchResult(docId, scratch.topScores[i], docIdentifier));
+        }
+        scratch.clearTerms();
+        if (explanation != null) {
+            explanation.setAccumulatorSize(touchedDocs);
+            explanation.setTimings(analysisNanos, sortingStart - scoringStart, System.nanoTime() - sortingStart);
+        }
+        return results;
+    }
 
-        // 3. Calculate Final Cosine Similarity Scores and Rank
-        List<SearchResult> results = new ArrayList<>();
-        for (Map.Entry<Integer, Double> scoreEntry : docScores.entrySet()) {
-            int docId = scoreEntry.getKey();
-            double dotProduct = scoreEntry.getValue();
-
-            double docMagnitude = docMagnitudes.getOrDefault(docId, 0.0);
-
-            // Use CosineSimilarityCalculator for the final step
-            double cosineSimilarity = CosineSimilarityCalculator.calculateCosineSimilarity(dotProduct, queryMagnitude, docMagnitude);
-
-            // Create result if similarity is positive
-            if (cosineSimilarity > 0.0) {
-                SourceRecord docInfo = sources.get(docId);
-                String docIdentifier = (docInfo != null) ? docInfo.getL() : "Unknown Doc ID: " + docId;
-                results.add(new SearchResult(docId, cosineSimilarity, docIdentifier));
+    // Adds boost * cosine of one secondary field into fieldScores for every document with a query
+    // term in that field. Document vectors are lnc-normalized (see FieldIndex); the query is
+    // weighted with the field's own (collection) df, so a term rare in titles counts more in the
+    // title field. Returns fieldScores, acquired on first use (null while no field has matched).
+    private double[] scoreField(FieldIndex fieldIndex, QueryScratch scratch, int N, CollectionStatistics queryStatistics,
+                                double[] fieldScores, QueryEvent event, QueryExplanation explanation) {
+        double boost = fieldBoosts[fieldIndex.getField().ordinal()];
+        if (boost == 0.0) return fieldScores;
+        double queryMagnitudeSquared = 0.0;
+        for (int t = 0; t < scratch.termCount; t++) {
+            DictEntry dictEntry = fieldIndex.get(scratch.terms[t]);
+            // Collection df: like the body, a shard weights field terms it does not contain itself
+            int df = collectionFieldDocFrequency(queryStatistics, fieldIndex.getField(), scratch.terms[t], dictEntry);
+            double weight = TFIDFCalculator.calculateTfWeight(scratch.termFrequencies[t])
+                    * TFIDFCalculator.calculateIdf(N, df) * scratch.boosts[t];
+            scratch.fieldWeights[t] = weight;
+            scratch.fieldTermBlocks[t] = (weight > 0 && dictEntry != null) ? dictEntry.postingBlock() : null;
+            queryMagnitudeSquared += weight * weight;
+            if (explanation != null && weight > 0) {
+                explanation.addFieldTermWeight(fieldIndex.getField(), scratch.terms[t], weight);
             }
         }
+        if (queryMagnitudeSquared == 0.0) return fieldScores;
+        double queryMagnitude = Math.sqrt(queryMagnitudeSquared);
+        if (explanation != null) explanation.setFieldQueryMagnitude(fieldIndex.getField(), queryMagnitude);
+
+        double[] dots = scratch.fieldDots.acquire(docIdCounter);
+        for (int t = 0; t < scratch.termCount; t++) {
+            PostingBlock block = scratch.fieldTermBlocks[t];
+            if (block == null) continue;
+            POSTINGS_SCANNED.add(block.length());
+            event.postingsVisited += block.length();
+            KERNELS.accumulate(dots, block.docIds, block.tfWeights, block.length(), 1.0, scratch.fieldWeights[t]);
+        }
+        if (fieldScores == null) fieldScores = scratch.fieldScores.acquire(docIdCounter);
+        for (int t = 0; t < scratch.termCount; t++) {
+            PostingBlock block = scratch.fieldTermBlocks[t];
+            if (block == null) continue;
+            scratch.fieldTermBlocks[t] = null;
+            scratch.addFieldBlock(block);
+            for (int i = 0; i < block.length(); i++) {
+                int docId = block.docIds[i];
+                double dotProduct = dots[docId];
+                if (dotProduct == 0.0) continue; // Added through an earlier term
+                dots[docId] = 0.0;
+                double norm = fieldIndex.norm(docId);
+                if (norm > 0.0) fieldScores[docId] += boost * dotProduct / (queryMagnitude * norm); // 0 = tombstone
+            }
+        }
+        scratch.fieldDots.clean();
+        return fieldScores;
+    }
 
-        // 4. Sort results by score (descending)
-        Collections.sort(results); // Uses compareTo in SearchResult
-        return results;
+    // Scores the documents of a scored block: boosted body cosine plus the field scores, plus the
+    // weighted static prior for documents that matched. Each is offered to the heap while it has
+    // room, and afterwards written to candidates for the threshold pass. Zeroes their accumulator
+    // entries, so a document in several blocks is scored once.
+    private int collectScores(PostingBlock block, double[] docScores, double[] fieldScores, double[] candidates,
+                              double queryMagnitude, QueryScratch scratch) {
+        double bodyBoost = fieldBoosts[Field.BODY.ordinal()];
+        TopDocsHeap heap = scratch.heap;
+        int collected = 0;
+        for (int i = 0; i < block.length(); i++) {
+            int docId = block.docIds[i];
+            double dotProduct = docScores[docId];
+            double fieldScore = (fieldScores != null) ? fieldScores[docId] : 0.0;
+            if (dotProduct == 0.0 && fieldScore == 0.0) continue; // Collected through an earlier block
+            docScores[docId] = 0.0;
+            if (fieldScores != null) fieldScores[docId] = 0.0;
+            if (deletedDocs.get(docId)) continue; // Tombstone
+            collected++;
+            double score = fieldScore;
+            if (dotProduct != 0.0) {
+                score += bodyBoost * CosineSimilarityCalculator.calculateCosineSimilarity(
+                        dotProduct, queryMagnitude, documentMagnitude(docId));
+            }
+            if (score <= 0.0) continue;
+            score += priorWeight * staticPrior(docId);
+            if (!heap.isFull()) {
+                heap.offer(docId, score);
+            } else {
+                candidates[docId] = score;
+                if (docId >= scratch.candidateEnd) scratch.candidateEnd = docId + 1;
+            }
+        }
+        return collected;
     }
+
     public String findQueryBooleanAnd(String phrase) {
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        long start = System.nanoTime();
+        String result;
+        lock.readLock().lock();
+        try {
+            result = findQueryBooleanAndUnlocked(phrase, event);
+            event.indexDocuments = sources.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+        BOOLEAN_LATENCY.recordSince(start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.type = "boolean";
+            event.query = phrase;
+            event.commit();
+        }
+        return result;
+    }
+
+    private String findQueryBooleanAndUnlocked(String phrase, QueryEvent event) {
         List<String> queryTerms = processQuery(phrase); // Process query consistently
+        event.terms = queryTerms.size();
         if (queryTerms.isEmpty()){
-            return "Boolean AND Results for '" + phrase + "':\n  <No valid terms in query>\n";
+            return noBooleanMatches("Boolean AND Results for '" + phrase + "':\n  <No valid terms in query>\n");
         }
 
         Map<Integer, Integer> intersectionMap = new HashMap<>();
@@ -319,17 +1778,20 @@ public class Index5 {
             if (dictEntry != null && dictEntry.getDoc_freq() > 0) {
                 requiredTermCount++;
                 List<Posting> postings = dictEntry.getPlist();
+                POSTINGS_SCANNED.add(postings.size());
+                event.postingsVisited += postings.size();
                 if (isFirstTerm) {
-                    if (postings.isEmpty()) return "Boolean AND Results for '" + phrase + "':\n  <First valid term '" + term + "' not found in any docs>\n";
+                    if (postings.isEmpty()) return noBooleanMatches("Boolean AND Results for '" + phrase + "':\n  <First valid term '" + term + "' not found in any docs>\n");
                     firstTermDocIds = new ArrayList<>(postings.size());
                     for(Posting p : postings) {
+                        if (deletedDocs.get(p.getDocId())) continue; // Tombstone
                         firstTermDocIds.add(p.getDocId());
                         intersectionMap.put(p.getDocId(), 1);
                     }
                     isFirstTerm = false;
                 } else {
                     Set<Integer> currentTermDocIds = new HashSet<>();
-                    for (Posting p : postings) { currentTermDocIds.add(p.getDocId()); }
+                    for (Posting p : postings) { currentTermDocIds.add(p.getDocId()); } // Tombstones drop out via the first term
                     for (int docId : new ArrayList<>(intersectionMap.keySet())) {
                         if(currentTermDocIds.contains(docId)) {
                             intersectionMap.put(docId, intersectionMap.get(docId) + 1);
@@ -337,13 +1799,14 @@ public class Index5 {
                             intersectionMap.remove(docId);
                         }
                     }
-                    if (intersectionMap.isEmpty()) return "Boolean AND Results for '" + phrase + "':\n  <No documents contain all terms up to '" + term + "'>\n";
+                    if (intersectionMap.isEmpty()) return noBooleanMatches("Boolean AND Results for '" + phrase + "':\n  <No documents contain all terms up to '" + term + "'>\n");
                 }
             } else {
-                return "Boolean AND Results for '" + phrase + "':\n  <Term '" + term + "' not found in index. No results possible.>\n";
+                return noBooleanMatches("Boolean AND Results for '" + phrase + "':\n  <Term '" + term + "' not found in index. No results possible.>\n");
             }
         }
 
+        int matches = 0;
         StringBuilder resultBuilder = new StringBuilder("Boolean AND Results for '");
         resultBuilder.append(phrase).append("' (Required terms found: ").append(requiredTermCount).append("):\n");
         boolean found = false;
@@ -357,6 +1820,7 @@ public class Index5 {
             if (!sortedDocIds.isEmpty()) {
                 Collections.sort(sortedDocIds);
                 found = true;
+                matches = sortedDocIds.size();
                 for (int docId : sortedDocIds) {
                     SourceRecord docInfo = sources.get(docId);
                     String docIdentifier = (docInfo != null) ? docInfo.getL() : "Doc ID: " + docId;
@@ -365,27 +1829,502 @@ public class Index5 {
             }
         }
         if (!found) { resultBuilder.append("  <No documents found containing all required terms>\n"); }
+        BOOLEAN_RESULTS.record(matches);
+        event.resultCount = matches;
         return resultBuilder.toString();
     }
 
+    // Early exits of findQueryBooleanAnd: nothing matched
+    private static String noBooleanMatches(String message) {
+        BOOLEAN_RESULTS.record(0);
+        return message;
+    }
+
+    // --- Persistence ---
+
+    /**
+     * Writes the index to a file that {@link #load(Path)} turns back into an index ranking every
+     * query the same, without analyzing any text again: the live documents with their field terms,
+     * norms and the near-duplicate pages collapsed into them, each term's postings with the idf its norms used and
+     * its surface form, and the installed priors. Deleted documents are left out, so the loaded index has no tombstones
+     * (its docIds are renumbered in the same order).
+     * Settings are not saved: field boosts, prior weight, norm policy, near-duplicate detection,
+     * memory limit and collection statistics start at their defaults after a load.
+     * The file is written next to the target and atomically renamed, so a crash leaves the
+     * previous file intact. Queries can run meanwhile; writes wait.
+     *
+     * @param file Where to write the index.
+     */
+    public void save(Path file) throws IOException {
+        Path target = file.toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(normSweepDocumentCount);
+
+            out.writeInt(priorsByUrl.size());
+            for (Map.Entry<String, Double> prior : priorsByUrl.entrySet()) {
+                out.writeUTF(prior.getKey());
+                out.writeDouble(prior.getValue());
+            }
+
+            // Documents, renumbered densely in docId order, with their number of body terms
+            int[] newDocIds = new int[docIdCounter];
+            int[] termCounts = new int[docIdCounter];
+            for (DictEntry dictEntry : index.values()) {
+                for (Posting post : dictEntry.getPlist()) termCounts[post.getDocId()]++;
+            }
+            out.writeInt(sources.size());
+            int liveDocs = 0;
+            for (int docId = 0; docId < docIdCounter; docId++) {
+                SourceRecord source = sources.get(docId);
+                if (source == null) continue; // Deleted
+                newDocIds[docId] = liveDocs++;
+                out.writeUTF(source.getUrl());
+                out.writeUTF(source.getTitle());
+                out.writeInt(source.getLength());
+                out.writeDouble(documentMagnitude(docId));
+                out.writeBoolean(staleNormDocs.contains(docId));
+                List<TokenizedDocument> collapsed = collapsedDuplicates.getOrDefault(docId, Collections.emptyList());
+                out.writeInt(collapsed.size());
+                for (TokenizedDocument document : collapsed) writeTokenized(out, document);
+                out.writeInt(termCounts[docId]);
+                for (FieldIndex fieldIndex : fieldIndexes.values()) {
+                    String[] fieldTerms = fieldIndex.terms(docId);
+                    int[] fieldFrequencies = fieldIndex.frequencies(docId);
+                    out.writeInt(fieldTerms.length);
+                    for (int i = 0; i < fieldTerms.length; i++) {
+                        out.writeUTF(fieldTerms[i]);
+                        out.writeInt(fieldFrequencies[i]);
+                    }
+                }
+            }
+
+            // Body postings term by term, so loading fills each posting list in one go
+            int liveTerms = 0;
+            for (DictEntry dictEntry : index.values()) {
+                if (dictEntry.getDoc_freq() > 0) liveTerms++; // df 0: deleted documents only
+            }
+            out.writeInt(liveTerms);
+            for (Map.Entry<String, DictEntry> entry : index.entrySet()) {
+                DictEntry dictEntry = entry.getValue();
+                if (dictEntry.getDoc_freq() == 0) continue;
+                out.writeUTF(entry.getKey());
+                out.writeDouble(dictEntry.getNormIdf());
+                out.writeUTF((dictEntry.getSurfaceForm() != null) ? dictEntry.getSurfaceForm() : "");
+                out.writeInt(dictEntry.getSurfaceVotes());
+                out.writeInt(dictEntry.getDoc_freq());
+                for (Posting post : dictEntry.getPlist()) {
+                    if (deletedDocs.get(post.getDocId())) continue; // Tombstone
+                    out.writeInt(newDocIds[post.getDocId()]);
+                    out.writeInt(post.getDtf());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads an index written by {@link #save(Path)}. Posting lists are filled straight from the
+     * file and norms are taken as stored: no tokenizing, stemming or norm computation, and one
+     * dictionary insert per term rather than per posting. The forward index (only needed to
+     * delete documents or refresh norms) is rebuilt on the first write that needs it, and the
+     * autocomplete and fuzzy-matching tries on first use. Files of
+     * versions 1 and 2 are read too; their terms autocomplete to the stems until documents vote
+     * on surface forms again, and they hold no collapsed near-duplicate pages.
+     *
+     * @param file The index file.
+     * @return A new index with default settings.
+     * @throws IOException if the file cannot be read or is not an index file.
+     */
+    public static Index5 load(Path file) throws IOException {
+        Index5 loaded = new Index5();
+        loaded.readFrom(file);
+        return loaded;
+    }
+
+    private void readFrom(Path file) throws IOException {
+        lock.writeLock().lock();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException("Not an index file: " + file);
+            }
+            int version = in.readInt();
+            if (version < 1 || version > FILE_VERSION) {
+                throw new IOException("Unsupported index file version " + version + " in " + file);
+            }
+            normSweepDocumentCount = in.readInt();
+
+            int priorCount = in.readInt();
+            priorsByUrl = new HashMap<>(hashCapacity(priorCount));
+            for (int i = 0; i < priorCount; i++) {
+                String url = in.readUTF();
+                priorsByUrl.put(url, in.readDouble());
+            }
+
+            int documents = in.readInt();
+            int[] termCounts = new int[documents];
+            for (int docId = 0; docId < documents; docId++) {
+                String url = in.readUTF();
+                SourceRecord source = new SourceRecord(docId, url, in.readUTF());
+                source.setLength(in.readInt());
+                sources.put(docId, source);
+                docIdsByUrl.put(url, docId);
+                setDocumentMagnitude(docId, in.readDouble());
+                if (in.readBoolean()) staleNormDocs.add(docId);
+                int collapsed = in.readInt();
+                if (version >= 3) {
+                    for (int i = 0; i < collapsed; i++) {
+                        TokenizedDocument document = readTokenized(in);
+                        collapsedDuplicates.computeIfAbsent(docId, id -> new ArrayList<>()).add(document);
+                        collapsedUrls.put(document.getUrl(), docId);
+                    }
+                }
+                termCounts[docId] = in.readInt();
+                for (FieldIndex fieldIndex : fieldIndexes.values()) {
+                    int count = in.readInt();
+                    Map<String, Integer> fieldTerms = new HashMap<>(hashCapacity(count));
+                    for (int i = 0; i < count; i++) {
+                        String term = in.readUTF();
+                        fieldTerms.put(term, in.readInt());
+                    }
+                    fieldIndex.addDocument(docId, fieldTerms);
+                }
+                Double prior = priorsByUrl.get(url);
+                if (prior != null) setStaticPrior(docId, prior);
+            }
+            docIdCounter = documents;
+            unforwardedDocs = documents;
+            loadedTermCounts = termCounts;
+
+            int terms = in.readInt();
+            index = new HashMap<>(hashCapacity(terms));
+            for (int t = 0; t < terms; t++) {
+                String term = in.readUTF();
+                DictEntry dictEntry = new DictEntry(term);
+                dictEntry.setNormIdf(in.readDouble());
+                if (version >= 2) {
+                    String surfaceForm = in.readUTF();
+                    int votes = in.readInt();
+                    if (!surfaceForm.isEmpty()) dictEntry.setSurfaceForm(surfaceForm.equals(term) ? term : surfaceForm, votes);
+                }
+                int postings = in.readInt();
+                for (int i = 0; i < postings; i++) {
+                    int docId = in.readInt();
+                    int tf = in.readInt();
+                    dictEntry.incrementDocFreq();
+                    dictEntry.addToTermFreq(tf);
+                    dictEntry.addPosting(new Posting(docId, tf));
+                }
+                index.put(term, dictEntry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock. A document's forward-index entry. A loaded index has none for
+    // its documents until a write needs one (queries never do): the first such write rebuilds
+    // them all from the postings, which keeps load fast and a read-only index smaller.
+    private String[] forwardTermsUnlocked(int docId) {
+        if (docId < unforwardedDocs) {
+            String[][] terms = new String[unforwardedDocs][];
+            int[][] frequencies = new int[unforwardedDocs][];
+            int[] filled = new int[unforwardedDocs];
+            for (Map.Entry<String, DictEntry> entry : index.entrySet()) {
+                for (Posting post : entry.getValue().getPlist()) {
+                    int postDocId = post.getDocId();
+                    if (postDocId >= unforwardedDocs) continue; // Added after the load: has its entry
+                    if (terms[postDocId] == null) {
+                        terms[postDocId] = new String[loadedTermCounts[postDocId]];
+                        frequencies[postDocId] = new int[loadedTermCounts[postDocId]];
+                    }
+                    terms[postDocId][filled[postDocId]] = entry.getKey();
+                    frequencies[postDocId][filled[postDocId]++] = post.getDtf();
+                }
+            }
+            for (int id = 0; id < unforwardedDocs; id++) {
+                if (terms[id] != null) docTerms.put(id, terms[id], frequencies[id]);
+            }
+            unforwardedDocs = 0;
+            loadedTermCounts = null;
+        }
+        return docTerms.terms(docId);
+    }
+
+    // A collapsed near-duplicate page, as kept to index it later
+    private static void writeTokenized(DataOutputStream out, TokenizedDocument document) throws IOException {
+        out.writeUTF(document.getUrl());
+        out.writeBoolean(document.getTitle() != null);
+        if (document.getTitle() != null) out.writeUTF(document.getTitle());
+        out.writeInt(document.getLength());
+        for (Field field : Field.values()) writeTermFrequencies(out, document.getFieldTermFrequencies(field));
+        out.writeInt(document.getSurfaceForms().size());
+        for (Map.Entry<String, String> surfaceForm : document.getSurfaceForms().entrySet()) {
+            out.writeUTF(surfaceForm.getKey());
+            out.writeUTF(surfaceForm.getValue());
+        }
+    }
+
+    private static void writeTermFrequencies(DataOutputStream out, Map<String, Integer> termFrequencies) throws IOException {
+        out.writeInt(termFrequencies.size());
+        for (Map.Entry<String, Integer> term : termFrequencies.entrySet()) {
+            out.writeUTF(term.getKey());
+            out.writeInt(term.getValue());
+        }
+    }
+
+    private static TokenizedDocument readTokenized(DataInputStream in) throws IOException {
+        String url = in.readUTF();
+        String title = in.readBoolean() ? in.readUTF() : null;
+        int length = in.readInt();
+        Map<Field, Map<String, Integer>> fields = new EnumMap<>(Field.class);
+        for (Field field : Field.values()) fields.put(field, readTermFrequencies(in));
+        int surfaceCount = in.readInt();
+        Map<String, String> surfaceForms = new HashMap<>(hashCapacity(surfaceCount));
+        for (int i = 0; i < surfaceCount; i++) {
+            String term = in.readUTF();
+            surfaceForms.put(term, in.readUTF());
+        }
+        return new TokenizedDocument(url, title, fields.remove(Field.BODY), length, fields, surfaceForms);
+    }
+
+    private static Map<String, Integer> readTermFrequencies(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, Integer> termFrequencies = new HashMap<>(hashCapacity(count));
+        for (int i = 0; i < count; i++) {
+            String term = in.readUTF();
+            termFrequencies.put(term, in.readInt());
+        }
+        return termFrequencies;
+    }
+
+    // HashMap capacity that holds `size` entries without resizing
+    private static int hashCapacity(int size) {
+        return Math.max(16, (int) (size / 0.75f) + 1);
+    }
+
+    // --- Memory accounting ---
+
+    /**
+     * Estimates the heap retained by this index, by component: dictionary, postings, cached
+     * posting blocks, forward index, norms, source records, fields, autocomplete and the rest.
+     * Walks every posting list and forward-index entry, so it takes a while on large indexes;
+     * meant for reports and capacity planning, not for every request.
+     *
+     * @return The footprint, with bytes per posting and per document.
+     */
+    public IndexFootprint getFootprint() {
+        lock.readLock().lock();
+        try {
+            return footprintUnlocked();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the lock
+    private IndexFootprint footprintUnlocked() {
+        Map<String, Long> components = new LinkedHashMap<>();
+        components.put(IndexFootprint.DICTIONARY, IndexFootprint.dictionaryBytes(index));
+        components.put(IndexFootprint.POSTINGS, IndexFootprint.postingsBytes(index));
+        components.put(IndexFootprint.POSTING_BLOCKS, IndexFootprint.postingBlockBytes(index));
+        components.put(IndexFootprint.FORWARD_INDEX, docTerms.memoryBytes());
+        components.put(IndexFootprint.DOC_MAGNITUDES, MemoryEstimates.doubleArray(docMagnitudes.length));
+
+        long sourceBytes = MemoryEstimates.hashMap(sources.size()) + MemoryEstimates.hashMap(docIdsByUrl.size());
+        for (SourceRecord source : sources.values()) {
+            sourceBytes += IndexFootprint.SOURCE_RECORD_BYTES + 2 * MemoryEstimates.boxedInteger(source.getDocId())
+                    + MemoryEstimates.string(source.getUrl()) + MemoryEstimates.string(source.getTitle());
+        }
+        components.put(IndexFootprint.SOURCES, sourceBytes);
+
+        long fieldBytes = 0;
+        for (FieldIndex fieldIndex : fieldIndexes.values()) fieldBytes += fieldIndex.memoryBytes();
+        components.put(IndexFootprint.FIELDS, fieldBytes);
+        PrefixSuggester currentSuggester = suggester;
+        PrefixSuggester currentTermTrie = termTrie;
+        components.put(IndexFootprint.SUGGESTER, ((currentSuggester != null) ? currentSuggester.memoryBytes() : 0L)
+                + ((currentTermTrie != null) ? currentTermTrie.memoryBytes() : 0L));
+        components.put(IndexFootprint.PRIORS, MemoryEstimates.doubleArray(staticPriors.length)
+                + MemoryEstimates.hashMap(priorsByUrl.size()) + (long) priorsByUrl.size() * MemoryEstimates.BOXED);
+        long duplicateBytes = MemoryEstimates.hashMap(collapsedDuplicates.size()) + MemoryEstimates.hashMap(collapsedUrls.size());
+        for (List<TokenizedDocument> collapsed : collapsedDuplicates.values()) {
+            duplicateBytes += MemoryEstimates.arrayList(collapsed.size());
+            for (TokenizedDocument document : collapsed) duplicateBytes += tokenizedBytes(document);
+        }
+        components.put(IndexFootprint.DUPLICATES, (duplicateDetector != null) ? duplicateDetector.memoryBytes() + duplicateBytes : 0L);
+        components.put(IndexFootprint.OTHER, MemoryEstimates.longArray(deletedDocs.size() / 64)
+                + MemoryEstimates.hashMap(staleNormDocs.size()) + (long) staleNormDocs.size() * MemoryEstimates.BOXED);
+
+        long postings = 0;
+        for (DictEntry dictEntry : index.values()) postings += dictEntry.getPlist().size();
+        return new IndexFootprint(components, sources.size(), index.size(), postings);
+    }
+
+    // Caller holds the lock. What adding the document will cost: its postings, forward-index map,
+    // source record and norm, plus dictionary entries for terms the index does not have yet.
+    private long estimateDocumentBytesUnlocked(TokenizedDocument document) {
+        String url = document.getUrl();
+        String title = (document.getTitle() != null) ? document.getTitle() : "Title Placeholder - " + url;
+        long bytes = IndexFootprint.SOURCE_RECORD_BYTES + MemoryEstimates.string(url) + MemoryEstimates.string(title)
+                + 2 * (2 * MemoryEstimates.HASH_MAP_ENTRY + MemoryEstimates.BOXED) // sources, docIdsByUrl (+ table)
+                + Double.BYTES;                                                       // docMagnitudes slot
+        bytes += termsBytes(document.getTermFrequencies(), index);
+        for (FieldIndex fieldIndex : fieldIndexes.values()) {
+            Map<String, Integer> fieldTerms = document.getFieldTermFrequencies(fieldIndex.getField());
+            if (!fieldTerms.isEmpty()) bytes += termsBytes(fieldTerms, null) + Double.BYTES;
+        }
+        return bytes;
+    }
+
+    // A tokenized document held outside the index (a collapsed near-duplicate): its term maps
+    private static long tokenizedBytes(TokenizedDocument document) {
+        long bytes = IndexFootprint.TOKENIZED_DOCUMENT_BYTES + MemoryEstimates.string(document.getUrl())
+                + MemoryEstimates.string(document.getTitle()) + MemoryEstimates.hashMap(document.getSurfaceForms().size());
+        for (Field field : Field.values()) {
+            Map<String, Integer> termFrequencies = document.getFieldTermFrequencies(field);
+            bytes += MemoryEstimates.hashMap(termFrequencies.size());
+            for (String term : termFrequencies.keySet()) bytes += MemoryEstimates.string(term) + MemoryEstimates.BOXED;
+        }
+        for (String surfaceForm : document.getSurfaceForms().values()) bytes += MemoryEstimates.string(surfaceForm);
+        return bytes;
+    }
+
+    // Forward-index entry and postings of a term map; new dictionary entries (and their term
+    // strings, which the forward index shares) if dictionary is given
+    private static long termsBytes(Map<String, Integer> termFrequencies, Map<String, DictEntry> dictionary) {
+        long bytes = 2 * MemoryEstimates.REFERENCE + ForwardIndex.entryBytes(termFrequencies.size())
+                + (long) termFrequencies.size() * (IndexFootprint.LINKED_NODE_BYTES + IndexFootprint.POSTING_BYTES);
+        if (dictionary == null) return bytes;
+        for (String term : termFrequencies.keySet()) {
+            if (!dictionary.containsKey(term)) {
+                bytes += 2 * MemoryEstimates.HASH_MAP_ENTRY + IndexFootprint.DICT_ENTRY_BYTES + IndexFootprint.LINKED_LIST_BYTES
+                        + MemoryEstimates.string(term);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Caps the estimated heap of this index. Once the estimate reaches the cap, further documents
+     * (including updated versions of indexed pages) are not added but passed to the overflow, for
+     * example to spill them to disk or route them to another node; deletes and purges make room
+     * again. The estimate is the footprint when the cap is set, plus a per-document estimate of
+     * each document added since, so a batch can go over the cap by at most one document.
+     *
+     * @param maxBytes Cap in bytes, or 0 for no cap.
+     * @param overflow Receives refused documents, on the adding thread after the index lock is
+     *                 released; null to drop them with a warning.
+     * @throws IllegalArgumentException if maxBytes is negative.
+     */
+    public void setMemoryLimit(long maxBytes, Consumer<TokenizedDocument> overflow) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Memory limit cannot be negative: " + maxBytes);
+        }
+        lock.writeLock().lock();
+        try {
+            this.memoryLimitBytes = maxBytes;
+            this.overflow = overflow;
+            estimatedBytes = (maxBytes > 0) ? footprintUnlocked().getTotalBytes() : 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Caps the estimated heap of this index, dropping documents over the cap
+     * (see {@link #setMemoryLimit(long, Consumer)}).
+     */
+    public void setMemoryLimit(long maxBytes) {
+        setMemoryLimit(maxBytes, null);
+    }
+
+    /**
+     * @return The memory cap in bytes (0 = none).
+     */
+    public long getMemoryLimit() {
+        lock.readLock().lock();
+        try {
+            return memoryLimitBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Documents not added because the index was at its memory limit.
+     */
+    public int getDocumentsRefused() {
+        lock.readLock().lock();
+        try {
+            return documentsRefused;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Outside the lock: counts the refused documents and hands them to the overflow
+    private void handleRefused(List<TokenizedDocument> refused) {
+        Consumer<TokenizedDocument> sink;
+        lock.writeLock().lock();
+        try {
+            documentsRefused += refused.size();
+            sink = overflow;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        DOCUMENTS_REFUSED.add(refused.size());
+        if (sink == null) {
+            System.err.println("Warning: Index memory limit reached, dropped " + refused.size() + " documents.");
+            return;
+        }
+        for (TokenizedDocument document : refused) sink.accept(document);
+    }
+
     // --- Method to retrieve SourceRecord (useful for Main) ---
     public SourceRecord getSourceRecord(int docId) {
-        return sources.get(docId);
+        lock.readLock().lock();
+        try {
+            return sources.get(docId);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     // --- Method to get total number of documents (useful for Main) ---
     public int getNumberOfDocuments() {
-        return sources.size();
+        lock.readLock().lock();
+        try {
+            return sources.size();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     // --- Method to get the index size (number of terms) ---
     public int getIndexSize() {
-        return index.size();
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     // --- Method to get pre-calculated document magnitude ---
     public double getDocumentMagnitude(int docId) {
-        return docMagnitudes.getOrDefault(docId, 0.0);
+        lock.readLock().lock();
+        try {
+            return documentMagnitude(docId);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
 
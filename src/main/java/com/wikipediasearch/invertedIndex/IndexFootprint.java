@@ -0,0 +1,175 @@
+package com.wikipediasearch.invertedIndex;
+
+import com.wikipediasearch.util.MemoryEstimates;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Estimated heap bytes retained by an index, by component (see {@link Index5#getFootprint()}),
+ * with the per-posting and per-document figures needed to plan how many documents fit on a node.
+ * Estimates assume a 64-bit JVM with compressed oops (see {@link MemoryEstimates}).
+ */
+public final class IndexFootprint {
+
+    // Components, in report order
+    public static final String DICTIONARY = "dictionary";         // Term strings, DictEntry objects, hash table
+    public static final String POSTINGS = "postings";             // Posting objects and their linked lists
+    public static final String POSTING_BLOCKS = "postingBlocks";  // Cached primitive copies for scoring
+    public static final String FORWARD_INDEX = "forwardIndex";    // docId -> term frequencies (deletes, norm refresh)
+    public static final String DOC_MAGNITUDES = "docMagnitudes";
+    public static final String SOURCES = "sources";               // SourceRecords, URLs, titles, URL -> docId
+    public static final String FIELDS = "fields";                 // Title, headings and anchor-text indexes
+    public static final String SUGGESTER = "suggester";           // Autocomplete and fuzzy-matching tries (caches, rebuilt on demand)
+    public static final String PRIORS = "priors";
+    public static final String DUPLICATES = "duplicates";         // Near-duplicate detector and collapsed pages
+    public static final String OTHER = "other";                   // Tombstones, stale-norm set
+
+    // Shallow sizes of the index's own objects
+    static final int DICT_ENTRY_BYTES = 48;
+    static final int TOKENIZED_DOCUMENT_BYTES = 40;
+    static final int POSTING_BYTES = 24;
+    static final int LINKED_LIST_BYTES = 32;
+    static final int LINKED_NODE_BYTES = 24;
+    static final int POSTING_BLOCK_BYTES = 24;
+    static final int SOURCE_RECORD_BYTES = 32;
+
+    private final Map<String, Long> components;
+    private final int documents;
+    private final int terms;
+    private final long postings;
+
+    IndexFootprint(Map<String, Long> components, int documents, int terms, long postings) {
+        this.components = Collections.unmodifiableMap(new LinkedHashMap<>(components));
+        this.documents = documents;
+        this.terms = terms;
+        this.postings = postings;
+    }
+
+    /**
+     * Adds up the footprints of several indexes, e.g. the shards of a ShardedIndex
+     * (terms are summed, so a term in several shards counts once per shard).
+     */
+    public static IndexFootprint sum(Collection<IndexFootprint> footprints) {
+        Map<String, Long> components = new LinkedHashMap<>();
+        int documents = 0;
+        int terms = 0;
+        long postings = 0;
+        for (IndexFootprint footprint : footprints) {
+            footprint.components.forEach((name, bytes) -> components.merge(name, bytes, Long::sum));
+            documents += footprint.documents;
+            terms += footprint.terms;
+            postings += footprint.postings;
+        }
+        return new IndexFootprint(components, documents, terms, postings);
+    }
+
+    // --- Estimators shared by Index5 and FieldIndex ---
+
+    // Dictionary: hash table, term strings, surface forms and DictEntry objects (postings not included)
+    static long dictionaryBytes(Map<String, DictEntry> dictionary) {
+        long bytes = MemoryEstimates.hashMap(dictionary.size()) + (long) dictionary.size() * DICT_ENTRY_BYTES;
+        for (Map.Entry<String, DictEntry> entry : dictionary.entrySet()) {
+            bytes += MemoryEstimates.string(entry.getKey());
+            String surfaceForm = entry.getValue().getSurfaceForm();
+            if (surfaceForm != null && !surfaceForm.equals(entry.getKey())) bytes += MemoryEstimates.string(surfaceForm);
+        }
+        return bytes;
+    }
+
+    // Posting lists (one LinkedList node plus one Posting per posting)
+    static long postingsBytes(Map<String, DictEntry> dictionary) {
+        long bytes = 0;
+        for (DictEntry entry : dictionary.values()) {
+            bytes += LINKED_LIST_BYTES + (long) entry.getPlist().size() * (LINKED_NODE_BYTES + POSTING_BYTES);
+        }
+        return bytes;
+    }
+
+    static long postingBlockBytes(Map<String, DictEntry> dictionary) {
+        long bytes = 0;
+        for (DictEntry entry : dictionary.values()) {
+            PostingBlock block = entry.cachedPostingBlock();
+            if (block == null) continue;
+            bytes += POSTING_BLOCK_BYTES + MemoryEstimates.intArray(block.length()) + MemoryEstimates.doubleArray(block.length());
+        }
+        return bytes;
+    }
+
+    // --- Results ---
+
+    /**
+     * @return Component name -> estimated bytes, in report order.
+     */
+    public Map<String, Long> getComponents() {
+        return components;
+    }
+
+    /**
+     * @return The component's estimated bytes (0 for unknown components).
+     */
+    public long getBytes(String component) {
+        return components.getOrDefault(component, 0L);
+    }
+
+    public long getTotalBytes() {
+        long total = 0;
+        for (long bytes : components.values()) total += bytes;
+        return total;
+    }
+
+    public int getDocumentCount() {
+        return documents;
+    }
+
+    public int getTermCount() {
+        return terms;
+    }
+
+    /**
+     * @return Body postings, including those of deleted documents not purged yet.
+     */
+    public long getPostingCount() {
+        return postings;
+    }
+
+    /**
+     * @return Bytes of the posting lists per posting (0 if there are none).
+     */
+    public double getBytesPerPosting() {
+        return postings == 0 ? 0.0 : (double) getBytes(POSTINGS) / postings;
+    }
+
+    /**
+     * @return All bytes divided by the live documents (0 if there are none): the figure to plan capacity with.
+     */
+    public double getBytesPerDocument() {
+        return documents == 0 ? 0.0 : (double) getTotalBytes() / documents;
+    }
+
+    /**
+     * @return About how many documents like the current ones fit in the given bytes (0 if unknown).
+     */
+    public long estimateDocumentCapacity(long heapBytes) {
+        double perDocument = getBytesPerDocument();
+        return perDocument == 0.0 ? 0 : (long) (heapBytes / perDocument);
+    }
+
+    @Override
+    public String toString() {
+        long total = getTotalBytes();
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "Index footprint: %.1f MB for %d documents, %d terms, %d postings%n",
+                total / 1e6, documents, terms, postings));
+        for (Map.Entry<String, Long> component : components.entrySet()) {
+            out.append(String.format(Locale.ROOT, "  %-14s %10.1f KB %5.1f%%%n", component.getKey(),
+                    component.getValue() / 1e3, total == 0 ? 0.0 : 100.0 * component.getValue() / total));
+        }
+        out.append(String.format(Locale.ROOT, "  bytes/posting %.1f, bytes/document %.0f%n",
+                getBytesPerPosting(), getBytesPerDocument()));
+        return out.toString();
+    }
+}
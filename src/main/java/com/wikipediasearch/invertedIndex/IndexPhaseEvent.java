@@ -0,0 +1,35 @@
+package com.wikipediasearch.invertedIndex;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one phase of building the index:
+ * - tokenize: buildIndex running every page through the analysis chain,
+ * - postings: addDocuments appending a batch to the postings lists,
+ * - magnitudes: recomputing the document norms after a batch.
+ */
+@Name("com.wikipediasearch.IndexPhase")
+@Label("Index Build Phase")
+@Category({"Wikipedia Search", "Index"})
+@Description("A tokenize, postings or magnitudes phase of an index build or batch add")
+@StackTrace(false)
+final class IndexPhaseEvent extends jdk.jfr.Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Documents")
+    @Description("Documents processed in this phase")
+    int documents;
+
+    @Label("Postings")
+    @Description("Postings written (postings phase) or visited (magnitudes phase)")
+    long postings;
+
+    @Label("Dictionary Terms")
+    int terms;
+}
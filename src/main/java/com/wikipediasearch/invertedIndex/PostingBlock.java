@@ -0,0 +1,20 @@
+package com.wikipediasearch.invertedIndex;
+
+/**
+ * A term's posting list as parallel primitive arrays: docIds[i] and the (1 + log10 tf)
+ * weight of that posting. The layout the ScoringKernels loop over (see DictEntry.postingBlock).
+ */
+final class PostingBlock {
+
+    final int[] docIds;
+    final double[] tfWeights;
+
+    PostingBlock(int length) {
+        this.docIds = new int[length];
+        this.tfWeights = new double[length];
+    }
+
+    int length() {
+        return docIds.length;
+    }
+}
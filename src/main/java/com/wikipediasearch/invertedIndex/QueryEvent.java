@@ -0,0 +1,43 @@
+package com.wikipediasearch.invertedIndex;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event for one findQueryRanked / findQueryBooleanAnd call. Committed only while a
+ * recording has it enabled and the query took at least the threshold, so leaving it on
+ * costs a timestamp read per query. Open the recording in JMC and sort by duration to
+ * see exactly which queries were slow, next to the GC and JIT events of the same moment.
+ */
+@Name("com.wikipediasearch.Query")
+@Label("Search Query")
+@Category({"Wikipedia Search", "Query"})
+@Description("A ranked or boolean AND query against Index5")
+@StackTrace(false)
+@Threshold("1 ms")
+final class QueryEvent extends jdk.jfr.Event {
+
+    @Label("Type")
+    @Description("ranked or boolean")
+    String type;
+
+    @Label("Query")
+    String query;
+
+    @Label("Terms")
+    @Description("Query terms left after analysis")
+    int terms;
+
+    @Label("Postings Visited")
+    long postingsVisited;
+
+    @Label("Results")
+    int resultCount;
+
+    @Label("Indexed Documents")
+    int indexDocuments;
+}
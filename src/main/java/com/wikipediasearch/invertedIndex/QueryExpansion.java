@@ -0,0 +1,153 @@
+package com.wikipediasearch.invertedIndex;
+
+import com.wikipediasearch.metrics.Counter;
+import com.wikipediasearch.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Spelling variants added to a ranked query: for each query term the collection does not
+ * contain, up to {@link #MAX_VARIANTS} dictionary terms within its edit budget, fewest edits
+ * first, then highest df. Each variant is weighted by its idf and by 1 / (1 + edit distance).
+ *
+ * A sharded index must not choose variants per shard (each shard would see a different
+ * dictionary and weight the query differently), so the variants are chosen once from the
+ * candidates of all shards, ranked by collection df, and every shard is given the same
+ * expansion. Immutable.
+ */
+public final class QueryExpansion {
+
+    /** Most variants added for one missing query term. */
+    public static final int MAX_VARIANTS = 5;
+
+    private static final Counter TERMS_EXPANDED = MetricsRegistry.global().counter("query.fuzzy.expanded");
+    private static final Counter TERMS_UNMATCHED = MetricsRegistry.global().counter("query.fuzzy.unmatched");
+
+    private static final QueryExpansion NONE = new QueryExpansion(Collections.emptyMap());
+
+    private final Map<String, List<Variant>> variants;
+
+    private QueryExpansion(Map<String, List<Variant>> variants) {
+        this.variants = variants;
+    }
+
+    /**
+     * @param variants Query term -> its variants, best first (at most MAX_VARIANTS are kept).
+     */
+    public static QueryExpansion of(Map<String, List<Variant>> variants) {
+        Map<String, List<Variant>> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Variant>> entry : variants.entrySet()) {
+            List<Variant> kept = entry.getValue().subList(0, Math.min(MAX_VARIANTS, entry.getValue().size()));
+            if (!kept.isEmpty()) copy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(kept)));
+        }
+        return copy.isEmpty() ? NONE : new QueryExpansion(Collections.unmodifiableMap(copy));
+    }
+
+    /** @return An expansion adding nothing. */
+    public static QueryExpansion none() {
+        return NONE;
+    }
+
+    /**
+     * Picks the variants of each missing query term from fuzzy candidates, e.g. those gathered
+     * from every shard with {@link Index5#getFuzzyCandidates}.
+     *
+     * Each missing term counts towards the query.fuzzy.expanded or query.fuzzy.unmatched metric.
+     *
+     * @param candidates   Missing query term -> candidate term -> edit distance (possibly none).
+     * @param docFrequency Collection df of a candidate; candidates with df 0 are dropped.
+     */
+    public static QueryExpansion select(Map<String, Map<String, Integer>> candidates, ToIntFunction<String> docFrequency) {
+        Map<String, List<Variant>> selected = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Integer>> term : candidates.entrySet()) {
+            List<Variant> variants = new ArrayList<>();
+            for (Map.Entry<String, Integer> candidate : term.getValue().entrySet()) {
+                int df = docFrequency.applyAsInt(candidate.getKey());
+                if (df > 0) variants.add(new Variant(candidate.getKey(), candidate.getValue(), df));
+            }
+            variants.sort((a, b) -> (a.distance != b.distance) ? Integer.compare(a.distance, b.distance)
+                    : (a.docFrequency != b.docFrequency) ? Integer.compare(b.docFrequency, a.docFrequency)
+                    : a.term.compareTo(b.term));
+            (variants.isEmpty() ? TERMS_UNMATCHED : TERMS_EXPANDED).increment();
+            selected.put(term.getKey(), variants);
+        }
+        return of(selected);
+    }
+
+    /**
+     * Adds candidates (query term -> candidate term -> edit distance) to those gathered so far.
+     */
+    public static void mergeCandidates(Map<String, Map<String, Integer>> into, Map<String, Map<String, Integer>> candidates) {
+        for (Map.Entry<String, Map<String, Integer>> term : candidates.entrySet()) {
+            Map<String, Integer> merged = into.computeIfAbsent(term.getKey(), t -> new LinkedHashMap<>());
+            for (Map.Entry<String, Integer> candidate : term.getValue().entrySet()) {
+                merged.merge(candidate.getKey(), candidate.getValue(), Math::min);
+            }
+        }
+    }
+
+    /** @return The variants of a query term, best first (empty if it is not expanded). */
+    public List<Variant> getVariants(String queryTerm) {
+        return variants.getOrDefault(queryTerm, Collections.emptyList());
+    }
+
+    /** @return Query term -> its variants, for the expanded terms only. */
+    public Map<String, List<Variant>> getVariants() {
+        return variants;
+    }
+
+    public boolean isEmpty() {
+        return variants.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "QueryExpansion" + variants;
+    }
+
+    /** A dictionary term standing in for a misspelled query term. */
+    public static final class Variant {
+        private final String term;
+        private final int distance;
+        private final int docFrequency;
+
+        /**
+         * @param docFrequency The term's collection df when it was chosen (informational).
+         */
+        public Variant(String term, int distance, int docFrequency) {
+            if (term == null || distance < 0) {
+                throw new IllegalArgumentException("Invalid variant: " + term + " at distance " + distance);
+            }
+            this.term = term;
+            this.distance = distance;
+            this.docFrequency = docFrequency;
+        }
+
+        public String getTerm() {
+            return term;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+
+        public int getDocFrequency() {
+            return docFrequency;
+        }
+
+        /** @return The query weight multiplier, 1 / (1 + edit distance). */
+        public double getBoost() {
+            return 1.0 / (1 + distance);
+        }
+
+        @Override
+        public String toString() {
+            return term + " (distance " + distance + ", df " + docFrequency + ")";
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.wikipediasearch.invertedIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Structured report of how Index5 evaluated one ranked query, produced by
+ * {@link Index5#explainQueryRanked(String, int)}:
+ * - the processed (stemmed) query terms with their df, idf and query weight,
+ * - posting-list lengths and how many postings were actually scanned,
+ * - the size of the score accumulator,
+ * - time spent in analysis, scoring and sorting,
+ * - the query weights of the terms found in the title / headings / anchor fields,
+ * - a per-term breakdown of the score for each top hit.
+ *
+ * The per-term contributions of a hit add up to its score: body terms, then secondary-field
+ * matches named "field:term" (e.g. "title:pharaoh"), each already multiplied by its field boost.
+ */
+public class QueryExplanation {
+
+    private final String query;
+    private final int indexDocuments;
+    private final List<TermStats> terms = new ArrayList<>();
+    private final List<HitExplanation> hits = new ArrayList<>();
+    private final Map<Field, Map<String, Double>> fieldTermWeights = new EnumMap<>(Field.class);
+    private final Map<Field, Double> fieldQueryMagnitudes = new EnumMap<>(Field.class);
+    private double queryMagnitude;
+    private int accumulatorSize;
+    private int resultCount;
+    private long analysisNanos;
+    private long scoringNanos;
+    private long sortingNanos;
+
+    QueryExplanation(String query, int indexDocuments) {
+        this.query = query;
+        this.indexDocuments = indexDocuments;
+    }
+
+    // --- Per-term statistics ---
+
+    /**
+     * One processed query term. Terms missing from the index (or with idf 0) have
+     * weight 0 and scanned 0: they do not contribute to any score.
+     */
+    public static class TermStats {
+        private final String term;
+        private final int queryFrequency;
+        private final int docFrequency;
+        private final double idf;
+        private final double weight;
+        private final int postingListLength;
+        private int postingsScanned;
+
+        TermStats(String term, int queryFrequency, int docFrequency, double idf, double weight, int postingListLength) {
+            this.term = term;
+            this.queryFrequency = queryFrequency;
+            this.docFrequency = docFrequency;
+            this.idf = idf;
+            this.weight = weight;
+            this.postingListLength = postingListLength;
+        }
+
+        public String getTerm() { return term; }
+        public int getQueryFrequency() { return queryFrequency; }
+        public int getDocFrequency() { return docFrequency; }
+        public double getIdf() { return idf; }
+        /** Query-side TF-IDF weight of the term. */
+        public double getWeight() { return weight; }
+        public int getPostingListLength() { return postingListLength; }
+        public int getPostingsScanned() { return postingsScanned; }
+    }
+
+    // --- Per-hit score breakdown ---
+
+    /** Contribution of one query term to a hit's cosine score. */
+    public static class TermContribution {
+        private final String term;
+        private final int documentTf;
+        private final double documentWeight;
+        private final double contribution;
+
+        TermContribution(String term, int documentTf, double documentWeight, double contribution) {
+            this.term = term;
+            this.documentTf = documentTf;
+            this.documentWeight = documentWeight;
+            this.contribution = contribution;
+        }
+
+        public String getTerm() { return term; }
+        public int getDocumentTf() { return documentTf; }
+        /** Document-side TF-IDF weight of the term. */
+        public double getDocumentWeight() { return documentWeight; }
+        /** queryWeight * documentWeight / (|q| * |d|). */
+        public double getContribution() { return contribution; }
+    }
+
+    /** One top hit with its document norm and per-term contributions. */
+    public static class HitExplanation {
+        private final Index5.SearchResult result;
+        private final double documentMagnitude;
+        private final List<TermContribution> contributions;
+
+        HitExplanation(Index5.SearchResult result, double documentMagnitude, List<TermContribution> contributions) {
+            this.result = result;
+            this.documentMagnitude = documentMagnitude;
+            this.contributions = contributions;
+        }
+
+        public Index5.SearchResult getResult() { return result; }
+        public double getDocumentMagnitude() { return documentMagnitude; }
+        public List<TermContribution> getContributions() { return Collections.unmodifiableList(contributions); }
+    }
+
+    // --- Filled in by Index5 ---
+
+    void addTerm(TermStats stats) {
+        terms.add(stats);
+    }
+
+    TermStats getTermStats(String term) {
+        for (TermStats stats : terms) {
+            if (stats.term.equals(term)) return stats;
+        }
+        return null;
+    }
+
+    void setQueryMagnitude(double queryMagnitude) {
+        this.queryMagnitude = queryMagnitude;
+    }
+
+    void setAccumulatorSize(int accumulatorSize) {
+        this.accumulatorSize = accumulatorSize;
+    }
+
+    void setResultCount(int resultCount) {
+        this.resultCount = resultCount;
+    }
+
+    void setTimings(long analysisNanos, long scoringNanos, long sortingNanos) {
+        this.analysisNanos = analysisNanos;
+        this.scoringNanos = scoringNanos;
+        this.sortingNanos = sortingNanos;
+    }
+
+    void addHit(HitExplanation hit) {
+        hits.add(hit);
+    }
+
+    void addFieldTermWeight(Field field, String term, double weight) {
+        fieldTermWeights.computeIfAbsent(field, f -> new LinkedHashMap<>()).put(term, weight);
+    }
+
+    void setFieldQueryMagnitude(Field field, double queryMagnitude) {
+        fieldQueryMagnitudes.put(field, queryMagnitude);
+    }
+
+    // --- Getters ---
+
+    public String getQuery() { return query; }
+    public int getIndexDocuments() { return indexDocuments; }
+    public List<TermStats> getTerms() { return Collections.unmodifiableList(terms); }
+    public List<HitExplanation> getHits() { return Collections.unmodifiableList(hits); }
+    public double getQueryMagnitude() { return queryMagnitude; }
+    /** Query weights (tf * field idf) of the terms found in a secondary field; empty if none. */
+    public Map<String, Double> getFieldTermWeights(Field field) {
+        return Collections.unmodifiableMap(fieldTermWeights.getOrDefault(field, Collections.emptyMap()));
+    }
+    /** |q| in a secondary field, 0 if no query term occurs in it. */
+    public double getFieldQueryMagnitude(Field field) { return fieldQueryMagnitudes.getOrDefault(field, 0.0); }
+    /** Number of distinct documents that received a partial score. */
+    public int getAccumulatorSize() { return accumulatorSize; }
+    public int getResultCount() { return resultCount; }
+    public long getAnalysisNanos() { return analysisNanos; }
+    public long getScoringNanos() { return scoringNanos; }
+    public long getSortingNanos() { return sortingNanos; }
+
+    /** Total postings read across all query terms. */
+    public long getPostingsScanned() {
+        long total = 0;
+        for (TermStats stats : terms) total += stats.postingsScanned;
+        return total;
+    }
+
+    void addPostingsScanned(String term, int count) {
+        TermStats stats = getTermStats(term);
+        if (stats != null) stats.postingsScanned += count;
+    }
+
+    /**
+     * Multi-line, human-readable report (used by Main's explain option).
+     */
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "Explain '%s' (N=%d, |q|=%.4f)%n", query, indexDocuments, queryMagnitude));
+        out.append(String.format(Locale.ROOT, "  time: analysis %.3f ms, scoring %.3f ms, sorting %.3f ms%n",
+                analysisNanos / 1e6, scoringNanos / 1e6, sortingNanos / 1e6));
+        out.append(String.format(Locale.ROOT, "  postings scanned: %d, accumulator: %d docs, results: %d%n",
+                getPostingsScanned(), accumulatorSize, resultCount));
+        out.append("  terms:\n");
+        for (TermStats t : terms) {
+            out.append(String.format(Locale.ROOT, "    %-20s qtf=%d df=%d idf=%.4f weight=%.4f postings=%d scanned=%d%n",
+                    t.term, t.queryFrequency, t.docFrequency, t.idf, t.weight, t.postingListLength, t.postingsScanned));
+        }
+        for (Map.Entry<Field, Map<String, Double>> field : fieldTermWeights.entrySet()) {
+            out.append(String.format(Locale.ROOT, "  %s: |q|=%.4f %s%n", field.getKey().name().toLowerCase(Locale.ROOT),
+                    getFieldQueryMagnitude(field.getKey()), field.getValue().keySet()));
+        }
+        for (int i = 0; i < hits.size(); i++) {
+            HitExplanation hit = hits.get(i);
+            out.append(String.format(Locale.ROOT, "  #%d %.6f %s (ID: %d, |d|=%.4f)%n", i + 1,
+                    hit.result.getScore(), hit.result.getIdentifier(), hit.result.getDocId(), hit.documentMagnitude));
+            for (TermContribution c : hit.contributions) {
+                out.append(String.format(Locale.ROOT, "      %-18s tf=%d weight=%.4f -> %.6f%n",
+                        c.term, c.documentTf, c.documentWeight, c.contribution));
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,147 @@
+package com.wikipediasearch.invertedIndex;
+
+import java.util.Arrays;
+
+/**
+ * Per-thread working memory of Index5's ranked queries, reused from query to query so that
+ * a steady-state search allocates little beyond its query strings and its k results:
+ * - dense score accumulators indexed by docId, grown to the largest index the thread has
+ *   searched and reset sparsely: only the entries the query touched are zeroed again;
+ * - the query's distinct terms (and fuzzy expansions) with their weights and posting blocks,
+ *   for the body and for the secondary field being scored;
+ * - the top-k heap and the arrays it is drained into, and the scores held back from it
+ *   once it is full, for one threshold pass.
+ * Not thread-safe; Index5 keeps one per thread.
+ */
+final class QueryScratch {
+
+    // Distinct query terms, in first-occurrence order, then any fuzzy expansions
+    String[] terms = new String[8];
+    int[] termFrequencies = new int[8];
+    double[] boosts = new double[8];             // Query weight multiplier (1 for terms typed as is)
+    PostingBlock[] blocks = new PostingBlock[8]; // Null for terms that are not scored
+    double[] idfs = new double[8];
+    double[] weights = new double[8];
+    double[] fieldWeights = new double[8];            // Query weights in the field being scored
+    PostingBlock[] fieldTermBlocks = new PostingBlock[8]; // Postings in the field being scored (null = none)
+    int termCount;
+
+    // Posting blocks of every scored secondary field: the documents they touched are collected with the body's
+    PostingBlock[] fieldBlocks = new PostingBlock[8];
+    int fieldBlockCount;
+
+    final TopDocsHeap heap = new TopDocsHeap();
+    int[] topDocIds = new int[16];
+    double[] topScores = new double[16];
+
+    final Accumulator scores = new Accumulator();      // Body dot products
+    final Accumulator fieldScores = new Accumulator(); // Boosted cosines of the secondary fields, summed
+    final Accumulator fieldDots = new Accumulator();   // Dot products of the field being scored
+    final Accumulator candidates = new Accumulator();  // Final scores of documents met after the heap filled
+    int candidateEnd;                                  // One past the highest docId in candidates
+    int[] selected = new int[16];                      // Candidates above the heap's threshold
+
+    /** Adds one occurrence of a query term. */
+    void addTerm(String term) {
+        int existing = indexOf(term);
+        if (existing >= 0) {
+            termFrequencies[existing]++;
+        } else {
+            append(term, 1, 1.0);
+        }
+    }
+
+    /**
+     * Adds a term standing in for a query term (e.g. a spelling variant) with that term's
+     * frequency and a reduced weight. Ignored if the term is already part of the query.
+     */
+    void addExpansion(String term, int termFrequency, double boost) {
+        if (indexOf(term) < 0) append(term, termFrequency, boost);
+    }
+
+    private int indexOf(String term) {
+        for (int i = 0; i < termCount; i++) {
+            if (terms[i].equals(term)) return i;
+        }
+        return -1;
+    }
+
+    private void append(String term, int termFrequency, double boost) {
+        if (termCount == terms.length) {
+            int grown = termCount * 2;
+            terms = Arrays.copyOf(terms, grown);
+            termFrequencies = Arrays.copyOf(termFrequencies, grown);
+            boosts = Arrays.copyOf(boosts, grown);
+            blocks = Arrays.copyOf(blocks, grown);
+            idfs = Arrays.copyOf(idfs, grown);
+            weights = Arrays.copyOf(weights, grown);
+            fieldWeights = Arrays.copyOf(fieldWeights, grown);
+            fieldTermBlocks = Arrays.copyOf(fieldTermBlocks, grown);
+        }
+        terms[termCount] = term;
+        termFrequencies[termCount] = termFrequency;
+        boosts[termCount] = boost;
+        blocks[termCount] = null;
+        termCount++;
+    }
+
+    void clearTerms() {
+        Arrays.fill(terms, 0, termCount, null); // Do not pin the last query's strings and blocks
+        Arrays.fill(blocks, 0, termCount, null);
+        Arrays.fill(fieldTermBlocks, 0, termCount, null);
+        Arrays.fill(fieldBlocks, 0, fieldBlockCount, null);
+        termCount = 0;
+        fieldBlockCount = 0;
+    }
+
+    /** Records a scored secondary-field posting block. */
+    void addFieldBlock(PostingBlock block) {
+        if (fieldBlockCount == fieldBlocks.length) {
+            fieldBlocks = Arrays.copyOf(fieldBlocks, fieldBlockCount * 2);
+        }
+        fieldBlocks[fieldBlockCount++] = block;
+    }
+
+    /**
+     * A dense docId-indexed array of doubles, all zero between queries.
+     */
+    static final class Accumulator {
+        private double[] values = new double[0];
+        private boolean dirty; // A query failed before resetting the entries it touched
+
+        /**
+         * An all-zero array with at least the given length. The caller must zero every entry it
+         * writes and then call {@link #clean()}; until then the array counts as dirty and is
+         * cleared in full on the next use.
+         */
+        double[] acquire(int length) {
+            if (values.length < length) {
+                values = new double[Math.max(length, values.length + (values.length >> 1))];
+            } else if (dirty) {
+                Arrays.fill(values, 0.0);
+            }
+            dirty = true;
+            return values;
+        }
+
+        void clean() {
+            dirty = false;
+        }
+    }
+
+    /** Makes the selection array large enough for every candidate below candidateEnd. */
+    int[] selected() {
+        if (selected.length < candidateEnd) {
+            selected = new int[Math.max(candidateEnd, selected.length + (selected.length >> 1))];
+        }
+        return selected;
+    }
+
+    /** Makes the drain arrays large enough for the heap's current contents. */
+    void ensureTopCapacity(int count) {
+        if (topDocIds.length < count) {
+            topDocIds = new int[count];
+            topScores = new double[count];
+        }
+    }
+}
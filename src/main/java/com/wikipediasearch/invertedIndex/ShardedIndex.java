@@ -0,0 +1,406 @@
+package com.wikipediasearch.invertedIndex;
+
+import com.wikipediasearch.metrics.Histogram;
+import com.wikipediasearch.metrics.MetricsRegistry;
+import com.wikipediasearch.util.Hashing;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+
+/**
+ * Document-partitioned index: pages are spread over K Index5 shards by URL hash, shards are
+ * built and searched in parallel, and the per-shard top-k lists are merged with a heap.
+ *
+ * Every shard scores with the collection-wide N and df, body and fields (see {@link CollectionStatistics}),
+ * so document norms, query weights and cosine scores are the same as with a single Index5
+ * over the same pages. Spelling variants of misspelled query terms are likewise chosen once,
+ * from the candidates of all shards ranked by collection df, and handed to every shard.
+ *
+ * Global docIds are {@code localDocId * shardCount + shard}. Near-duplicate detection is not
+ * supported (duplicates would only be found within a shard).
+ * Thread-safe; close() stops the shard worker threads.
+ */
+public class ShardedIndex implements Closeable {
+
+    private static final Histogram QUERY_LATENCY = MetricsRegistry.global().histogram("query.sharded.latencyNanos");
+    private static final Histogram BUILD_LATENCY = MetricsRegistry.global().histogram("index.sharded.batch.latencyNanos");
+
+    private final Index5[] shards;
+    private final ExecutorService shardPool;
+    // Write-locked while a batch is added and statistics refreshed, so queries never mix
+    // shards with old and new global statistics
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final GlobalStatistics statistics = new GlobalStatistics();
+    private volatile boolean fuzzyExpansion = true;
+
+    /**
+     * @param shardCount Number of shards (and worker threads); typically the number of cores.
+     */
+    public ShardedIndex(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1: " + shardCount);
+        }
+        shards = new Index5[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Index5();
+        }
+        AtomicInteger threadCounter = new AtomicInteger();
+        shardPool = Executors.newFixedThreadPool(shardCount, runnable -> {
+            Thread thread = new Thread(runnable, "index-shard-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // --- Building ---
+
+    /**
+     * Replaces the contents with the given pages (URL -> text). Each shard tokenizes and
+     * indexes its own pages in parallel.
+     */
+    public void buildIndex(Map<String, String> pages) {
+        List<Map<String, String>> partitions = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            partitions.add(new HashMap<>());
+        }
+        if (pages != null) {
+            for (Map.Entry<String, String> page : pages.entrySet()) {
+                if (page.getValue() == null || page.getValue().trim().isEmpty()) {
+                    System.err.println("Warning: Skipping page with empty content: " + page.getKey());
+                    continue;
+                }
+                partitions.get(shardOf(page.getKey())).put(page.getKey(), page.getValue());
+            }
+        }
+
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            List<List<TokenizedDocument>> batches = onAllShards(shard -> () -> {
+                shards[shard].clear();
+                List<TokenizedDocument> documents = new ArrayList<>(partitions.get(shard).size());
+                for (Map.Entry<String, String> page : partitions.get(shard).entrySet()) {
+                    documents.add(shards[shard].tokenize(page.getKey(), null, page.getValue()));
+                }
+                shards[shard].addDocuments(documents, false);
+                return documents;
+            });
+            statistics.clear();
+            List<TokenizedDocument> documents = new ArrayList<>();
+            for (List<TokenizedDocument> batch : batches) documents.addAll(batch);
+            refreshStatistics(documents);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        BUILD_LATENCY.recordSince(start);
+    }
+
+    /**
+     * Runs a page through the analysis chain (same as {@link Index5#tokenize}).
+     */
+    public TokenizedDocument tokenize(String url, String title, String content) {
+        return shards[0].tokenize(url, title, content);
+    }
+
+    /**
+     * Runs a page with all its fields through the analysis chain (same as {@link Index5#tokenize}).
+     */
+    public TokenizedDocument tokenize(String url, String title, String headings, String anchorText, String content) {
+        return shards[0].tokenize(url, title, headings, anchorText, content);
+    }
+
+    /**
+     * Adds a batch of tokenized documents, routed to shards by URL. The shards are updated in
+     * parallel, then the global df of the batch's terms and the norms they affect are refreshed.
+     * Queries see the index before or after the batch, never in between.
+     *
+     * @return The number of documents added.
+     */
+    public int addDocuments(Collection<TokenizedDocument> documents) {
+        if (documents == null || documents.isEmpty()) {
+            return 0;
+        }
+        List<List<TokenizedDocument>> partitions = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            partitions.add(new ArrayList<>());
+        }
+        for (TokenizedDocument document : documents) {
+            if (document != null) partitions.get(shardOf(document.getUrl())).add(document);
+        }
+
+        long start = System.nanoTime();
+        int added = 0;
+        lock.writeLock().lock();
+        try {
+            for (int count : onAllShards(shard -> () -> shards[shard].addDocuments(partitions.get(shard), false))) {
+                added += count;
+            }
+            refreshStatistics(documents);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        BUILD_LATENCY.recordSince(start);
+        return added;
+    }
+
+    // Caller holds the write lock. Re-sums the global df of the terms the batch touched (only
+    // they changed) from the shards' own counts, then lets every shard update the norms those
+    // terms and the new N affect, in parallel (see Index5.updateMagnitudes).
+    private void refreshStatistics(Collection<TokenizedDocument> batch) {
+        Set<String> changedTerms = new HashSet<>();
+        Set<String> changedFieldTerms = new HashSet<>();
+        for (TokenizedDocument document : batch) {
+            if (document == null) continue;
+            changedTerms.addAll(document.getTermFrequencies().keySet());
+            for (Field field : Field.values()) {
+                if (field != Field.BODY) changedFieldTerms.addAll(document.getFieldTermFrequencies(field).keySet());
+            }
+        }
+        List<Map<String, Integer>> shardDocFrequencies = onAllShards(shard -> () -> shards[shard].getTermDocFrequencies(changedTerms));
+        List<Map<Field, Map<String, Integer>>> shardFieldDocFrequencies =
+                onAllShards(shard -> () -> shards[shard].getTermFieldDocFrequencies(changedFieldTerms));
+        int documentCount = 0;
+        for (Index5 shard : shards) documentCount += shard.getNumberOfDocuments();
+        statistics.update(documentCount, changedTerms, shardDocFrequencies, changedFieldTerms, shardFieldDocFrequencies);
+        onAllShards(shard -> () -> {
+            shards[shard].setCollectionStatistics(statistics);
+            shards[shard].updateMagnitudes(changedTerms);
+            return null;
+        });
+    }
+
+    private int shardOf(String url) {
+        return shardFor(url, shards.length);
+    }
+
+    /**
+     * @return The shard (0 .. shardCount-1) a page URL belongs to. Shard servers use the same
+     *         routing, so a page lands on the same shard in and out of process.
+     */
+    public static int shardFor(String url, int shardCount) {
+        return (int) Math.floorMod(Hashing.hash64(url), (long) shardCount);
+    }
+
+    // --- Searching ---
+
+    /**
+     * Ranked (TF-IDF / cosine) search across all shards.
+     *
+     * @param query The query text.
+     * @param k     Maximum number of results.
+     * @return Up to k results in descending score order, with global docIds.
+     */
+    public List<Index5.SearchResult> findQueryRanked(String query, int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        long start = System.nanoTime();
+        List<List<Index5.SearchResult>> perShard;
+        lock.readLock().lock();
+        try {
+            QueryExpansion expansion = expandMissingTerms(query);
+            perShard = onAllShards(shard -> () -> shards[shard].findQueryRanked(query, k, null, expansion));
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Index5.SearchResult> merged = mergeTopK(perShard, k);
+        QUERY_LATENCY.recordSince(start);
+        return merged;
+    }
+
+    /**
+     * Enables or disables fuzzy expansion of ranked queries (on by default), as
+     * {@link Index5#setFuzzyExpansion} does for a single index.
+     */
+    public void setFuzzyExpansion(boolean enabled) {
+        this.fuzzyExpansion = enabled;
+    }
+
+    // Caller holds the read lock. Variants of the query terms no shard contains, chosen from the
+    // candidates of all shards by collection df, as a single index would choose them.
+    private QueryExpansion expandMissingTerms(String query) {
+        if (!fuzzyExpansion) return QueryExpansion.none();
+        GlobalStatistics global = statistics;
+        List<String> missing = new ArrayList<>();
+        for (String term : shards[0].getQueryTermDocFrequencies(query).keySet()) {
+            if (!global.containsTerm(term)) missing.add(term);
+        }
+        if (missing.isEmpty()) return QueryExpansion.none();
+        Map<String, Map<String, Integer>> candidates = new LinkedHashMap<>();
+        for (String term : missing) {
+            candidates.put(term, new LinkedHashMap<>());
+        }
+        for (Map<String, Map<String, Integer>> shardCandidates : onAllShards(shard -> () -> shards[shard].getFuzzyCandidates(missing))) {
+            QueryExpansion.mergeCandidates(candidates, shardCandidates);
+        }
+        return QueryExpansion.select(candidates, global::docFrequency);
+    }
+
+    // K-way merge of the score-ordered shard lists: the heap holds one cursor per shard,
+    // ordered by the score at its head, so merging costs O(k log K).
+    private List<Index5.SearchResult> mergeTopK(List<List<Index5.SearchResult>> perShard, int k) {
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) ->
+                perShard.get(a[0]).get(a[1]).compareTo(perShard.get(b[0]).get(b[1])));
+        for (int shard = 0; shard < perShard.size(); shard++) {
+            if (!perShard.get(shard).isEmpty()) heads.add(new int[]{shard, 0});
+        }
+        List<Index5.SearchResult> merged = new ArrayList<>(k);
+        while (merged.size() < k && !heads.isEmpty()) {
+            int[] head = heads.poll();
+            Index5.SearchResult local = perShard.get(head[0]).get(head[1]);
+            merged.add(new Index5.SearchResult(toGlobalDocId(head[0], local.getDocId()), local.getScore(), local.getIdentifier()));
+            if (++head[1] < perShard.get(head[0]).size()) heads.add(head);
+        }
+        return merged;
+    }
+
+    // --- Accessors ---
+
+    /**
+     * @return The source record of a global docId (its own docId field is shard-local), or null.
+     */
+    public SourceRecord getSourceRecord(int globalDocId) {
+        if (globalDocId < 0) return null;
+        return shards[globalDocId % shards.length].getSourceRecord(globalDocId / shards.length);
+    }
+
+    public int getNumberOfDocuments() {
+        return statistics.documentCount();
+    }
+
+    /** @return Number of distinct terms across all shards. */
+    public int getIndexSize() {
+        lock.readLock().lock();
+        try {
+            return statistics.termCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return The summed footprint of all shards (see {@link Index5#getFootprint()}).
+     */
+    public IndexFootprint getFootprint() {
+        List<IndexFootprint> footprints = new ArrayList<>(shards.length);
+        for (Index5 shard : shards) footprints.add(shard.getFootprint());
+        return IndexFootprint.sum(footprints);
+    }
+
+    private int toGlobalDocId(int shard, int localDocId) {
+        return localDocId * shards.length + shard;
+    }
+
+    @Override
+    public void close() {
+        shardPool.shutdownNow();
+    }
+
+    // --- Helpers ---
+
+    // Runs one task per shard on the pool and returns the results in shard order
+    private <T> List<T> onAllShards(IntFunction<Callable<T>> task) {
+        List<Future<T>> futures = new ArrayList<>(shards.length);
+        for (int shard = 0; shard < shards.length; shard++) {
+            futures.add(shardPool.submit(task.apply(shard)));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw new IllegalStateException("Interrupted while waiting for index shards.", e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw new IllegalStateException("Index shard task failed: " + e.getCause(), e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Collection-wide N and df (body and secondary fields), summed from all shards. Updated in
+     * place, term by term, under ShardedIndex's write lock; read under its read lock (N also
+     * without it).
+     */
+    private static final class GlobalStatistics implements CollectionStatistics {
+        private volatile int documentCount;
+        private final Map<String, Integer> docFrequencies = new HashMap<>();
+        private final Map<Field, Map<String, Integer>> fieldDocFrequencies = new EnumMap<>(Field.class);
+
+        void clear() {
+            documentCount = 0;
+            docFrequencies.clear();
+            fieldDocFrequencies.clear();
+        }
+
+        // Replaces the df of the given terms with the sum of the shards' own counts (0 = dropped)
+        void update(int documentCount, Collection<String> terms, List<Map<String, Integer>> shardDocFrequencies,
+                    Collection<String> fieldTerms, List<Map<Field, Map<String, Integer>>> shardFieldDocFrequencies) {
+            this.documentCount = documentCount;
+            for (String term : terms) {
+                int df = 0;
+                for (Map<String, Integer> shard : shardDocFrequencies) df += shard.getOrDefault(term, 0);
+                if (df > 0) docFrequencies.put(term, df);
+                else docFrequencies.remove(term);
+            }
+            for (Field field : Field.values()) {
+                if (field == Field.BODY) continue;
+                Map<String, Integer> frequencies = fieldDocFrequencies.computeIfAbsent(field, f -> new HashMap<>());
+                for (String term : fieldTerms) {
+                    int df = 0;
+                    for (Map<Field, Map<String, Integer>> shard : shardFieldDocFrequencies) {
+                        df += shard.getOrDefault(field, Collections.emptyMap()).getOrDefault(term, 0);
+                    }
+                    if (df > 0) frequencies.put(term, df);
+                    else frequencies.remove(term);
+                }
+            }
+        }
+
+        @Override
+        public int documentCount() {
+            return documentCount;
+        }
+
+        @Override
+        public int docFrequency(String term) {
+            return docFrequencies.getOrDefault(term, 0);
+        }
+
+        @Override
+        public int fieldDocFrequency(Field field, String term) {
+            Map<String, Integer> frequencies = fieldDocFrequencies.get(field);
+            return (frequencies != null) ? frequencies.getOrDefault(term, 0) : 0;
+        }
+
+        int termCount() {
+            return docFrequencies.size();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.wikipediasearch.invertedIndex;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The result of running a page's text through Index5's analysis chain
+ * (lowercase, split, filter, stop words, stemming), before it is added to the index.
+ * Separating this step from the index update lets tokenization run on many threads
+ * while a single writer applies the results to the postings.
+ * Besides the body, a document may carry terms for the secondary fields (title, headings,
+ * anchor text), which Index5 keeps in separate postings.
+ */
+public class TokenizedDocument {
+
+    private final String url;                          // The original URL of the page
+    private final String title;                        // Page title (can be null -> placeholder used by Index5)
+    private final Map<String, Integer> termFrequencies; // Processed term -> frequency within this page
+    private final int length;                          // Number of indexed tokens (same meaning as SourceRecord.length)
+    private final Map<Field, Map<String, Integer>> fieldTermFrequencies; // Secondary field -> its term frequencies
+    private final Map<String, String> surfaceForms;    // Body term -> its most frequent unstemmed form, if different
+
+    /**
+     * Creates a tokenized document.
+     *
+     * @param url             The URL of the page. Cannot be null or empty.
+     * @param title           The page title, or null if unknown.
+     * @param termFrequencies Processed term -> frequency map.
+     * @param length          Number of tokens counted for the page.
+     * @throws IllegalArgumentException if url is null or empty.
+     */
+    public TokenizedDocument(String url, String title, Map<String, Integer> termFrequencies, int length) {
+        this(url, title, termFrequencies, length, null);
+    }
+
+    /**
+     * Creates a tokenized document with secondary fields.
+     *
+     * @param url                  The URL of the page. Cannot be null or empty.
+     * @param title                The page title, or null if unknown.
+     * @param termFrequencies      Processed body term -> frequency map.
+     * @param length               Number of body tokens counted for the page.
+     * @param fieldTermFrequencies Processed term frequencies of the title, headings and anchor
+     *                             fields (missing fields are empty; a BODY entry is ignored).
+     * @throws IllegalArgumentException if url is null or empty.
+     */
+    public TokenizedDocument(String url, String title, Map<String, Integer> termFrequencies, int length,
+                             Map<Field, Map<String, Integer>> fieldTermFrequencies) {
+        this(url, title, termFrequencies, length, fieldTermFrequencies, null);
+    }
+
+    /**
+     * Creates a tokenized document with secondary fields and the unstemmed forms of its body
+     * terms, which autocomplete shows instead of the stems.
+     *
+     * @param url                  The URL of the page. Cannot be null or empty.
+     * @param title                The page title, or null if unknown.
+     * @param termFrequencies      Processed body term -> frequency map.
+     * @param length               Number of body tokens counted for the page.
+     * @param fieldTermFrequencies Processed term frequencies of the title, headings and anchor fields.
+     * @param surfaceForms         Processed body term -> the unstemmed form the page uses most, for
+     *                             the terms where it differs; null if unknown.
+     * @throws IllegalArgumentException if url is null or empty.
+     */
+    public TokenizedDocument(String url, String title, Map<String, Integer> termFrequencies, int length,
+                             Map<Field, Map<String, Integer>> fieldTermFrequencies, Map<String, String> surfaceForms) {
+        if (url == null || url.trim().isEmpty()) {
+            throw new IllegalArgumentException("Document URL cannot be null or empty.");
+        }
+        this.url = url;
+        this.title = title;
+        this.termFrequencies = (termFrequencies != null) ? termFrequencies : Collections.emptyMap();
+        this.length = length;
+        this.surfaceForms = (surfaceForms != null) ? surfaceForms : Collections.emptyMap();
+        this.fieldTermFrequencies = new EnumMap<>(Field.class);
+        if (fieldTermFrequencies != null) {
+            for (Map.Entry<Field, Map<String, Integer>> field : fieldTermFrequencies.entrySet()) {
+                if (field.getKey() != Field.BODY && field.getValue() != null && !field.getValue().isEmpty()) {
+                    this.fieldTermFrequencies.put(field.getKey(), field.getValue());
+                }
+            }
+        }
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public Map<String, Integer> getTermFrequencies() {
+        return termFrequencies;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return The processed term frequencies of a field (the body's for BODY); empty if the
+     *         page has nothing in it.
+     */
+    public Map<String, Integer> getFieldTermFrequencies(Field field) {
+        if (field == Field.BODY) return termFrequencies;
+        return fieldTermFrequencies.getOrDefault(field, Collections.emptyMap());
+    }
+
+    /**
+     * @return The unstemmed form the page uses most for a processed body term (the term itself
+     *         if it is not stemmed or the form is unknown).
+     */
+    public String getSurfaceForm(String term) {
+        return surfaceForms.getOrDefault(term, term);
+    }
+
+    /**
+     * @return Processed body term -> unstemmed form, for the terms where it differs.
+     */
+    Map<String, String> getSurfaceForms() {
+        return surfaceForms;
+    }
+
+    /**
+     * @return true if no term survived analysis (nothing to index).
+     */
+    public boolean isEmpty() {
+        return termFrequencies.isEmpty() && fieldTermFrequencies.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "TokenizedDocument{" +
+                "url='" + url + '\'' +
+                ", terms=" + termFrequencies.size() +
+                ", length=" + length +
+                ", fields=" + fieldTermFrequencies.keySet() +
+                '}';
+    }
+}
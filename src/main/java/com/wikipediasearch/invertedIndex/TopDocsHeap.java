@@ -0,0 +1,109 @@
+package com.wikipediasearch.invertedIndex;
+
+import java.util.Arrays;
+
+/**
+ * Bounded min-heap of (docId, score) pairs on primitive arrays: keeps the best k documents
+ * seen so far without boxing or per-candidate objects. The root is the worst kept document,
+ * so a candidate only costs a comparison unless it beats it. Ties on score prefer the lower
+ * docId, which makes the order deterministic. Reused across queries (see QueryScratch).
+ */
+final class TopDocsHeap {
+
+    private int[] docIds = new int[16];
+    private double[] scores = new double[16];
+    private int size;
+    private int capacity;
+
+    /** Empties the heap and sets how many documents it keeps (Integer.MAX_VALUE = all). */
+    void reset(int k) {
+        size = 0;
+        capacity = k;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** True once the heap holds k documents: a candidate must then beat {@link #minScore()}. */
+    boolean isFull() {
+        return size > 0 && size == capacity;
+    }
+
+    /** The score of the worst kept document; only meaningful when the heap is not empty. */
+    double minScore() {
+        return scores[0];
+    }
+
+    void offer(int docId, double score) {
+        if (size < capacity) {
+            if (size == docIds.length) {
+                int grown = (int) Math.min((long) size * 2, Integer.MAX_VALUE - 8);
+                docIds = Arrays.copyOf(docIds, grown);
+                scores = Arrays.copyOf(scores, grown);
+            }
+            docIds[size] = docId;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (size > 0 && worse(docIds[0], scores[0], docId, score)) {
+            docIds[0] = docId;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Empties the heap into the given arrays, best document first.
+     * @return The number of documents written (the heap size before the call).
+     */
+    int drainBestFirst(int[] docIdsOut, double[] scoresOut) {
+        int count = size;
+        for (int i = count - 1; i >= 0; i--) {
+            docIdsOut[i] = docIds[0];
+            scoresOut[i] = scores[0];
+            size--;
+            if (size > 0) {
+                docIds[0] = docIds[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+        }
+        return count;
+    }
+
+    // True if (docIdA, scoreA) ranks below (docIdB, scoreB)
+    private static boolean worse(int docIdA, double scoreA, int docIdB, double scoreB) {
+        return scoreA < scoreB || (scoreA == scoreB && docIdA > docIdB);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(docIds[i], scores[i], docIds[parent], scores[parent])) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) break;
+            int worst = left;
+            int right = left + 1;
+            if (right < size && worse(docIds[right], scores[right], docIds[left], scores[left])) worst = right;
+            if (!worse(docIds[worst], scores[worst], docIds[i], scores[i])) break;
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int docId = docIds[i];
+        docIds[i] = docIds[j];
+        docIds[j] = docId;
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+}
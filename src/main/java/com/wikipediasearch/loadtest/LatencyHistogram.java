@@ -0,0 +1,85 @@
+package com.wikipediasearch.loadtest;
+
+import com.wikipediasearch.metrics.HistogramBuckets;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histogram in the style of HdrHistogram (HistogramBuckets layout): any recorded
+ * value is reported within 1/64 (~1.6%) of its true value, in a fixed ~30 KB of counters.
+ * Not thread-safe, and so cheaper than metrics.Histogram: give each load thread its own
+ * and merge them.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = HistogramBuckets.COUNT;
+
+    private final long[] counts = new long[BUCKETS];
+    private long totalCount;
+    private long maxValue;
+    private double sum;
+
+    /**
+     * @param nanos A latency in nanoseconds (negative values count as 0).
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[HistogramBuckets.bucketOf(value)]++;
+        totalCount++;
+        sum += value;
+        if (value > maxValue) maxValue = value;
+    }
+
+    /**
+     * Adds all values recorded in another histogram.
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMaxNanos() {
+        return maxValue;
+    }
+
+    public double getMeanNanos() {
+        return totalCount == 0 ? 0.0 : sum / totalCount;
+    }
+
+    /**
+     * @param percentile In [0, 100], e.g. 99.9.
+     * @return The latency (ns) at or below which that percentage of values fall
+     *         (the highest value equivalent to the bucket, as HdrHistogram reports it).
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) return Math.min(HistogramBuckets.highestValueOf(i), maxValue);
+        }
+        return maxValue;
+    }
+
+    /**
+     * @return "p50=… p99=… p999=… max=…" in microseconds.
+     */
+    public String summary() {
+        return String.format("p50=%.1f us, p99=%.1f us, p999=%.1f us, max=%.1f us, mean=%.1f us",
+                micros(getValueAtPercentile(50)), micros(getValueAtPercentile(99)),
+                micros(getValueAtPercentile(99.9)), micros(maxValue), getMeanNanos() / 1e3);
+    }
+
+    private static double micros(long nanos) {
+        return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,180 @@
+package com.wikipediasearch.loadtest;
+
+import com.wikipediasearch.invertedIndex.Index5;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a QueryWorkload against an Index5 from N threads and measures latency.
+ *
+ * - Closed loop: each thread sends its next query as soon as the previous one returns.
+ *   Measures maximum throughput; latency is service time only.
+ * - Open loop: queries arrive on a fixed schedule (target QPS) whether or not earlier ones
+ *   have finished. Latency is measured from each query's scheduled start, so time spent
+ *   waiting behind slow queries is counted (no coordinated omission). Shows how latency
+ *   degrades as load approaches capacity.
+ */
+public class LoadDriver {
+
+    private final Index5 index;
+    private final QueryWorkload workload;
+
+    public LoadDriver(Index5 index, QueryWorkload workload) {
+        if (index == null || workload == null) {
+            throw new IllegalArgumentException("Index and workload cannot be null.");
+        }
+        this.index = index;
+        this.workload = workload;
+    }
+
+    /**
+     * @param threads  Concurrent clients.
+     * @param warmup   Run this long first without recording (lets the JIT settle).
+     * @param duration Measured run time.
+     */
+    public Result runClosedLoop(int threads, long warmup, long duration, TimeUnit unit) throws InterruptedException {
+        runClosed(threads, unit.toNanos(warmup), null);
+        List<LatencyHistogram> histograms = newHistograms(threads);
+        long elapsed = runClosed(threads, unit.toNanos(duration), histograms);
+        return new Result("closed", threads, 0, elapsed, histograms);
+    }
+
+    /**
+     * @param threads   Client threads serving the arrival schedule.
+     * @param targetQps Arrival rate.
+     * @param warmup    Run this long first without recording.
+     * @param duration  Measured run time.
+     */
+    public Result runOpenLoop(int threads, double targetQps, long warmup, long duration, TimeUnit unit) throws InterruptedException {
+        if (targetQps <= 0) {
+            throw new IllegalArgumentException("Target QPS must be positive. Received: " + targetQps);
+        }
+        runOpen(threads, targetQps, unit.toNanos(warmup), null);
+        List<LatencyHistogram> histograms = newHistograms(threads);
+        long elapsed = runOpen(threads, targetQps, unit.toNanos(duration), histograms);
+        return new Result("open", threads, targetQps, elapsed, histograms);
+    }
+
+    // --- Loops ---
+
+    private long runClosed(int threads, long durationNanos, List<LatencyHistogram> histograms) throws InterruptedException {
+        AtomicLong nextQuery = new AtomicLong();
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        runThreads(threads, t -> {
+            LatencyHistogram histogram = (histograms != null) ? histograms.get(t) : null;
+            while (System.nanoTime() < end) {
+                QueryWorkload.Query query = workload.get(nextQuery.getAndIncrement());
+                long sent = System.nanoTime();
+                execute(query);
+                if (histogram != null) histogram.record(System.nanoTime() - sent);
+            }
+        });
+        return System.nanoTime() - start;
+    }
+
+    private long runOpen(int threads, double targetQps, long durationNanos, List<LatencyHistogram> histograms) throws InterruptedException {
+        AtomicLong nextArrival = new AtomicLong();
+        double intervalNanos = 1e9 / targetQps;
+        long arrivals = (long) (durationNanos / intervalNanos);
+        long start = System.nanoTime();
+        runThreads(threads, t -> {
+            LatencyHistogram histogram = (histograms != null) ? histograms.get(t) : null;
+            while (true) {
+                long arrival = nextArrival.getAndIncrement();
+                if (arrival >= arrivals) break;
+                long scheduled = start + (long) (arrival * intervalNanos);
+                long wait;
+                while ((wait = scheduled - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                execute(workload.get(arrival));
+                if (histogram != null) histogram.record(System.nanoTime() - scheduled);
+            }
+        });
+        return System.nanoTime() - start;
+    }
+
+    private void execute(QueryWorkload.Query query) {
+        if (query.isRanked()) {
+            index.findQueryRanked(query.getText());
+        } else {
+            index.findQueryBooleanAnd(query.getText());
+        }
+    }
+
+    private interface Worker {
+        void run(int thread);
+    }
+
+    private static void runThreads(int count, Worker worker) throws InterruptedException {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive. Received: " + count);
+        }
+        List<Thread> threads = new ArrayList<>(count);
+        for (int t = 0; t < count; t++) {
+            final int id = t;
+            Thread thread = new Thread(() -> worker.run(id), "load-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static List<LatencyHistogram> newHistograms(int count) {
+        List<LatencyHistogram> histograms = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            histograms.add(new LatencyHistogram());
+        }
+        return histograms;
+    }
+
+    // --- Result ---
+
+    /** Throughput and latency distribution of one run. */
+    public static final class Result {
+        private final String mode;
+        private final int threads;
+        private final double targetQps;
+        private final long elapsedNanos;
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Result(String mode, int threads, double targetQps, long elapsedNanos, List<LatencyHistogram> perThread) {
+            this.mode = mode;
+            this.threads = threads;
+            this.targetQps = targetQps;
+            this.elapsedNanos = elapsedNanos;
+            for (LatencyHistogram histogram : perThread) {
+                latency.merge(histogram);
+            }
+        }
+
+        public long getQueries() {
+            return latency.getCount();
+        }
+
+        /**
+         * @return Completed queries per second.
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0.0 : latency.getCount() / (elapsedNanos / 1e9);
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            String target = "open".equals(mode) ? String.format(", target=%.0f qps", targetQps) : "";
+            return String.format("%s loop, %d threads%s: %d queries, %.0f qps, %s",
+                    mode, threads, target, latency.getCount(), getThroughput(), latency.summary());
+        }
+    }
+}
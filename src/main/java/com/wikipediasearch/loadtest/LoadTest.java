@@ -0,0 +1,84 @@
+package com.wikipediasearch.loadtest;
+
+import com.wikipediasearch.invertedIndex.Index5;
+import com.wikipediasearch.pipeline.CrawlIndexPipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command-line load test: builds an index from a synthetic corpus, then drives a matching
+ * query workload against it and prints throughput and latency percentiles. Giving several
+ * corpus sizes shows how indexing and query performance scale.
+ *
+ * java com.wikipediasearch.loadtest.LoadTest [options]
+ *   --docs 10000,100000     corpus sizes to test (each gets a fresh index)
+ *   --seed 42               corpus and workload seed
+ *   --threads 4             load threads
+ *   --mode closed|open|both load model (default both)
+ *   --rate 1000             open-loop target QPS
+ *   --duration 30           measured seconds per run (plus 5 s warmup)
+ *   --queries 10000         distinct queries in the workload
+ *   --ranked 0.8            fraction of ranked (vs boolean AND) queries
+ */
+public class LoadTest {
+
+    private static final long WARMUP_SECONDS = 5;
+
+    public static void main(String[] args) throws InterruptedException {
+        List<Integer> sizes = new ArrayList<>();
+        for (String size : option(args, "--docs", "10000").split(",")) {
+            sizes.add(Integer.parseInt(size.trim().replace("_", "")));
+        }
+        long seed = Long.parseLong(option(args, "--seed", "42"));
+        int threads = Integer.parseInt(option(args, "--threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        String mode = option(args, "--mode", "both");
+        double rate = Double.parseDouble(option(args, "--rate", "1000"));
+        long duration = Long.parseLong(option(args, "--duration", "30"));
+        int queryCount = Integer.parseInt(option(args, "--queries", "10000"));
+        double ranked = Double.parseDouble(option(args, "--ranked", "0.8"));
+
+        List<String> report = new ArrayList<>();
+        for (int documents : sizes) {
+            SyntheticCorpus corpus = SyntheticCorpus.withDefaults(seed, documents);
+            System.out.println("Generating and indexing " + corpus);
+
+            Index5 index = new Index5();
+            int workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            CrawlIndexPipeline pipeline = new CrawlIndexPipeline(null, index, 256, workers, 50_000, 60_000);
+            long buildStart = System.nanoTime();
+            pipeline.start(corpus);
+            pipeline.awaitCompletion(Long.MAX_VALUE, TimeUnit.DAYS);
+            double buildSeconds = (System.nanoTime() - buildStart) / 1e9;
+            report.add(String.format("docs=%d: indexed %d documents, %d terms in %.1f s (%.0f docs/s)",
+                    documents, index.getNumberOfDocuments(), index.getIndexSize(), buildSeconds,
+                    index.getNumberOfDocuments() / buildSeconds));
+
+            QueryWorkload workload = new QueryWorkload(corpus, seed + 1, queryCount, ranked);
+            LoadDriver driver = new LoadDriver(index, workload);
+            if (!mode.equals("open")) {
+                LoadDriver.Result result = driver.runClosedLoop(threads, WARMUP_SECONDS, duration, TimeUnit.SECONDS);
+                report.add("docs=" + documents + ": " + result);
+            }
+            if (!mode.equals("closed")) {
+                LoadDriver.Result result = driver.runOpenLoop(threads, rate, WARMUP_SECONDS, duration, TimeUnit.SECONDS);
+                report.add("docs=" + documents + ": " + result);
+            }
+        }
+
+        System.out.println("\n--- Load test results ---");
+        for (String line : report) {
+            System.out.println(line);
+        }
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,101 @@
+package com.wikipediasearch.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * A reproducible list of queries matching a SyntheticCorpus.
+ *
+ * Query terms are drawn from the corpus' own word-frequency distribution, so popular
+ * terms (long posting lists) are queried more often, as in real search logs. Query
+ * length follows a typical web-search shape (mostly 1-3 terms, rarely up to 6).
+ */
+public class QueryWorkload {
+
+    // P(query has i + 1 terms)
+    private static final double[] LENGTH_PROBABILITIES = {0.30, 0.33, 0.20, 0.10, 0.05, 0.02};
+
+    /** One query and the Index5 method it is sent to. */
+    public static final class Query {
+        private final String text;
+        private final boolean ranked;
+
+        Query(String text, boolean ranked) {
+            this.text = text;
+            this.ranked = ranked;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return true for findQueryRanked, false for findQueryBooleanAnd.
+         */
+        public boolean isRanked() {
+            return ranked;
+        }
+
+        @Override
+        public String toString() {
+            return (ranked ? "ranked: " : "and: ") + text;
+        }
+    }
+
+    private final List<Query> queries;
+
+    /**
+     * @param corpus         The corpus the queries run against.
+     * @param seed           Seed; the same seed and corpus always give the same queries.
+     * @param queryCount     Number of distinct queries.
+     * @param rankedFraction Fraction of queries that are ranked (the rest are boolean AND).
+     */
+    public QueryWorkload(SyntheticCorpus corpus, long seed, int queryCount, double rankedFraction) {
+        if (queryCount <= 0) {
+            throw new IllegalArgumentException("Query count must be positive. Received: " + queryCount);
+        }
+        if (rankedFraction < 0 || rankedFraction > 1) {
+            throw new IllegalArgumentException("Ranked fraction must be in [0, 1]. Received: " + rankedFraction);
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        ZipfDistribution words = corpus.getWordDistribution();
+        List<Query> generated = new ArrayList<>(queryCount);
+        StringBuilder text = new StringBuilder();
+        for (int q = 0; q < queryCount; q++) {
+            int length = sampleLength(random);
+            text.setLength(0);
+            for (int t = 0; t < length; t++) {
+                if (t > 0) text.append(' ');
+                text.append(SyntheticCorpus.word(words.sample(random)));
+            }
+            generated.add(new Query(text.toString(), random.nextDouble() < rankedFraction));
+        }
+        this.queries = Collections.unmodifiableList(generated);
+    }
+
+    public List<Query> getQueries() {
+        return queries;
+    }
+
+    /**
+     * @return Query i, wrapping around (drivers cycle through the workload).
+     */
+    public Query get(long i) {
+        return queries.get((int) (i % queries.size()));
+    }
+
+    public int size() {
+        return queries.size();
+    }
+
+    private static int sampleLength(SplittableRandom random) {
+        double u = random.nextDouble();
+        for (int i = 0; i < LENGTH_PROBABILITIES.length; i++) {
+            u -= LENGTH_PROBABILITIES[i];
+            if (u < 0) return i + 1;
+        }
+        return LENGTH_PROBABILITIES.length;
+    }
+}
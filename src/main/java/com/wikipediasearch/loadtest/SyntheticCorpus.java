@@ -0,0 +1,180 @@
+package com.wikipediasearch.loadtest;
+
+import com.wikipediasearch.pipeline.TextPageSink;
+import com.wikipediasearch.pipeline.TextPageSource;
+import com.wikipediasearch.util.Hashing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * A reproducible synthetic corpus for load tests at sizes a real crawl cannot reach.
+ *
+ * - Word frequencies follow a Zipf distribution over a generated vocabulary (rank r gets a
+ *   distinct pronounceable word, so it survives Index5's tokenizer and stemmer as one term).
+ * - Document lengths (in words) follow a second Zipf distribution: many short pages, a long tail.
+ * - Document i is generated from (seed, i) alone, so any page can be regenerated on demand and
+ *   the whole corpus is never held in memory; it streams into CrawlIndexPipeline as a TextPageSource.
+ *
+ * By default the vocabulary is sized by Heaps' law (V = 30 * tokens^0.5), which gives ~50k terms
+ * for 10k documents and ~1.7M for 10M.
+ */
+public class SyntheticCorpus implements TextPageSource {
+
+    public static final double DEFAULT_WORD_EXPONENT = 1.0;
+    public static final double DEFAULT_LENGTH_EXPONENT = 1.0;
+    public static final int DEFAULT_MIN_LENGTH = 50;
+    public static final int DEFAULT_MAX_LENGTH = 5000;
+
+    private static final int MAX_DEFAULT_VOCABULARY = 2_000_000;
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ne", "ru", "ta", "shi", "po", "ven", "dar", "el", "quin", "tor", "sa", "bri", "gum"};
+    private static final int SENTENCE_LENGTH = 17;
+
+    private final long seed;
+    private final int documentCount;
+    private final ZipfDistribution words;
+    private final ZipfDistribution lengths;
+    private final int minLength;
+
+    /**
+     * Corpus with default distributions and a Heaps'-law vocabulary.
+     *
+     * @param seed          Seed; the same seed and size always give the same corpus.
+     * @param documentCount Number of documents.
+     */
+    public static SyntheticCorpus withDefaults(long seed, int documentCount) {
+        double meanLength = expectedLength(DEFAULT_MIN_LENGTH, DEFAULT_MAX_LENGTH, DEFAULT_LENGTH_EXPONENT);
+        double tokens = meanLength * documentCount;
+        int vocabulary = (int) Math.min(MAX_DEFAULT_VOCABULARY, Math.max(1000, 30 * Math.sqrt(tokens)));
+        return new SyntheticCorpus(seed, documentCount, vocabulary, DEFAULT_WORD_EXPONENT,
+                DEFAULT_MIN_LENGTH, DEFAULT_MAX_LENGTH, DEFAULT_LENGTH_EXPONENT);
+    }
+
+    /**
+     * @param seed           Seed for all randomness.
+     * @param documentCount  Number of documents.
+     * @param vocabularySize Number of distinct words.
+     * @param wordExponent   Zipf exponent of word frequencies.
+     * @param minLength      Shortest document, in words.
+     * @param maxLength      Longest document, in words.
+     * @param lengthExponent Zipf exponent of document lengths (higher = more short documents).
+     */
+    public SyntheticCorpus(long seed, int documentCount, int vocabularySize, double wordExponent,
+                           int minLength, int maxLength, double lengthExponent) {
+        if (documentCount <= 0) {
+            throw new IllegalArgumentException("Document count must be positive. Received: " + documentCount);
+        }
+        if (minLength <= 0 || maxLength < minLength) {
+            throw new IllegalArgumentException("Invalid document length range: [" + minLength + ", " + maxLength + "]");
+        }
+        this.seed = seed;
+        this.documentCount = documentCount;
+        this.words = new ZipfDistribution(vocabularySize, wordExponent);
+        this.lengths = new ZipfDistribution(maxLength - minLength + 1, lengthExponent);
+        this.minLength = minLength;
+    }
+
+    /**
+     * Streams every document to the sink (e.g. CrawlIndexPipeline), in docId order.
+     */
+    @Override
+    public int produce(TextPageSink sink) throws InterruptedException {
+        for (int docId = 0; docId < documentCount; docId++) {
+            sink.accept(documentUrl(docId), documentTitle(docId), documentText(docId));
+        }
+        return documentCount;
+    }
+
+    /**
+     * Materializes the corpus as URL -> text, the shape Index5.buildIndex takes.
+     * Only sensible for small corpora.
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> pages = new LinkedHashMap<>();
+        for (int docId = 0; docId < documentCount; docId++) {
+            pages.put(documentUrl(docId), documentText(docId));
+        }
+        return pages;
+    }
+
+    public String documentUrl(int docId) {
+        return "https://en.wikipedia.org/wiki/Synthetic_" + docId;
+    }
+
+    public String documentTitle(int docId) {
+        SplittableRandom random = randomFor(docId ^ 0x7469746cL);
+        return word(words.sample(random)) + " " + word(words.sample(random));
+    }
+
+    /**
+     * @return The text of document docId; identical on every call for the same seed.
+     */
+    public String documentText(int docId) {
+        SplittableRandom random = randomFor(docId);
+        int length = minLength + lengths.sample(random);
+        StringBuilder text = new StringBuilder(length * 8);
+        for (int w = 0; w < length; w++) {
+            text.append(word(words.sample(random)));
+            text.append(w % SENTENCE_LENGTH == SENTENCE_LENGTH - 1 ? ". " : " ");
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return The vocabulary word of the given frequency rank (0 = most frequent).
+     */
+    public static String word(int rank) {
+        StringBuilder word = new StringBuilder(12);
+        int value = rank;
+        do {
+            word.append(SYLLABLES[value & 15]);
+            value >>>= 4;
+        } while (value > 0);
+        return word.toString();
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public int getVocabularySize() {
+        return words.getSize();
+    }
+
+    /**
+     * @return The word-frequency distribution (QueryWorkload samples query terms from it).
+     */
+    public ZipfDistribution getWordDistribution() {
+        return words;
+    }
+
+    @Override
+    public String toString() {
+        return "SyntheticCorpus{seed=" + seed +
+                ", documents=" + documentCount +
+                ", vocabulary=" + words.getSize() +
+                ", wordExponent=" + words.getExponent() +
+                ", length=[" + minLength + ", " + (minLength + lengths.getSize() - 1) + "]" +
+                ", lengthExponent=" + lengths.getExponent() +
+                '}';
+    }
+
+    private SplittableRandom randomFor(long stream) {
+        return new SplittableRandom(Hashing.mix64(seed * 0x9E3779B97F4A7C15L + stream));
+    }
+
+    private static double expectedLength(int minLength, int maxLength, double exponent) {
+        ZipfDistribution distribution = new ZipfDistribution(maxLength - minLength + 1, exponent);
+        double mean = 0;
+        for (int rank = 0; rank < distribution.getSize(); rank++) {
+            mean += rank * distribution.probability(rank);
+        }
+        return minLength + mean;
+    }
+}
@@ -0,0 +1,64 @@
+package com.wikipediasearch.loadtest;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Samples ranks 0..n-1 with P(rank r) proportional to 1 / (r + 1)^exponent.
+ * Uses a precomputed cumulative table and binary search, so sampling is O(log n)
+ * and the table costs 8 bytes per rank. Immutable and thread-safe (each caller
+ * supplies its own random generator).
+ */
+public class ZipfDistribution {
+
+    private final int size;
+    private final double exponent;
+    private final double[] cumulative; // cumulative[r] = sum of weights of ranks 0..r
+
+    /**
+     * @param size     Number of ranks.
+     * @param exponent Skew; 1.0 is classic Zipf (natural-language word frequencies), 0 is uniform.
+     */
+    public ZipfDistribution(int size, double exponent) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Zipf size must be positive. Received: " + size);
+        }
+        if (exponent < 0) {
+            throw new IllegalArgumentException("Zipf exponent cannot be negative. Received: " + exponent);
+        }
+        this.size = size;
+        this.exponent = exponent;
+        this.cumulative = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+    }
+
+    /**
+     * @return A rank in [0, size), rank 0 being the most likely.
+     */
+    public int sample(RandomGenerator random) {
+        double target = random.nextDouble() * cumulative[size - 1];
+        int rank = Arrays.binarySearch(cumulative, target);
+        if (rank < 0) rank = -rank - 1;
+        return Math.min(rank, size - 1);
+    }
+
+    /**
+     * @return The probability of the given rank.
+     */
+    public double probability(int rank) {
+        if (rank < 0 || rank >= size) return 0.0;
+        return (1.0 / Math.pow(rank + 1, exponent)) / cumulative[size - 1];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public double getExponent() {
+        return exponent;
+    }
+}
@@ -0,0 +1,51 @@
+package com.wikipediasearch.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count (pages fetched, tokens indexed, ...). Increments are
+ * striped across cells (LongAdder), so hot paths on many threads do not contend.
+ */
+public class Counter {
+
+    private static final long RATE_WINDOW_NANOS = 5_000_000_000L;
+
+    private final LongAdder count = new LongAdder();
+
+    // Rate over the last completed window, refreshed lazily by readers
+    private long windowStartNanos = System.nanoTime();
+    private long windowStartCount;
+    private double rate;
+    private boolean windowCompleted;
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return Increments per second over the most recent window of at least 5 seconds
+     *         (or since creation, until the first window completes).
+     */
+    public synchronized double getRatePerSecond() {
+        long now = System.nanoTime();
+        long elapsed = now - windowStartNanos;
+        long current = count.sum();
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            rate = (current - windowStartCount) / (elapsed / 1e9);
+            windowStartNanos = now;
+            windowStartCount = current;
+            windowCompleted = true;
+        } else if (!windowCompleted && elapsed > 0) {
+            return current / (elapsed / 1e9); // First window still open
+        }
+        return rate;
+    }
+}
@@ -0,0 +1,11 @@
+package com.wikipediasearch.metrics;
+
+/**
+ * A value sampled when metrics are read (queue depth, index size, ...).
+ * Implementations must be cheap and safe to call from the JMX / reporter thread.
+ */
+@FunctionalInterface
+public interface Gauge {
+
+    double getValue();
+}
@@ -0,0 +1,68 @@
+package com.wikipediasearch.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free distribution of non-negative values (latencies in nanoseconds, result counts, ...)
+ * using the HistogramBuckets layout. Recording is one atomic increment plus two striped adds,
+ * safe from any number of threads; percentiles are computed from a racy but consistent-enough
+ * read of the bucket counts.
+ */
+public class Histogram {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(HistogramBuckets.COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets.incrementAndGet(HistogramBuckets.bucketOf(v));
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    /**
+     * Records the time elapsed since startNanos (a System.nanoTime() reading).
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0.0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @param percentile In [0, 100], e.g. 99.9.
+     * @return The value at or below which that percentage of recorded values fall.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[HistogramBuckets.COUNT];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= target) return Math.min(HistogramBuckets.highestValueOf(i), getMax());
+        }
+        return getMax();
+    }
+}
@@ -0,0 +1,42 @@
+package com.wikipediasearch.metrics;
+
+/**
+ * Log-linear bucket layout shared by the histograms (the HdrHistogram scheme with two
+ * significant binary digits): values below 128 get exact buckets, larger values get 64
+ * buckets per power of two, so any non-negative long maps to one of {@link #COUNT} buckets
+ * and is reported within 1/64 (~1.6%) of its true value.
+ */
+public final class HistogramBuckets {
+
+    private static final int SUB_BUCKET_BITS = 6;                      // 64 buckets per power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;             // 0..127 are exact
+
+    /** Number of buckets needed to cover every non-negative long. */
+    public static final int COUNT = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private HistogramBuckets() {
+    }
+
+    /**
+     * @param value A non-negative value.
+     * @return Its bucket index in [0, COUNT).
+     */
+    public static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) return (int) Math.max(0, value);
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS; // >= 1
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;              // 0..63
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return The largest value that falls in the bucket (what percentiles report).
+     */
+    public static long highestValueOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) return bucket;
+        int shift = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        long highest = ((subBucket + 1) << shift) - 1;
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+}
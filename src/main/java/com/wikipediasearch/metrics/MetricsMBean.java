@@ -0,0 +1,109 @@
+package com.wikipediasearch.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exposes a MetricsRegistry as one JMX bean (com.wikipediasearch:type=Metrics) whose
+ * attributes are the registry's snapshot values, so jconsole / VisualVM / any JMX
+ * scraper can watch the engine without a profiler attached. Read-only; also offers
+ * "dumpText" and "dumpJson" operations.
+ */
+public class MetricsMBean implements DynamicMBean {
+
+    public static final String OBJECT_NAME = "com.wikipediasearch:type=Metrics";
+
+    private final MetricsRegistry registry;
+
+    public MetricsMBean(MetricsRegistry registry) {
+        if (registry == null) {
+            throw new IllegalArgumentException("Registry cannot be null.");
+        }
+        this.registry = registry;
+    }
+
+    /**
+     * Registers the bean for the registry with the platform MBean server (once per process).
+     *
+     * @return true if registered now, false if it already was.
+     */
+    public static boolean register(MetricsRegistry registry) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new MetricsMBean(registry), new ObjectName(OBJECT_NAME));
+            return true;
+        } catch (InstanceAlreadyExistsException e) {
+            return false;
+        } catch (JMException e) {
+            System.err.println("Warning: Could not register metrics MBean: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = registry.snapshot().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException("No metric named " + attribute);
+        }
+        return value.doubleValue();
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> snapshot = registry.snapshot();
+        AttributeList list = new AttributeList();
+        for (String name : attributes) {
+            Number value = snapshot.get(name);
+            if (value != null) list.add(new Attribute(name, value.doubleValue()));
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+        throw new UnsupportedOperationException("Metrics are read-only.");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList(); // Read-only: nothing set
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        switch (actionName) {
+            case "dumpText": return registry.toText();
+            case "dumpJson": return registry.toJson();
+            default: throw new UnsupportedOperationException("Unknown operation: " + actionName);
+        }
+    }
+
+    // Rebuilt on every call: metrics registered after startup show up as new attributes
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : registry.snapshot().keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, "double", name, true, false, false));
+        }
+        MBeanOperationInfo[] operations = {
+                new MBeanOperationInfo("dumpText", "All metrics, one per line", null, "java.lang.String", MBeanOperationInfo.INFO),
+                new MBeanOperationInfo("dumpJson", "All metrics as a JSON object", null, "java.lang.String", MBeanOperationInfo.INFO)
+        };
+        return new MBeanInfo(getClass().getName(), "Wikipedia search engine metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, operations, null);
+    }
+}
@@ -0,0 +1,129 @@
+package com.wikipediasearch.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named counters, histograms and gauges for the engine's hot paths.
+ *
+ * Names are dotted paths ("crawler.pages.fetched", "query.ranked.latencyNanos"). Asking for
+ * an existing name returns the same metric, so classes can look their metrics up once into
+ * static fields. Every Index5 / WebCrawler in the process reports into {@link #global()};
+ * it is exposed over JMX by MetricsMBean and dumped periodically by MetricsReporter.
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+    private final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * @return The process-wide registry.
+     */
+    public static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    public Counter counter(String name) {
+        return register(name, Counter.class, new Counter());
+    }
+
+    public Histogram histogram(String name) {
+        return register(name, Histogram.class, new Histogram());
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge of the same name (the newest owner wins,
+     * e.g. the index most recently created).
+     */
+    public void gauge(String name, Gauge gauge) {
+        Object existing = metrics.get(name);
+        if (existing != null && !(existing instanceof Gauge)) {
+            throw new IllegalArgumentException("Metric '" + name + "' is already registered as " + existing.getClass().getSimpleName());
+        }
+        metrics.put(name, gauge);
+    }
+
+    public void remove(String name) {
+        metrics.remove(name);
+    }
+
+    /**
+     * Reads every metric into flat name -> value pairs, sorted by name:
+     * counters give name (count) and name.rate (per second), histograms give
+     * name.count/.mean/.p50/.p99/.p999/.max, gauges give name.
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : new TreeMap<>(metrics).entrySet()) {
+            String name = entry.getKey();
+            Object metric = entry.getValue();
+            if (metric instanceof Counter counter) {
+                values.put(name, counter.getCount());
+                values.put(name + ".rate", counter.getRatePerSecond());
+            } else if (metric instanceof Histogram histogram) {
+                values.put(name + ".count", histogram.getCount());
+                values.put(name + ".mean", histogram.getMean());
+                values.put(name + ".p50", histogram.getValueAtPercentile(50));
+                values.put(name + ".p99", histogram.getValueAtPercentile(99));
+                values.put(name + ".p999", histogram.getValueAtPercentile(99.9));
+                values.put(name + ".max", histogram.getMax());
+            } else if (metric instanceof Gauge gauge) {
+                double value;
+                try {
+                    value = gauge.getValue();
+                } catch (RuntimeException e) {
+                    value = Double.NaN;
+                }
+                values.put(name, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return One "name value" line per value.
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Number> entry : snapshot().entrySet()) {
+            text.append(entry.getKey()).append(' ').append(format(entry.getValue())).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return The snapshot as a flat JSON object.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        boolean first = true;
+        for (Map.Entry<String, Number> entry : snapshot().entrySet()) {
+            if (!first) json.append(',');
+            first = false;
+            json.append('"').append(entry.getKey()).append("\":");
+            Number value = entry.getValue();
+            boolean finite = !(value instanceof Double d) || Double.isFinite(d);
+            json.append(finite ? format(value) : "null");
+        }
+        return json.append('}').toString();
+    }
+
+    private static String format(Number value) {
+        if (value instanceof Double d) {
+            return (d == Math.rint(d) && Math.abs(d) < 1e15) ? Long.toString(d.longValue()) : String.format(Locale.ROOT, "%.3f", d);
+        }
+        return value.toString();
+    }
+
+    private <T> T register(String name, Class<T> type, T created) {
+        Object metric = metrics.computeIfAbsent(name, n -> created);
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric '" + name + "' is already registered as " + metric.getClass().getSimpleName());
+        }
+        return type.cast(metric);
+    }
+}
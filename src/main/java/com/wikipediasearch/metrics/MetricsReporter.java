@@ -0,0 +1,61 @@
+package com.wikipediasearch.metrics;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints a MetricsRegistry snapshot (text or one-line JSON) at a fixed interval on a
+ * daemon thread, for logs and scrapers that do not speak JMX.
+ */
+public class MetricsReporter implements Closeable {
+
+    private final MetricsRegistry registry;
+    private final PrintStream out;
+    private final boolean json;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param registry The metrics to report.
+     * @param out      Where to print (e.g. System.err, to keep stdout for search results).
+     * @param json     true for one JSON object per line, false for "name value" lines.
+     */
+    public MetricsReporter(MetricsRegistry registry, PrintStream out, boolean json) {
+        if (registry == null || out == null) {
+            throw new IllegalArgumentException("Registry and output cannot be null.");
+        }
+        this.registry = registry;
+        this.out = out;
+        this.json = json;
+    }
+
+    public void start(long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Report period must be positive. Received: " + period);
+        }
+        scheduler.scheduleAtFixedRate(this::report, period, period, unit);
+    }
+
+    /**
+     * Prints one snapshot now.
+     */
+    public void report() {
+        if (json) {
+            out.println(registry.toJson());
+        } else {
+            out.print("--- metrics ---\n" + registry.toText());
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
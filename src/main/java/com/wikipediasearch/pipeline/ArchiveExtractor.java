@@ -0,0 +1,131 @@
+package com.wikipediasearch.pipeline;
+
+import com.wikipediasearch.crawler.CrawlArchive;
+import com.wikipediasearch.crawler.PageStore;
+import com.wikipediasearch.crawler.WebCrawler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The extract stage of a staged run (crawl -> archive -> extract -> page store -> index):
+ * rebuilds the page store from the raw pages in a {@link CrawlArchive}, so a change to text
+ * extraction or analysis is applied to a whole crawl at local disk speed instead of crawling
+ * again at politeness speed.
+ *
+ * The archive is cut into one split per thread; each thread reads its split sequentially and
+ * extracts its pages, and the page store serializes their appends. Only the latest copy of a
+ * re-crawled page is read, so the new store holds every page once, in no particular order
+ * (which StoreIndexer does not need).
+ */
+public class ArchiveExtractor {
+
+    private static final String TEMP_STORE = "extract-tmp";
+
+    private final int threads;
+    private long recordsRead;
+    private long pagesExtracted;
+    private long bytesRead;
+
+    /**
+     * @param threads Number of splits extracted in parallel.
+     */
+    public ArchiveExtractor(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive. Received: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Extracts every archived HTML page (status 200) into a new page store, which then replaces
+     * the store in {@code storeDirectory}. The new store is written next to it first, so a
+     * failed or interrupted run leaves the old store in place; other files there (such as the
+     * crawl state) are kept.
+     *
+     * @param archiveDirectory A directory written by the crawl stage.
+     * @param storeDirectory   The page store directory to rebuild.
+     * @return The number of pages in the new store.
+     * @throws IOException if the archive is missing or corrupt, or the store cannot be written.
+     */
+    public long extract(Path archiveDirectory, Path storeDirectory) throws IOException, InterruptedException {
+        List<CrawlArchive.Split> splits = CrawlArchive.split(archiveDirectory, threads);
+        Path temp = storeDirectory.resolve(TEMP_STORE);
+        PageStore.delete(temp);
+
+        AtomicLong records = new AtomicLong();
+        AtomicLong pages = new AtomicLong();
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "archive-extract-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (PageStore store = new PageStore(temp)) {
+            List<Callable<Long>> tasks = new ArrayList<>(splits.size());
+            for (CrawlArchive.Split split : splits) {
+                tasks.add(() -> CrawlArchive.read(split, record -> {
+                    records.incrementAndGet();
+                    if (record.getStatusCode() != 200 || !record.isHtml()) return;
+                    store.accept(WebCrawler.extractArchived(record));
+                    pages.incrementAndGet();
+                }));
+            }
+            for (Future<Long> result : pool.invokeAll(tasks)) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException io) throw io;
+                    if (cause instanceof UncheckedIOException io) throw io.getCause();
+                    if (cause instanceof InterruptedException) throw new InterruptedException();
+                    if (cause instanceof RuntimeException runtime) throw runtime;
+                    throw new IOException("Extraction failed", cause);
+                }
+            }
+            store.sync();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        PageStore.move(temp, storeDirectory);
+        Files.deleteIfExists(temp);
+        recordsRead = records.get();
+        pagesExtracted = pages.get();
+        bytesRead = 0;
+        for (CrawlArchive.Split split : splits) bytesRead += split.sizeInBytes();
+        return pagesExtracted;
+    }
+
+    /**
+     * @return Records read by the last {@link #extract} (latest copies only, non-HTML included).
+     */
+    public long getRecordsRead() {
+        return recordsRead;
+    }
+
+    /**
+     * @return Pages written to the store by the last {@link #extract}.
+     */
+    public long getPagesExtracted() {
+        return pagesExtracted;
+    }
+
+    /**
+     * @return Compressed archive bytes read by the last {@link #extract}.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+}
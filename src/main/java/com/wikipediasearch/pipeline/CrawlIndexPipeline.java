@@ -0,0 +1,434 @@
+package com.wikipediasearch.pipeline;
+
+import com.wikipediasearch.crawler.WebCrawler;
+import com.wikipediasearch.graph.PageRank;
+import com.wikipediasearch.invertedIndex.Index5;
+import com.wikipediasearch.invertedIndex.TokenizedDocument;
+import com.wikipediasearch.metrics.Counter;
+import com.wikipediasearch.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Streams pages from the crawler into the index instead of collecting the whole crawl first.
+ *
+ * crawl (1 thread + extract threads) -> [parsed queue] -> tokenize pool -> [tokenized queue] -> index (1 thread)
+ *
+ * The crawler extracts text and links in a single streaming pass over each response body as
+ * it downloads (see HtmlTextExtractor), on its own extract threads while the crawl thread
+ * fetches, so there is no separate HTML parse stage. Crawled pages are indexed
+ * with their title, headings and the anchor text of links to them (from pages crawled earlier)
+ * as separate fields.
+ *
+ * Every queue is bounded, so a slow stage blocks the stage feeding it (backpressure) and the
+ * number of pages held in memory is capped by the queue capacities plus one index batch.
+ * The index stage publishes a batch at a time through Index5.addDocuments, so the index is
+ * searchable (as of the last published batch) while the crawl is still running.
+ *
+ * If the index stage fails, the upstream stages are stopped and their queues drained (nothing
+ * would take from them again) and awaitCompletion rethrows the failure; a failed crawl or
+ * source stage ends the stream early, the pages it delivered are still indexed, and
+ * awaitCompletion rethrows its failure too.
+ *
+ * A TextPageSource (e.g. an offline dump reader) can replace the crawl stage and feed
+ * the parsed queue directly: text source -> [parsed queue] -> tokenize pool -> ... -> index.
+ */
+public class CrawlIndexPipeline {
+
+    // Defaults
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+    private static final int DEFAULT_SNAPSHOT_BATCH_SIZE = 256;
+    private static final long DEFAULT_SNAPSHOT_MAX_DELAY_MS = 2000;
+
+    private static final Counter SNAPSHOTS_PUBLISHED = MetricsRegistry.global().counter("pipeline.snapshots.published");
+    private static final Counter DOCUMENTS_PUBLISHED = MetricsRegistry.global().counter("pipeline.documents.published");
+
+    // Poison pills used to shut down each stage in order
+    private static final ParsedPage PARSED_END = new ParsedPage(null, null, null, null, null);
+    private static final TokenizedDocument TOKENIZED_END = new TokenizedDocument("pipeline:end", null, null, 0);
+
+    private final WebCrawler crawler;
+    private final Index5 index;
+    private final int tokenizeThreads;
+    private final int snapshotBatchSize;
+    private final long snapshotMaxDelayMs;
+
+    private final BlockingQueue<ParsedPage> parsedPages;
+    private final BlockingQueue<TokenizedDocument> tokenizedDocuments;
+
+    private final ExecutorService crawlExecutor;
+    private final ExecutorService tokenizePool;
+    private final ExecutorService indexExecutor;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>(); // First stage failure
+    private volatile boolean aborted = false;
+
+    // Statistics
+    private final AtomicInteger pagesCrawled = new AtomicInteger();
+    private final AtomicInteger documentsIndexed = new AtomicInteger();
+    private final AtomicInteger snapshotsPublished = new AtomicInteger();
+
+    private volatile boolean started = false;
+
+    /**
+     * Creates a pipeline without a crawler, for use with {@link #start(TextPageSource)}.
+     */
+    public CrawlIndexPipeline(Index5 index) {
+        this(null, index);
+    }
+
+    /**
+     * Creates a pipeline with default queue sizes and one tokenize worker per two available cores.
+     */
+    public CrawlIndexPipeline(WebCrawler crawler, Index5 index) {
+        this(crawler, index, DEFAULT_QUEUE_CAPACITY,
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                DEFAULT_SNAPSHOT_BATCH_SIZE, DEFAULT_SNAPSHOT_MAX_DELAY_MS);
+    }
+
+    /**
+     * @param crawler            The crawler to pull pages from (null if only text sources are used).
+     * @param index              The index to populate (it is searchable while the pipeline runs).
+     * @param queueCapacity      Capacity of each inter-stage queue.
+     * @param tokenizeThreads    Workers running the analysis chain.
+     * @param snapshotBatchSize  Max documents added to the index per published snapshot.
+     * @param snapshotMaxDelayMs Max time a document waits in the index stage before being published.
+     */
+    public CrawlIndexPipeline(WebCrawler crawler, Index5 index, int queueCapacity,
+                              int tokenizeThreads, int snapshotBatchSize, long snapshotMaxDelayMs) {
+        if (index == null) {
+            throw new IllegalArgumentException("Index cannot be null.");
+        }
+        if (queueCapacity <= 0 || tokenizeThreads <= 0 || snapshotBatchSize <= 0 || snapshotMaxDelayMs < 0) {
+            throw new IllegalArgumentException("Pipeline sizes must be positive.");
+        }
+        this.crawler = crawler;
+        this.index = index;
+        this.tokenizeThreads = tokenizeThreads;
+        this.snapshotBatchSize = snapshotBatchSize;
+        this.snapshotMaxDelayMs = snapshotMaxDelayMs;
+
+        this.parsedPages = new ArrayBlockingQueue<>(queueCapacity);
+        this.tokenizedDocuments = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.crawlExecutor = Executors.newSingleThreadExecutor(namedThreads("crawl"));
+        this.tokenizePool = Executors.newFixedThreadPool(tokenizeThreads, namedThreads("tokenize"));
+        this.indexExecutor = Executors.newSingleThreadExecutor(namedThreads("index"));
+    }
+
+    /**
+     * Starts all stages and returns immediately. The index can be queried right away;
+     * results grow as snapshots are published.
+     *
+     * @param seedUrls The crawl seeds.
+     */
+    public synchronized void start(List<String> seedUrls) {
+        if (crawler == null) {
+            throw new IllegalStateException("Pipeline was created without a crawler.");
+        }
+        markStarted();
+
+        startDownstream();
+
+        crawlExecutor.submit(() -> {
+            try {
+                crawler.crawl(seedUrls, page -> {
+                    // blocks when tokenizing is behind
+                    parsedPages.put(new ParsedPage(page.getUrl(), page.getTitle(), page.getHeadings(),
+                            page.getAnchorText(), page.getText()));
+                    pagesCrawled.incrementAndGet();
+                });
+                // The link graph is complete only now: rank it and install the priors
+                PageRank pageRank = PageRank.compute(crawler.getLinkGraph());
+                System.out.println("Link analysis: " + pageRank);
+                index.setStaticPriors(pageRank.priors());
+            } catch (RuntimeException e) {
+                System.err.println("Pipeline crawl stage failed: " + e.getMessage());
+                recordFailure(e);
+            } finally {
+                putPills(parsedPages, PARSED_END, tokenizeThreads);
+            }
+        });
+    }
+
+    /**
+     * Starts the pipeline fed by a source of already-extracted text instead of the crawler.
+     * The source runs on its own thread, in parallel with tokenizing and indexing.
+     *
+     * @param source The page source, e.g. a WikipediaDumpReader.
+     */
+    public synchronized void start(TextPageSource source) {
+        markStarted();
+        startDownstream();
+
+        crawlExecutor.submit(() -> {
+            try {
+                source.produce((url, title, text) -> {
+                    parsedPages.put(new ParsedPage(url, title, null, null, text)); // blocks when tokenizing is behind
+                    pagesCrawled.incrementAndGet();
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Pipeline source stage failed: " + e.getMessage());
+                recordFailure(e);
+            } finally {
+                putPills(parsedPages, PARSED_END, tokenizeThreads);
+            }
+        });
+    }
+
+    private void markStarted() {
+        if (started) {
+            throw new IllegalStateException("Pipeline has already been started.");
+        }
+        started = true;
+    }
+
+    // Tokenize pool + single index writer, shared by both entry points
+    private void startDownstream() {
+        startStage(tokenizePool, tokenizeThreads, parsedPages, PARSED_END, tokenizedDocuments, TOKENIZED_END, 1,
+                parsed -> {
+                    if (parsed.text == null || parsed.text.trim().isEmpty()) {
+                        System.err.println("Warning: Skipping page with empty content: " + parsed.url);
+                        return null;
+                    }
+                    return index.tokenize(parsed.url, parsed.title, parsed.headings, parsed.anchorText, parsed.text);
+                });
+
+        indexExecutor.submit(this::runIndexStage);
+    }
+
+    /**
+     * Waits until every crawled page has been indexed.
+     *
+     * @param timeout Max time to wait.
+     * @param unit    Unit of the timeout.
+     * @return true if the pipeline finished, false if the timeout elapsed first.
+     * @throws IllegalStateException if a stage failed (the cause is its exception); documents
+     *                               published before the failure stay searchable.
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        boolean done = finished.await(timeout, unit);
+        if (done) {
+            shutdownExecutors();
+            Throwable cause = failure.get();
+            if (cause != null) {
+                throw new IllegalStateException("Pipeline failed: " + cause, cause);
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Stops all stages. Pages already published stay searchable.
+     */
+    public void stop() {
+        crawlExecutor.shutdownNow();
+        tokenizePool.shutdownNow();
+        indexExecutor.shutdownNow();
+    }
+
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    /**
+     * @return The first exception a stage failed with, or null.
+     */
+    public Throwable getFailure() {
+        return failure.get();
+    }
+
+    public Index5 getIndex() {
+        return index;
+    }
+
+    public int getPagesCrawled() {
+        return pagesCrawled.get();
+    }
+
+    public int getDocumentsIndexed() {
+        return documentsIndexed.get();
+    }
+
+    public int getSnapshotsPublished() {
+        return snapshotsPublished.get();
+    }
+
+    // --- Stage plumbing ---
+
+    /**
+     * Runs {@code workers} copies of a transform stage. Each worker stops on the poison pill;
+     * the last worker to stop sends one pill per downstream worker. A null result drops the item.
+     */
+    private <I, O> void startStage(ExecutorService pool, int workers, BlockingQueue<I> input, I poison,
+                                   BlockingQueue<O> output, O downstreamPoison, int downstreamWorkers,
+                                   Function<I, O> work) {
+        AtomicInteger running = new AtomicInteger(workers);
+        for (int w = 0; w < workers; w++) {
+            pool.submit(() -> {
+                try {
+                    while (!aborted) {
+                        I item = input.take();
+                        if (item == poison) break;
+                        O result;
+                        try {
+                            result = work.apply(item);
+                        } catch (RuntimeException e) {
+                            System.err.println("Pipeline stage error: " + e.getMessage());
+                            continue;
+                        }
+                        if (result != null) {
+                            output.put(result);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (running.decrementAndGet() == 0 && !aborted) {
+                        putPills(output, downstreamPoison, downstreamWorkers);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Single writer: collects documents into a batch until it is full or the max delay
+     * passes, then publishes the batch as a new searchable snapshot. Signals completion
+     * however it ends; if publishing fails, the rest of the pipeline is aborted.
+     */
+    private void runIndexStage() {
+        List<TokenizedDocument> batch = new ArrayList<>(snapshotBatchSize);
+        try {
+            boolean endOfStream = false;
+            while (!endOfStream) {
+                TokenizedDocument first = tokenizedDocuments.take();
+                if (first == TOKENIZED_END) break;
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(snapshotMaxDelayMs);
+                while (batch.size() < snapshotBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    TokenizedDocument next = tokenizedDocuments.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    if (next == TOKENIZED_END) {
+                        endOfStream = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+                publish(batch);
+            }
+            publish(batch);
+            System.out.println("Pipeline finished: " + documentsIndexed.get() + " documents searchable after "
+                    + snapshotsPublished.get() + " snapshots.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            publishQuietly(batch); // Stopped: keep what was collected
+        } catch (RuntimeException | Error e) {
+            System.err.println("Pipeline index stage failed: " + e.getMessage());
+            recordFailure(e);
+        } finally {
+            try {
+                if (failure.get() != null) abortUpstream();
+            } finally {
+                finished.countDown();
+            }
+        }
+    }
+
+    // The batch is cleared whether or not addDocuments succeeds, so it is never published twice
+    private void publish(List<TokenizedDocument> batch) {
+        if (batch.isEmpty()) return;
+        try {
+            int added = index.addDocuments(batch);
+            documentsIndexed.addAndGet(added);
+            snapshotsPublished.incrementAndGet();
+            DOCUMENTS_PUBLISHED.add(added);
+            SNAPSHOTS_PUBLISHED.increment();
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private void publishQuietly(List<TokenizedDocument> batch) {
+        try {
+            publish(batch);
+        } catch (RuntimeException e) {
+            System.err.println("Pipeline index stage failed: " + e.getMessage());
+            recordFailure(e);
+        }
+    }
+
+    private void recordFailure(Throwable e) {
+        failure.compareAndSet(null, e);
+    }
+
+    // Nothing takes from the queues once the index stage is gone: stop the stages feeding them
+    // (their blocked puts are interrupted) and drop what they hold
+    private void abortUpstream() {
+        aborted = true;
+        crawlExecutor.shutdownNow();
+        tokenizePool.shutdownNow();
+        parsedPages.clear();
+        tokenizedDocuments.clear();
+    }
+
+    private <T> void putPills(BlockingQueue<T> queue, T pill, int count) {
+        try {
+            for (int i = 0; i < count && !aborted; i++) {
+                queue.put(pill);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void shutdownExecutors() {
+        crawlExecutor.shutdown();
+        tokenizePool.shutdown();
+        indexExecutor.shutdown();
+    }
+
+    private static ThreadFactory namedThreads(String stage) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-" + stage + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // --- Items passed between stages ---
+
+    private static final class ParsedPage {
+        final String url;
+        final String title;
+        final String headings;   // null if the source has none
+        final String anchorText; // null if the source has none
+        final String text;
+
+        ParsedPage(String url, String title, String headings, String anchorText, String text) {
+            this.url = url;
+            this.title = title;
+            this.headings = headings;
+            this.anchorText = anchorText;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.wikipediasearch.pipeline;
+
+import com.wikipediasearch.crawler.AnchorTextCollector;
+import com.wikipediasearch.crawler.ExtractedPage;
+import com.wikipediasearch.crawler.PageStore;
+import com.wikipediasearch.crawler.WebCrawler;
+import com.wikipediasearch.graph.LinkGraphBuilder;
+import com.wikipediasearch.graph.PageRank;
+import com.wikipediasearch.invertedIndex.Index5;
+import com.wikipediasearch.invertedIndex.TokenizedDocument;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The index stage of a staged run (crawl -> page store -> index -> index file -> serve):
+ * builds an index from a {@link PageStore} without touching the network, in two sequential
+ * passes over the store.
+ *
+ *   1. links: incoming anchor text and the link graph, gathered as WebCrawler does while crawling
+ *   2. pages: tokenize with title, headings and the anchor text of all links to the page, add in batches
+ *
+ * then ranks the link graph and installs the PageRank priors. A page stored twice (fetched again
+ * after a resumed crawl) is indexed once, from its later copy. Rerunning the stage on the same
+ * store gives the same index, so it restarts by simply running again.
+ */
+public class StoreIndexer {
+
+    private static final int BATCH_SIZE = 256;
+
+    private final Index5 index;
+    private long pagesRead;
+    private int pagesSkipped;
+    private int documentsAdded;
+
+    /**
+     * @param index The index to add the stored pages to.
+     */
+    public StoreIndexer(Index5 index) {
+        if (index == null) {
+            throw new IllegalArgumentException("Index cannot be null.");
+        }
+        this.index = index;
+    }
+
+    /**
+     * Indexes every page of a store and installs PageRank priors for them.
+     *
+     * @param storeDirectory A directory written by the crawl stage.
+     * @return The number of documents added.
+     * @throws IOException if the store is missing or cannot be read.
+     */
+    public int indexStore(Path storeDirectory) throws IOException, InterruptedException {
+        if (!PageStore.exists(storeDirectory)) {
+            throw new IOException("No page store in " + storeDirectory);
+        }
+
+        // Pass 1: anchor text and links, before any page is tokenized, so that every page gets
+        // the anchor text of links from pages stored after it too
+        AnchorTextCollector anchorTexts = WebCrawler.newAnchorTextCollector();
+        LinkGraphBuilder linkGraph = new LinkGraphBuilder();
+        pagesRead = PageStore.read(storeDirectory, page -> {
+            linkGraph.addPage(page.getUrl());
+            List<String> links = page.getLinks();
+            for (int i = 0; i < links.size(); i++) {
+                String target = WebCrawler.articleTarget(page.getUrl(), links.get(i));
+                if (target != null) {
+                    linkGraph.addLink(page.getUrl(), target);
+                    anchorTexts.add(target, page.getLinkText(i));
+                }
+            }
+        });
+        System.out.println("Page store: " + pagesRead + " pages, " + linkGraph.edgeCount() + " article links, anchor text for "
+                + anchorTexts.size() + " targets.");
+
+        // Pass 2: tokenize and add; updateDocuments lets a later copy of a page replace the earlier one
+        List<TokenizedDocument> batch = new ArrayList<>(BATCH_SIZE);
+        pagesSkipped = 0;
+        documentsAdded = 0;
+        PageStore.read(storeDirectory, page -> {
+            if (page.getText().trim().isEmpty()) {
+                System.err.println("Warning: Skipping page with empty content: " + page.getUrl());
+                pagesSkipped++;
+                return;
+            }
+            batch.add(tokenize(page, anchorTexts));
+            if (batch.size() == BATCH_SIZE) {
+                documentsAdded += index.updateDocuments(batch);
+                batch.clear();
+            }
+        });
+        documentsAdded += index.updateDocuments(batch);
+
+        PageRank pageRank = PageRank.compute(linkGraph.build());
+        System.out.println("Link analysis: " + pageRank);
+        index.setStaticPriors(pageRank.priors());
+        return documentsAdded;
+    }
+
+    private TokenizedDocument tokenize(ExtractedPage page, AnchorTextCollector anchorTexts) {
+        return index.tokenize(page.getUrl(), page.getTitle(), page.getHeadings(), anchorTexts.get(page.getUrl()), page.getText());
+    }
+
+    /**
+     * @return Pages read from the store by the last {@link #indexStore}, duplicates included.
+     */
+    public long getPagesRead() {
+        return pagesRead;
+    }
+
+    /**
+     * @return Pages of the last {@link #indexStore} skipped for having no text.
+     */
+    public int getPagesSkipped() {
+        return pagesSkipped;
+    }
+}
@@ -0,0 +1,17 @@
+package com.wikipediasearch.pipeline;
+
+/**
+ * Receives pages whose text has already been extracted (e.g. from an offline dump).
+ * Implementations may block to apply backpressure to the producer.
+ */
+@FunctionalInterface
+public interface TextPageSink {
+
+    /**
+     * @param url   Canonical URL of the page.
+     * @param title Page title (may be null).
+     * @param text  Plain text of the page.
+     * @throws InterruptedException if interrupted while waiting for space.
+     */
+    void accept(String url, String title, String text) throws InterruptedException;
+}
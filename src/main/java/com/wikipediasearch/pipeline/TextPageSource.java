@@ -0,0 +1,18 @@
+package com.wikipediasearch.pipeline;
+
+import java.io.IOException;
+
+/**
+ * A producer of already-extracted pages that can feed CrawlIndexPipeline in place of the crawler.
+ */
+@FunctionalInterface
+public interface TextPageSource {
+
+    /**
+     * Emits every page to the sink, returning when the source is exhausted.
+     *
+     * @param sink Receives each page.
+     * @return The number of pages emitted.
+     */
+    int produce(TextPageSink sink) throws IOException, InterruptedException;
+}
@@ -7,6 +7,8 @@ import java.util.Map;
  */
 public class CosineSimilarityCalculator {
 
+    private static final ScoringKernels KERNELS = ScoringKernels.preferred();
+
     /**
      * Calculates the cosine similarity between two vectors, given their dot product
      * and their pre-calculated magnitudes (Euclidean norms).
@@ -95,4 +97,33 @@ public class CosineSimilarityCalculator {
         }
         return dotProduct;
     }
-}
\ No newline at end of file
+
+    /**
+     * Calculates the magnitude (Euclidean norm) of a dense vector, e.g. a document's weights
+     * laid out over a fixed term space. Uses {@link ScoringKernels#preferred()}.
+     *
+     * @param vector The vector.
+     * @return The magnitude of the vector, or 0 if it is null or empty.
+     */
+    public static double calculateMagnitude(double[] vector) {
+        if (vector == null || vector.length == 0) {
+            return 0.0;
+        }
+        return Math.sqrt(KERNELS.sumOfSquares(vector, vector.length));
+    }
+
+    /**
+     * Calculates the dot product of two dense vectors over the same term space
+     * (a missing trailing dimension counts as 0). Uses {@link ScoringKernels#preferred()}.
+     *
+     * @param vector1 First vector.
+     * @param vector2 Second vector.
+     * @return The dot product.
+     */
+    public static double calculateDotProduct(double[] vector1, double[] vector2) {
+        if (vector1 == null || vector2 == null) {
+            return 0.0;
+        }
+        return KERNELS.dot(vector1, vector2, Math.min(vector1.length, vector2.length));
+    }
+}
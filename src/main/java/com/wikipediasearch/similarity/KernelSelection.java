@@ -0,0 +1,25 @@
+package com.wikipediasearch.similarity;
+
+// Chooses ScoringKernels.preferred() once per JVM. VectorScoringKernels is only loaded
+// reflectively: linking it without jdk.incubator.vector would throw NoClassDefFoundError.
+final class KernelSelection {
+
+    static final ScoringKernels PREFERRED = select();
+
+    private KernelSelection() {
+    }
+
+    private static ScoringKernels select() {
+        if ("scalar".equalsIgnoreCase(System.getProperty("wikipediasearch.kernels"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return ScalarScoringKernels.INSTANCE;
+        }
+        try {
+            return (ScoringKernels) Class.forName("com.wikipediasearch.similarity.VectorScoringKernels")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.err.println("Warning: Vector scoring kernels unavailable, using scalar ones: " + e);
+            return ScalarScoringKernels.INSTANCE;
+        }
+    }
+}
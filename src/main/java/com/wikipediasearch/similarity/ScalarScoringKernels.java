@@ -0,0 +1,61 @@
+package com.wikipediasearch.similarity;
+
+/**
+ * Plain-loop {@link ScoringKernels}; the fallback when the Vector API is not available.
+ */
+public final class ScalarScoringKernels implements ScoringKernels {
+
+    public static final ScalarScoringKernels INSTANCE = new ScalarScoringKernels();
+
+    private ScalarScoringKernels() {
+    }
+
+    @Override
+    public double dot(double[] a, double[] b, int length) {
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double sumOfSquares(double[] values, int length) {
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            sum += values[i] * values[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void accumulate(double[] accumulators, int[] docIds, double[] tfWeights, int length, double idf, double queryWeight) {
+        for (int i = 0; i < length; i++) {
+            accumulators[docIds[i]] += queryWeight * (tfWeights[i] * idf);
+        }
+    }
+
+    @Override
+    public void accumulateSquares(double[] accumulators, int[] docIds, double[] tfWeights, int length, double idf) {
+        for (int i = 0; i < length; i++) {
+            double weight = tfWeights[i] * idf;
+            accumulators[docIds[i]] += weight * weight;
+        }
+    }
+
+    @Override
+    public int selectAbove(double[] values, int length, double threshold, int[] selected) {
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (values[i] > threshold) {
+                selected[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
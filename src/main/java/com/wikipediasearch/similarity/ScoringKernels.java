@@ -0,0 +1,63 @@
+package com.wikipediasearch.similarity;
+
+/**
+ * Inner loops of TF-IDF scoring over primitive arrays. Index5 packs each posting list into
+ * parallel docId / tf-weight arrays, so scoring a long list becomes one call here instead of
+ * a walk over boxed map entries.
+ *
+ * Two implementations: {@link ScalarScoringKernels}, and {@link VectorScoringKernels} on the
+ * (incubating) Java Vector API, which needs {@code --add-modules jdk.incubator.vector} at
+ * compile and run time. {@link #preferred()} picks the vector kernels whenever the module is
+ * present. The accumulate kernels do the same arithmetic in the same order in both versions,
+ * so scores are bit-for-bit identical; the reductions (dot, sumOfSquares) add in a different
+ * order and may differ in the last bits.
+ */
+public interface ScoringKernels {
+
+    /**
+     * Dot product of two dense vectors.
+     * @param length Number of leading elements of a and b to use.
+     */
+    double dot(double[] a, double[] b, int length);
+
+    /**
+     * Sum of the squares of the leading elements of a dense vector (its squared Euclidean norm).
+     */
+    double sumOfSquares(double[] values, int length);
+
+    /**
+     * Adds one query term's contribution to the score accumulators of the documents in its
+     * posting list: {@code accumulators[docIds[i]] += queryWeight * (tfWeights[i] * idf)}.
+     *
+     * @param docIds    Distinct document IDs (a posting list never repeats one).
+     * @param tfWeights The (1 + log10 tf) weight of each posting.
+     * @param length    Number of postings to use.
+     */
+    void accumulate(double[] accumulators, int[] docIds, double[] tfWeights, int length, double idf, double queryWeight);
+
+    /**
+     * Adds one term's squared TF-IDF weights to the documents' norm accumulators:
+     * {@code accumulators[docIds[i]] += (tfWeights[i] * idf)^2}. Same docIds contract as accumulate.
+     */
+    void accumulateSquares(double[] accumulators, int[] docIds, double[] tfWeights, int length, double idf);
+
+    /**
+     * Collects the indexes of the values above a threshold, in increasing order, e.g. the
+     * documents a query touched in a dense accumulator.
+     *
+     * @param selected Receives the indexes; must have room for every match (length is enough).
+     * @return The number of indexes written to selected.
+     */
+    int selectAbove(double[] values, int length, double threshold, int[] selected);
+
+    /** Short name for logs and benchmark reports ("scalar" or "vector"). */
+    String name();
+
+    /**
+     * The vector kernels if jdk.incubator.vector is in the boot layer and
+     * {@code -Dwikipediasearch.kernels=scalar} is not set, otherwise the scalar ones.
+     */
+    static ScoringKernels preferred() {
+        return KernelSelection.PREFERRED;
+    }
+}
@@ -0,0 +1,118 @@
+package com.wikipediasearch.suggest;
+
+/**
+ * Accepts the strings within {@code maxEdits} edits of a target word, where an edit is an
+ * insertion, deletion, substitution or a swap of two adjacent characters ("pharoah" is one
+ * edit from "pharaoh"). Used to intersect with a term dictionary trie
+ * ({@link PrefixSuggester#fuzzyMatches}), which feeds it one character at a time and prunes
+ * every branch whose state can no longer reach an accepting one.
+ *
+ * States are rows of the edit-distance table against the target, with every entry capped at
+ * maxEdits + 1. Capping makes the set of rows (and so the automaton) finite. Stepping a row
+ * costs O(target length); maxEdits is limited to 2, beyond which fuzzy matches stop being useful
+ * and the intersection visits too much of the dictionary.
+ */
+public final class LevenshteinAutomaton {
+
+    /** Largest supported edit distance. */
+    public static final int MAX_EDITS = 2;
+
+    private final String target;
+    private final int maxEdits;
+
+    /**
+     * @param target   The (already normalized) word to match.
+     * @param maxEdits 0, 1 or 2.
+     */
+    public LevenshteinAutomaton(String target, int maxEdits) {
+        if (target == null) {
+            throw new IllegalArgumentException("Target cannot be null.");
+        }
+        if (maxEdits < 0 || maxEdits > MAX_EDITS) {
+            throw new IllegalArgumentException("maxEdits must be between 0 and " + MAX_EDITS + ": " + maxEdits);
+        }
+        this.target = target;
+        this.maxEdits = maxEdits;
+    }
+
+    /**
+     * Edit budget for a word of the given length, as search engines usually pick it: exact
+     * matches only for 1-2 characters, 1 edit up to 5 characters, 2 beyond.
+     */
+    public static int autoMaxEdits(int length) {
+        return (length <= 2) ? 0 : (length <= 5) ? 1 : 2;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public int getMaxEdits() {
+        return maxEdits;
+    }
+
+    /** Length of a state array. */
+    public int stateSize() {
+        return target.length() + 1;
+    }
+
+    /** Writes the start state (nothing read yet) into state. */
+    public void start(int[] state) {
+        for (int j = 0; j <= target.length(); j++) {
+            state[j] = Math.min(j, maxEdits + 1);
+        }
+    }
+
+    /**
+     * Reads one character.
+     *
+     * @param beforePrevious State before previousChar was read (only used for swaps; null at the first character).
+     * @param previous       Current state.
+     * @param previousChar   Last character read (ignored at the first character).
+     * @param c              Character to read.
+     * @param next           Receives the new state; must not alias the other two.
+     */
+    public void step(int[] beforePrevious, int[] previous, char previousChar, char c, int[] next) {
+        int cap = maxEdits + 1;
+        next[0] = Math.min(previous[0] + 1, cap);
+        for (int j = 1; j <= target.length(); j++) {
+            char t = target.charAt(j - 1);
+            int cost = Math.min(previous[j - 1] + ((t == c) ? 0 : 1), Math.min(previous[j], next[j - 1]) + 1);
+            if (beforePrevious != null && j > 1 && t == previousChar && target.charAt(j - 2) == c) {
+                cost = Math.min(cost, beforePrevious[j - 2] + 1); // Adjacent swap
+            }
+            next[j] = Math.min(cost, cap);
+        }
+    }
+
+    /** True if some continuation of the characters read so far could still be accepted. */
+    public boolean canMatch(int[] state) {
+        for (int value : state) {
+            if (value <= maxEdits) return true;
+        }
+        return false;
+    }
+
+    /** Edit distance between the characters read so far and the target (maxEdits + 1 = too far). */
+    public int distance(int[] state) {
+        return state[target.length()];
+    }
+
+    /** Runs the automaton over a whole word and returns its distance (maxEdits + 1 = too far). */
+    public int distance(String word) {
+        int[] beforePrevious = new int[stateSize()];
+        int[] previous = new int[stateSize()];
+        int[] next = new int[stateSize()];
+        start(previous);
+        boolean first = true;
+        for (int i = 0; i < word.length(); i++) {
+            step(first ? null : beforePrevious, previous, (i > 0) ? word.charAt(i - 1) : 0, word.charAt(i), next);
+            int[] recycled = beforePrevious;
+            beforePrevious = previous;
+            previous = next;
+            next = recycled;
+            first = false;
+        }
+        return distance(previous);
+    }
+}
@@ -0,0 +1,344 @@
+package com.wikipediasearch.suggest;
+
+import com.wikipediasearch.util.MemoryEstimates;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable prefix autocomplete over a weighted vocabulary (e.g. index terms weighted by
+ * document frequency). A path-compressed trie stored in flat arrays: every node keeps its
+ * best {@code topN} completions, precomputed at build time, so a lookup only walks the prefix
+ * (O(prefix length), binary search among a node's children) and copies out the stored list.
+ * Its cost does not depend on the vocabulary size.
+ *
+ * The terms of a subtree are a contiguous range of the sorted vocabulary, which is how the
+ * trie is built (and why a node only needs one term to check its edge label against).
+ * The same trie answers fuzzy lookups by intersecting it with a {@link LevenshteinAutomaton}.
+ * Thread-safe once built.
+ */
+public final class PrefixSuggester {
+
+    /** Default number of completions kept per node. */
+    public static final int DEFAULT_TOP_N = 10;
+
+    private final String[] terms;    // Sorted
+    private final int[] weights;     // weights[i] of terms[i]
+    private final int topN;
+
+    // Nodes; node 0 is the root. Children of a node are contiguous and ordered by label.
+    private int nodeCount;
+    private int[] firstTerm = new int[64];   // Index of a term below the node (all share its prefix)
+    private int[] depth = new int[64];       // Length of the node's prefix
+    private char[] label = new char[64];     // First character of the edge into the node
+    private int[] firstChild = new int[64];
+    private int[] childCount = new int[64];
+    private int[] topStart = new int[64];    // The node's completions are top[topStart, topStart + topLength)
+    private int[] topLength = new int[64];
+    private int[] top = new int[256];        // Term indexes, best first
+    private int topSize;
+
+    private PrefixSuggester(String[] terms, int[] weights, int topN) {
+        this.terms = terms;
+        this.weights = weights;
+        this.topN = topN;
+    }
+
+    /**
+     * @return Estimated heap bytes of the trie arrays (the term strings are shared with the dictionary).
+     */
+    public long memoryBytes() {
+        return MemoryEstimates.referenceArray(terms.length) + MemoryEstimates.intArray(weights.length)
+                + 6 * MemoryEstimates.intArray(firstTerm.length) + MemoryEstimates.align(MemoryEstimates.ARRAY_HEADER + 2L * label.length)
+                + MemoryEstimates.intArray(top.length);
+    }
+
+    /**
+     * Builds a suggester. Completions are ordered by weight, then alphabetically.
+     *
+     * @param termWeights Term -> weight; terms with a weight of 0 or less are left out.
+     * @param topN        Completions kept per node (the most a lookup can return).
+     */
+    public static PrefixSuggester build(Map<String, Integer> termWeights, int topN) {
+        if (topN <= 0) {
+            throw new IllegalArgumentException("topN must be positive: " + topN);
+        }
+        List<String> sorted = new ArrayList<>(termWeights.size());
+        for (Map.Entry<String, Integer> entry : termWeights.entrySet()) {
+            if (entry.getValue() != null && entry.getValue() > 0 && !entry.getKey().isEmpty()) sorted.add(entry.getKey());
+        }
+        Collections.sort(sorted);
+        String[] terms = sorted.toArray(new String[0]);
+        int[] weights = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            weights[i] = termWeights.get(terms[i]);
+        }
+        PrefixSuggester suggester = new PrefixSuggester(terms, weights, topN);
+        suggester.newNode(0, 0, '\0');
+        if (terms.length > 0) suggester.buildNode(0, 0, terms.length, 0);
+        return suggester;
+    }
+
+    /**
+     * @param prefix Already normalized the way the vocabulary is (e.g. lowercased).
+     * @param limit  Maximum number of completions; at most the topN given to build.
+     * @return The best completions of the prefix, best first (the empty prefix completes to
+     *         the best terms overall).
+     */
+    public List<String> complete(String prefix, int limit) {
+        int node = findNode(prefix);
+        if (node < 0 || limit <= 0) return Collections.emptyList();
+        int count = Math.min(limit, topLength[node]);
+        String[] completions = new String[count];
+        for (int i = 0; i < count; i++) {
+            completions[i] = terms[top[topStart[node] + i]];
+        }
+        return Arrays.asList(completions);
+    }
+
+    /**
+     * Vocabulary terms accepted by the automaton (within its edit distance of the target).
+     * Walks the trie depth-first, feeding each edge character to the automaton, and abandons a
+     * branch as soon as no extension of its prefix can be accepted, so only the part of the
+     * dictionary near the target is visited.
+     *
+     * @param limit Maximum number of matches.
+     * @return Matches by increasing distance, then decreasing weight, then term.
+     */
+    public List<FuzzyMatch> fuzzyMatches(LevenshteinAutomaton automaton, int limit) {
+        if (terms.length == 0 || limit <= 0) return Collections.emptyList();
+        FuzzySearch search = new FuzzySearch(automaton);
+        visitFuzzy(0, 0, search);
+
+        List<FuzzyMatch> matches = new ArrayList<>(search.count);
+        for (int i = 0; i < search.count; i++) {
+            int term = search.matchTerms[i];
+            matches.add(new FuzzyMatch(terms[term], search.matchDistances[i], weights[term]));
+        }
+        matches.sort((a, b) -> (a.distance != b.distance) ? Integer.compare(a.distance, b.distance)
+                : (a.weight != b.weight) ? Integer.compare(b.weight, a.weight) : a.term.compareTo(b.term));
+        return (matches.size() > limit) ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    // Feeds the node's edge characters (from fromDepth on) to the automaton, then its children
+    private void visitFuzzy(int node, int fromDepth, FuzzySearch search) {
+        String path = terms[firstTerm[node]]; // Every term below the node spells the same edge
+        for (int d = fromDepth; d < depth[node]; d++) {
+            if (!search.read(path, d)) return;
+        }
+        if (path.length() == depth[node]) { // The node's prefix is itself a term
+            int distance = search.automaton.distance(search.rows[depth[node]]);
+            if (distance <= search.automaton.getMaxEdits()) search.add(firstTerm[node], distance);
+        }
+        for (int i = 0; i < childCount[node]; i++) {
+            visitFuzzy(firstChild[node] + i, depth[node], search);
+        }
+    }
+
+    /** A dictionary term within the edit distance of a fuzzy lookup. */
+    public static final class FuzzyMatch {
+        private final String term;
+        private final int distance;
+        private final int weight;
+
+        FuzzyMatch(String term, int distance, int weight) {
+            this.term = term;
+            this.distance = distance;
+            this.weight = weight;
+        }
+
+        public String getTerm() {
+            return term;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+
+        /** The term's weight in the suggester (e.g. its document frequency). */
+        public int getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            return term + " (distance " + distance + ", weight " + weight + ")";
+        }
+    }
+
+    // State of one fuzzy lookup: automaton state per depth of the current trie path, and the matches
+    private static final class FuzzySearch {
+        final LevenshteinAutomaton automaton;
+        int[][] rows = new int[16][];
+        int[] matchTerms = new int[16];
+        int[] matchDistances = new int[16];
+        int count;
+
+        FuzzySearch(LevenshteinAutomaton automaton) {
+            this.automaton = automaton;
+            rows[0] = new int[automaton.stateSize()];
+            automaton.start(rows[0]);
+        }
+
+        // Computes the state after path[0..d] from the one after path[0..d-1]; false if it is dead
+        boolean read(String path, int d) {
+            if (d + 1 >= rows.length) rows = Arrays.copyOf(rows, rows.length * 2);
+            if (rows[d + 1] == null) rows[d + 1] = new int[automaton.stateSize()];
+            automaton.step((d > 0) ? rows[d - 1] : null, rows[d], (d > 0) ? path.charAt(d - 1) : 0, path.charAt(d), rows[d + 1]);
+            return automaton.canMatch(rows[d + 1]);
+        }
+
+        void add(int term, int distance) {
+            if (count == matchTerms.length) {
+                matchTerms = Arrays.copyOf(matchTerms, count * 2);
+                matchDistances = Arrays.copyOf(matchDistances, count * 2);
+            }
+            matchTerms[count] = term;
+            matchDistances[count] = distance;
+            count++;
+        }
+    }
+
+    /** Number of terms in the vocabulary. */
+    public int size() {
+        return terms.length;
+    }
+
+    /** Number of trie nodes (for sizing / diagnostics). */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    // The node whose subtree holds exactly the terms starting with prefix, or -1 if none does
+    private int findNode(String prefix) {
+        if (terms.length == 0) return -1;
+        int node = 0;
+        int matched = 0; // Characters of prefix checked so far
+        while (true) {
+            String term = terms[firstTerm[node]];
+            int end = Math.min(depth[node], prefix.length());
+            if (!term.regionMatches(matched, prefix, matched, end - matched)) return -1;
+            if (prefix.length() <= depth[node]) return node;
+            matched = depth[node];
+            node = findChild(node, prefix.charAt(matched));
+            if (node < 0) return -1;
+        }
+    }
+
+    private int findChild(int node, char c) {
+        int low = firstChild[node];
+        int high = low + childCount[node] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (label[mid] < c) low = mid + 1;
+            else if (label[mid] > c) high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    // Fills in node (already allocated) for the sorted range terms[lo, hi), whose terms share
+    // at least minDepth characters
+    private void buildNode(int node, int lo, int hi, int minDepth) {
+        firstTerm[node] = lo;
+        if (hi - lo == 1) {
+            depth[node] = terms[lo].length();
+            setTop(node, new int[]{lo}, 1);
+            return;
+        }
+        // Sorted range: the common prefix of all its terms is that of the first and last
+        int nodeDepth = Math.max(minDepth, commonPrefixLength(terms[lo], terms[hi - 1]));
+        depth[node] = nodeDepth;
+
+        int childStart = lo;
+        boolean terminal = terms[lo].length() == nodeDepth; // The prefix itself is a term (sorts first)
+        if (terminal) childStart++;
+
+        // Allocate the children contiguously first, then build them
+        int first = nodeCount;
+        int children = 0;
+        int[] ranges = new int[8];
+        for (int start = childStart; start < hi; ) {
+            char c = terms[start].charAt(nodeDepth);
+            int end = start + 1;
+            while (end < hi && terms[end].charAt(nodeDepth) == c) end++;
+            if (2 * children + 2 > ranges.length) ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            ranges[2 * children] = start;
+            ranges[2 * children + 1] = end;
+            newNode(start, nodeDepth + 1, c);
+            children++;
+            start = end;
+        }
+        firstChild[node] = first;
+        childCount[node] = children;
+        for (int i = 0; i < children; i++) {
+            buildNode(first + i, ranges[2 * i], ranges[2 * i + 1], nodeDepth + 1);
+        }
+
+        // Best completions: merge the children's lists and the terminal term
+        int[] candidates = new int[children * topN + 1];
+        int count = 0;
+        if (terminal) candidates[count++] = lo;
+        for (int i = 0; i < children; i++) {
+            int child = first + i;
+            for (int j = 0; j < topLength[child]; j++) {
+                candidates[count++] = top[topStart[child] + j];
+            }
+        }
+        setTop(node, candidates, count);
+    }
+
+    // Keeps the best topN of candidates[0, count) as the node's completions: insertion into the
+    // node's slice of top, which stays sorted (topN is small; no boxing or full sort)
+    private void setTop(int node, int[] candidates, int count) {
+        if (topSize + topN > top.length) top = Arrays.copyOf(top, Math.max(topSize + topN, top.length * 2));
+        int start = topSize;
+        int kept = 0;
+        for (int c = 0; c < count; c++) {
+            int term = candidates[c];
+            if (kept == topN && !ranksBefore(term, top[start + kept - 1])) continue;
+            int i = (kept < topN) ? kept++ : kept - 1;
+            while (i > 0 && ranksBefore(term, top[start + i - 1])) {
+                top[start + i] = top[start + i - 1];
+                i--;
+            }
+            top[start + i] = term;
+        }
+        topStart[node] = start;
+        topLength[node] = kept;
+        topSize += kept;
+    }
+
+    // Higher weight first, then alphabetical (terms are sorted, so by index)
+    private boolean ranksBefore(int a, int b) {
+        return (weights[a] != weights[b]) ? weights[a] > weights[b] : a < b;
+    }
+
+    private int newNode(int termIndex, int nodeDepth, char edgeLabel) {
+        if (nodeCount == depth.length) {
+            int grown = nodeCount * 2;
+            firstTerm = Arrays.copyOf(firstTerm, grown);
+            depth = Arrays.copyOf(depth, grown);
+            label = Arrays.copyOf(label, grown);
+            firstChild = Arrays.copyOf(firstChild, grown);
+            childCount = Arrays.copyOf(childCount, grown);
+            topStart = Arrays.copyOf(topStart, grown);
+            topLength = Arrays.copyOf(topLength, grown);
+        }
+        int node = nodeCount++;
+        firstTerm[node] = termIndex;
+        depth[node] = nodeDepth;
+        label[node] = edgeLabel;
+        return node;
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) i++;
+        return i;
+    }
+}
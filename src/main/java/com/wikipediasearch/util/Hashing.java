@@ -0,0 +1,36 @@
+package com.wikipediasearch.util;
+
+/**
+ * Fast non-cryptographic 64-bit hashing shared by the crawler's seen set and
+ * the near-duplicate detector.
+ */
+public final class Hashing {
+
+    private Hashing() {
+    }
+
+    /**
+     * 64-bit hash of a string: FNV-1a over the chars, then the murmur3 64-bit finalizer
+     * so every input bit affects every output bit.
+     */
+    public static long hash64(CharSequence value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix64(h);
+    }
+
+    /**
+     * murmur3 fmix64 finalizer.
+     */
+    public static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
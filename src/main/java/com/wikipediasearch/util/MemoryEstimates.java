@@ -0,0 +1,88 @@
+package com.wikipediasearch.util;
+
+/**
+ * Shallow heap sizes of common JDK objects on a 64-bit JVM with compressed oops (heaps up to
+ * 32 GB): 12-byte object headers, 16-byte array headers, 4-byte references, 8-byte alignment.
+ * Used for memory accounting; figures are estimates, typically within 10-20% of a heap dump.
+ */
+public final class MemoryEstimates {
+
+    public static final int OBJECT_HEADER = 12;
+    public static final int ARRAY_HEADER = 16;
+    public static final int REFERENCE = 4;
+
+    /** A boxed Integer / Long / Double (small Integers -128..127 are cached and cost nothing). */
+    public static final int BOXED = 16;
+    /** One HashMap.Node: header, hash, key, value, next. */
+    public static final int HASH_MAP_ENTRY = 32;
+    /** The HashMap object itself, without its table. */
+    public static final int HASH_MAP = 48;
+    /** The ArrayList object itself, without its element array. */
+    public static final int ARRAY_LIST = 24;
+
+    private MemoryEstimates() {
+    }
+
+    /**
+     * @return size rounded up to the 8-byte object alignment.
+     */
+    public static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * @return Bytes of a String and its backing array (Latin-1 compact strings; others take 2 bytes per char).
+     */
+    public static long string(String value) {
+        if (value == null) return 0;
+        int bytesPerChar = 1;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        return 24 + align(ARRAY_HEADER + (long) value.length() * bytesPerChar);
+    }
+
+    public static long intArray(long length) {
+        return align(ARRAY_HEADER + length * Integer.BYTES);
+    }
+
+    public static long longArray(long length) {
+        return align(ARRAY_HEADER + length * Long.BYTES);
+    }
+
+    public static long doubleArray(long length) {
+        return align(ARRAY_HEADER + length * Double.BYTES);
+    }
+
+    public static long referenceArray(long length) {
+        return align(ARRAY_HEADER + length * REFERENCE);
+    }
+
+    /**
+     * @return Bytes of a HashMap / HashSet with this many entries: object, table and nodes
+     *         (keys and values not included).
+     */
+    public static long hashMap(int size) {
+        if (size == 0) return HASH_MAP;
+        int needed = (int) Math.ceil(size / 0.75);  // The table doubles once 3/4 full
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, needed - 1)) << 1);
+        return HASH_MAP + referenceArray(capacity) + (long) size * HASH_MAP_ENTRY;
+    }
+
+    /**
+     * @return Bytes of an ArrayList holding this many references (elements not included).
+     */
+    public static long arrayList(int size) {
+        return ARRAY_LIST + referenceArray(size + (size >> 2)); // Growth leaves ~25% slack on average
+    }
+
+    /**
+     * @return Bytes of a boxed Integer, 0 if the value comes from the Integer cache.
+     */
+    public static long boxedInteger(int value) {
+        return (value >= -128 && value <= 127) ? 0 : BOXED;
+    }
+}
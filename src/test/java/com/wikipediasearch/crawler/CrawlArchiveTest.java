@@ -0,0 +1,160 @@
+package com.wikipediasearch.crawler;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the compressed crawl archive of raw fetches.
+ */
+class CrawlArchiveTest {
+
+    private static final Instant FETCH_TIME = Instant.parse("2026-10-18T09:30:00.125Z");
+
+    @TempDir
+    Path archiveDir;
+
+    private static String url(int i) {
+        return "https://en.wikipedia.org/wiki/Page_" + i;
+    }
+
+    private static byte[] body(int i, int version) {
+        return ("<html><head><title>Page " + i + "</title></head><body><p>Version " + version + " of page " + i
+                + " é中</p>" + "<p>filler text</p>".repeat(i * 50) + "</body></html>").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, List<String>> headers() {
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        headers.put("content-type", List.of("text/html; charset=UTF-8"));
+        headers.put("content-encoding", List.of("gzip"));
+        headers.put("content-length", List.of("12"));
+        headers.put("set-cookie", List.of("a=1", "b=2"));
+        return headers;
+    }
+
+    private static void append(CrawlArchive archive, int i, int version) {
+        archive.append(url(i), url(i), 200, headers(), body(i, version), FETCH_TIME.plusSeconds(i));
+    }
+
+    private List<CrawlArchive.Record> readAll() throws Exception {
+        List<CrawlArchive.Record> records = new ArrayList<>();
+        CrawlArchive.read(archiveDir, records::add);
+        return records;
+    }
+
+    @Test
+    @DisplayName("Records round-trip, only the latest copy of a page is read, and splits cover each record once")
+    void testRoundTripAndSplits() throws Exception {
+        assertFalse(CrawlArchive.exists(archiveDir));
+        try (CrawlArchive archive = new CrawlArchive(archiveDir)) {
+            for (int i = 0; i < 20; i++) append(archive, i, 1);
+            archive.append(url(20), "https://en.wikipedia.org/wiki/Redirect_target", 200,
+                    Map.of("Content-Type", List.of("text/html; charset=ISO-8859-1")),
+                    "<p>café</p>".getBytes(StandardCharsets.ISO_8859_1), FETCH_TIME);
+        }
+        try (CrawlArchive archive = new CrawlArchive(archiveDir)) {
+            assertEquals(21, archive.size(), "Reopening counts the archived records");
+            append(archive, 5, 2); // Fetched again after a resumed crawl
+            archive.sync();
+        }
+
+        List<CrawlArchive.Record> records = readAll();
+        assertEquals(21, records.size());
+        CrawlArchive.Record page3 = records.get(3);
+        assertEquals(url(3), page3.getUrl());
+        assertEquals(url(3), page3.getFinalUrl());
+        assertEquals(FETCH_TIME.plusSeconds(3), page3.getFetchTime());
+        assertEquals(200, page3.getStatusCode());
+        assertTrue(page3.isHtml());
+        assertArrayEquals(body(3, 1), page3.getBody());
+        assertEquals(new String(body(3, 1), StandardCharsets.UTF_8), page3.getText());
+        assertEquals(List.of("a=1", "b=2"), page3.getHeaders().get("set-cookie"));
+        assertEquals("", page3.getHeader("Content-Encoding"), "The body is archived decoded");
+        assertEquals(String.valueOf(body(3, 1).length), page3.getHeader("Content-Length"));
+
+        CrawlArchive.Record redirected = records.get(19);
+        assertEquals(url(20), redirected.getUrl());
+        assertEquals("https://en.wikipedia.org/wiki/Redirect_target", redirected.getFinalUrl());
+        assertEquals("<p>café</p>", redirected.getText(), "Decoded in the charset of its Content-Type");
+        CrawlArchive.Record refetched = records.get(20);
+        assertEquals(url(5), refetched.getUrl());
+        assertArrayEquals(body(5, 2), refetched.getBody(), "The earlier copy of a re-crawled page is skipped");
+
+        List<CrawlArchive.Split> splits = CrawlArchive.split(archiveDir, 4);
+        assertEquals(4, splits.size());
+        Set<String> urls = new HashSet<>();
+        long bytes = 0;
+        for (CrawlArchive.Split split : splits) {
+            List<CrawlArchive.Record> splitRecords = new ArrayList<>();
+            assertEquals(split.getRecordCount(), CrawlArchive.read(split, splitRecords::add));
+            for (CrawlArchive.Record record : splitRecords) assertTrue(urls.add(record.getUrl()), record.getUrl());
+            bytes += split.sizeInBytes();
+        }
+        assertEquals(21, urls.size());
+        assertEquals(Files.size(archiveDir.resolve("crawl.warc.gz")), bytes);
+        assertEquals(1, CrawlArchive.split(archiveDir, 1).size());
+        assertEquals(22, CrawlArchive.split(archiveDir, 100).size(), "At most one split per record");
+
+        // The archive is a plain concatenation of gzip members holding WARC records
+        try (GZIPInputStream in = new GZIPInputStream(Files.newInputStream(archiveDir.resolve("crawl.warc.gz")))) {
+            String warc = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(warc.startsWith("WARC/1.0\r\nWARC-Type: response\r\n"));
+            assertEquals(22, warc.split("WARC/1.0\r\n", -1).length - 1);
+        }
+    }
+
+    @Test
+    @DisplayName("Reopening indexes records missing from the index, cuts off a torn record and rebuilds a lost index")
+    void testRecovery() throws Exception {
+        try (CrawlArchive archive = new CrawlArchive(archiveDir)) {
+            for (int i = 0; i < 3; i++) append(archive, i, 1);
+        }
+        Path archiveFile = archiveDir.resolve("crawl.warc.gz");
+        Path indexFile = archiveDir.resolve("crawl.idx");
+        long complete = Files.size(archiveFile);
+        byte[] fullIndex = Files.readAllBytes(indexFile);
+
+        // A crash after the third record but before all of its index entry, then in the middle of a fourth record
+        Files.write(indexFile, Arrays.copyOf(fullIndex, fullIndex.length - 5));
+        byte[] member = Arrays.copyOf(Files.readAllBytes(archiveFile), 40);
+        Files.write(archiveFile, member, StandardOpenOption.APPEND);
+        assertEquals(2, readAll().size(), "Readers see the indexed records only");
+
+        try (CrawlArchive archive = new CrawlArchive(archiveDir)) {
+            assertEquals(3, archive.size());
+            assertEquals(complete, archive.sizeInBytes());
+            append(archive, 3, 1);
+        }
+        assertEquals(List.of(url(0), url(1), url(2), url(3)), readAll().stream().map(CrawlArchive.Record::getUrl).toList());
+
+        Files.delete(indexFile);
+        try (CrawlArchive archive = new CrawlArchive(archiveDir)) {
+            assertEquals(4, archive.size(), "The index is rebuilt from the archive");
+        }
+        List<CrawlArchive.Record> records = readAll();
+        assertEquals(4, records.size());
+        assertEquals(FETCH_TIME.plusSeconds(3), records.get(3).getFetchTime());
+        assertArrayEquals(body(3, 1), records.get(3).getBody());
+
+        Files.write(indexFile, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> new CrawlArchive(archiveDir), "Not an archive index");
+        assertThrows(IOException.class, () -> CrawlArchive.split(archiveDir.resolve("missing"), 2));
+    }
+}
@@ -0,0 +1,117 @@
+package com.wikipediasearch.crawler;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the disk-backed crawl frontier and checkpoint round trip.
+ */
+class DiskUrlFrontierTest {
+
+    @TempDir
+    Path stateDir;
+
+    @Test
+    @DisplayName("Frontier is FIFO across buffered and flushed records")
+    void testFifoOrder() throws Exception {
+        try (DiskUrlFrontier frontier = new DiskUrlFrontier(stateDir)) {
+            for (int i = 0; i < 20_000; i++) {
+                frontier.add("https://en.wikipedia.org/wiki/Page_" + i);
+            }
+            assertEquals(20_000, frontier.size());
+            for (int i = 0; i < 20_000; i++) {
+                assertEquals("https://en.wikipedia.org/wiki/Page_" + i, frontier.poll(), "Record " + i);
+            }
+            assertTrue(frontier.isEmpty());
+            assertNull(frontier.poll(), "Empty frontier should return null");
+        }
+    }
+
+    @Test
+    @DisplayName("Checkpoint restores visited set and frontier position")
+    void testResumeFromCheckpoint() throws Exception {
+        try (DiskUrlFrontier frontier = new DiskUrlFrontier(stateDir)) {
+            frontier.add("https://en.wikipedia.org/wiki/A");
+            frontier.add("https://en.wikipedia.org/wiki/B");
+            frontier.add("https://en.wikipedia.org/wiki/C");
+            assertEquals("https://en.wikipedia.org/wiki/A", frontier.poll());
+            frontier.sync();
+            UrlSeenSet visited = new UrlSeenSet(100, 0.01, true);
+            visited.add("https://en.wikipedia.org/wiki/A");
+            CrawlCheckpoint.write(stateDir, visited, frontier);
+            // Added after the checkpoint: must be dropped on resume
+            frontier.add("https://en.wikipedia.org/wiki/D");
+        }
+
+        CrawlCheckpoint checkpoint = CrawlCheckpoint.load(stateDir);
+        assertNotNull(checkpoint);
+        assertEquals(1, checkpoint.getVisitedUrls().size());
+        assertTrue(checkpoint.getVisitedUrls().contains("https://en.wikipedia.org/wiki/A"));
+        assertFalse(checkpoint.getVisitedUrls().contains("https://en.wikipedia.org/wiki/B"));
+        try (DiskUrlFrontier resumed = new DiskUrlFrontier(stateDir, checkpoint.getFrontierHead(),
+                checkpoint.getFrontierTail(), checkpoint.getFrontierSize())) {
+            assertEquals(2, resumed.size());
+            assertEquals("https://en.wikipedia.org/wiki/B", resumed.poll());
+            assertEquals("https://en.wikipedia.org/wiki/C", resumed.poll());
+            assertNull(resumed.poll());
+        }
+    }
+
+    private static String page(String name) {
+        return "https://en.wikipedia.org/wiki/" + name;
+    }
+
+    private DiskUrlFrontier resume() throws Exception {
+        CrawlCheckpoint checkpoint = CrawlCheckpoint.load(stateDir);
+        return new DiskUrlFrontier(stateDir, checkpoint.getFrontierGeneration(), checkpoint.getFrontierHead(),
+                checkpoint.getFrontierTail(), checkpoint.getFrontierSize());
+    }
+
+    @Test
+    @DisplayName("A compaction is kept apart from the last checkpoint's file until a new checkpoint is committed")
+    void testCompactionCrashBeforeCheckpoint() throws Exception {
+        UrlSeenSet visited = new UrlSeenSet(100, 0.01, true);
+        try (DiskUrlFrontier frontier = new DiskUrlFrontier(stateDir)) {
+            for (String name : new String[]{"A", "B", "C", "D"}) frontier.add(page(name));
+            assertEquals(page("A"), frontier.poll());
+            frontier.sync();
+            CrawlCheckpoint.write(stateDir, visited, frontier);
+
+            // Compacted, then a crash before the checkpoint that would name the new file
+            assertEquals(page("B"), frontier.poll());
+            frontier.compact();
+            assertEquals(1, frontier.getGeneration());
+            assertTrue(Files.exists(stateDir.resolve("frontier.dat")), "The checkpointed file is kept");
+        }
+        try (DiskUrlFrontier resumed = resume()) {
+            assertEquals(0, resumed.getGeneration());
+            assertFalse(Files.exists(stateDir.resolve("frontier.1.dat")), "The uncommitted compaction is dropped");
+            assertEquals(3, resumed.size());
+            assertEquals(page("B"), resumed.poll());
+
+            // Compacted and checkpointed: the old file goes once the checkpoint names the new one
+            resumed.compact();
+            resumed.sync();
+            CrawlCheckpoint.write(stateDir, visited, resumed);
+            assertFalse(Files.exists(stateDir.resolve("frontier.dat")));
+        }
+        try (DiskUrlFrontier resumed = resume()) {
+            assertEquals(1, resumed.getGeneration());
+            assertEquals(page("C"), resumed.poll());
+            assertEquals(page("D"), resumed.poll());
+            assertNull(resumed.poll());
+        }
+    }
+
+    @Test
+    @DisplayName("Missing checkpoint loads as null")
+    void testNoCheckpoint() throws Exception {
+        assertNull(CrawlCheckpoint.load(stateDir));
+    }
+}
@@ -0,0 +1,104 @@
+package com.wikipediasearch.crawler;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the streaming HTML text/link extractor.
+ */
+class HtmlTextExtractorTest {
+
+    private static final String BASE = "https://en.wikipedia.org/wiki/Alan_Turing";
+
+    private final HtmlTextExtractor extractor = new HtmlTextExtractor();
+
+    @Test
+    @DisplayName("Extracts title, visible text and resolved links; drops scripts and references")
+    void testWikipediaMarkup() {
+        String html = "<!DOCTYPE html><html><head><title>Alan Turing - Wikipedia</title>"
+                + "<style>.x{color:red}</style><script>var a = '<p>not text</p>';</script></head>"
+                + "<body><h1>Alan&nbsp;Turing</h1><!-- comment -->"
+                + "<p>Turing was a <a href=\"/wiki/Mathematician\">mathematician</a> &amp; "
+                + "<a href='./Computer_scientist'>computer scientist</a>.<sup class=\"reference\"><a href=\"#cite_note-1\">[1]</a></sup></p>"
+                + "<h2>Career<span class=\"mw-editsection\">[<a href=\"/w/index.php?action=edit\">edit</a>]</span></h2>"
+                + "<ul><li>Bletchley</li><li>Manchester</li></ul>"
+                + "<div class=\"reflist\"><ol><li>A footnote</li></ol></div>"
+                + "</body></html>";
+
+        ExtractedPage page = extractor.extract(html, BASE);
+
+        assertNotNull(page);
+        assertEquals("Alan Turing - Wikipedia", page.getTitle());
+        assertEquals("Alan Turing Turing was a mathematician & computer scientist. Career Bletchley Manchester", page.getText());
+        assertEquals(List.of("https://en.wikipedia.org/wiki/Mathematician", "https://en.wikipedia.org/wiki/Computer_scientist"),
+                page.getLinks());
+        assertEquals("Alan Turing Career", page.getHeadings());
+        assertEquals("mathematician", page.getLinkText(0));
+        assertEquals("computer scientist", page.getLinkText(1));
+
+        ExtractedPage fallback = WebCrawler.extractWithJsoup(BASE, BASE, html);
+        assertEquals(page.getLinks(), fallback.getLinks(), "Jsoup drops the links in skipped markup too");
+        assertEquals("computer scientist", fallback.getLinkText(1));
+        assertEquals(page.getText(), fallback.getText());
+    }
+
+    @Test
+    @DisplayName("Gives up (null) on an unterminated script so the caller falls back to Jsoup")
+    void testFallbackOnBrokenMarkup() {
+        assertNull(extractor.extract("<html><body><p>Text</p><script>var x = 1;", BASE));
+
+        ExtractedPage page = WebCrawler.extractWithJsoup(BASE, BASE, "<html><body><p>Text</p><script>var x = 1;");
+        assertEquals("Text", page.getText(), "Jsoup fallback should still produce the body text");
+    }
+
+    @Test
+    @DisplayName("A page read from a stream a few characters at a time extracts the same as from a string")
+    void testStreamedInput() throws IOException {
+        StringBuilder html = new StringBuilder("<html><head><title>Long &amp; streamed</title></head><body>");
+        for (int i = 0; i < 3000; i++) {
+            html.append("<p id=\"p").append(i).append("\">Paragraph ").append(i).append(" &eacute;&#233; links to <a href=\"/wiki/Page_")
+                    .append(i).append("\">page ").append(i).append("</a><!-- note --></p>");
+            if (i % 500 == 0) html.append("<script>var s = '</p>';</script><sup class=\"reference\"><a href=\"#n\">[1]</a></sup>");
+        }
+        html.append("</body></html>");
+
+        ExtractedPage expected = extractor.extract(html.toString(), BASE);
+        ExtractedPage streamed = extractor.extract(new ChunkedReader(html.toString(), 7), BASE);
+
+        assertNotNull(streamed);
+        assertEquals(expected.getTitle(), streamed.getTitle());
+        assertEquals(expected.getText(), streamed.getText());
+        assertEquals(expected.getLinks(), streamed.getLinks());
+        assertEquals(3000, streamed.getLinks().size());
+        assertEquals("page 2999", streamed.getLinkText(2999));
+        assertNull(extractor.extract(new ChunkedReader("<html><body><p>Text</p><script>var x = 1;", 3), BASE));
+    }
+
+    // Hands out at most chunk characters per read, like a body arriving over the network
+    private static final class ChunkedReader extends Reader {
+        private final Reader in;
+        private final int chunk;
+
+        ChunkedReader(String text, int chunk) {
+            this.in = new StringReader(text);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return in.read(buffer, offset, Math.min(length, chunk));
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.wikipediasearch.crawler;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests PageFetcher against a local HTTP server: compression, revalidation and the size cap.
+ * The JDK test server speaks HTTP/1.1 only, so the client's HTTP/2 upgrade is not exercised.
+ */
+class PageFetcherTest {
+
+    private static final String PAGE = "<html><head><title>Pharaoh</title></head><body>"
+            + "<p>The pharaoh ruled ancient Egypt.</p>".repeat(500) + "</body></html>";
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer server;
+    private String baseUrl;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/wiki/Pharaoh", exchange -> {
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = PAGE.getBytes(StandardCharsets.UTF_8);
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                    gzip.write(body);
+                }
+                body = compressed.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    @DisplayName("Gzip body is decoded and a fetch conditional on the kept copy's validators gets 304")
+    void testCompressionAndRevalidation() throws Exception {
+        PageFetcher fetcher = new PageFetcher("test/1.0", Duration.ofSeconds(5), 1 << 20);
+
+        PageFetcher.Validators validators;
+        try (PageFetcher.FetchResult first = fetcher.fetch(baseUrl + "/wiki/Pharaoh")) {
+            assertEquals(200, first.getStatusCode());
+            validators = first.getValidators();
+            assertEquals(ETAG, validators.getEtag());
+            assertNull(validators.getLastModified());
+            assertTrue(first.isHtml());
+            assertEquals(StandardCharsets.UTF_8, first.getCharset());
+            assertEquals(PAGE, new String(first.getBody().readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertTrue(fetcher.getWireBytes() * 10 < fetcher.getDecodedBytes(),
+                "Repetitive page should compress well: " + fetcher);
+
+        try (PageFetcher.FetchResult second = fetcher.fetch(baseUrl + "/wiki/Pharaoh", validators)) {
+            assertTrue(second.isNotModified(), "Second fetch should send If-None-Match and get 304");
+            assertEquals(0, second.getBody().readAllBytes().length);
+        }
+        try (PageFetcher.FetchResult third = fetcher.fetch(baseUrl + "/wiki/Pharaoh")) {
+            assertEquals(200, third.getStatusCode(), "Without validators the fetch is unconditional");
+        }
+        assertEquals(3, fetcher.getRequests());
+        assertEquals(1, fetcher.getNotModified());
+    }
+
+    @Test
+    @DisplayName("An archived page is fetched again conditional on the validators it was archived with")
+    void testRevalidationFromArchive(@TempDir Path directory) throws Exception {
+        String url = baseUrl + "/wiki/Pharaoh";
+        try (PageFetcher fetcher = new PageFetcher("test/1.0", Duration.ofSeconds(5), 1 << 20)) {
+            try (CrawlArchive archive = new CrawlArchive(directory);
+                 PageFetcher.FetchResult first = fetcher.fetch(url)) {
+                archive.append(url, first.getFinalUrl(), first.getStatusCode(), first.getHeaders(),
+                        first.getBody().readAllBytes(), Instant.now());
+            }
+
+            try (CrawlArchive archive = new CrawlArchive(directory)) {
+                assertNull(archive.latest(baseUrl + "/wiki/Egypt"));
+                CrawlArchive.Record archived = archive.latest(url);
+                assertEquals(PAGE, archived.getText());
+                PageFetcher.Validators validators = archived.getValidators();
+                assertEquals(ETAG, validators.getEtag());
+                assertNull(validators.getLastModified());
+                try (PageFetcher.FetchResult again = fetcher.fetch(url, validators)) {
+                    assertTrue(again.isNotModified(), "Validators read back from the archive should get 304");
+                }
+            }
+            assertEquals(1, fetcher.getNotModified());
+        }
+    }
+
+    @Test
+    @DisplayName("Bodies larger than the cap are truncated")
+    void testSizeCap() throws Exception {
+        PageFetcher fetcher = new PageFetcher("test/1.0", Duration.ofSeconds(5), 1000);
+        try (PageFetcher.FetchResult result = fetcher.fetch(baseUrl + "/wiki/Pharaoh")) {
+            assertEquals(1000, result.getBody().readAllBytes().length);
+            assertTrue(result.isTruncated());
+        }
+    }
+}
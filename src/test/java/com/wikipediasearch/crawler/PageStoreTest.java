@@ -0,0 +1,93 @@
+package com.wikipediasearch.crawler;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the append-only page store written by the crawl stage.
+ */
+class PageStoreTest {
+
+    @TempDir
+    Path storeDir;
+
+    private static ExtractedPage page(int i) {
+        String url = "https://en.wikipedia.org/wiki/Page_" + i;
+        return new ExtractedPage(url, "Page " + i, "History", "Text of page " + i + " é中 ".repeat(i * 1000),
+                List.of("https://en.wikipedia.org/wiki/Page_" + (i + 1), "https://example.org/"),
+                List.of("next page", ""), "ignored incoming text");
+    }
+
+    private List<ExtractedPage> readAll() throws Exception {
+        List<ExtractedPage> pages = new ArrayList<>();
+        PageStore.read(storeDir, pages::add);
+        return pages;
+    }
+
+    @Test
+    @DisplayName("Pages come back in append order, also after reopening the store to append more")
+    void testRoundTripAndReopen() throws Exception {
+        assertFalse(PageStore.exists(storeDir));
+        try (PageStore store = new PageStore(storeDir)) {
+            for (int i = 0; i < 3; i++) store.accept(page(i));
+            assertEquals(3, store.size());
+        }
+        assertTrue(PageStore.exists(storeDir));
+        try (PageStore store = new PageStore(storeDir)) {
+            assertEquals(3, store.size(), "Reopening counts the stored pages");
+            store.accept(page(3));
+            store.sync();
+        }
+
+        List<ExtractedPage> pages = readAll();
+        assertEquals(4, pages.size());
+        for (int i = 0; i < 4; i++) {
+            ExtractedPage expected = page(i);
+            ExtractedPage actual = pages.get(i);
+            assertEquals(expected.getUrl(), actual.getUrl());
+            assertEquals(expected.getTitle(), actual.getTitle());
+            assertEquals(expected.getHeadings(), actual.getHeadings());
+            assertEquals(expected.getText(), actual.getText(), "Text past 64 KB and non-Latin characters survive");
+            assertEquals(expected.getLinks(), actual.getLinks());
+            assertEquals("next page", actual.getLinkText(0));
+            assertEquals("", actual.getLinkText(1));
+            assertEquals("", actual.getAnchorText(), "Incoming anchor text is not stored");
+        }
+    }
+
+    @Test
+    @DisplayName("A torn last record is skipped by readers and cut off when the store is reopened")
+    void testTornRecord() throws Exception {
+        try (PageStore store = new PageStore(storeDir)) {
+            store.accept(page(1));
+            store.accept(page(2));
+        }
+        Path file = storeDir.resolve("pages.dat");
+        long complete = Files.size(file);
+        // A crash in the middle of the next record: its length and checksum, half its payload
+        byte[] torn = {0, 0, 1, 0, 1, 2, 3, 4, 'h', 'a', 'l', 'f'};
+        Files.write(file, torn, StandardOpenOption.APPEND);
+
+        assertEquals(2, readAll().size());
+        try (PageStore store = new PageStore(storeDir)) {
+            assertEquals(2, store.size());
+            assertEquals(complete, store.sizeInBytes());
+            store.accept(page(3));
+        }
+        assertEquals(List.of(page(1).getUrl(), page(2).getUrl(), page(3).getUrl()),
+                readAll().stream().map(ExtractedPage::getUrl).toList());
+
+        Files.write(storeDir.resolve("pages.dat"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> new PageStore(storeDir), "Not a page store");
+    }
+}
@@ -0,0 +1,63 @@
+package com.wikipediasearch.crawler;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the Bloom + fingerprint visited-URL set.
+ */
+class UrlSeenSetTest {
+
+    @Test
+    @DisplayName("Fingerprint mode is exact for added and unseen URLs")
+    void testExactMode() {
+        UrlSeenSet seen = new UrlSeenSet(10_000, 0.01, true);
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(seen.add("https://en.wikipedia.org/wiki/Page_" + i));
+        }
+        assertFalse(seen.add("https://en.wikipedia.org/wiki/Page_42"), "Re-adding should report already seen");
+        assertEquals(10_000, seen.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(seen.contains("https://en.wikipedia.org/wiki/Page_" + i));
+            assertFalse(seen.contains("https://en.wikipedia.org/wiki/Other_" + i));
+        }
+        assertTrue(seen.getBloomRejections() > 0, "Bloom filter should short-circuit most unseen lookups");
+    }
+
+    @Test
+    @DisplayName("Bloom-only mode stays near the false-positive budget")
+    void testBloomOnlyFalsePositiveRate() {
+        UrlSeenSet seen = new UrlSeenSet(50_000, 0.01, false);
+        for (int i = 0; i < 50_000; i++) {
+            seen.add("https://en.wikipedia.org/wiki/Page_" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 50_000; i++) {
+            assertTrue(seen.contains("https://en.wikipedia.org/wiki/Page_" + i), "No false negatives allowed");
+            if (seen.contains("https://en.wikipedia.org/wiki/Other_" + i)) falsePositives++;
+        }
+        assertTrue(falsePositives < 50_000 * 0.02, "False positives: " + falsePositives);
+        assertTrue(seen.bytesPerUrl() < 2.0, "Bloom-only should use ~1.2 bytes per URL, was " + seen.bytesPerUrl());
+    }
+
+    @Test
+    @DisplayName("Serialization round trip")
+    void testWriteRead() throws Exception {
+        UrlSeenSet seen = new UrlSeenSet(100, 0.01, true);
+        seen.add("https://en.wikipedia.org/wiki/Pharaoh");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        seen.writeTo(new DataOutputStream(bytes));
+
+        UrlSeenSet restored = UrlSeenSet.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(1, restored.size());
+        assertTrue(restored.contains("https://en.wikipedia.org/wiki/Pharaoh"));
+        assertFalse(restored.contains("https://en.wikipedia.org/wiki/Egypt"));
+    }
+}
@@ -0,0 +1,123 @@
+package com.wikipediasearch.dedup;
+
+import com.wikipediasearch.invertedIndex.Index5;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for SimHash signatures and banded LSH duplicate lookup.
+ */
+class NearDuplicateDetectorTest {
+
+    private static Map<String, Integer> terms(int from, int to) {
+        Map<String, Integer> tf = new HashMap<>();
+        for (int i = from; i < to; i++) {
+            tf.put("term" + i, 1 + (i % 3));
+        }
+        return tf;
+    }
+
+    @Test
+    @DisplayName("SimHash is stable and close for nearly identical term vectors")
+    void testSimHashSimilarity() {
+        long a = SimHash.compute(terms(0, 300));
+        long b = SimHash.compute(terms(0, 298)); // 2 terms dropped
+        long c = SimHash.compute(terms(1000, 1300));
+        assertEquals(a, SimHash.compute(terms(0, 300)), "Same input should give the same signature");
+        assertTrue(SimHash.similarity(a, b) >= 0.9, "Near-identical docs should be similar: " + SimHash.similarity(a, b));
+        assertTrue(SimHash.similarity(a, c) < 0.8, "Unrelated docs should not be similar: " + SimHash.similarity(a, c));
+        assertEquals(0L, SimHash.compute(new HashMap<>()));
+    }
+
+    @Test
+    @DisplayName("Banded lookup finds signatures within the Hamming bound only")
+    void testFindDuplicate() {
+        NearDuplicateDetector detector = new NearDuplicateDetector(0.95); // k = 3 bits, 4 bands
+        assertEquals(3, detector.getMaxHammingDistance());
+        assertEquals(4, detector.getBandCount());
+
+        long signature = 0x0123456789ABCDEFL;
+        detector.add(7, signature);
+        assertEquals(7, detector.findDuplicate(signature ^ 0b1011L), "3 differing bits is a duplicate");
+        assertEquals(7, detector.findDuplicate(signature ^ (1L << 5) ^ (1L << 20) ^ (1L << 60)), "Bits spread over bands");
+        assertEquals(-1, detector.findDuplicate(signature ^ 0b1111L), "4 differing bits is not a duplicate");
+        assertThrows(IllegalArgumentException.class, () -> new NearDuplicateDetector(0.5));
+    }
+
+    @Test
+    @DisplayName("Index5 collapses near-duplicate pages")
+    void testIndexSkipsDuplicates() {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 200; i++) body.append("word").append((char) ('a' + i % 26)).append((char) ('a' + i / 26)).append(' ');
+        Map<String, String> pages = new LinkedHashMap<>();
+        pages.put("https://en.wikipedia.org/wiki/Original", body + "pharaoh");
+        pages.put("https://en.wikipedia.org/wiki/Mirror", body + "pharaohs");
+        pages.put("https://en.wikipedia.org/wiki/Other", "completely different article about rome and greece");
+
+        Index5 index = new Index5();
+        index.setNearDuplicateThreshold(0.95);
+        index.buildIndex(pages);
+
+        assertEquals(2, index.getNumberOfDocuments());
+        assertEquals(1, index.getDuplicatesSkipped());
+        assertEquals(1, index.getCollapsedDuplicateCount(0));
+    }
+
+    @Test
+    @DisplayName("Collapsed near-duplicates are indexed again when their canonical page goes away")
+    void testCollapsedDuplicatesReadmitted(@TempDir Path dir) throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 200; i++) body.append("word").append((char) ('a' + i % 26)).append((char) ('a' + i / 26)).append(' ');
+        Index5 index = new Index5();
+        index.setNearDuplicateThreshold(0.95);
+        index.addDocuments(List.of(
+                index.tokenize("https://en.wikipedia.org/wiki/Original", null, body + "pharaoh"),
+                index.tokenize("https://en.wikipedia.org/wiki/Mirror", null, body + "pharaohs"),
+                index.tokenize("https://en.wikipedia.org/wiki/Copy", null, body + "pharaoh king"),
+                index.tokenize("https://en.wikipedia.org/wiki/Other", null, "completely different article about the nile")));
+        assertEquals(List.of("https://en.wikipedia.org/wiki/Original"), matchingUrls(index, "pharaoh"));
+        assertEquals(2, index.getDuplicatesSkipped());
+
+        // Saved and loaded with the index
+        index.save(dir.resolve("index.bin"));
+        Index5 loaded = Index5.load(dir.resolve("index.bin"));
+        loaded.setNearDuplicateThreshold(0.95);
+        assertEquals(2, loaded.getDuplicatesSkipped());
+
+        // Replaced by different content: the near-duplicates are indexed, one collapsed into the other
+        index.updateDocuments(List.of(index.tokenize("https://en.wikipedia.org/wiki/Original", null, "rome and greece empire")));
+        assertEquals(List.of("https://en.wikipedia.org/wiki/Mirror"), matchingUrls(index, "pharaoh"));
+        assertEquals(1, index.getDuplicatesSkipped());
+
+        // Deleting a collapsed page forgets it; deleting its canonical page then indexes nothing in its place
+        assertTrue(index.deleteDocument("https://en.wikipedia.org/wiki/Copy"));
+        assertEquals(0, index.getDuplicatesSkipped());
+        assertTrue(index.deleteDocument("https://en.wikipedia.org/wiki/Mirror"));
+        assertEquals(List.of(), matchingUrls(index, "pharaoh"));
+
+        // Deleted from the loaded index: the first near-duplicate is indexed, the other collapses into it
+        assertTrue(loaded.deleteDocument("https://en.wikipedia.org/wiki/Original"));
+        assertEquals(List.of("https://en.wikipedia.org/wiki/Mirror"), matchingUrls(loaded, "pharaoh"));
+        assertEquals(2, loaded.getNumberOfDocuments());
+        assertEquals(1, loaded.getDuplicatesSkipped());
+    }
+
+    private static List<String> matchingUrls(Index5 index, String query) {
+        List<String> urls = new ArrayList<>();
+        for (Index5.SearchResult result : index.findQueryRanked(query, 10)) {
+            urls.add(index.getSourceRecord(result.getDocId()).getUrl());
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,182 @@
+package com.wikipediasearch.distributed;
+
+import com.wikipediasearch.invertedIndex.Index5;
+import com.wikipediasearch.invertedIndex.ShardedIndex;
+import com.wikipediasearch.invertedIndex.TokenizedDocument;
+import com.wikipediasearch.loadtest.SyntheticCorpus;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs shard servers on local ports and checks the coordinator against a single Index5.
+ */
+class DistributedSearchTest {
+
+    private static final int SHARDS = 3;
+
+    private final List<ShardServer> servers = new ArrayList<>();
+    private final List<Socket> silentConnections = new ArrayList<>();
+    private ServerSocket silentShard;
+
+    @AfterEach
+    void stopServers() throws IOException {
+        for (ShardServer server : servers) server.close();
+        for (Socket socket : silentConnections) socket.close();
+        if (silentShard != null) silentShard.close();
+    }
+
+    // Starts one ShardServer per slice of the corpus; returns their addresses in shard order
+    private List<InetSocketAddress> startShards(Map<String, String> pages) throws IOException {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            Map<String, String> slice = new HashMap<>();
+            for (Map.Entry<String, String> page : pages.entrySet()) {
+                if (ShardedIndex.shardFor(page.getKey(), SHARDS) == shard) slice.put(page.getKey(), page.getValue());
+            }
+            Index5 index = new Index5();
+            index.buildIndex(slice);
+            ShardServer server = new ShardServer(index, 0);
+            server.start();
+            servers.add(server);
+            addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+        }
+        return addresses;
+    }
+
+    @Test
+    @DisplayName("Coordinator with synced statistics ranks exactly like one Index5")
+    void testMatchesSingleIndex() throws IOException {
+        Map<String, String> pages = SyntheticCorpus.withDefaults(3, 300).toMap();
+        Index5 single = new Index5();
+        single.buildIndex(pages);
+
+        try (SearchCoordinator coordinator = new SearchCoordinator(startShards(pages), 5_000)) {
+            TermStatistics collection = coordinator.syncStatistics();
+            assertEquals(single.getNumberOfDocuments(), collection.documentCount());
+            assertEquals(single.getIndexSize(), collection.getDocFrequencies().size());
+
+            String query = SyntheticCorpus.word(4) + " " + SyntheticCorpus.word(60) + " " + SyntheticCorpus.word(500);
+            SearchCoordinator.SearchResponse response = coordinator.search(query, 15);
+            assertFalse(response.isPartial());
+            List<Index5.SearchResult> expected = single.findQueryRanked(query);
+            assertEquals(15, response.getResults().size());
+            Map<String, Double> expectedScores = new HashMap<>();
+            for (Index5.SearchResult result : expected) expectedScores.put(result.getIdentifier(), result.getScore());
+            for (int i = 0; i < 15; i++) {
+                Index5.SearchResult actual = response.getResults().get(i);
+                assertEquals(expected.get(i).getScore(), actual.getScore(), 1e-12, "Rank " + i);
+                assertEquals(expectedScores.get(actual.getIdentifier()), actual.getScore(), 1e-12);
+                assertEquals(ShardedIndex.shardFor(actual.getIdentifier(), SHARDS), actual.getDocId() % SHARDS);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Misspelled terms get the same fuzzy variants, chosen by collection df, as in one Index5")
+    void testFuzzyExpansionMatchesSingleIndex() throws IOException {
+        Map<String, String> pages = SyntheticCorpus.withDefaults(3, 300).toMap();
+        Index5 single = new Index5();
+        single.buildIndex(pages);
+
+        try (SearchCoordinator coordinator = new SearchCoordinator(startShards(pages), 5_000)) {
+            coordinator.syncStatistics();
+            String word = SyntheticCorpus.word(45);
+            String misspelled = word.substring(0, 2) + "x" + word.substring(2);
+            for (String query : List.of(misspelled, SyntheticCorpus.word(7) + " " + misspelled)) {
+                List<Index5.SearchResult> expected = single.findQueryRanked(query);
+                SearchCoordinator.SearchResponse response = coordinator.search(query, 10);
+                assertFalse(response.isPartial());
+                assertEquals(Math.min(10, expected.size()), response.getResults().size(), query);
+                assertFalse(expected.isEmpty(), query);
+                for (int i = 0; i < response.getResults().size(); i++) {
+                    assertEquals(expected.get(i).getScore(), response.getResults().get(i).getScore(), 1e-12, query + " #" + i);
+                }
+            }
+            coordinator.setFuzzyExpansion(false);
+            assertTrue(coordinator.search(misspelled, 10).getResults().isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("Field df travels with the statistics: title and anchor text score like one Index5")
+    void testFieldScoresMatchSingleIndex() throws IOException {
+        SyntheticCorpus corpus = SyntheticCorpus.withDefaults(8, 240);
+        Index5 single = new Index5();
+        List<TokenizedDocument> documents = new ArrayList<>();
+        List<List<TokenizedDocument>> slices = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) slices.add(new ArrayList<>());
+        for (int id = 0; id < corpus.getDocumentCount(); id++) {
+            String url = corpus.documentUrl(id);
+            TokenizedDocument document = single.tokenize(url, corpus.documentTitle(id), "",
+                    SyntheticCorpus.word(id % 13 + 20), corpus.documentText(id));
+            documents.add(document);
+            slices.get(ShardedIndex.shardFor(url, SHARDS)).add(document);
+        }
+        single.addDocuments(documents);
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (List<TokenizedDocument> slice : slices) {
+            Index5 index = new Index5();
+            index.addDocuments(slice);
+            ShardServer server = new ShardServer(index, 0);
+            server.start();
+            servers.add(server);
+            addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+        }
+
+        try (SearchCoordinator coordinator = new SearchCoordinator(addresses, 5_000)) {
+            coordinator.syncStatistics();
+            for (String query : List.of(corpus.documentTitle(7), SyntheticCorpus.word(22) + " " + SyntheticCorpus.word(3))) {
+                List<Index5.SearchResult> expected = single.findQueryRanked(query);
+                List<Index5.SearchResult> actual = coordinator.search(query, 10).getResults();
+                assertFalse(actual.isEmpty(), query);
+                for (int i = 0; i < actual.size(); i++) {
+                    assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 1e-12, query + " #" + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("A shard that never answers is timed out and the results are marked partial")
+    void testSlowShardGivesPartialResults() throws IOException {
+        Map<String, String> pages = SyntheticCorpus.withDefaults(4, 150).toMap();
+        List<InetSocketAddress> addresses = startShards(pages);
+        // A fourth "shard" that accepts connections but never replies
+        silentShard = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) silentConnections.add(silentShard.accept());
+            } catch (IOException e) {
+                // Closed by the test
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), silentShard.getLocalPort()));
+
+        try (SearchCoordinator coordinator = new SearchCoordinator(addresses, 300)) {
+            long start = System.nanoTime();
+            SearchCoordinator.SearchResponse response = coordinator.search(SyntheticCorpus.word(2), 10);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            assertTrue(response.isPartial());
+            assertEquals(List.of(3), response.getFailedShards());
+            assertEquals(10, response.getResults().size(), "The live shards still answer");
+            assertTrue(millis < 3_000, "Query took " + millis + " ms despite a 300 ms shard timeout");
+        }
+    }
+}
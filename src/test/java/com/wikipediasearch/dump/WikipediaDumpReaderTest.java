@@ -0,0 +1,92 @@
+package com.wikipediasearch.dump;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for dump ingestion: page filtering and wikitext stripping.
+ */
+class WikipediaDumpReaderTest {
+
+    private static final String DUMP =
+            "<mediawiki xmlns=\"http://www.mediawiki.org/xml/export-0.10/\">\n" +
+            "  <siteinfo><sitename>Wikipedia</sitename></siteinfo>\n" +
+            "  <page><title>Pharaoh</title><ns>0</ns><id>1</id>\n" +
+            "    <revision><id>10</id><text xml:space=\"preserve\">'''Pharaoh''' is the title of [[Ancient Egypt|Egyptian]] rulers." +
+            "{{Infobox|name={{nested}}}}&lt;ref&gt;A source&lt;/ref&gt; [[File:Mask.jpg|thumb|A [[mask]]]]\n== History ==\nSee [[Menes]].</text></revision>\n" +
+            "  </page>\n" +
+            "  <page><title>Pharoah</title><ns>0</ns><id>2</id><redirect title=\"Pharaoh\" />\n" +
+            "    <revision><id>11</id><text>#REDIRECT [[Pharaoh]]</text></revision>\n" +
+            "  </page>\n" +
+            "  <page><title>Talk:Pharaoh</title><ns>1</ns><id>3</id>\n" +
+            "    <revision><id>12</id><text>Discussion</text></revision>\n" +
+            "  </page>\n" +
+            "</mediawiki>\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Reads articles from a bz2 dump and skips redirects and other namespaces")
+    void testReadBz2Dump() throws Exception {
+        Path dump = tempDir.resolve("enwiki-pages-articles.xml.bz2");
+        try (OutputStream out = new BZip2CompressorOutputStream(Files.newOutputStream(dump))) {
+            out.write(DUMP.getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<String[]> pages = new ArrayList<>();
+        WikipediaDumpReader reader = new WikipediaDumpReader(dump);
+        int emitted = reader.produce((url, title, text) -> pages.add(new String[]{url, title, text}));
+
+        assertEquals(1, emitted);
+        assertEquals(3, reader.getPagesSeen());
+        assertEquals(1, reader.getRedirectsSkipped());
+        assertEquals(1, reader.getNamespaceSkipped());
+        assertEquals("https://en.wikipedia.org/wiki/Pharaoh", pages.get(0)[0]);
+        assertEquals("Pharaoh is the title of Egyptian rulers. History See Menes.", pages.get(0)[2]);
+    }
+
+    @Test
+    @DisplayName("Wikitext stripping keeps link labels and drops templates, refs and tables")
+    void testStrip() {
+        assertEquals("Egypt and Rome", WikitextStripper.strip("[[Egypt]] and [[Roman Empire|Rome]]"));
+        assertEquals("Text", WikitextStripper.strip("{{a|{{b}}}}Text<ref name=\"x\">cite</ref><ref name=\"y\"/>"));
+        assertEquals("before after", WikitextStripper.strip("before\n{| class=\"wikitable\"\n|-\n| cell\n|}\nafter"));
+        assertEquals("site", WikitextStripper.strip("[https://example.org site]"));
+        assertEquals("", WikitextStripper.strip(null));
+    }
+
+    @Test
+    @DisplayName("A '/' inside a ref attribute does not make the ref self-closing")
+    void testStripRefWithSlashInName() {
+        assertEquals("Text more", WikitextStripper.strip("Text<ref name=\"a/b\">cite</ref> more"));
+        assertEquals("Text more", WikitextStripper.strip("Text<ref name=\"a/b\" /> more"));
+        assertEquals("Text more", WikitextStripper.strip("Text<ref group=\"n\">note</ref><ref name=\"n/1\"/> more"));
+    }
+
+    @Test
+    @DisplayName("Unbalanced templates are kept as text, and stripping them stays linear")
+    void testStripUnbalanced() {
+        assertEquals("{{a b", WikitextStripper.strip("{{a {{c}}b"));
+        assertEquals("x }} y", WikitextStripper.strip("x }} y{{z}}"));
+
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < 20000; i++) page.append("{{stray paragraph ").append(i).append(' ');
+        long start = System.nanoTime();
+        String text = WikitextStripper.strip(page.toString());
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(text.startsWith("{{stray paragraph 0"));
+        assertTrue(millis < 2000, "Took " + millis + " ms"); // Minutes when every "{{" scanned to the end
+    }
+}
@@ -0,0 +1,105 @@
+package com.wikipediasearch.graph;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the compressed link graph store and its transposition.
+ */
+class LinkGraphTest {
+
+    private static final String WIKI = "https://en.wikipedia.org/wiki/";
+
+    // Random graph with mostly nearby targets (like links between related pages) and some far ones
+    private static List<TreeSet<Integer>> randomGraph(LinkGraphBuilder builder, int nodes, long seed) {
+        Random random = new Random(seed);
+        List<TreeSet<Integer>> expected = new ArrayList<>();
+        for (int u = 0; u < nodes; u++) {
+            builder.addPage(WIKI + u);
+            expected.add(new TreeSet<>());
+        }
+        for (int u = 0; u < nodes; u++) {
+            int links = random.nextInt(12);
+            for (int l = 0; l < links; l++) {
+                int v = random.nextBoolean()
+                        ? Math.floorMod(u + random.nextInt(64) - 32, nodes)
+                        : random.nextInt(nodes);
+                builder.addLink(WIKI + u, WIKI + v);
+                if (v != u) expected.get(u).add(v);
+            }
+        }
+        return expected;
+    }
+
+    private static int[] toArray(TreeSet<Integer> set) {
+        return set.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    @DisplayName("Successor lists decode to the links added, across small segments, in under 2 bytes per link")
+    void testRoundTrip() {
+        LinkGraphBuilder builder = new LinkGraphBuilder(16, 10); // 1 KiB segments
+        List<TreeSet<Integer>> expected = randomGraph(builder, 3_000, 47);
+        LinkGraph graph = builder.build();
+
+        long edges = expected.stream().mapToLong(TreeSet::size).sum();
+        assertEquals(edges, graph.edgeCount());
+        int[] buffer = new int[graph.maxOutDegree()];
+        for (int u = 0; u < expected.size(); u++) {
+            int node = graph.node(WIKI + u);
+            assertEquals(u, node, "Ids are dense, in order of first sight");
+            assertArrayEquals(toArray(expected.get(u)), graph.successors(node));
+            assertEquals(expected.get(u).size(), graph.successors(node, buffer));
+        }
+        long rowBytes = graph.adjacencyBytes() - (long) graph.nodeCount() * Long.BYTES; // Less the row offsets
+        assertTrue(rowBytes < 2 * edges, "Bytes per link: " + (double) rowBytes / edges);
+        assertThrows(IllegalArgumentException.class, () -> graph.successors(-1));
+    }
+
+    @Test
+    @DisplayName("Links of a page added in two runs are merged into one sorted row")
+    void testRevisitedSource() {
+        LinkGraphBuilder builder = new LinkGraphBuilder();
+        builder.addLink(WIKI + "A", WIKI + "C");
+        builder.addLink(WIKI + "B", WIKI + "A");
+        builder.addLink(WIKI + "A", WIKI + "B");
+        builder.addLink(WIKI + "A", WIKI + "C");
+        LinkGraph graph = builder.build();
+        assertArrayEquals(new int[]{graph.node(WIKI + "C"), graph.node(WIKI + "B")}, graph.successors(graph.node(WIKI + "A")));
+        assertEquals(3, graph.edgeCount());
+        assertEquals(4, builder.edgeCount(), "Duplicates included");
+    }
+
+    @Test
+    @DisplayName("Transposing gives the in-links, the same with one pass or many, and twice gives the graph back")
+    void testTranspose() {
+        LinkGraphBuilder builder = new LinkGraphBuilder(16, 12);
+        List<TreeSet<Integer>> expected = randomGraph(builder, 2_000, 470);
+        LinkGraph graph = builder.build();
+        List<TreeSet<Integer>> inLinks = new ArrayList<>();
+        for (int v = 0; v < expected.size(); v++) inLinks.add(new TreeSet<>());
+        for (int u = 0; u < expected.size(); u++) {
+            for (int v : expected.get(u)) inLinks.get(v).add(u);
+        }
+
+        LinkGraph transposed = graph.transpose();
+        LinkGraph batched = graph.transpose(100); // Many passes of at most 100 in-links
+        assertEquals(graph.edgeCount(), transposed.edgeCount());
+        for (int v = 0; v < expected.size(); v++) {
+            assertArrayEquals(toArray(inLinks.get(v)), transposed.successors(v));
+            assertArrayEquals(toArray(inLinks.get(v)), batched.successors(v));
+        }
+        LinkGraph back = batched.transpose(7);
+        for (int u = 0; u < expected.size(); u++) {
+            assertArrayEquals(graph.successors(u), back.successors(u));
+        }
+        assertEquals(WIKI + 5, transposed.url(5));
+    }
+}
@@ -0,0 +1,131 @@
+package com.wikipediasearch.graph;
+
+import com.wikipediasearch.invertedIndex.Index5;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the link graph, PageRank and static priors in Index5.
+ */
+class PageRankTest {
+
+    private static final String WIKI = "https://en.wikipedia.org/wiki/";
+
+    @Test
+    @DisplayName("Builder drops duplicate links and self-links and keeps URLs of crawled pages only")
+    void testBuilder() {
+        LinkGraphBuilder builder = new LinkGraphBuilder(2);
+        builder.addPage(WIKI + "A");
+        builder.addLink(WIKI + "A", WIKI + "C");
+        builder.addLink(WIKI + "A", WIKI + "B");
+        builder.addLink(WIKI + "A", WIKI + "C");
+        builder.addLink(WIKI + "A", WIKI + "A");
+        builder.addPage(WIKI + "B");
+        builder.addLink(WIKI + "B", WIKI + "A");
+
+        LinkGraph graph = builder.build();
+        assertEquals(3, graph.nodeCount());
+        assertEquals(3, graph.edgeCount());
+        int a = graph.node(WIKI + "A");
+        int b = graph.node(WIKI + "B");
+        int c = graph.node(WIKI + "C");
+        assertArrayEquals(new int[]{c, b}, graph.successors(a), "Ascending node ids (C was seen before B)");
+        assertArrayEquals(new int[]{a}, graph.successors(b));
+        assertEquals(0, graph.outDegree(c));
+        assertEquals(WIKI + "A", graph.url(a));
+        assertNull(graph.url(c), "Linked to but never crawled");
+        assertEquals(-1, graph.node(WIKI + "D"));
+        assertThrows(IllegalArgumentException.class, () -> builder.addLink(WIKI + "A", ""));
+    }
+
+    @Test
+    @DisplayName("Ranks sum to 1, a cycle is uniform, and a page everyone links to ranks highest")
+    void testKnownGraphs() {
+        LinkGraphBuilder cycle = new LinkGraphBuilder();
+        for (int i = 0; i < 4; i++) cycle.addLink(WIKI + i, WIKI + ((i + 1) % 4));
+        PageRank cycleRank = PageRank.compute(cycle.build());
+        for (int node = 0; node < 4; node++) {
+            assertEquals(0.25, cycleRank.rank(node), 1e-9);
+        }
+
+        // Star: every leaf links to the hub, the hub links to leaf 1; leaf 5 has no links (dangling)
+        LinkGraphBuilder star = new LinkGraphBuilder();
+        for (int i = 1; i <= 4; i++) {
+            star.addPage(WIKI + "Leaf" + i);
+            star.addLink(WIKI + "Leaf" + i, WIKI + "Hub");
+        }
+        star.addLink(WIKI + "Hub", WIKI + "Leaf1");
+        star.addPage(WIKI + "Leaf5");
+        PageRank starRank = PageRank.compute(star.build());
+        double sum = 0.0;
+        for (int node = 0; node < starRank.getGraph().nodeCount(); node++) sum += starRank.rank(node);
+        assertEquals(1.0, sum, 1e-9, "Dangling rank is redistributed, not lost");
+        assertTrue(starRank.getResidual() < PageRank.DEFAULT_TOLERANCE);
+        assertTrue(starRank.rank(WIKI + "Hub") > starRank.rank(WIKI + "Leaf1"));
+        assertTrue(starRank.rank(WIKI + "Leaf1") > starRank.rank(WIKI + "Leaf2"));
+        assertEquals(starRank.rank(WIKI + "Leaf2"), starRank.rank(WIKI + "Leaf5"), 1e-12);
+
+        Map<String, Double> priors = starRank.priors();
+        assertEquals(5, priors.size(), "Only crawled pages (Hub was never crawled)");
+        assertTrue(priors.get(WIKI + "Leaf1") > priors.get(WIKI + "Leaf5"));
+        assertEquals(1.0, priors.get(WIKI + "Leaf1"), 1e-12, "The best crawled page has prior 1");
+    }
+
+    @Test
+    @DisplayName("Several threads give the same ranks as one")
+    void testParallelMatchesSequential() {
+        Random random = new Random(46);
+        LinkGraphBuilder builder = new LinkGraphBuilder();
+        int nodes = 5_000;
+        for (int u = 0; u < nodes; u++) {
+            builder.addPage(WIKI + u);
+            int links = random.nextInt(8);
+            for (int l = 0; l < links; l++) {
+                // Skewed targets, so a few pages get most in-links
+                int target = (int) (nodes * Math.pow(random.nextDouble(), 3));
+                builder.addLink(WIKI + u, WIKI + target);
+            }
+        }
+        LinkGraph graph = builder.build();
+        PageRank sequential = PageRank.compute(graph, 0.85, 1e-10, 200, 1);
+        PageRank parallel = PageRank.compute(graph, 0.85, 1e-10, 200, 4);
+        assertEquals(sequential.getIterations(), parallel.getIterations());
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            assertEquals(sequential.rank(node), parallel.rank(node), 1e-12);
+        }
+        assertThrows(IllegalArgumentException.class, () -> PageRank.compute(graph, 1.0, 1e-9, 10, 1));
+    }
+
+    @Test
+    @DisplayName("Static priors lift the better linked page among equal text matches; weight 0 restores text-only scores")
+    void testPriorsInIndex() {
+        Map<String, String> pages = new LinkedHashMap<>();
+        pages.put(WIKI + "Minor_Pharaoh", "The pharaoh ruled Egypt");
+        pages.put(WIKI + "Famous_Pharaoh", "The pharaoh ruled Egypt");
+        pages.put(WIKI + "Rome", "Rome was founded on seven hills");
+        Index5 index = new Index5();
+        index.buildIndex(pages);
+        List<Index5.SearchResult> textOnly = index.findQueryRanked("pharaoh");
+
+        index.setStaticPriors(Map.of(WIKI + "Famous_Pharaoh", 1.0, WIKI + "Minor_Pharaoh", 0.2));
+        List<Index5.SearchResult> results = index.findQueryRanked("pharaoh");
+        assertEquals(WIKI + "Famous_Pharaoh", results.get(0).getIdentifier());
+        assertEquals(textOnly.get(0).getScore() + Index5.DEFAULT_PRIOR_WEIGHT, results.get(0).getScore(), 1e-12);
+        assertEquals(1.0, index.getStaticPrior(results.get(0).getDocId()));
+        assertTrue(index.findQueryRanked("rome").get(0).getScore() < 1.0 + 1e-12, "A prior is only added to matching pages");
+
+        index.setStaticPriorWeight(0.0);
+        List<Index5.SearchResult> unweighted = index.findQueryRanked("pharaoh");
+        for (int i = 0; i < textOnly.size(); i++) {
+            assertEquals(textOnly.get(i).getScore(), unweighted.get(i).getScore(), 0.0);
+        }
+        assertThrows(IllegalArgumentException.class, () -> index.setStaticPriors(Map.of(WIKI + "Rome", 1.5)));
+    }
+}
@@ -0,0 +1,95 @@
+package com.wikipediasearch.invertedIndex;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for title / headings / anchor-text fields and query-time field boosts in Index5.
+ */
+class FieldScoringTest {
+
+    private static final String PHARAOH = "https://en.wikipedia.org/wiki/Pharaoh";
+    private static final String NILE = "https://en.wikipedia.org/wiki/Nile";
+    private static final String ROME = "https://en.wikipedia.org/wiki/Rome";
+
+    private static final Map<String, String> BODIES = new LinkedHashMap<>();
+    static {
+        BODIES.put(PHARAOH, "The pharaoh ruled Egypt from the palace");
+        BODIES.put(NILE, "The Nile flows past the palace where the pharaoh and later pharaohs lived");
+        BODIES.put(ROME, "Rome was founded on seven hills near a river");
+    }
+
+    private static Index5 fieldIndex() {
+        Index5 index = new Index5();
+        index.buildIndex(List.of(
+                index.tokenize(PHARAOH, "Pharaoh", "History Titles", "kings", BODIES.get(PHARAOH)),
+                index.tokenize(NILE, "Nile", "Course Delta", "river", BODIES.get(NILE)),
+                index.tokenize(ROME, "Rome", "History", "capital", BODIES.get(ROME))));
+        return index;
+    }
+
+    @Test
+    @DisplayName("A title match lifts a page; with field boosts at 0 scores equal a body-only index")
+    void testTitleBoost() {
+        Index5 index = fieldIndex();
+        List<Index5.SearchResult> results = index.findQueryRanked("pharaoh");
+        assertEquals(PHARAOH, results.get(0).getIdentifier());
+        assertTrue(results.get(0).getScore() > Field.TITLE.getDefaultBoost(), "Title cosine 1 times the title boost, plus the body");
+
+        index.setFieldBoost(Field.TITLE, 0.0);
+        index.setFieldBoost(Field.HEADINGS, 0.0);
+        index.setFieldBoost(Field.ANCHOR, 0.0);
+        Index5 bodyOnly = new Index5();
+        bodyOnly.buildIndex(BODIES);
+        for (String query : List.of("pharaoh", "palace river", "history egypt")) {
+            List<Index5.SearchResult> expected = bodyOnly.findQueryRanked(query);
+            List<Index5.SearchResult> actual = index.findQueryRanked(query);
+            assertEquals(expected.size(), actual.size(), query);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getIdentifier(), actual.get(i).getIdentifier(), query);
+                assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 1e-12, query);
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> index.setFieldBoost(Field.BODY, -1.0));
+    }
+
+    @Test
+    @DisplayName("Words only found in incoming anchor text or headings still match, without fuzzy expansion")
+    void testAnchorAndHeadingOnlyTerms() {
+        Index5 index = fieldIndex();
+        List<Index5.SearchResult> king = index.findQueryRanked("king");
+        assertEquals(1, king.size());
+        assertEquals(PHARAOH, king.get(0).getIdentifier());
+        assertEquals(Field.ANCHOR.getDefaultBoost(), king.get(0).getScore(), 1e-12, "Only the anchor field matches, with cosine 1");
+        assertNull(index.didYouMean("king"), "An anchor term is a known word");
+
+        List<Index5.SearchResult> delta = index.findQueryRanked("delta");
+        assertEquals(1, delta.size());
+        assertEquals(NILE, delta.get(0).getIdentifier());
+
+        assertTrue(index.deleteDocument(PHARAOH));
+        assertTrue(index.findQueryRanked("king").isEmpty(), "Field postings of a deleted page are tombstoned too");
+    }
+
+    @Test
+    @DisplayName("Explanations list field matches, and all contributions add up to the score")
+    void testExplanationWithFields() {
+        Index5 index = fieldIndex();
+        QueryExplanation explanation = index.explainQueryRanked("pharaoh history", 3);
+        assertFalse(explanation.getFieldTermWeights(Field.TITLE).isEmpty());
+        for (QueryExplanation.HitExplanation hit : explanation.getHits()) {
+            double sum = hit.getContributions().stream().mapToDouble(QueryExplanation.TermContribution::getContribution).sum();
+            assertEquals(hit.getResult().getScore(), sum, 1e-9);
+        }
+        QueryExplanation.HitExplanation top = explanation.getHits().get(0);
+        assertEquals(PHARAOH, top.getResult().getIdentifier());
+        assertTrue(top.getContributions().stream().anyMatch(c -> c.getTerm().equals("title:pharaoh")));
+        assertTrue(top.getContributions().stream().anyMatch(c -> c.getTerm().equals("headings:histori")));
+    }
+}
@@ -0,0 +1,72 @@
+package com.wikipediasearch.invertedIndex;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Records an index build and some queries with the shipped JFR configuration and
+ * checks the custom events come out with their fields filled in.
+ */
+class FlightRecorderEventsTest {
+
+    @Test
+    @DisplayName("Shipped .jfc enables query and index phase events")
+    void testEventsRecorded(@TempDir Path tempDir) throws Exception {
+        Configuration configuration;
+        try (Reader reader = new InputStreamReader(
+                getClass().getResourceAsStream("/jfr/wikipediasearch.jfc"), StandardCharsets.UTF_8)) {
+            configuration = Configuration.create(reader);
+        }
+        Map<String, String> settings = new HashMap<>(configuration.getSettings());
+        settings.put("com.wikipediasearch.Query#threshold", "0 ms"); // Test queries are faster than 1 ms
+
+        Path file = tempDir.resolve("test.jfr");
+        try (Recording recording = new Recording(settings)) {
+            recording.start();
+            Index5 index = new Index5();
+            Map<String, String> pages = new HashMap<>();
+            pages.put("https://en.wikipedia.org/wiki/Pharaoh", "The pharaoh ruled ancient Egypt from the palace");
+            pages.put("https://en.wikipedia.org/wiki/Nile", "The Nile river flows through ancient Egypt");
+            index.buildIndex(pages);
+            index.findQueryRanked("pharaoh palace");
+            index.findQueryBooleanAnd("nile river");
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        List<RecordedEvent> queries = events.stream()
+                .filter(e -> e.getEventType().getName().equals("com.wikipediasearch.Query"))
+                .collect(Collectors.toList());
+        assertEquals(2, queries.size());
+        RecordedEvent ranked = queries.stream().filter(e -> e.getString("type").equals("ranked")).findFirst().orElseThrow();
+        assertEquals("pharaoh palace", ranked.getString("query"));
+        assertEquals(2, ranked.getInt("terms"));
+        assertEquals(2, ranked.getLong("postingsVisited"), "Each term has a one-document posting list");
+        assertEquals(1, ranked.getInt("resultCount"));
+
+        List<String> phases = events.stream()
+                .filter(e -> e.getEventType().getName().equals("com.wikipediasearch.IndexPhase"))
+                .map(e -> e.getString("phase"))
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(List.of("magnitudes", "postings", "tokenize"), phases);
+    }
+}
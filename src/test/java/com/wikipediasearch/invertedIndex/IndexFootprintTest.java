@@ -0,0 +1,101 @@
+package com.wikipediasearch.invertedIndex;
+
+import com.wikipediasearch.loadtest.SyntheticCorpus;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for memory accounting (footprint estimates) and the memory limit of Index5.
+ */
+class IndexFootprintTest {
+
+    // Pages of the corpus under other URLs, so they do not replace the indexed ones
+    private static List<TokenizedDocument> tokenize(Index5 index, SyntheticCorpus corpus, String urlSuffix) {
+        List<TokenizedDocument> documents = new ArrayList<>();
+        for (Map.Entry<String, String> page : corpus.toMap().entrySet()) {
+            documents.add(index.tokenize(page.getKey() + urlSuffix, null, page.getValue()));
+        }
+        return documents;
+    }
+
+    @Test
+    @DisplayName("The footprint adds up its components and grows with the index")
+    void testFootprint() {
+        Index5 index = new Index5();
+        IndexFootprint empty = index.getFootprint();
+        assertEquals(0, empty.getDocumentCount());
+        assertEquals(0.0, empty.getBytesPerDocument());
+
+        index.buildIndex(SyntheticCorpus.withDefaults(48, 200).toMap());
+        index.findQueryRanked(SyntheticCorpus.word(3)); // Builds a cached posting block
+        IndexFootprint footprint = index.getFootprint();
+        assertEquals(200, footprint.getDocumentCount());
+        assertEquals(index.getIndexSize(), footprint.getTermCount());
+        assertEquals(footprint.getComponents().values().stream().mapToLong(Long::longValue).sum(), footprint.getTotalBytes());
+        assertTrue(footprint.getBytes(IndexFootprint.POSTING_BLOCKS) > 0);
+        assertTrue(footprint.getBytes(IndexFootprint.SUGGESTER) > 0, "buildIndex precomputes the suggester");
+        assertTrue(footprint.getBytesPerPosting() >= IndexFootprint.POSTING_BYTES + IndexFootprint.LINKED_NODE_BYTES);
+        assertEquals(footprint.getTotalBytes() / 200.0, footprint.getBytesPerDocument(), 1e-9);
+        assertEquals(2000, footprint.estimateDocumentCapacity((long) (footprint.getBytesPerDocument() * 2000) + 1));
+        assertTrue(footprint.toString().contains("bytes/posting"));
+
+        IndexFootprint doubled = IndexFootprint.sum(List.of(footprint, footprint));
+        assertEquals(2 * footprint.getTotalBytes(), doubled.getTotalBytes());
+        assertEquals(footprint.getBytesPerDocument(), doubled.getBytesPerDocument(), 1e-9);
+    }
+
+    @Test
+    @DisplayName("The forward index costs a reference and an int per posting, also once rebuilt after a delete")
+    void testForwardIndexIsCompact() {
+        Index5 index = new Index5();
+        SyntheticCorpus corpus = SyntheticCorpus.withDefaults(49, 300);
+        index.buildIndex(corpus.toMap());
+        IndexFootprint footprint = index.getFootprint();
+        long forwardBytes = footprint.getBytes(IndexFootprint.FORWARD_INDEX);
+        // 8 bytes per posting plus two array headers per document (term strings are the dictionary's)
+        assertTrue(forwardBytes <= 8 * footprint.getPostingCount() + 48L * 300 + 64,
+                forwardBytes + " bytes for " + footprint.getPostingCount() + " postings");
+
+        assertTrue(index.deleteDocument(corpus.documentUrl(7)));
+        assertEquals(299, index.getNumberOfDocuments());
+        assertTrue(index.getFootprint().getBytes(IndexFootprint.FORWARD_INDEX) <= forwardBytes);
+        assertEquals(1, index.addDocuments(tokenize(index, SyntheticCorpus.withDefaults(49, 1), "#again")));
+        assertEquals(300, index.getNumberOfDocuments());
+    }
+
+    @Test
+    @DisplayName("At the memory limit documents go to the overflow; purging deleted documents makes room again")
+    void testMemoryLimit() {
+        Index5 index = new Index5();
+        index.buildIndex(SyntheticCorpus.withDefaults(49, 50).toMap());
+        IndexFootprint before = index.getFootprint();
+        long limit = before.getTotalBytes() + 1;
+        List<TokenizedDocument> overflow = new ArrayList<>();
+        index.setMemoryLimit(limit, overflow::add);
+
+        List<TokenizedDocument> more = tokenize(index, SyntheticCorpus.withDefaults(50, 10), "_more");
+        assertEquals(1, index.addDocuments(more), "Under the limit before the first, over it after");
+        assertEquals(9, overflow.size());
+        assertEquals(9, index.getDocumentsRefused());
+        assertEquals(51, index.getNumberOfDocuments());
+        assertTrue(index.getFootprint().getBytes(IndexFootprint.POSTINGS) > before.getBytes(IndexFootprint.POSTINGS));
+
+        // Deleting over 20% of the documents purges them, which frees their postings
+        for (int i = 0; i < 20; i++) {
+            assertTrue(index.deleteDocument(SyntheticCorpus.withDefaults(49, 50).documentUrl(i)));
+        }
+        assertTrue(index.getFootprint().getTotalBytes() < limit);
+        assertEquals(9, index.addDocuments(overflow));
+
+        index.setMemoryLimit(0);
+        assertEquals(0, index.getMemoryLimit());
+        assertThrows(IllegalArgumentException.class, () -> index.setMemoryLimit(-1));
+    }
+}
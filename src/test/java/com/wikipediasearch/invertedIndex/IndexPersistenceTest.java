@@ -0,0 +1,179 @@
+package com.wikipediasearch.invertedIndex;
+
+import com.wikipediasearch.crawler.CrawlArchive;
+import com.wikipediasearch.crawler.ExtractedPage;
+import com.wikipediasearch.crawler.PageStore;
+import com.wikipediasearch.loadtest.SyntheticCorpus;
+import com.wikipediasearch.pipeline.ArchiveExtractor;
+import com.wikipediasearch.pipeline.StoreIndexer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for saving / loading Index5 and the staged crawl -> index -> serve run.
+ */
+class IndexPersistenceTest {
+
+    private static final String PHARAOH = "https://en.wikipedia.org/wiki/Pharaoh";
+    private static final String NILE = "https://en.wikipedia.org/wiki/Nile";
+    private static final String ROME = "https://en.wikipedia.org/wiki/Rome";
+
+    @TempDir
+    Path directory;
+
+    private static void assertSameRanking(Index5 expected, Index5 actual, String query) {
+        List<Index5.SearchResult> expectedResults = expected.findQueryRanked(query);
+        List<Index5.SearchResult> actualResults = actual.findQueryRanked(query);
+        assertEquals(expectedResults.size(), actualResults.size(), query);
+        for (int i = 0; i < expectedResults.size(); i++) {
+            assertEquals(expectedResults.get(i).getIdentifier(), actualResults.get(i).getIdentifier(), query + " #" + i);
+            assertEquals(expectedResults.get(i).getScore(), actualResults.get(i).getScore(), 1e-12, query + " #" + i);
+        }
+    }
+
+    @Test
+    @DisplayName("A loaded index ranks every query like the saved one, without its deleted documents")
+    void testSaveAndLoad() throws IOException {
+        SyntheticCorpus corpus = SyntheticCorpus.withDefaults(51, 150);
+        Index5 index = new Index5();
+        List<TokenizedDocument> documents = new ArrayList<>();
+        Map<String, Double> priors = new HashMap<>();
+        for (int i = 0; i < corpus.getDocumentCount(); i++) {
+            String url = corpus.documentUrl(i);
+            documents.add(index.tokenize(url, corpus.documentTitle(i), SyntheticCorpus.word(i % 7),
+                    SyntheticCorpus.word(i % 11 + 20), corpus.documentText(i)));
+            if (i % 3 == 0) priors.put(url, (i % 10) / 10.0);
+        }
+        index.buildIndex(documents);
+        index.setStaticPriors(priors);
+        for (int i = 0; i < 5; i++) assertTrue(index.deleteDocument(corpus.documentUrl(i * 7)));
+        assertTrue(index.getTombstoneCount() > 0);
+
+        Path file = directory.resolve("nested/index.bin");
+        index.save(file);
+        Index5 loaded = Index5.load(file);
+
+        assertEquals(index.getNumberOfDocuments(), loaded.getNumberOfDocuments());
+        assertEquals(0, loaded.getTombstoneCount());
+        for (String query : List.of(SyntheticCorpus.word(3), SyntheticCorpus.word(2) + " " + SyntheticCorpus.word(40),
+                SyntheticCorpus.word(25) + " " + SyntheticCorpus.word(300), corpus.documentTitle(10))) {
+            assertSameRanking(index, loaded, query);
+        }
+        assertEquals(index.suggest(SyntheticCorpus.word(1).substring(0, 2), 10),
+                loaded.suggest(SyntheticCorpus.word(1).substring(0, 2), 10));
+
+        // Saving the loaded index again stores the same content (in another hash order)
+        Path again = directory.resolve("again.bin");
+        loaded.save(again);
+        assertEquals(Files.size(file), Files.size(again));
+        assertSameRanking(index, Index5.load(again), SyntheticCorpus.word(2) + " " + SyntheticCorpus.word(40));
+
+        // Deletes need the forward index, which the loaded index rebuilds on demand; adds work as before
+        assertTrue(index.deleteDocument(corpus.documentUrl(100)));
+        assertTrue(loaded.deleteDocument(corpus.documentUrl(100)));
+        assertSameRanking(index, loaded, SyntheticCorpus.word(2) + " " + SyntheticCorpus.word(40));
+        long forwardBytes = index.getFootprint().getBytes(IndexFootprint.FORWARD_INDEX);
+        assertEquals(forwardBytes, loaded.getFootprint().getBytes(IndexFootprint.FORWARD_INDEX), 0.2 * forwardBytes);
+        assertEquals(1, loaded.addDocuments(List.of(loaded.tokenize(ROME, "Rome", "Rome was founded on seven hills"))));
+        assertEquals(ROME, loaded.findQueryRanked("hills").get(0).getIdentifier());
+
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> Index5.load(file));
+    }
+
+    @Test
+    @DisplayName("Staged run: pages stored by the crawl stage are indexed offline, saved and served")
+    void testStagedRun() throws Exception {
+        Path store = directory.resolve("pages");
+        try (PageStore pages = new PageStore(store)) {
+            pages.accept(new ExtractedPage(PHARAOH, "Pharaoh", "Titles", "The pharaoh ruled Egypt from the palace",
+                    List.of(NILE), List.of("great river"), ""));
+            pages.accept(new ExtractedPage(NILE, "Nile", "Course", "The Nile flows through Egypt past the palace",
+                    List.of(PHARAOH, ROME + "#History"), List.of("kings", "eternal city"), ""));
+            pages.accept(new ExtractedPage(ROME, "Rome", "", "Rome was founded near a river", List.of(), List.of(), ""));
+            // Fetched again after a resumed crawl: the later copy wins
+            pages.accept(new ExtractedPage(ROME, "Rome", "", "Rome was founded on seven hills", List.of(NILE),
+                    List.of("river"), ""));
+        }
+
+        Index5 index = new Index5();
+        StoreIndexer indexer = new StoreIndexer(index);
+        assertEquals(4, indexer.indexStore(store));
+        assertEquals(4, indexer.getPagesRead());
+        assertEquals(3, index.getNumberOfDocuments());
+        assertTrue(index.findQueryRanked("near").isEmpty(), "The earlier copy is replaced");
+        assertTrue(index.findQueryBooleanAnd("seven hills").contains(ROME));
+        // Anchor text of a link stored after its target still reaches it
+        assertEquals(ROME, index.findQueryRanked("eternal").get(0).getIdentifier());
+        assertEquals(NILE, index.findQueryRanked("great").get(0).getIdentifier());
+
+        Path file = directory.resolve("index.bin");
+        index.save(file);
+        Index5 served = Index5.load(file);
+        for (String query : List.of("pharaoh palace", "river", "eternal city", "egypt")) {
+            assertSameRanking(index, served, query);
+        }
+        assertTrue(served.getStaticPrior(0) > 0, "PageRank priors are saved with the index");
+
+        assertThrows(IOException.class, () -> indexer.indexStore(directory.resolve("missing")));
+    }
+
+    private static void archive(CrawlArchive archive, String url, String html) {
+        archive.append(url, url, 200, Map.of("Content-Type", List.of("text/html; charset=UTF-8")),
+                html.getBytes(StandardCharsets.UTF_8), Instant.now());
+    }
+
+    @Test
+    @DisplayName("Re-indexing from the archive: raw pages are extracted in parallel into a new page store")
+    void testReindexFromArchive() throws Exception {
+        Path archiveDir = directory.resolve("archive");
+        Path store = directory.resolve("pages");
+        try (CrawlArchive archive = new CrawlArchive(archiveDir)) {
+            archive(archive, PHARAOH, "<html><head><title>Pharaoh</title></head><body><h2>Titles</h2>"
+                    + "<p>The pharaoh ruled Egypt along the <a href=\"/wiki/Nile\">great river</a></p></body></html>");
+            archive(archive, NILE, "<html><head><title>Nile</title></head><body><p>The Nile flows through Egypt. "
+                    + "<a href=\"/wiki/Rome\">eternal city</a></p></body></html>");
+            archive(archive, ROME, "<html><head><title>Rome</title></head><body><p>Rome was founded near a river</p></body></html>");
+            archive.append(ROME + "_image", ROME + "_image", 200, Map.of("Content-Type", List.of("image/png")),
+                    new byte[]{1, 2, 3}, Instant.now());
+            archive(archive, ROME, "<html><head><title>Rome</title></head><body><p>Rome was founded on seven hills</p></body></html>");
+        }
+        // A store from an earlier extraction, and crawl state that must survive the rebuild
+        try (PageStore pages = new PageStore(store)) {
+            pages.accept(new ExtractedPage(PHARAOH + "_old", "Old", "", "stale page", List.of(), List.of(), ""));
+        }
+        Files.writeString(store.resolve("crawl-state"), "kept");
+
+        ArchiveExtractor extractor = new ArchiveExtractor(2);
+        assertEquals(3, extractor.extract(archiveDir, store));
+        assertEquals(4, extractor.getRecordsRead(), "The earlier copy of Rome is skipped, the image is read");
+        assertEquals("kept", Files.readString(store.resolve("crawl-state")));
+        assertFalse(Files.exists(store.resolve("extract-tmp")));
+
+        Index5 index = new Index5();
+        new StoreIndexer(index).indexStore(store);
+        assertEquals(3, index.getNumberOfDocuments());
+        assertTrue(index.findQueryRanked("stale").isEmpty(), "The old store was replaced");
+        assertTrue(index.findQueryRanked("near").isEmpty(), "Only the latest copy is extracted");
+        assertEquals(ROME, index.findQueryRanked("hills").get(0).getIdentifier());
+        assertEquals(ROME, index.findQueryRanked("eternal").get(0).getIdentifier());
+        assertEquals(NILE, index.findQueryRanked("great").get(0).getIdentifier());
+
+        assertThrows(IOException.class, () -> extractor.extract(directory.resolve("missing"), store));
+        assertTrue(PageStore.exists(store), "A failed extraction leaves the store in place");
+    }
+}
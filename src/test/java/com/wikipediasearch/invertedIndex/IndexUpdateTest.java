@@ -0,0 +1,108 @@
+package com.wikipediasearch.invertedIndex;
+
+import com.wikipediasearch.loadtest.SyntheticCorpus;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for document deletes / updates and incremental norm maintenance in Index5.
+ */
+class IndexUpdateTest {
+
+    private static final String QUERY = SyntheticCorpus.word(5) + " " + SyntheticCorpus.word(80) + " " + SyntheticCorpus.word(400);
+
+    @Test
+    @DisplayName("Deleted and replaced pages disappear from results; exact norms match a fresh index")
+    void testDeleteAndUpdate() {
+        Map<String, String> pages = new HashMap<>();
+        pages.put("https://en.wikipedia.org/wiki/Pharaoh", "The pharaoh ruled Egypt from the palace");
+        pages.put("https://en.wikipedia.org/wiki/Nile", "The Nile river flows through Egypt");
+        pages.put("https://en.wikipedia.org/wiki/Rome", "Rome was founded on seven hills near a river");
+        Index5 index = new Index5();
+        index.setNormRefreshPolicy(0.0, 0);
+        index.buildIndex(pages);
+
+        assertTrue(index.deleteDocument("https://en.wikipedia.org/wiki/Nile"));
+        assertFalse(index.deleteDocument("https://en.wikipedia.org/wiki/Nile"), "Already deleted");
+        assertEquals(2, index.getNumberOfDocuments());
+        for (Index5.SearchResult result : index.findQueryRanked("river egypt")) {
+            assertNotEquals("https://en.wikipedia.org/wiki/Nile", result.getIdentifier());
+        }
+        assertFalse(index.findQueryBooleanAnd("nile").contains("wiki/Nile"));
+
+        index.updateDocuments(List.of(index.tokenize("https://en.wikipedia.org/wiki/Rome", null, "Rome is the capital of Italy")));
+        assertEquals(2, index.getNumberOfDocuments());
+        assertTrue(index.findQueryBooleanAnd("hills").contains("No documents") || index.findQueryBooleanAnd("hills").contains("not found"));
+        assertEquals("https://en.wikipedia.org/wiki/Rome", index.findQueryRanked("italy").get(0).getIdentifier());
+
+        // With epsilon 0 every norm is kept exact: scores equal an index built from scratch
+        Map<String, String> remaining = new HashMap<>();
+        remaining.put("https://en.wikipedia.org/wiki/Pharaoh", pages.get("https://en.wikipedia.org/wiki/Pharaoh"));
+        remaining.put("https://en.wikipedia.org/wiki/Rome", "Rome is the capital of Italy");
+        Index5 fresh = new Index5();
+        fresh.buildIndex(remaining);
+        assertScoresEqual(fresh.findQueryRanked("pharaoh rome italy egypt"), index.findQueryRanked("pharaoh rome italy egypt"), 1e-12);
+    }
+
+    @Test
+    @DisplayName("A small update refreshes only a few norms, within the epsilon bound")
+    void testBoundedIncrementalRefresh() {
+        SyntheticCorpus corpus = SyntheticCorpus.withDefaults(9, 501);
+        Map<String, String> pages = corpus.toMap();
+        String extraUrl = corpus.documentUrl(500);
+        String extraText = pages.remove(extraUrl);
+
+        Index5 index = new Index5();
+        index.setNormRefreshPolicy(Index5.DEFAULT_NORM_IDF_EPSILON, 3_600_000); // Refresh only on demand here
+        index.buildIndex(pages);
+        assertEquals(0, index.getStaleNormCount());
+
+        index.addDocuments(List.of(index.tokenize(extraUrl, null, extraText)));
+        int stale = index.getStaleNormCount();
+        // Only documents sharing a term whose idf moved > epsilon (mostly rare terms) are marked
+        assertTrue(stale > 0 && stale < 501 / 2, stale + " of 501 norms marked stale by a one-document update");
+
+        Index5 fresh = new Index5();
+        pages.put(extraUrl, extraText);
+        fresh.buildIndex(pages);
+        assertScoresEqual(fresh.findQueryRanked(QUERY), index.findQueryRanked(QUERY), 0.02);
+
+        assertEquals(stale, index.refreshStaleNorms());
+        assertEquals(0, index.getStaleNormCount());
+        assertScoresEqual(fresh.findQueryRanked(QUERY), index.findQueryRanked(QUERY), 0.02);
+    }
+
+    @Test
+    @DisplayName("Tombstoned postings are purged once enough documents are deleted")
+    void testTombstonePurge() {
+        SyntheticCorpus corpus = SyntheticCorpus.withDefaults(2, 50);
+        Index5 index = new Index5();
+        index.buildIndex(corpus.toMap());
+
+        index.deleteDocument(corpus.documentUrl(0));
+        assertEquals(1, index.getTombstoneCount());
+        for (int docId = 1; docId < 9; docId++) {
+            index.deleteDocument(corpus.documentUrl(docId));
+        }
+        assertEquals(0, index.getTombstoneCount(), "9 deletes among 41 live documents exceed the purge ratio");
+        assertEquals(41, index.getNumberOfDocuments());
+        for (Index5.SearchResult result : index.findQueryRanked(QUERY)) {
+            assertTrue(result.getDocId() >= 9);
+        }
+    }
+
+    // Same scores rank by rank (ties may be ordered differently)
+    private static void assertScoresEqual(List<Index5.SearchResult> expected, List<Index5.SearchResult> actual, double tolerance) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), tolerance, "Rank " + i);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.wikipediasearch.invertedIndex;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Index5's ranked-query explain mode.
+ */
+class QueryExplanationTest {
+
+    private static Index5 buildIndex() {
+        Index5 index = new Index5();
+        Map<String, String> pages = new HashMap<>();
+        pages.put("https://en.wikipedia.org/wiki/Pharaoh", "The pharaoh ruled Egypt from the palace");
+        pages.put("https://en.wikipedia.org/wiki/Nile", "The Nile river flows through Egypt");
+        pages.put("https://en.wikipedia.org/wiki/Rome", "Rome was founded on seven hills");
+        index.buildIndex(pages);
+        return index;
+    }
+
+    @Test
+    @DisplayName("Reports term statistics, postings scanned and accumulator size")
+    void testTermStatistics() {
+        Index5 index = buildIndex();
+
+        QueryExplanation explanation = index.explainQueryRanked("pharaoh egypt unknownword", 0);
+
+        assertEquals(3, explanation.getIndexDocuments());
+        assertEquals(3, explanation.getTerms().size());
+        QueryExplanation.TermStats pharaoh = explanation.getTerms().stream()
+                .filter(t -> t.getTerm().equals("pharaoh")).findFirst().orElseThrow();
+        assertEquals(1, pharaoh.getDocFrequency());
+        assertEquals(1, pharaoh.getPostingsScanned());
+        assertTrue(pharaoh.getIdf() > 0);
+        QueryExplanation.TermStats missing = explanation.getTerms().stream()
+                .filter(t -> t.getDocFrequency() == 0).findFirst().orElseThrow();
+        assertEquals(0.0, missing.getWeight());
+        assertEquals(0, missing.getPostingsScanned());
+
+        assertEquals(3, explanation.getPostingsScanned(), "pharaoh (1 posting) + egypt (2 postings)");
+        assertEquals(2, explanation.getAccumulatorSize());
+        assertEquals(2, explanation.getResultCount());
+        assertTrue(explanation.getHits().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Top hits match findQueryRanked and per-term contributions add up to the score")
+    void testScoreBreakdown() {
+        Index5 index = buildIndex();
+        List<Index5.SearchResult> results = index.findQueryRanked("pharaoh egypt");
+
+        QueryExplanation explanation = index.explainQueryRanked("pharaoh egypt", 5);
+
+        assertEquals(results.size(), explanation.getHits().size());
+        for (int i = 0; i < results.size(); i++) {
+            QueryExplanation.HitExplanation hit = explanation.getHits().get(i);
+            assertEquals(results.get(i).getDocId(), hit.getResult().getDocId());
+            double sum = hit.getContributions().stream().mapToDouble(QueryExplanation.TermContribution::getContribution).sum();
+            assertEquals(hit.getResult().getScore(), sum, 1e-9);
+        }
+        assertEquals(2, explanation.getHits().get(0).getContributions().size(), "The Pharaoh page matches both terms");
+        assertTrue(explanation.toString().contains("pharaoh"));
+    }
+}
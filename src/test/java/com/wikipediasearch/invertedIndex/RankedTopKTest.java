@@ -0,0 +1,93 @@
+package com.wikipediasearch.invertedIndex;
+
+import com.wikipediasearch.loadtest.SyntheticCorpus;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the top-k ranked query path and its reused per-thread accumulators.
+ */
+class RankedTopKTest {
+
+    private static final String QUERY = SyntheticCorpus.word(3) + " " + SyntheticCorpus.word(40) + " " + SyntheticCorpus.word(300);
+
+    @Test
+    @DisplayName("Top-k results are the first k of the full ranking")
+    void testTopKIsPrefix() {
+        Index5 index = new Index5();
+        index.buildIndex(SyntheticCorpus.withDefaults(6, 400).toMap());
+
+        List<Index5.SearchResult> all = index.findQueryRanked(QUERY);
+        assertTrue(all.size() > 10);
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).getScore() >= all.get(i).getScore(), "Sorted by score");
+        }
+        for (int k : new int[]{0, 1, 10, all.size() + 5}) {
+            List<Index5.SearchResult> top = index.findQueryRanked(QUERY, k);
+            assertEquals(Math.min(k, all.size()), top.size());
+            for (int i = 0; i < top.size(); i++) {
+                assertEquals(all.get(i).getDocId(), top.get(i).getDocId(), "k=" + k + ", rank " + i);
+                assertEquals(all.get(i).getScore(), top.get(i).getScore());
+                assertEquals(all.get(i).getIdentifier(), top.get(i).getIdentifier());
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> index.findQueryRanked(QUERY, -1));
+    }
+
+    @Test
+    @DisplayName("Documents tied with the worst of the top k are ranked by docId")
+    void testTiesAtThreshold() {
+        Map<String, String> pages = new LinkedHashMap<>();
+        String[] fillers = {"zebra", "giraffe", "walrus", "otter", "badger", "falcon", "heron", "lynx"};
+        // The query's first term matches the later half, so the heap fills before the lower docIds arrive
+        for (int i = 0; i < fillers.length; i++) {
+            pages.put("https://en.wikipedia.org/wiki/" + fillers[i], (i < fillers.length / 2 ? "pyramid " : "pharaoh ") + fillers[i]);
+        }
+        pages.put("https://en.wikipedia.org/wiki/Nile", "nile river delta");
+        Index5 index = new Index5();
+        index.buildIndex(pages);
+
+        List<Index5.SearchResult> all = index.findQueryRanked("pharaoh pyramid");
+        assertEquals(fillers.length, all.size());
+        for (int k = 1; k < fillers.length; k++) {
+            List<Index5.SearchResult> top = index.findQueryRanked("pharaoh pyramid", k);
+            assertEquals(k, top.size());
+            for (int i = 0; i < k; i++) {
+                assertEquals(all.get(0).getScore(), top.get(i).getScore(), "All matches score the same");
+                assertEquals(all.get(i).getDocId(), top.get(i).getDocId(), "k=" + k + ", rank " + i);
+            }
+        }
+        assertEquals(0, all.get(0).getDocId());
+    }
+
+    @Test
+    @DisplayName("Queries on indexes of different sizes share the thread's accumulators cleanly")
+    void testAccumulatorsReset() {
+        Index5 large = new Index5();
+        large.buildIndex(SyntheticCorpus.withDefaults(7, 500).toMap());
+        Index5 small = new Index5();
+        small.buildIndex(SyntheticCorpus.withDefaults(8, 60).toMap());
+
+        List<Index5.SearchResult> smallFirst = small.findQueryRanked(QUERY, 5);
+        List<Index5.SearchResult> largeFirst = large.findQueryRanked(QUERY, 5);
+        for (int round = 0; round < 3; round++) {
+            assertSameResults(largeFirst, large.findQueryRanked(QUERY, 5));
+            assertSameResults(smallFirst, small.findQueryRanked(QUERY, 5));
+        }
+    }
+
+    private static void assertSameResults(List<Index5.SearchResult> expected, List<Index5.SearchResult> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getDocId(), actual.get(i).getDocId());
+            assertEquals(expected.get(i).getScore(), actual.get(i).getScore());
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.wikipediasearch.invertedIndex;
+
+import com.wikipediasearch.loadtest.SyntheticCorpus;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that a ShardedIndex ranks exactly like a single Index5 over the same pages.
+ */
+class ShardedIndexTest {
+
+    private static final String[] QUERIES = {
+            SyntheticCorpus.word(3) + " " + SyntheticCorpus.word(40),
+            SyntheticCorpus.word(120) + " " + SyntheticCorpus.word(700) + " " + SyntheticCorpus.word(2),
+            SyntheticCorpus.word(900),
+    };
+
+    @Test
+    @DisplayName("Global N and df give the same top-k scores as an unsharded index")
+    void testScoresMatchUnsharded() {
+        Map<String, String> pages = SyntheticCorpus.withDefaults(11, 300).toMap();
+        Index5 single = new Index5();
+        single.buildIndex(pages);
+
+        try (ShardedIndex sharded = new ShardedIndex(3)) {
+            sharded.buildIndex(pages);
+            assertEquals(single.getNumberOfDocuments(), sharded.getNumberOfDocuments());
+            assertEquals(single.getIndexSize(), sharded.getIndexSize());
+            for (String query : QUERIES) {
+                assertSameRanking(single.findQueryRanked(query), sharded.findQueryRanked(query, 20), query);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Incremental batches refresh global statistics; global docIds resolve to their pages")
+    void testIncrementalBatches() {
+        SyntheticCorpus corpus = SyntheticCorpus.withDefaults(5, 200);
+        Index5 single = new Index5();
+        try (ShardedIndex sharded = new ShardedIndex(4)) {
+            for (int batch = 0; batch < 2; batch++) {
+                List<TokenizedDocument> documents = new ArrayList<>();
+                for (int id = batch * 100; id < (batch + 1) * 100; id++) {
+                    documents.add(sharded.tokenize(corpus.documentUrl(id), null, corpus.documentText(id)));
+                }
+                assertEquals(100, sharded.addDocuments(documents));
+                single.addDocuments(documents);
+            }
+
+            for (String query : QUERIES) {
+                List<Index5.SearchResult> results = sharded.findQueryRanked(query, 10);
+                assertSameRanking(single.findQueryRanked(query), results, query);
+                for (Index5.SearchResult result : results) {
+                    assertEquals(result.getIdentifier(), sharded.getSourceRecord(result.getDocId()).getUrl());
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Many small batches update only the touched df and drifted norms, ranking like an unsharded index")
+    void testManySmallBatches() {
+        SyntheticCorpus corpus = SyntheticCorpus.withDefaults(5, 200);
+        Index5 single = new Index5();
+        try (ShardedIndex sharded = new ShardedIndex(3)) {
+            for (int batch = 0; batch < 20; batch++) {
+                List<TokenizedDocument> documents = new ArrayList<>();
+                for (int id = batch * 10; id < (batch + 1) * 10; id++) {
+                    documents.add(sharded.tokenize(corpus.documentUrl(id), "Page " + id, null, "anchor " + (id % 7), corpus.documentText(id)));
+                }
+                sharded.addDocuments(documents);
+                single.addDocuments(documents);
+            }
+            assertEquals(single.getNumberOfDocuments(), sharded.getNumberOfDocuments());
+            assertEquals(single.getIndexSize(), sharded.getIndexSize());
+            for (String query : QUERIES) {
+                assertSameRanking(single.findQueryRanked(query), sharded.findQueryRanked(query, 20), query);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Titles, headings and anchor text score with collection-wide field df, like an unsharded index")
+    void testFieldScoresMatchUnsharded() {
+        SyntheticCorpus corpus = SyntheticCorpus.withDefaults(17, 240);
+        Index5 single = new Index5();
+        try (ShardedIndex sharded = new ShardedIndex(3)) {
+            List<TokenizedDocument> documents = new ArrayList<>();
+            for (int id = 0; id < corpus.getDocumentCount(); id++) {
+                documents.add(sharded.tokenize(corpus.documentUrl(id), corpus.documentTitle(id), SyntheticCorpus.word(id % 7),
+                        SyntheticCorpus.word(id % 13 + 20), corpus.documentText(id)));
+            }
+            sharded.addDocuments(documents);
+            single.addDocuments(documents);
+
+            List<String> queries = new ArrayList<>(List.of(QUERIES));
+            queries.add(corpus.documentTitle(10));
+            queries.add(SyntheticCorpus.word(3) + " " + SyntheticCorpus.word(25));
+            queries.add(SyntheticCorpus.word(21) + " " + corpus.documentTitle(42));
+            for (String query : queries) {
+                assertSameRanking(single.findQueryRanked(query), sharded.findQueryRanked(query, 20), query);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Misspelled terms are expanded once for all shards, to the variants an unsharded index picks")
+    void testFuzzyExpansionMatchesUnsharded() {
+        Map<String, String> pages = SyntheticCorpus.withDefaults(11, 300).toMap();
+        Index5 single = new Index5();
+        single.buildIndex(pages);
+
+        try (ShardedIndex sharded = new ShardedIndex(3)) {
+            sharded.buildIndex(pages);
+            String misspelled = misspell(SyntheticCorpus.word(40));
+            for (String query : List.of(misspelled, SyntheticCorpus.word(3) + " " + misspell(SyntheticCorpus.word(700)))) {
+                assertSameRanking(single.findQueryRanked(query), sharded.findQueryRanked(query, 20), query);
+            }
+            sharded.setFuzzyExpansion(false);
+            assertTrue(sharded.findQueryRanked(misspelled, 20).isEmpty());
+        }
+    }
+
+    // One inserted letter the synthetic vocabulary never uses
+    static String misspell(String word) {
+        return word.substring(0, 2) + "x" + word.substring(2);
+    }
+
+    // Same scores in the same order (ties may come out in a different order, so compare by URL)
+    private static void assertSameRanking(List<Index5.SearchResult> expectedAll, List<Index5.SearchResult> actual, String query) {
+        assertFalse(actual.isEmpty(), "No results for '" + query + "'");
+        List<Index5.SearchResult> expected = expectedAll.subList(0, Math.min(expectedAll.size(), actual.size()));
+        assertEquals(expected.size(), actual.size());
+        Map<String, Double> expectedScores = new HashMap<>();
+        for (Index5.SearchResult result : expectedAll) {
+            expectedScores.put(result.getIdentifier(), result.getScore());
+        }
+        for (int i = 0; i < actual.size(); i++) {
+            assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 1e-12, "Rank " + i + " of '" + query + "'");
+            assertEquals(expectedScores.get(actual.get(i).getIdentifier()), actual.get(i).getScore(), 1e-12);
+        }
+    }
+}
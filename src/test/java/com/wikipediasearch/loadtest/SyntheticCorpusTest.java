@@ -0,0 +1,71 @@
+package com.wikipediasearch.loadtest;
+
+import com.wikipediasearch.invertedIndex.Index5;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the synthetic corpus, its query workload and the latency histogram.
+ */
+class SyntheticCorpusTest {
+
+    @Test
+    @DisplayName("Same seed gives the same corpus; word frequencies are Zipf-skewed")
+    void testReproducibleAndSkewed() {
+        SyntheticCorpus corpus = SyntheticCorpus.withDefaults(7, 200);
+        SyntheticCorpus again = SyntheticCorpus.withDefaults(7, 200);
+        assertEquals(corpus.documentText(123), again.documentText(123));
+        assertEquals(corpus.toMap(), again.toMap());
+        assertNotEquals(corpus.documentText(1), SyntheticCorpus.withDefaults(8, 200).documentText(1));
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (String text : corpus.toMap().values()) {
+            for (String word : text.split("[ .]+")) {
+                counts.merge(word, 1, Integer::sum);
+            }
+        }
+        int top = counts.get(SyntheticCorpus.word(0));
+        int tenth = counts.get(SyntheticCorpus.word(9));
+        // Zipf with exponent 1: rank 1 is ~10x as frequent as rank 10
+        assertTrue(top > 6 * tenth && top < 15 * tenth, "rank-1 count " + top + " vs rank-10 count " + tenth);
+    }
+
+    @Test
+    @DisplayName("Load driver runs the workload against an index and records every query")
+    void testClosedLoopAgainstIndex() throws InterruptedException {
+        SyntheticCorpus corpus = SyntheticCorpus.withDefaults(1, 100);
+        Index5 index = new Index5();
+        index.buildIndex(corpus.toMap());
+
+        QueryWorkload workload = new QueryWorkload(corpus, 2, 50, 0.5);
+        assertEquals(workload.getQueries().toString(), new QueryWorkload(corpus, 2, 50, 0.5).getQueries().toString());
+
+        LoadDriver.Result result = new LoadDriver(index, workload).runClosedLoop(2, 0, 200, TimeUnit.MILLISECONDS);
+        assertTrue(result.getQueries() > 0);
+        LatencyHistogram latency = result.getLatency();
+        assertTrue(latency.getValueAtPercentile(50) <= latency.getValueAtPercentile(99.9));
+        assertTrue(latency.getValueAtPercentile(99.9) <= latency.getMaxNanos());
+    }
+
+    @Test
+    @DisplayName("Histogram percentiles are within the 1/64 bucket precision")
+    void testHistogramPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 100_000; v++) {
+            histogram.record(v * 1000); // 1 us .. 100 ms, uniform
+        }
+        assertEquals(100_000, histogram.getCount());
+        long p50 = histogram.getValueAtPercentile(50);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertEquals(50_000_000, p50, 50_000_000 / 64.0);
+        assertEquals(99_000_000, p99, 99_000_000 / 64.0);
+        assertEquals(100_000_000, histogram.getValueAtPercentile(100));
+    }
+}
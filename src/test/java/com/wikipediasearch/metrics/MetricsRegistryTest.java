@@ -0,0 +1,73 @@
+package com.wikipediasearch.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the metrics registry, its lock-free histogram and the JMX bean.
+ */
+class MetricsRegistryTest {
+
+    @Test
+    @DisplayName("Counters and histograms stay exact under concurrent updates")
+    void testConcurrentUpdates() throws InterruptedException {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter("test.events");
+        Histogram histogram = registry.histogram("test.latencyNanos");
+        assertSame(counter, registry.counter("test.events"), "Same name should return the same metric");
+        assertThrows(IllegalArgumentException.class, () -> registry.histogram("test.events"));
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 1; i <= 10_000; i++) {
+                    counter.increment();
+                    histogram.record(i * 100L);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40_000, counter.getCount());
+        assertEquals(40_000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 / 64.0);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 / 64.0);
+    }
+
+    @Test
+    @DisplayName("Snapshot flattens every metric and is readable over JMX")
+    void testSnapshotAndJmx() throws Exception {
+        MetricsRegistry registry = MetricsRegistry.global();
+        registry.counter("test.jmx.pages").add(3);
+        registry.histogram("test.jmx.latencyNanos").record(1500);
+        registry.gauge("test.jmx.queue", () -> 7);
+
+        Map<String, Number> snapshot = registry.snapshot();
+        assertEquals(3L, snapshot.get("test.jmx.pages"));
+        assertEquals(1L, snapshot.get("test.jmx.latencyNanos.count"));
+        assertEquals(7.0, snapshot.get("test.jmx.queue"));
+        assertTrue(registry.toJson().contains("\"test.jmx.pages\":3"));
+        assertTrue(registry.toText().contains("test.jmx.queue 7\n"));
+
+        MetricsMBean.register(registry);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(MetricsMBean.OBJECT_NAME);
+        assertEquals(3.0, server.getAttribute(name, "test.jmx.pages"));
+        assertEquals(7.0, server.getAttribute(name, "test.jmx.queue"));
+        assertTrue(((String) server.invoke(name, "dumpJson", null, null)).startsWith("{"));
+    }
+}
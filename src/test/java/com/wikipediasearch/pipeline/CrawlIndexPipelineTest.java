@@ -0,0 +1,50 @@
+package com.wikipediasearch.pipeline;
+
+import com.wikipediasearch.invertedIndex.Index5;
+import com.wikipediasearch.invertedIndex.TokenizedDocument;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests how the pipeline ends when its index stage fails.
+ */
+class CrawlIndexPipelineTest {
+
+    @Test
+    @DisplayName("A failing index stage completes the pipeline, unblocks the source and is rethrown")
+    void testIndexFailureIsRethrown() throws Exception {
+        AtomicInteger batches = new AtomicInteger();
+        Index5 index = new Index5() {
+            @Override
+            public int addDocuments(Collection<TokenizedDocument> documents) {
+                if (batches.incrementAndGet() == 2) throw new IllegalStateException("disk full");
+                return super.addDocuments(documents);
+            }
+        };
+        CrawlIndexPipeline pipeline = new CrawlIndexPipeline(null, index, 4, 2, 10, 60_000);
+        AtomicInteger produced = new AtomicInteger();
+        pipeline.start(sink -> {
+            for (int i = 0; i < 10_000; i++) { // Far more than the queues and one batch hold
+                sink.accept("https://en.wikipedia.org/wiki/Page_" + i, "Page " + i, "page number " + i + " text");
+                produced.incrementAndGet();
+            }
+            return 10_000;
+        });
+
+        IllegalStateException failure = assertThrows(IllegalStateException.class,
+                () -> pipeline.awaitCompletion(30, TimeUnit.SECONDS));
+        assertEquals("disk full", failure.getCause().getMessage());
+        assertTrue(pipeline.isFinished());
+        assertEquals(2, batches.get(), "The failed batch is not published again");
+        assertEquals(10, pipeline.getDocumentsIndexed(), "The first batch stays searchable");
+        assertEquals(10, index.getNumberOfDocuments());
+        assertTrue(produced.get() < 10_000, "The source was stopped");
+    }
+}
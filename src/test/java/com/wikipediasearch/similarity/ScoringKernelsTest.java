@@ -0,0 +1,96 @@
+package com.wikipediasearch.similarity;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the vector kernels against the scalar ones (surefire runs with jdk.incubator.vector),
+ * on lengths that leave loop tails of every size.
+ */
+class ScoringKernelsTest {
+
+    private final ScoringKernels scalar = ScalarScoringKernels.INSTANCE;
+    private final ScoringKernels vector = new VectorScoringKernels();
+
+    @Test
+    @DisplayName("Vector kernels are preferred when the module is present")
+    void testPreferred() {
+        assertEquals("vector", ScoringKernels.preferred().name());
+    }
+
+    @Test
+    @DisplayName("Reductions match the scalar kernels up to rounding")
+    void testReductions() {
+        Random random = new Random(3);
+        for (int length = 0; length <= 37; length++) {
+            double[] a = randomWeights(random, length);
+            double[] b = randomWeights(random, length);
+            assertEquals(scalar.dot(a, b, length), vector.dot(a, b, length), 1e-12, "dot, length " + length);
+            assertEquals(scalar.sumOfSquares(a, length), vector.sumOfSquares(a, length), 1e-12, "sumOfSquares, length " + length);
+        }
+        assertEquals(5.0, CosineSimilarityCalculator.calculateMagnitude(new double[]{3, 4}), 1e-12);
+        assertEquals(11.0, CosineSimilarityCalculator.calculateDotProduct(new double[]{1, 2, 7}, new double[]{3, 4}), 1e-12);
+    }
+
+    @Test
+    @DisplayName("Accumulators are bit-for-bit identical to the scalar kernels")
+    void testAccumulate() {
+        Random random = new Random(5);
+        for (int length = 0; length <= 37; length++) {
+            int[] docIds = distinctDocIds(random, length, 100);
+            double[] tfWeights = randomWeights(random, length);
+            double[] expected = randomWeights(random, 100);
+            double[] actual = expected.clone();
+            scalar.accumulate(expected, docIds, tfWeights, length, 1.7, 0.3);
+            vector.accumulate(actual, docIds, tfWeights, length, 1.7, 0.3);
+            assertArrayEquals(expected, actual, "accumulate, length " + length);
+            scalar.accumulateSquares(expected, docIds, tfWeights, length, 0.9);
+            vector.accumulateSquares(actual, docIds, tfWeights, length, 0.9);
+            assertArrayEquals(expected, actual, "accumulateSquares, length " + length);
+        }
+    }
+
+    @Test
+    @DisplayName("selectAbove returns the same increasing indexes")
+    void testSelectAbove() {
+        Random random = new Random(7);
+        for (int length = 0; length <= 70; length++) {
+            double[] values = new double[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = random.nextInt(4) == 0 ? random.nextDouble() : 0.0; // Mostly untouched
+            }
+            int[] expected = new int[length];
+            int[] actual = new int[length];
+            int expectedCount = scalar.selectAbove(values, length, 0.0, expected);
+            int actualCount = vector.selectAbove(values, length, 0.0, actual);
+            assertEquals(expectedCount, actualCount);
+            assertArrayEquals(Arrays.copyOf(expected, expectedCount), Arrays.copyOf(actual, actualCount));
+        }
+    }
+
+    private static double[] randomWeights(Random random, int length) {
+        double[] weights = new double[length];
+        for (int i = 0; i < length; i++) {
+            weights[i] = 1 + random.nextDouble() * 3;
+        }
+        return weights;
+    }
+
+    // Distinct IDs in random order: a posting list never repeats a document
+    private static int[] distinctDocIds(Random random, int length, int bound) {
+        int[] all = new int[bound];
+        for (int i = 0; i < bound; i++) all[i] = i;
+        for (int i = bound - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = all[i];
+            all[i] = all[j];
+            all[j] = swap;
+        }
+        return Arrays.copyOf(all, length);
+    }
+}
@@ -0,0 +1,114 @@
+package com.wikipediasearch.suggest;
+
+import com.wikipediasearch.invertedIndex.Index5;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for LevenshteinAutomaton, PrefixSuggester.fuzzyMatches and fuzzy queries in Index5.
+ */
+class FuzzyMatchTest {
+
+    @Test
+    @DisplayName("Automaton distance equals the edit distance with adjacent swaps, capped at maxEdits + 1")
+    void testAutomatonDistance() {
+        assertEquals(1, new LevenshteinAutomaton("pharaoh", 2).distance("pharoah"));
+        assertEquals(0, new LevenshteinAutomaton("egypt", 1).distance("egypt"));
+        assertEquals(2, new LevenshteinAutomaton("egypt", 1).distance("cairo"), "Capped");
+        assertThrows(IllegalArgumentException.class, () -> new LevenshteinAutomaton("egypt", 3));
+
+        Random random = new Random(12);
+        for (int i = 0; i < 2000; i++) {
+            String a = randomWord(random, 7);
+            String b = randomWord(random, 7);
+            for (int maxEdits = 0; maxEdits <= LevenshteinAutomaton.MAX_EDITS; maxEdits++) {
+                assertEquals(Math.min(maxEdits + 1, editDistance(a, b)), new LevenshteinAutomaton(a, maxEdits).distance(b),
+                        a + " / " + b + ", maxEdits " + maxEdits);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Trie intersection finds exactly the terms a full scan finds")
+    void testFuzzyMatchesBruteForce() {
+        Random random = new Random(13);
+        Map<String, Integer> weights = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            weights.put(randomWord(random, 8), 1 + random.nextInt(30));
+        }
+        PrefixSuggester suggester = PrefixSuggester.build(weights, 5);
+        for (int i = 0; i < 200; i++) {
+            String target = randomWord(random, 8);
+            int maxEdits = 1 + i % 2;
+            List<String> expected = new ArrayList<>();
+            for (String term : weights.keySet()) {
+                if (editDistance(target, term) <= maxEdits) expected.add(term);
+            }
+            List<String> actual = new ArrayList<>();
+            int previousDistance = 0;
+            for (PrefixSuggester.FuzzyMatch match : suggester.fuzzyMatches(new LevenshteinAutomaton(target, maxEdits), Integer.MAX_VALUE)) {
+                assertEquals(editDistance(target, match.getTerm()), match.getDistance());
+                assertTrue(match.getDistance() >= previousDistance, "Closest first");
+                previousDistance = match.getDistance();
+                actual.add(match.getTerm());
+            }
+            expected.sort(null);
+            actual.sort(null);
+            assertEquals(expected, actual, "Target " + target + ", maxEdits " + maxEdits);
+        }
+    }
+
+    @Test
+    @DisplayName("A misspelled query finds the intended page and gets a correction")
+    void testMisspelledQuery() {
+        Map<String, String> pages = new HashMap<>();
+        pages.put("https://en.wikipedia.org/wiki/Pharaoh", "The pharaoh ruled Egypt from the palace");
+        pages.put("https://en.wikipedia.org/wiki/Nile", "The Nile river flows through Egypt");
+        pages.put("https://en.wikipedia.org/wiki/Rome", "Rome was founded on seven hills near a river");
+        Index5 index = new Index5();
+        index.buildIndex(pages);
+
+        List<Index5.SearchResult> results = index.findQueryRanked("pharoah");
+        assertEquals(1, results.size());
+        assertEquals("https://en.wikipedia.org/wiki/Pharaoh", results.get(0).getIdentifier());
+        assertEquals("pharaoh river", index.didYouMean("Pharoah rivr"));
+        assertNull(index.didYouMean("pharaoh river"), "Nothing to correct");
+        assertNull(index.didYouMean("xylophone"), "Nothing close");
+
+        index.setFuzzyExpansion(false);
+        assertTrue(index.findQueryRanked("pharoah").isEmpty());
+    }
+
+    private static String randomWord(Random random, int maxLength) {
+        StringBuilder word = new StringBuilder();
+        int length = 1 + random.nextInt(maxLength);
+        for (int i = 0; i < length; i++) word.append((char) ('a' + random.nextInt(4)));
+        return word.toString();
+    }
+
+    // Reference: optimal string alignment distance (Levenshtein plus adjacent swaps)
+    private static int editDistance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) d[i][0] = i;
+        for (int j = 0; j <= b.length(); j++) d[0][j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = (a.charAt(i - 1) == b.charAt(j - 1)) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+}
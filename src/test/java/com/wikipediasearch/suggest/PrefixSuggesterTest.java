@@ -0,0 +1,109 @@
+package com.wikipediasearch.suggest;
+
+import com.wikipediasearch.invertedIndex.Index5;
+import com.wikipediasearch.invertedIndex.IndexFootprint;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for PrefixSuggester and Index5.suggest.
+ */
+class PrefixSuggesterTest {
+
+    @Test
+    @DisplayName("Completions match a brute-force scan of the vocabulary")
+    void testMatchesBruteForce() {
+        Random random = new Random(4);
+        Map<String, Integer> weights = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder term = new StringBuilder();
+            int length = 1 + random.nextInt(8);
+            for (int j = 0; j < length; j++) term.append((char) ('a' + random.nextInt(5))); // Many shared prefixes
+            weights.put(term.toString(), random.nextInt(50)); // Includes weight 0 (left out)
+        }
+        PrefixSuggester suggester = PrefixSuggester.build(weights, 7);
+
+        List<String> prefixes = new ArrayList<>(List.of("", "z", "abcdeabcde"));
+        for (String term : weights.keySet()) {
+            for (int end = 0; end <= term.length(); end++) prefixes.add(term.substring(0, end));
+            prefixes.add(term + "a");
+        }
+        for (String prefix : prefixes) {
+            assertEquals(bruteForce(weights, prefix, 7), suggester.complete(prefix, 7), "Prefix '" + prefix + "'");
+        }
+        assertEquals(bruteForce(weights, "ab", 3), suggester.complete("ab", 3));
+    }
+
+    @Test
+    @DisplayName("Edge cases: empty vocabulary, single term, invalid topN")
+    void testEdgeCases() {
+        assertEquals(List.of(), PrefixSuggester.build(Map.of(), 5).complete("a", 5));
+        PrefixSuggester single = PrefixSuggester.build(Map.of("pharaoh", 3), 5);
+        assertEquals(List.of("pharaoh"), single.complete("", 5));
+        assertEquals(List.of("pharaoh"), single.complete("phar", 5));
+        assertEquals(List.of("pharaoh"), single.complete("pharaoh", 5));
+        assertEquals(List.of(), single.complete("pharaohs", 5));
+        assertEquals(List.of(), single.complete("pyramid", 5));
+        assertThrows(IllegalArgumentException.class, () -> PrefixSuggester.build(Map.of("a", 1), 0));
+    }
+
+    @Test
+    @DisplayName("Index5.suggest ranks by document frequency and follows index updates")
+    void testIndexSuggest() {
+        Map<String, String> pages = new HashMap<>();
+        pages.put("https://en.wikipedia.org/wiki/Pharaoh", "The pharaoh ruled from the palace of Egypt");
+        pages.put("https://en.wikipedia.org/wiki/Palace", "A palace is a grand residence; the pharaoh had one");
+        pages.put("https://en.wikipedia.org/wiki/Papyrus", "Papyrus grew along the Nile near every palace");
+        Index5 index = new Index5();
+        index.buildIndex(pages);
+
+        assertEquals(List.of("palace", "pharaoh", "papyrus"), index.suggest("P", 10)); // Surface forms, by df then name
+        assertEquals(List.of("palace"), index.suggest("pa", 1));
+        assertEquals(List.of("palace"), index.suggest("palace", 10), "The whole word completes, not just its stem");
+
+        index.addDocuments(List.of(index.tokenize("https://en.wikipedia.org/wiki/Pyramid", null, "Pyramid pyramids pharaoh")));
+        assertEquals(List.of("palace", "pharaoh", "papyrus", "pyramid"), index.suggest("p", 10)); // df 3, 3 (tie: by name), 1, 1
+        index.deleteDocument("https://en.wikipedia.org/wiki/Pyramid");
+        assertEquals(List.of(), index.suggest("py", 10));
+    }
+
+    @Test
+    @DisplayName("Index5.suggest shows the form most documents use; writes leave the rebuild to the next call")
+    void testIndexSuggestSurfaceForms() {
+        Index5 index = new Index5();
+        index.addDocuments(List.of(
+                index.tokenize("https://en.wikipedia.org/wiki/A", null, "Rivers and rivers, one river"),
+                index.tokenize("https://en.wikipedia.org/wiki/B", null, "The river rivers"),
+                index.tokenize("https://en.wikipedia.org/wiki/C", null, "Rivers of Egypt")));
+        assertEquals(0, index.getFootprint().getBytes(IndexFootprint.SUGGESTER), "addDocuments does not build the tries");
+        assertEquals(List.of("rivers"), index.suggest("riv", 10)); // Pages A and C use "rivers" most, B "river"
+        assertTrue(index.getFootprint().getBytes(IndexFootprint.SUGGESTER) > 0);
+
+        index.addDocuments(List.of(
+                index.tokenize("https://en.wikipedia.org/wiki/D", null, "The river"),
+                index.tokenize("https://en.wikipedia.org/wiki/E", null, "A river"),
+                index.tokenize("https://en.wikipedia.org/wiki/F", null, "Another river")));
+        assertEquals(List.of("river"), index.suggest("riv", 10)); // Now four pages of six
+        assertEquals(List.of("egypt"), index.suggest("e", 10));
+    }
+
+    private static List<String> bruteForce(Map<String, Integer> weights, String prefix, int limit) {
+        return weights.entrySet().stream()
+                .filter(e -> e.getValue() > 0 && e.getKey().startsWith(prefix))
+                .sorted(Comparator.<Map.Entry<String, Integer>>comparingInt(Map.Entry::getValue).reversed()
+                        .thenComparing(Map.Entry::getKey))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+}